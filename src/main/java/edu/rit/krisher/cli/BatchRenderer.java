@@ -0,0 +1,208 @@
+package edu.rit.krisher.cli;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import edu.rit.krisher.raytracer.DeadlineRenderer;
+import edu.rit.krisher.raytracer.IntegratorUtils;
+import edu.rit.krisher.raytracer.ProgressiveIntegrator;
+import edu.rit.krisher.raytracer.ProgressiveRenderer;
+import edu.rit.krisher.raytracer.RayStatistics;
+import edu.rit.krisher.raytracer.SurfaceIntegrator;
+import edu.rit.krisher.raytracer.image.ImageFiles;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ * Headless command line renderer.
+ *
+ * <p>
+ * Usage: <code>BatchRenderer job.properties [job2.properties ...] [key=value ...]</code>
+ *
+ * <p>
+ * Each job file is rendered in turn (see {@link JobDescription} for the file format). key=value arguments override the
+ * corresponding property of every job. When a job completes, its {@link RenderStatistics} are printed to standard out
+ * as a single line JSON object (and optionally written to a .json file next to the images). The exit status is 0 if
+ * all jobs succeeded, 1 if any job failed, or 2 for invalid arguments.
+ *
+ * @author krisher
+ *
+ */
+public final class BatchRenderer {
+
+   private BatchRenderer() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   public static void main(final String[] args) {
+      System.setProperty("java.awt.headless", "true");
+
+      final List<File> jobFiles = new ArrayList<File>();
+      final Properties overrides = new Properties();
+      for (final String arg : args) {
+         final int eq = arg.indexOf('=');
+         if (eq > 0) {
+            overrides.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+         } else {
+            jobFiles.add(new File(arg));
+         }
+      }
+      if (jobFiles.isEmpty()) {
+         System.err.println("Usage: " + BatchRenderer.class.getName() + " job.properties [job2.properties ...] [key=value ...]");
+         System.exit(2);
+      }
+
+      int status = 0;
+      for (final File jobFile : jobFiles) {
+         try {
+            final RenderStatistics stats = render(JobDescription.load(jobFile, overrides));
+            System.out.println(stats.toJSON());
+            if (!stats.completed)
+               status = 1;
+         } catch (final Exception e) {
+            System.err.println("Job " + jobFile + " failed: " + e.getMessage());
+            e.printStackTrace();
+            status = 1;
+         }
+      }
+      /*
+       * The integrator thread pool does not use daemon threads.
+       */
+      System.exit(status);
+   }
+
+   /**
+    * Renders a job and writes the requested output files.
+    *
+    * @param job
+    *           The non-null job to render.
+    * @return Statistics for the rendering.
+    * @throws IOException
+    *            If an output file could not be written.
+    * @throws InterruptedException
+    *            If the calling thread is interrupted while waiting for the rendering to complete.
+    */
+   public static RenderStatistics render(final JobDescription job) throws IOException, InterruptedException {
+      final RenderStatistics stats = new RenderStatistics();
+      stats.job = job.getName();
+      stats.scene = job.getSceneName();
+      stats.integrator = job.getIntegratorName();
+      stats.precision = job.getPrecision();
+      stats.width = job.getWidth();
+      stats.height = job.getHeight();
+      stats.samplesPerPixel = job.getPixelSampleRate() * job.getPixelSampleRate();
+      stats.depth = job.getRecursionDepth();
+      stats.threads = IntegratorUtils.threads;
+
+      final SurfaceIntegrator integrator = job.createIntegrator();
+      final Scene scene = job.createScene();
+      long start = System.nanoTime();
+      /*
+       * Scenes are initialized (models loaded and acceleration structures built) on first access.
+       */
+      job.prepareScene(scene);
+      stats.buildSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+      final HeadlessImageBuffer image = new HeadlessImageBuffer(stats.width, stats.height);
+      image.setToneMapper(job.createToneMapper());
+      start = System.nanoTime();
+      if (job.getDeadlineSeconds() > 0) {
+         if (!(integrator instanceof ProgressiveIntegrator))
+            throw new IllegalArgumentException(job.getName() + ": integrator '" + job.getIntegratorName()
+                                               + "' does not support deadlines.");
+         final DeadlineRenderer renderer = new DeadlineRenderer((ProgressiveIntegrator) integrator, scene,
+                                                                stats.width, stats.height, job.getPixelSampleRate(),
+                                                                stats.depth);
+         renderer.setSampleStreams(job.getFrame(), job.getPass());
+         final DeadlineRenderer.Result result = renderer.render(job.getDeadlineSeconds() * 1000L, image);
+         stats.completed = true;
+         stats.samplesPerPixel = (int) Math.round(result.samplesPerPixel);
+         stats.minSamplesPerPixel = result.minSamplesPerPixel;
+         stats.rays = result.rays;
+         stats.deadlineSeconds = job.getDeadlineSeconds();
+         stats.overrunSeconds = result.overrunSeconds;
+      } else if (job.getPasses() > 1 || job.getCheckpoint() != null) {
+         if (!(integrator instanceof ProgressiveIntegrator))
+            throw new IllegalArgumentException(job.getName() + ": integrator '" + job.getIntegratorName()
+                                               + "' does not support multiple passes or checkpoints.");
+         final ProgressiveRenderer renderer = new ProgressiveRenderer((ProgressiveIntegrator) integrator, scene,
+                                                                      getCheckpointKey(job), stats.width,
+                                                                      stats.height, job.getPixelSampleRate(),
+                                                                      stats.depth);
+         renderer.setSampleStreams(job.getFrame(), job.getPass());
+         renderer.setCheckpoint(job.getCheckpoint(), job.getCheckpointIntervalSeconds() * 1000L);
+         if (job.isResume() && renderer.resume()) {
+            System.out.println("Resuming " + job.getName() + " after " + renderer.getCompletedPasses() + " passes.");
+         }
+         renderer.render(job.getPasses(), image);
+         stats.completed = true;
+         stats.samplesPerPixel *= renderer.getCompletedPasses();
+         stats.rays = renderer.getRayCount();
+      } else {
+         integrator.integrate(image, scene, job.getPixelSampleRate(), stats.depth);
+         stats.completed = image.awaitCompletion(job.getTimeoutSeconds(), TimeUnit.SECONDS);
+         if (!stats.completed) {
+            integrator.cancel(image);
+         }
+         if (integrator instanceof RayStatistics) {
+            stats.rays = ((RayStatistics) integrator).getRayCount();
+         }
+      }
+      stats.renderSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+      writeOutputs(job, image, stats);
+      return stats;
+   }
+
+   /**
+    * Identifies the settings of a job that affect the rendered image (other than the resolution, sampling rate and
+    * sample streams, which the checkpoint stores separately).
+    */
+   private static String getCheckpointKey(final JobDescription job) {
+      return job.getSceneName() + "|" + job.getIntegratorName() + "|"
+      + job.getSamplerFactory().createSampler().getClass().getName();
+   }
+
+   /**
+    * Writes the output files requested by a job.
+    *
+    * @param job
+    *           The job that was rendered.
+    * @param image
+    *           The rendered (and tone mapped) image.
+    * @param stats
+    *           Statistics for the rendering.
+    * @throws IOException
+    *            If an output file could not be written.
+    */
+   public static void writeOutputs(final JobDescription job, final HeadlessImageBuffer image,
+         final RenderStatistics stats) throws IOException {
+      final File output = job.getOutput();
+      final File parent = output.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+         throw new IOException("Unable to create output directory " + parent);
+      for (final String format : job.getFormats()) {
+         final File file = new File(output.getPath() + "." + format);
+         if ("png".equals(format)) {
+            ImageFiles.writePNG(image.getImage(), file);
+         } else if ("pfm".equals(format)) {
+            ImageFiles.writePFM(image.getFloatPixels(), image.getResolution(), file);
+         } else {
+            final Writer writer = new FileWriter(file);
+            try {
+               writer.write(stats.toJSON());
+               writer.write('\n');
+            } finally {
+               writer.close();
+            }
+         }
+      }
+   }
+}
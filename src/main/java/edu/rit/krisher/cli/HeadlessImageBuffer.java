@@ -0,0 +1,61 @@
+package edu.rit.krisher.cli;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.rit.krisher.raytracer.image.DefaultImageBuffer;
+
+/**
+ * {@link DefaultImageBuffer} that allows a (non-UI) thread to wait for rendering to complete.
+ *
+ * @author krisher
+ *
+ */
+public class HeadlessImageBuffer extends DefaultImageBuffer {
+
+   private volatile CountDownLatch done = new CountDownLatch(1);
+
+   public HeadlessImageBuffer(final int width, final int height) {
+      super(width, height);
+   }
+
+   @Override
+   public void imagingStarted() {
+      done = new CountDownLatch(1);
+      super.imagingStarted();
+   }
+
+   @Override
+   public void imagingDone() {
+      super.imagingDone();
+      done.countDown();
+   }
+
+   /**
+    * Blocks until {@link #imagingDone()} has been called for the current rendering.
+    *
+    * @param timeout
+    *           The maximum time to wait, or a value <= 0 to wait indefinitely.
+    * @param unit
+    *           The unit of the timeout.
+    * @return true if rendering completed, false if the timeout elapsed first.
+    * @throws InterruptedException
+    */
+   public boolean awaitCompletion(final long timeout, final TimeUnit unit) throws InterruptedException {
+      if (timeout <= 0) {
+         done.await();
+         return true;
+      }
+      return done.await(timeout, unit);
+   }
+
+   /**
+    * Gets the un-tone-mapped RGB values of the image. Rows are ordered from the top of the image to the bottom, as in
+    * {@link #getImage()}.
+    *
+    * @return The (live) pixel array, 3 floats per pixel.
+    */
+   public float[] getFloatPixels() {
+      return image;
+   }
+}
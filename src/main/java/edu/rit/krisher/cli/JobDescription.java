@@ -0,0 +1,390 @@
+package edu.rit.krisher.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.Properties;
+
+import edu.rit.krisher.raytracer.CLPathTracer;
+import edu.rit.krisher.raytracer.PathTracer;
+import edu.rit.krisher.raytracer.PhotonTracer;
+import edu.rit.krisher.raytracer.SurfaceIntegrator;
+import edu.rit.krisher.raytracer.WavefrontPathTracer;
+import edu.rit.krisher.raytracer.image.ImageUtil;
+import edu.rit.krisher.raytracer.image.ToneMapper;
+import edu.rit.krisher.raytracer.sampling.RandomSampler;
+import edu.rit.krisher.raytracer.sampling.Sampler;
+import edu.rit.krisher.raytracer.sampling.SobolSampler;
+import edu.rit.krisher.scene.Camera;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.Scene;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
+import edu.rit.krisher.scene.camera.PinholeCamera;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.ui.scenes.AdvRenderingScenes;
+import edu.rit.krisher.ui.scenes.CG2Scenes;
+import edu.rit.krisher.ui.scenes.PLYScene;
+
+/**
+ * Description of a batch rendering job, read from a {@link Properties} file. The recognized keys are:
+ *
+ * <pre>
+ * scene        Name of a built-in scene (from CG2Scenes or AdvRenderingScenes), or
+ * ply          Path of a PLY model to render in a default (Cornell box) scene.
+ * width        Image width in pixels (default 512).
+ * height       Image height in pixels (default width).
+ * spp          Samples per pixel (default 16), rounded up to a square number.
+ * depth        Maximum path length (default 4).
+ * integrator   path, path-sorted, wavefront, photon or cl (default path).
+ * sampler      sobol or random (default sobol), for the path and wavefront integrators.
+ * frame        Frame number for the sample streams (default 0).
+ * pass         Pass number for the sample streams (default 0).
+ * tonemap      clamp, ward or reinhard (default clamp).
+ * tonemap.midpoint    Reinhard midpoint luminance (default 0.18).
+ * tonemap.whitepoint  Ward/Reinhard maximum luminance (default computed from the image).
+ * output       Output path, without extension (required).
+ * formats      Comma separated list of png, pfm and json (default png,pfm,json).
+ * timeout      Maximum render time in seconds, 0 for no limit (default 0). Ignored for progressive renderings.
+ * passes       Number of independent sampling passes to average (default 1).
+ * checkpoint   Path of a checkpoint file for progressive renderings (default none).
+ * checkpoint.interval  Minimum time between checkpoints in seconds (default 600).
+ * resume       true to continue from the checkpoint file if it exists (default false).
+ * deadline     Time budget in seconds, 0 for none (default 0). Renders as many passes as fit in the budget, with
+ *              spp as the limit for a single pass; passes and checkpoints are ignored.
+ * precision    double or single (default double). Precision of ray traversal for KD-trees and triangle meshes.
+ * cleanup      true to weld duplicate vertices and remove degenerate triangles of the PLY model (default false).
+ * </pre>
+ *
+ * @author krisher
+ *
+ */
+public final class JobDescription {
+
+   private final String name;
+   private final Properties properties;
+
+   /**
+    * Creates a job description from the specified properties.
+    *
+    * @param name
+    *           A name for the job, used in error messages and statistics.
+    * @param properties
+    *           The non-null job properties.
+    * @throws IllegalArgumentException
+    *            If a required property is missing, or a property value is invalid.
+    */
+   public JobDescription(final String name, final Properties properties) {
+      this.name = name;
+      this.properties = properties;
+      if (getString("scene", null) == null && getString("ply", null) == null)
+         throw new IllegalArgumentException(name + ": either 'scene' or 'ply' must be specified.");
+      if (getString("output", null) == null)
+         throw new IllegalArgumentException(name + ": 'output' must be specified.");
+      /*
+       * Validate everything up front so that a batch fails before spending time on rendering.
+       */
+      getWidth();
+      getHeight();
+      getPixelSampleRate();
+      getRecursionDepth();
+      getFrame();
+      getPass();
+      getTimeoutSeconds();
+      getPasses();
+      getCheckpointIntervalSeconds();
+      getDeadlineSeconds();
+      getFormats();
+      createToneMapper();
+      getSamplerFactory();
+      checkChoice("integrator", getIntegratorName(), "path", "path-sorted", "wavefront", "photon", "cl");
+      checkChoice("precision", getPrecision(), "double", "single");
+   }
+
+   /**
+    * Loads a job description from a properties file.
+    *
+    * @param file
+    *           The job file.
+    * @param overrides
+    *           Properties that override the values in the file, may be empty.
+    * @return The job description.
+    * @throws IOException
+    *            If the file could not be read.
+    */
+   public static JobDescription load(final File file, final Properties overrides) throws IOException {
+      final Properties properties = new Properties();
+      final InputStream in = new FileInputStream(file);
+      try {
+         properties.load(in);
+      } finally {
+         in.close();
+      }
+      properties.putAll(overrides);
+      return new JobDescription(file.getPath(), properties);
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * @return A copy of the job properties.
+    */
+   public Properties getProperties() {
+      final Properties copy = new Properties();
+      copy.putAll(properties);
+      return copy;
+   }
+
+   public int getWidth() {
+      return getInt("width", 512, 1);
+   }
+
+   public int getHeight() {
+      return getInt("height", getWidth(), 1);
+   }
+
+   /**
+    * @return The linear super-sampling rate; the square root of the requested samples per pixel, rounded up.
+    */
+   public int getPixelSampleRate() {
+      return (int) Math.ceil(Math.sqrt(getInt("spp", 16, 1)) - 1e-9);
+   }
+
+   public int getRecursionDepth() {
+      return getInt("depth", 4, 0);
+   }
+
+   public long getFrame() {
+      return getInt("frame", 0, 0);
+   }
+
+   public int getPass() {
+      return getInt("pass", 0, 0);
+   }
+
+   public int getTimeoutSeconds() {
+      return getInt("timeout", 0, 0);
+   }
+
+   public int getPasses() {
+      return getInt("passes", 1, 1);
+   }
+
+   /**
+    * @return The checkpoint file, or null if checkpoints are not enabled.
+    */
+   public File getCheckpoint() {
+      final String checkpoint = getString("checkpoint", null);
+      return checkpoint == null ? null : new File(checkpoint);
+   }
+
+   public int getCheckpointIntervalSeconds() {
+      return getInt("checkpoint.interval", 600, 0);
+   }
+
+   public boolean isResume() {
+      return Boolean.parseBoolean(getString("resume", "false"));
+   }
+
+   /**
+    * @return true to clean up PLY models when they are loaded.
+    */
+   public boolean isMeshCleanup() {
+      return Boolean.parseBoolean(getString("cleanup", "false"));
+   }
+
+   /**
+    * @return The time budget for deadline renderings in seconds, or 0 to render a fixed number of samples.
+    */
+   public int getDeadlineSeconds() {
+      return getInt("deadline", 0, 0);
+   }
+
+   /**
+    * @return "single" to traverse KD-trees and triangle meshes in single precision, "double" otherwise.
+    */
+   public String getPrecision() {
+      return getString("precision", "double");
+   }
+
+   public boolean isSinglePrecision() {
+      return "single".equals(getPrecision());
+   }
+
+   public String getIntegratorName() {
+      return getString("integrator", "path");
+   }
+
+   /**
+    * @return The output path, without a file extension.
+    */
+   public File getOutput() {
+      return new File(getString("output", null));
+   }
+
+   /**
+    * @return The lower case names of the requested output formats.
+    */
+   public String[] getFormats() {
+      final String[] formats = getString("formats", "png,pfm,json").toLowerCase().split("\\s*,\\s*");
+      for (final String format : formats) {
+         checkChoice("formats", format, "png", "pfm", "json");
+      }
+      return formats;
+   }
+
+   /**
+    * @return The scene name, or the model path for PLY scenes.
+    */
+   public String getSceneName() {
+      final String scene = getString("scene", null);
+      return scene != null ? scene : getString("ply", null);
+   }
+
+   /**
+    * Finds or creates the scene to render. Built-in scenes are lazily initialized, so this is inexpensive.
+    *
+    * @return The scene.
+    * @throws IllegalArgumentException
+    *            If the scene does not exist.
+    */
+   public Scene createScene() {
+      final String sceneName = getString("scene", null);
+      if (sceneName != null) {
+         for (final Scene scene : CG2Scenes.getScenes()) {
+            if (scene.getName().equals(sceneName))
+               return scene;
+         }
+         for (final Scene scene : AdvRenderingScenes.getScenes()) {
+            if (scene.getName().equals(sceneName))
+               return scene;
+         }
+         throw new IllegalArgumentException(name + ": unknown scene '" + sceneName + "'.");
+      }
+      final File plyFile = new File(getString("ply", null));
+      if (!plyFile.canRead())
+         throw new IllegalArgumentException(name + ": can not read PLY file '" + plyFile + "'.");
+      try {
+         final PLYScene<Camera> scene = new PLYScene<Camera>(plyFile.getName(), new PinholeCamera(),
+                                                             plyFile.toURI().toURL(), null, null,
+                                                             new SAHPartitionStrategey(), true, null);
+         scene.setMeshCleanup(isMeshCleanup());
+         return scene;
+      } catch (final MalformedURLException e) {
+         throw new IllegalArgumentException(name + ": invalid PLY path '" + plyFile + "'.", e);
+      }
+   }
+
+   /**
+    * Initializes a scene for rendering this job: loads its models, builds its acceleration structures, and selects the
+    * requested precision for its KD-trees and triangle meshes.
+    * 
+    * @param scene
+    *           The scene, as returned by {@link #createScene()}.
+    * @return The scene geometry.
+    */
+   public Geometry[] prepareScene(final Scene scene) {
+      final Geometry[] geometry = scene.getGeometry();
+      scene.getLightSources();
+      /*
+       * Built-in scenes are shared, so the precision is set either way rather than only when single precision is
+       * requested.
+       */
+      for (final Geometry geom : geometry) {
+         if (geom instanceof KDGeometryContainer)
+            ((KDGeometryContainer) geom).setSinglePrecision(isSinglePrecision());
+         else if (geom instanceof TriangleMesh)
+            ((TriangleMesh) geom).setSinglePrecision(isSinglePrecision());
+      }
+      return geometry;
+   }
+
+   /**
+    * @return A new instance of the requested integrator.
+    */
+   public SurfaceIntegrator createIntegrator() {
+      final String integrator = getIntegratorName();
+      if ("path".equals(integrator) || "path-sorted".equals(integrator)) {
+         final PathTracer pt = new PathTracer("path-sorted".equals(integrator), getSamplerFactory());
+         pt.setFrame(getFrame());
+         pt.setPass(getPass());
+         return pt;
+      } else if ("wavefront".equals(integrator)) {
+         final WavefrontPathTracer wpt = new WavefrontPathTracer(WavefrontPathTracer.DEFAULT_WAVEFRONT_SIZE, getSamplerFactory());
+         wpt.setFrame(getFrame());
+         wpt.setPass(getPass());
+         return wpt;
+      } else if ("photon".equals(integrator)) {
+         return new PhotonTracer();
+      } else {
+         return new CLPathTracer();
+      }
+   }
+
+   public Sampler.Factory getSamplerFactory() {
+      final String sampler = getString("sampler", "sobol");
+      checkChoice("sampler", sampler, "sobol", "random");
+      return "random".equals(sampler) ? RandomSampler.FACTORY : SobolSampler.FACTORY;
+   }
+
+   public ToneMapper createToneMapper() {
+      final String toneMapper = getString("tonemap", "clamp");
+      checkChoice("tonemap", toneMapper, "clamp", "ward", "reinhard");
+      final Double whitePoint = getDouble("tonemap.whitepoint");
+      if ("ward".equals(toneMapper))
+         return new ImageUtil.WardTM(whitePoint);
+      if ("reinhard".equals(toneMapper))
+         return new ImageUtil.ReinhardTM(getDouble("tonemap.midpoint"), whitePoint);
+      return ImageUtil.clampTM;
+   }
+
+   private String getString(final String key, final String defaultValue) {
+      final String value = properties.getProperty(key);
+      if (value == null || value.trim().length() == 0)
+         return defaultValue;
+      return value.trim();
+   }
+
+   private int getInt(final String key, final int defaultValue, final int min) {
+      final String value = getString(key, null);
+      if (value == null)
+         return defaultValue;
+      final int result;
+      try {
+         result = Integer.parseInt(value);
+      } catch (final NumberFormatException e) {
+         throw new IllegalArgumentException(name + ": '" + key + "' must be an integer, found '" + value + "'.");
+      }
+      if (result < min)
+         throw new IllegalArgumentException(name + ": '" + key + "' must be at least " + min + ", found " + result
+                                            + ".");
+      return result;
+   }
+
+   private Double getDouble(final String key) {
+      final String value = getString(key, null);
+      if (value == null)
+         return null;
+      try {
+         return Double.valueOf(value);
+      } catch (final NumberFormatException e) {
+         throw new IllegalArgumentException(name + ": '" + key + "' must be a number, found '" + value + "'.");
+      }
+   }
+
+   private void checkChoice(final String key, final String value, final String... choices) {
+      for (final String choice : choices) {
+         if (choice.equals(value))
+            return;
+      }
+      final StringBuilder msg = new StringBuilder(name).append(": '").append(key).append("' must be one of ");
+      for (int i = 0; i < choices.length; ++i) {
+         msg.append(i == 0 ? "" : ", ").append(choices[i]);
+      }
+      throw new IllegalArgumentException(msg.append(", found '").append(value).append("'.").toString());
+   }
+}
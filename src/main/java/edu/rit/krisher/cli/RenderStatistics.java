@@ -0,0 +1,105 @@
+package edu.rit.krisher.cli;
+
+/**
+ * Summary of a completed batch rendering job, formatted as a single line JSON object.
+ *
+ * @author krisher
+ *
+ */
+public final class RenderStatistics {
+
+   public String job;
+   public String scene;
+   public String integrator;
+   /**
+    * Ray traversal precision, single or double.
+    */
+   public String precision;
+   public int width;
+   public int height;
+   /**
+    * Samples per pixel; the rounded average over all pixels for deadline renderings.
+    */
+   public int samplesPerPixel;
+   public int depth;
+   /**
+    * The number of rendering threads, summed over all workers for distributed renderings.
+    */
+   public int threads;
+   /**
+    * Time to load the scene and build acceleration structures, in seconds.
+    */
+   public double buildSeconds;
+   /**
+    * Wall clock time for rendering, in seconds.
+    */
+   public double renderSeconds;
+   /**
+    * The number of rays traced, or -1 if the integrator does not count rays.
+    */
+   public long rays = -1;
+   public boolean completed;
+   /**
+    * The time budget in seconds, or 0 if the rendering did not have a deadline.
+    */
+   public double deadlineSeconds;
+   /**
+    * The time by which the rendering exceeded its deadline, in seconds.
+    */
+   public double overrunSeconds;
+   /**
+    * The smallest number of samples of any pixel, for deadline renderings.
+    */
+   public int minSamplesPerPixel;
+
+   public double getRaysPerSecond() {
+      if (rays < 0 || renderSeconds <= 0)
+         return -1;
+      return rays / renderSeconds;
+   }
+
+   /**
+    * @return The statistics as a JSON object, on a single line.
+    */
+   public String toJSON() {
+      final StringBuilder json = new StringBuilder("{");
+      appendString(json, "job", job).append(',');
+      appendString(json, "scene", scene).append(',');
+      appendString(json, "integrator", integrator).append(',');
+      if (precision != null)
+         appendString(json, "precision", precision).append(',');
+      json.append("\"width\":").append(width).append(',');
+      json.append("\"height\":").append(height).append(',');
+      json.append("\"spp\":").append(samplesPerPixel).append(',');
+      json.append("\"depth\":").append(depth).append(',');
+      json.append("\"threads\":").append(threads).append(',');
+      json.append("\"completed\":").append(completed).append(',');
+      json.append("\"buildSeconds\":").append(buildSeconds).append(',');
+      json.append("\"renderSeconds\":").append(renderSeconds).append(',');
+      json.append("\"rays\":").append(rays).append(',');
+      json.append("\"raysPerSecond\":").append(Math.round(getRaysPerSecond()));
+      if (deadlineSeconds > 0) {
+         json.append(",\"deadlineSeconds\":").append(deadlineSeconds);
+         json.append(",\"overrunSeconds\":").append(overrunSeconds);
+         json.append(",\"minSpp\":").append(minSamplesPerPixel);
+      }
+      return json.append('}').toString();
+   }
+
+   private static StringBuilder appendString(final StringBuilder json, final String key, final String value) {
+      json.append('"').append(key).append("\":");
+      if (value == null)
+         return json.append("null");
+      json.append('"');
+      for (int i = 0; i < value.length(); ++i) {
+         final char c = value.charAt(i);
+         if (c == '"' || c == '\\')
+            json.append('\\').append(c);
+         else if (c < 0x20)
+            json.append(String.format("\\u%04x", (int) c));
+         else
+            json.append(c);
+      }
+      return json.append('"');
+   }
+}
@@ -0,0 +1,45 @@
+package edu.rit.krisher.distributed;
+
+/**
+ * Receives progress notifications from a {@link RenderCoordinator}. Methods are called from the coordinator's worker
+ * connection threads, and must be thread safe.
+ *
+ * @author krisher
+ *
+ */
+public interface ProgressListener {
+
+   /**
+    * Called when a worker connects.
+    *
+    * @param worker
+    *           The name of the worker.
+    * @param threads
+    *           The number of rendering threads reported by the worker.
+    */
+   public void workerConnected(String worker, int threads);
+
+   /**
+    * Called when the result of a pass has been merged into the image.
+    *
+    * @param worker
+    *           The name of the worker that rendered the pass.
+    * @param pass
+    *           The pass index.
+    * @param completedPasses
+    *           The number of passes that have been merged so far.
+    * @param totalPasses
+    *           The total number of passes in the rendering.
+    */
+   public void passCompleted(String worker, int pass, int completedPasses, int totalPasses);
+
+   /**
+    * Called when the connection to a worker is lost (or it stops responding) before the rendering is complete.
+    *
+    * @param worker
+    *           The name of the worker.
+    * @param reissuedPass
+    *           The pass the worker was rendering, which has been returned to the queue, or -1 if the worker was idle.
+    */
+   public void workerLost(String worker, int reissuedPass);
+}
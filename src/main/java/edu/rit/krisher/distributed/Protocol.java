@@ -0,0 +1,85 @@
+package edu.rit.krisher.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Message types and encoding shared by {@link RenderCoordinator} and {@link RenderWorker}.
+ *
+ * <p>
+ * All messages are written with {@link DataOutputStream}, and start with a single type byte:
+ *
+ * <pre>
+ * worker -&gt; coordinator: HELLO     int magic, int version, UTF name, int threads (sent once, on connect)
+ * coordinator -&gt; worker: JOB       int count, count * (UTF key, UTF value)
+ * coordinator -&gt; worker: PASS      int pass
+ * coordinator -&gt; worker: DONE
+ * worker -&gt; coordinator: RESULT    int pass, long rays, int width, int height, width * height * 3 floats
+ * worker -&gt; coordinator: HEARTBEAT
+ * </pre>
+ *
+ * The rays field of a RESULT is the number of rays traced for the pass, for the coordinator's statistics.
+ *
+ * @author krisher
+ *
+ */
+final class Protocol {
+
+   static final int MAGIC = 0x50545244;
+   static final int VERSION = 1;
+
+   static final byte HELLO = 1;
+   static final byte JOB = 2;
+   static final byte PASS = 3;
+   static final byte DONE = 4;
+   static final byte RESULT = 5;
+   static final byte HEARTBEAT = 6;
+
+   /**
+    * Interval between heartbeats sent by a worker while it is rendering.
+    */
+   static final int HEARTBEAT_MILLIS = 1000;
+
+   private Protocol() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   static void writeProperties(final DataOutputStream out, final Properties properties) throws IOException {
+      out.writeByte(JOB);
+      out.writeInt(properties.size());
+      for (final Map.Entry<Object, Object> entry : properties.entrySet()) {
+         out.writeUTF(entry.getKey().toString());
+         out.writeUTF(entry.getValue().toString());
+      }
+   }
+
+   /**
+    * Reads the body of a JOB message (after the type byte).
+    */
+   static Properties readProperties(final DataInputStream in) throws IOException {
+      final Properties properties = new Properties();
+      final int count = in.readInt();
+      for (int i = 0; i < count; ++i) {
+         properties.setProperty(in.readUTF(), in.readUTF());
+      }
+      return properties;
+   }
+
+   static void writeFloats(final DataOutputStream out, final float[] values) throws IOException {
+      final ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+      bytes.asFloatBuffer().put(values);
+      out.write(bytes.array());
+   }
+
+   static void readFloats(final DataInputStream in, final float[] values) throws IOException {
+      final byte[] bytes = new byte[values.length * 4];
+      in.readFully(bytes);
+      ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+   }
+}
@@ -0,0 +1,453 @@
+package edu.rit.krisher.distributed;
+
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.rit.krisher.cli.BatchRenderer;
+import edu.rit.krisher.cli.HeadlessImageBuffer;
+import edu.rit.krisher.cli.JobDescription;
+import edu.rit.krisher.cli.RenderStatistics;
+import edu.rit.krisher.raytracer.image.AccumulationBuffer;
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+
+/**
+ * Distributes the sampling passes of a rendering to {@link RenderWorker}s over TCP connections, and merges the results
+ * into an {@link ImageBuffer}.
+ *
+ * <p>
+ * Each pass renders the complete image at the job's sampling rate, with the pass index selecting independent sample
+ * streams (see {@link edu.rit.krisher.raytracer.PathTracer#setPass(int)}); the final image is the average of all passes.
+ * Since the result of a pass does not depend on the worker that renders it, passes from a worker that disconnects or
+ * stops sending heartbeats are simply returned to the queue and re-issued to another worker. The target ImageBuffer is
+ * updated with the running average after every pass.
+ *
+ * <p>
+ * Usage: <code>RenderCoordinator job.properties [key=value ...]</code>, with the additional job properties
+ * <code>port</code> (default {@link #DEFAULT_PORT}); the job's <code>passes</code> property is the number of passes to
+ * distribute.
+ *
+ * @author krisher
+ *
+ */
+public final class RenderCoordinator {
+
+   public static final int DEFAULT_PORT = 7878;
+
+   private final JobDescription job;
+   private final int totalPasses;
+   private final ImageBuffer target;
+   private final AccumulationBuffer accumulation;
+   private final float[] average;
+   private final int samplesPerPass;
+   private final boolean[] completed;
+   private final LinkedBlockingDeque<Integer> pending = new LinkedBlockingDeque<Integer>();
+   private final CountDownLatch done = new CountDownLatch(1);
+   private final List<Socket> connections = new ArrayList<Socket>();
+   private final List<Thread> connectionThreads = new ArrayList<Thread>();
+   private final AtomicInteger reissuedPasses = new AtomicInteger();
+   private final AtomicInteger connectedWorkers = new AtomicInteger();
+   private final AtomicInteger workerThreads = new AtomicInteger();
+   private final AtomicLong rayCount = new AtomicLong();
+
+   private volatile ProgressListener listener;
+   private volatile int workerTimeoutMillis = 30 * Protocol.HEARTBEAT_MILLIS;
+   private volatile boolean closed;
+   private ServerSocket server;
+
+   /**
+    * Creates a new coordinator.
+    *
+    * @param job
+    *           The job to render, which is sent to each worker.
+    * @param passes
+    *           The number of sampling passes to render.
+    * @param target
+    *           The image buffer to merge results into, with the same resolution as the job.
+    */
+   public RenderCoordinator(final JobDescription job, final int passes, final ImageBuffer target) {
+      if (passes < 1)
+         throw new IllegalArgumentException("At least one pass is required.");
+      final Dimension size = target.getResolution();
+      if (size.width != job.getWidth() || size.height != job.getHeight())
+         throw new IllegalArgumentException("ImageBuffer resolution does not match the job.");
+      this.job = job;
+      this.totalPasses = passes;
+      this.target = target;
+      accumulation = new AccumulationBuffer(size.width, size.height);
+      samplesPerPass = job.getPixelSampleRate() * job.getPixelSampleRate();
+      average = new float[size.width * size.height * 3];
+      completed = new boolean[passes];
+      for (int i = 0; i < passes; ++i) {
+         pending.add(i);
+      }
+   }
+
+   public void setProgressListener(final ProgressListener listener) {
+      this.listener = listener;
+   }
+
+   /**
+    * Sets the time after which a worker that has not sent any message is considered lost. Workers send heartbeats
+    * while loading the scene and rendering, so this only needs to account for network delays.
+    *
+    * @param millis
+    *           The timeout in milliseconds.
+    */
+   public void setWorkerTimeout(final int millis) {
+      this.workerTimeoutMillis = millis;
+   }
+
+   /**
+    * Starts accepting worker connections.
+    *
+    * @param port
+    *           The TCP port to listen on, or 0 to use any free port.
+    * @return The port the coordinator is listening on.
+    * @throws IOException
+    *            If the server socket could not be opened.
+    */
+   public synchronized int start(final int port) throws IOException {
+      if (server != null)
+         throw new IllegalStateException("Coordinator is already started.");
+      server = new ServerSocket(port);
+      target.imagingStarted();
+      final Thread acceptThread = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            acceptConnections();
+         }
+      }, "Render Coordinator (port " + server.getLocalPort() + ")");
+      acceptThread.setDaemon(true);
+      acceptThread.start();
+      return server.getLocalPort();
+   }
+
+   /**
+    * Blocks until all passes have been merged into the image.
+    *
+    * @param timeout
+    *           The maximum time to wait, or a value <= 0 to wait indefinitely.
+    * @param unit
+    *           The unit of the timeout.
+    * @return true if the rendering completed, false if the timeout elapsed first.
+    * @throws InterruptedException
+    */
+   public boolean awaitCompletion(final long timeout, final TimeUnit unit) throws InterruptedException {
+      if (timeout <= 0) {
+         done.await();
+         return true;
+      }
+      return done.await(timeout, unit);
+   }
+
+   /**
+    * Stops accepting connections and disconnects all workers. Rendering can not be resumed. If the rendering is
+    * complete, workers are given a moment to receive the notification that they are done.
+    */
+   public void close() {
+      closed = true;
+      synchronized (this) {
+         closeQuietly(server);
+      }
+      if (done.getCount() == 0) {
+         final List<Thread> threads;
+         synchronized (connections) {
+            threads = new ArrayList<Thread>(connectionThreads);
+         }
+         try {
+            for (final Thread thread : threads) {
+               thread.join(1000);
+            }
+         } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      synchronized (connections) {
+         for (final Socket socket : connections) {
+            closeQuietly(socket);
+         }
+         connections.clear();
+      }
+   }
+
+   public int getCompletedPassCount() {
+      return accumulation.getPassCount();
+   }
+
+   public int getTotalPassCount() {
+      return totalPasses;
+   }
+
+   /**
+    * @return The number of passes that were returned to the queue because the worker rendering them was lost.
+    */
+   public int getReissuedPassCount() {
+      return reissuedPasses.get();
+   }
+
+   public int getConnectedWorkerCount() {
+      return connectedWorkers.get();
+   }
+
+   /**
+    * @return The total number of rendering threads reported by all workers that have connected.
+    */
+   public int getWorkerThreadCount() {
+      return workerThreads.get();
+   }
+
+   /**
+    * @return The number of rays traced by workers for all completed passes, or -1 if some workers do not count rays.
+    */
+   public long getRayCount() {
+      return rayCount.get();
+   }
+
+   private void acceptConnections() {
+      while (!closed && done.getCount() > 0) {
+         final Socket socket;
+         try {
+            socket = server.accept();
+         } catch (final IOException e) {
+            if (!closed && done.getCount() > 0)
+               e.printStackTrace();
+            return;
+         }
+         final Thread connectionThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+               serveWorker(socket);
+            }
+         }, "Render Coordinator (" + socket.getRemoteSocketAddress() + ")");
+         connectionThread.setDaemon(true);
+         synchronized (connections) {
+            connections.add(socket);
+            connectionThreads.add(connectionThread);
+         }
+         connectionThread.start();
+      }
+   }
+
+   private void serveWorker(final Socket socket) {
+      String worker = String.valueOf(socket.getRemoteSocketAddress());
+      int currentPass = -1;
+      boolean connected = false;
+      try {
+         socket.setSoTimeout(workerTimeoutMillis);
+         socket.setTcpNoDelay(true);
+         final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+         if (in.readByte() != Protocol.HELLO || in.readInt() != Protocol.MAGIC)
+            throw new IOException("Not a render worker.");
+         final int version = in.readInt();
+         if (version != Protocol.VERSION)
+            throw new IOException("Unsupported protocol version " + version);
+         worker = in.readUTF() + " (" + socket.getRemoteSocketAddress() + ")";
+         final int threads = in.readInt();
+         connected = true;
+         connectedWorkers.incrementAndGet();
+         workerThreads.addAndGet(threads);
+         final ProgressListener l = listener;
+         if (l != null)
+            l.workerConnected(worker, threads);
+
+         Protocol.writeProperties(out, job.getProperties());
+         out.flush();
+
+         final Dimension size = target.getResolution();
+         final float[] pixels = new float[size.width * size.height * 3];
+         Integer pass;
+         while ((pass = nextPass()) != null) {
+            currentPass = pass;
+            out.writeByte(Protocol.PASS);
+            out.writeInt(pass);
+            out.flush();
+
+            byte type;
+            while ((type = in.readByte()) == Protocol.HEARTBEAT) {
+               /*
+                * Worker is still alive.
+                */
+            }
+            if (type != Protocol.RESULT)
+               throw new IOException("Unexpected message type " + type);
+            final int resultPass = in.readInt();
+            final long rays = in.readLong();
+            final int width = in.readInt();
+            final int height = in.readInt();
+            if (resultPass != pass || width != size.width || height != size.height)
+               throw new IOException("Result does not match pass " + pass);
+            Protocol.readFloats(in, pixels);
+            merge(worker, pass, pixels, rays);
+            currentPass = -1;
+         }
+         out.writeByte(Protocol.DONE);
+         out.flush();
+      } catch (final IOException e) {
+         if (!closed && done.getCount() > 0) {
+            if (currentPass >= 0) {
+               pending.addFirst(currentPass);
+               reissuedPasses.incrementAndGet();
+            }
+            final ProgressListener l = listener;
+            if (l != null)
+               l.workerLost(worker, currentPass);
+         }
+      } finally {
+         if (connected)
+            connectedWorkers.decrementAndGet();
+         synchronized (connections) {
+            connections.remove(socket);
+            connectionThreads.remove(Thread.currentThread());
+         }
+         closeQuietly(socket);
+      }
+   }
+
+   /**
+    * Blocks until there is a pass to render.
+    *
+    * @return The next pass, or null if the rendering is complete or the coordinator is closed.
+    */
+   private Integer nextPass() throws IOException {
+      try {
+         while (!closed && done.getCount() > 0) {
+            final Integer pass = pending.poll(100, TimeUnit.MILLISECONDS);
+            if (pass != null) {
+               synchronized (completed) {
+                  if (!completed[pass])
+                     return pass;
+               }
+            }
+         }
+         return null;
+      } catch (final InterruptedException e) {
+         throw new IOException("Interrupted while waiting for work.");
+      }
+   }
+
+   private void merge(final String worker, final int pass, final float[] pixels, final long rays) {
+      final int completedPasses;
+      synchronized (completed) {
+         if (completed[pass])
+            return;
+         completed[pass] = true;
+         if (rays < 0 || rayCount.get() < 0)
+            rayCount.set(-1);
+         else
+            rayCount.addAndGet(rays);
+         accumulation.addPass(pixels, samplesPerPass);
+         accumulation.getAverage(average);
+         completedPasses = accumulation.getPassCount();
+         final Dimension size = target.getResolution();
+         target.setPixels(0, 0, size.width, size.height, average);
+      }
+      final ProgressListener l = listener;
+      if (l != null)
+         l.passCompleted(worker, pass, completedPasses, totalPasses);
+      if (completedPasses == totalPasses) {
+         target.imagingDone();
+         done.countDown();
+         synchronized (this) {
+            closeQuietly(server);
+         }
+      }
+   }
+
+   private static void closeQuietly(final ServerSocket socket) {
+      if (socket != null) {
+         try {
+            socket.close();
+         } catch (final IOException ignored) {
+         }
+      }
+   }
+
+   private static void closeQuietly(final Socket socket) {
+      try {
+         socket.close();
+      } catch (final IOException ignored) {
+      }
+   }
+
+   public static void main(final String[] args) throws Exception {
+      System.setProperty("java.awt.headless", "true");
+      if (args.length < 1) {
+         System.err.println("Usage: " + RenderCoordinator.class.getName() + " job.properties [key=value ...]");
+         System.exit(2);
+      }
+      final Properties overrides = new Properties();
+      for (int i = 1; i < args.length; ++i) {
+         final int eq = args[i].indexOf('=');
+         if (eq > 0)
+            overrides.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+      }
+      final JobDescription job = JobDescription.load(new File(args[0]), overrides);
+      final Properties props = job.getProperties();
+      final int passes = job.getPasses();
+      final int port = Integer.parseInt(props.getProperty("port", Integer.toString(DEFAULT_PORT)).trim());
+
+      final HeadlessImageBuffer image = new HeadlessImageBuffer(job.getWidth(), job.getHeight());
+      image.setToneMapper(job.createToneMapper());
+      final RenderCoordinator coordinator = new RenderCoordinator(job, passes, image);
+      coordinator.setProgressListener(new ProgressListener() {
+         @Override
+         public void workerConnected(final String worker, final int threads) {
+            System.out.println("Worker connected: " + worker + ", " + threads + " threads");
+         }
+
+         @Override
+         public void passCompleted(final String worker, final int pass, final int completedPasses,
+               final int totalPasses) {
+            System.out.println("Pass " + pass + " completed by " + worker + " (" + completedPasses + "/"
+                               + totalPasses + ")");
+         }
+
+         @Override
+         public void workerLost(final String worker, final int reissuedPass) {
+            System.out.println("Worker lost: " + worker + (reissuedPass >= 0 ? ", re-issuing pass " + reissuedPass : ""));
+         }
+      });
+      final long start = System.nanoTime();
+      System.out.println("Waiting for workers on port " + coordinator.start(port));
+
+      final RenderStatistics stats = new RenderStatistics();
+      stats.completed = coordinator.awaitCompletion(job.getTimeoutSeconds(), TimeUnit.SECONDS);
+      coordinator.close();
+      if (!stats.completed) {
+         /*
+          * Tone map whatever passes were completed.
+          */
+         image.imagingDone();
+      }
+      stats.renderSeconds = (System.nanoTime() - start) / 1000000000.0;
+      stats.job = job.getName();
+      stats.scene = job.getSceneName();
+      stats.integrator = job.getIntegratorName();
+      stats.width = job.getWidth();
+      stats.height = job.getHeight();
+      stats.samplesPerPixel = job.getPixelSampleRate() * job.getPixelSampleRate() * coordinator.getCompletedPassCount();
+      stats.depth = job.getRecursionDepth();
+      stats.threads = coordinator.getWorkerThreadCount();
+      stats.rays = coordinator.getRayCount();
+      BatchRenderer.writeOutputs(job, image, stats);
+      System.out.println(stats.toJSON());
+      System.exit(stats.completed ? 0 : 1);
+   }
+}
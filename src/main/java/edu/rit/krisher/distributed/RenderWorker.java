@@ -0,0 +1,156 @@
+package edu.rit.krisher.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+
+import edu.rit.krisher.cli.JobDescription;
+import edu.rit.krisher.raytracer.IntegratorUtils;
+import edu.rit.krisher.raytracer.RayStatistics;
+import edu.rit.krisher.raytracer.SurfaceIntegrator;
+import edu.rit.krisher.raytracer.image.FloatImageBuffer;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ * Renders sampling passes for a {@link RenderCoordinator}. The worker connects to the coordinator, loads the scene named
+ * in the job it receives, then renders passes until the coordinator reports that the rendering is done.
+ *
+ * <p>
+ * Usage: <code>RenderWorker host[:port] [name]</code>
+ *
+ * @author krisher
+ *
+ */
+public final class RenderWorker {
+
+   private final String host;
+   private final int port;
+   private final String name;
+
+   /**
+    * Creates a new worker.
+    *
+    * @param host
+    *           The host name of the coordinator.
+    * @param port
+    *           The port of the coordinator.
+    * @param name
+    *           The name of this worker, for progress reporting.
+    */
+   public RenderWorker(final String host, final int port, final String name) {
+      this.host = host;
+      this.port = port;
+      this.name = name;
+   }
+
+   /**
+    * Connects to the coordinator and renders passes until the coordinator reports that the rendering is complete.
+    *
+    * @throws IOException
+    *            If the connection to the coordinator fails, or is closed before the rendering is complete.
+    * @throws InterruptedException
+    *            If the calling thread is interrupted while rendering.
+    */
+   public void run() throws IOException, InterruptedException {
+      final Socket socket = new Socket(host, port);
+      final Timer heartbeat = new Timer("Render Worker Heartbeat", true);
+      try {
+         socket.setTcpNoDelay(true);
+         final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+         final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+         out.writeByte(Protocol.HELLO);
+         out.writeInt(Protocol.MAGIC);
+         out.writeInt(Protocol.VERSION);
+         out.writeUTF(name);
+         out.writeInt(IntegratorUtils.threads);
+         out.flush();
+
+         /*
+          * Heartbeats let the coordinator distinguish a worker that is busy loading or rendering from one that is lost.
+          */
+         heartbeat.schedule(new TimerTask() {
+            @Override
+            public void run() {
+               try {
+                  synchronized (out) {
+                     out.writeByte(Protocol.HEARTBEAT);
+                     out.flush();
+                  }
+               } catch (final IOException e) {
+                  cancel();
+               }
+            }
+         }, Protocol.HEARTBEAT_MILLIS, Protocol.HEARTBEAT_MILLIS);
+
+         if (in.readByte() != Protocol.JOB)
+            throw new IOException("Expected a job description.");
+         final Properties properties = Protocol.readProperties(in);
+         final JobDescription job = new JobDescription("Job from " + host + ":" + port, properties);
+         final Scene scene = job.createScene();
+         job.prepareScene(scene);
+
+         byte type;
+         while ((type = in.readByte()) == Protocol.PASS) {
+            final int pass = in.readInt();
+            /*
+             * The pass index selects the sample streams, so that the result is the same no matter which worker renders
+             * the pass.
+             */
+            final Properties passProperties = job.getProperties();
+            passProperties.setProperty("pass", Integer.toString(job.getPass() + pass));
+            final SurfaceIntegrator integrator = new JobDescription(job.getName(), passProperties).createIntegrator();
+            final FloatImageBuffer image = new FloatImageBuffer(job.getWidth(), job.getHeight());
+            integrator.integrate(image, scene, job.getPixelSampleRate(), job.getRecursionDepth());
+            image.awaitCompletion(0, TimeUnit.SECONDS);
+
+            final long rays = integrator instanceof RayStatistics ? ((RayStatistics) integrator).getRayCount() : -1;
+            synchronized (out) {
+               out.writeByte(Protocol.RESULT);
+               out.writeInt(pass);
+               out.writeLong(rays);
+               out.writeInt(job.getWidth());
+               out.writeInt(job.getHeight());
+               Protocol.writeFloats(out, image.getPixels());
+               out.flush();
+            }
+         }
+         if (type != Protocol.DONE)
+            throw new IOException("Unexpected message type " + type);
+      } finally {
+         heartbeat.cancel();
+         socket.close();
+      }
+   }
+
+   public static void main(final String[] args) throws Exception {
+      System.setProperty("java.awt.headless", "true");
+      if (args.length < 1) {
+         System.err.println("Usage: " + RenderWorker.class.getName() + " host[:port] [name]");
+         System.exit(2);
+      }
+      final String address = args[0];
+      final int colon = address.lastIndexOf(':');
+      final String host = colon < 0 ? address : address.substring(0, colon);
+      final int port = colon < 0 ? RenderCoordinator.DEFAULT_PORT : Integer.parseInt(address.substring(colon + 1));
+      final String name = args.length > 1 ? args[1] : InetAddress.getLocalHost().getHostName();
+      int status = 0;
+      try {
+         new RenderWorker(host, port, name).run();
+      } catch (final IOException e) {
+         System.err.println("Connection to coordinator failed: " + e.getMessage());
+         status = 1;
+      }
+      /*
+       * The integrator thread pool does not use daemon threads.
+       */
+      System.exit(status);
+   }
+}
@@ -0,0 +1,311 @@
+package edu.rit.krisher.fileparser.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.geometry.BufferTriangleMesh;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.util.Timer;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+/**
+ * Cache of triangle meshes in a native binary format that is memory-mapped directly into a {@link BufferTriangleMesh},
+ * so a model only needs to be parsed (and have its normals computed) the first time it is loaded.
+ *
+ * <p>
+ * A cache file consists of a fixed size header followed by the vertex positions, vertex normals (if present), triangle
+ * indices and per-triangle surface areas, in native byte order:
+ *
+ * <pre>
+ *  0 int    magic
+ *  4 int    format version
+ *  8 int    flags (1 = vertex normals present)
+ * 12 int    vertex count
+ * 16 int    triangle count
+ * 24 long   length of the source file
+ * 32 long   modification time of the source file
+ * 40 double bounds (min x, y, z, max x, y, z)
+ * 96        vertices, normals, indices, areas
+ * </pre>
+ *
+ * A cache file is rebuilt if the version, byte order, or the size or modification time of its source file do not
+ * match.
+ *
+ * @author krisher
+ *
+ */
+public final class MeshCache {
+
+   /**
+    * Loads a mesh from its source when it is not in the cache.
+    */
+   public static interface Loader {
+      public TriangleMesh load() throws IOException;
+   }
+
+   public static final int VERSION = 1;
+
+   private static final int MAGIC = 0x4D534831;
+   private static final int HEADER_BYTES = 96;
+   private static final int FLAG_NORMALS = 1;
+
+   private final File directory;
+
+   /**
+    * @param directory
+    *           The directory that cache files are stored in. It is created when the first file is cached.
+    */
+   public MeshCache(final File directory) {
+      this.directory = directory;
+   }
+
+   /**
+    * @return A cache in the directory specified by the meshcache.dir system property, or in the temporary directory.
+    */
+   public static MeshCache getDefault() {
+      final MeshCache configured = getConfigured();
+      return configured != null ? configured : new MeshCache(new File(System.getProperty("java.io.tmpdir"),
+                                                                      "path-tracer-meshes"));
+   }
+
+   /**
+    * @return A cache in the directory specified by the meshcache.dir system property, or null if the property is not
+    *         set. Scenes only use a cache if one is configured.
+    */
+   public static MeshCache getConfigured() {
+      final String dir = System.getProperty("meshcache.dir");
+      return dir != null ? new MeshCache(new File(dir)) : null;
+   }
+
+   public File getDirectory() {
+      return directory;
+   }
+
+   /**
+    * Gets a mesh from the cache, loading it from its source file and adding it to the cache if necessary.
+    *
+    * @param source
+    *           The model file.
+    * @param variant
+    *           Distinguishes different meshes loaded from the same source, for example with and without computed
+    *           normals.
+    * @param loader
+    *           Loads the mesh from the source file.
+    * @return A mesh backed by the mapped cache file.
+    * @throws IOException
+    *            If the mesh can not be loaded.
+    */
+   public BufferTriangleMesh load(final File source, final String variant, final Loader loader) throws IOException {
+      final File cached = getCacheFile(source, variant);
+      final long sourceLength = source.length();
+      final long sourceModified = source.lastModified();
+      if (cached.isFile()) {
+         try {
+            return read(cached, sourceLength, sourceModified);
+         } catch (final IOException e) {
+            /*
+             * Stale or incompatible, rebuild it.
+             */
+         }
+      }
+      final TriangleMesh mesh = loader.load();
+      try {
+         directory.mkdirs();
+         final File temp = File.createTempFile(cached.getName(), ".tmp", directory);
+         try {
+            write(mesh, temp, sourceLength, sourceModified);
+            if (!(temp.renameTo(cached) || (cached.delete() && temp.renameTo(cached))))
+               throw new IOException("Unable to replace " + cached);
+         } finally {
+            temp.delete();
+         }
+         return read(cached, sourceLength, sourceModified);
+      } catch (final IOException e) {
+         System.err.println("Unable to cache mesh " + source + ": " + e.getMessage());
+         return BufferTriangleMesh.allocateDirect(mesh.getVertices(), mesh.getNormals(), mesh.getTriIndices());
+      }
+   }
+
+   /**
+    * @return The cache file for a source file and variant. The file name includes the SHA-1 digest of the absolute
+    *         source path and the variant, so different sources with the same file name do not share a cache file.
+    */
+   public File getCacheFile(final File source, final String variant) {
+      final String key = source.getAbsolutePath() + '\n' + variant;
+      final byte[] digest;
+      try {
+         digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charset.forName("UTF-8")));
+      } catch (final NoSuchAlgorithmException e) {
+         throw new IllegalStateException("SHA-1 is not supported.", e);
+      }
+      final StringBuilder name = new StringBuilder(source.getName()).append('-');
+      for (final byte b : digest) {
+         name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return new File(directory, name.append(".mesh").toString());
+   }
+
+   /**
+    * Writes a mesh in the cache format.
+    *
+    * @param mesh
+    *           The mesh to write.
+    * @param file
+    *           The destination file, which is replaced.
+    * @param sourceLength
+    *           The length of the file the mesh was loaded from, for validation by {@link #read(File, long, long)}.
+    * @param sourceModified
+    *           The modification time of the file the mesh was loaded from.
+    * @throws IOException
+    *            If the file can not be written.
+    */
+   public static void write(final TriangleMesh mesh, final File file, final long sourceLength,
+         final long sourceModified) throws IOException {
+      final Timer timer = new Timer("Write mesh cache").start();
+      final float[] vertices = mesh.getVertices();
+      final float[] normals = mesh.getNormals();
+      final int[] indices = mesh.getTriIndices();
+      final int triCount = mesh.getPrimitiveCount();
+
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+      header.putInt(MAGIC).putInt(VERSION).putInt(normals != null ? FLAG_NORMALS : 0).putInt(vertices.length / 3)
+      .putInt(triCount).putInt(0).putLong(sourceLength).putLong(sourceModified);
+      for (final double bound : mesh.getBounds(Geometry.ALL_PRIMITIVES).xyzxyz) {
+         header.putDouble(bound);
+      }
+      header.clear();
+
+      final float[] areas = new float[triCount];
+      for (int i = 0; i < triCount; ++i) {
+         areas[i] = (float) mesh.getSurfaceArea(i);
+      }
+
+      final long size = HEADER_BYTES + 4L * vertices.length * (normals != null ? 2 : 1) + 16L * triCount;
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      try {
+         raf.setLength(0);
+         final FileChannel channel = raf.getChannel();
+         long position = 0;
+         position += writeFully(channel, header, position);
+         position = writeSection(channel, position, vertices, null);
+         if (normals != null)
+            position = writeSection(channel, position, normals, null);
+         position = writeSection(channel, position, null, indices);
+         position = writeSection(channel, position, areas, null);
+         if (position != size)
+            throw new IOException("Unexpected mesh cache size.");
+      } finally {
+         raf.close();
+      }
+      timer.stop().print();
+   }
+
+   /**
+    * Writes float or int data through a fixed size buffer.
+    *
+    * @return The file position following the data.
+    */
+   private static long writeSection(final FileChannel channel, final long start, final float[] floats,
+         final int[] ints) throws IOException {
+      final int length = floats != null ? floats.length : ints.length;
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.nativeOrder());
+      long position = start;
+      for (int offset = 0; offset < length;) {
+         final int count = Math.min(length - offset, buffer.capacity() / 4);
+         buffer.clear();
+         if (floats != null)
+            buffer.asFloatBuffer().put(floats, offset, count);
+         else
+            buffer.asIntBuffer().put(ints, offset, count);
+         buffer.limit(count * 4);
+         position += writeFully(channel, buffer, position);
+         offset += count;
+      }
+      return position;
+   }
+
+   private static int writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+   throws IOException {
+      final int length = buffer.remaining();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer, position + length - buffer.remaining());
+      }
+      return length;
+   }
+
+   /**
+    * Maps a cache file into a mesh.
+    *
+    * @param file
+    *           The cache file.
+    * @param sourceLength
+    *           The expected length of the source file, or -1 to skip validation of the source.
+    * @param sourceModified
+    *           The expected modification time of the source file.
+    * @return A mesh backed by the mapped file.
+    * @throws IOException
+    *            If the file can not be read, or does not match the version, byte order or source.
+    */
+   public static BufferTriangleMesh read(final File file, final long sourceLength, final long sourceModified)
+   throws IOException {
+      final Timer timer = new Timer("Map mesh cache").start();
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         final FileChannel channel = raf.getChannel();
+         if (channel.size() < HEADER_BYTES)
+            throw new IOException("Truncated mesh cache file " + file);
+         final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+         .order(ByteOrder.nativeOrder());
+         if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+            throw new IOException("Incompatible mesh cache file " + file);
+         if (sourceLength >= 0 && (header.getLong(24) != sourceLength || header.getLong(32) != sourceModified))
+            throw new IOException("Stale mesh cache file " + file);
+         final boolean hasNormals = (header.getInt(8) & FLAG_NORMALS) != 0;
+         final long vertexBytes = 12L * header.getInt(12);
+         final int triCount = header.getInt(16);
+         final AxisAlignedBoundingBox bounds = new AxisAlignedBoundingBox();
+         for (int i = 0; i < 6; ++i) {
+            bounds.xyzxyz[i] = header.getDouble(40 + 8 * i);
+         }
+         final long size = HEADER_BYTES + vertexBytes * (hasNormals ? 2 : 1) + 16L * triCount;
+         if (channel.size() != size)
+            throw new IOException("Truncated mesh cache file " + file);
+
+         long position = HEADER_BYTES;
+         final ByteBuffer vertices = map(channel, position, vertexBytes);
+         position += vertexBytes;
+         ByteBuffer normals = null;
+         if (hasNormals) {
+            normals = map(channel, position, vertexBytes);
+            position += vertexBytes;
+         }
+         final ByteBuffer indices = map(channel, position, 12L * triCount);
+         position += 12L * triCount;
+         final ByteBuffer areas = map(channel, position, 4L * triCount);
+         /*
+          * The mappings remain valid after the channel is closed.
+          */
+         final BufferTriangleMesh mesh = new BufferTriangleMesh(vertices.asFloatBuffer(),
+                                                                normals != null ? normals.asFloatBuffer() : null,
+                                                                indices.asIntBuffer(), areas.asFloatBuffer(), bounds);
+         timer.stop().print();
+         return mesh;
+      } finally {
+         raf.close();
+      }
+   }
+
+   private static ByteBuffer map(final FileChannel channel, final long position, final long size) throws IOException {
+      if (size > Integer.MAX_VALUE)
+         throw new IOException("Mesh is too large to map.");
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.nativeOrder());
+   }
+}
@@ -0,0 +1,87 @@
+package edu.rit.krisher.fileparser.obj;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.util.Timer;
+
+/**
+ * Parser for the geometry of Wavefront OBJ models.
+ *
+ * <p>
+ * Vertex positions (v), vertex normals (vn) and faces (f) are read, polygons are triangulated as fans. Texture
+ * coordinates, groups, smoothing groups and materials are ignored, except that the faces of each usemtl group can be
+ * loaded into separate meshes. The file is streamed, so only the geometry (and not the text) needs to fit in memory.
+ *
+ * @author krisher
+ *
+ */
+public final class OBJParser {
+
+   private OBJParser() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   public static TriangleMesh parseTriangleMesh(final File file) throws IOException {
+      return parseTriangleMesh(file, false);
+   }
+
+   public static TriangleMesh parseTriangleMesh(final File file, final boolean computeNormals) throws IOException {
+      return parseTriangleMesh(new FileInputStream(file), computeNormals);
+   }
+
+   /**
+    * Loads all faces of an OBJ model into a single mesh.
+    *
+    * @param stream
+    *           The OBJ data, which is closed when parsing completes.
+    * @param computeNormals
+    *           true to compute vertex normals from the adjacent triangles if the file does not specify normals for
+    *           every face vertex.
+    * @return A new triangle mesh.
+    * @throws IOException
+    *            If the stream can not be read, or is not a valid OBJ file.
+    */
+   public static TriangleMesh parseTriangleMesh(final InputStream stream, final boolean computeNormals)
+   throws IOException {
+      final Map<String, TriangleMesh> meshes = parse(stream, false, computeNormals);
+      if (meshes.isEmpty())
+         throw new IOException("OBJ data does not contain any faces.");
+      return meshes.values().iterator().next();
+   }
+
+   /**
+    * Loads the faces of an OBJ model into one mesh per material.
+    *
+    * @param stream
+    *           The OBJ data, which is closed when parsing completes.
+    * @param computeNormals
+    *           true to compute vertex normals from the adjacent triangles for meshes whose faces do not all specify
+    *           normals.
+    * @return A mesh for each usemtl group that contains faces, by material name, in the order the materials are first
+    *         used. Faces that precede the first usemtl statement are mapped to the empty string.
+    * @throws IOException
+    *            If the stream can not be read, or is not a valid OBJ file.
+    */
+   public static Map<String, TriangleMesh> parseTriangleMeshes(final InputStream stream, final boolean computeNormals)
+   throws IOException {
+      return parse(stream, true, computeNormals);
+   }
+
+   private static Map<String, TriangleMesh> parse(final InputStream stream, final boolean splitByMaterial,
+         final boolean computeNormals) throws IOException {
+      final Timer timer = new Timer("Parse OBJ").start();
+      try {
+         return new OBJReader(stream, splitByMaterial).read(computeNormals);
+      } finally {
+         stream.close();
+         timer.stop().print();
+      }
+   }
+}
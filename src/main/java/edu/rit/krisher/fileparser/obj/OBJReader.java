@@ -0,0 +1,308 @@
+package edu.rit.krisher.fileparser.obj;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.util.AsciiTokenizer;
+import edu.rit.krisher.util.LongIntHashMap;
+
+/**
+ * Streaming reader for the vertex, normal and face records of a Wavefront OBJ file.
+ *
+ * <p>
+ * The stream is read into a fixed size byte buffer and tokenized in place, so memory use is bounded by the geometry
+ * itself rather than the size of the file. Polygons are triangulated as fans. Since OBJ faces index positions and
+ * normals separately, each distinct position/normal pair of a group becomes one mesh vertex; pairs are de-duplicated
+ * with a {@link LongIntHashMap}.
+ *
+ * @author krisher
+ *
+ */
+final class OBJReader {
+
+   /**
+    * Name of the group for faces that precede any usemtl statement.
+    */
+   static final String DEFAULT_GROUP = "";
+
+   private static final int BUFFER_SIZE = 1 << 16;
+
+   private final InputStream stream;
+   private final boolean splitByMaterial;
+
+   private byte[] buffer = new byte[BUFFER_SIZE];
+   private ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+   private AsciiTokenizer tokens = new AsciiTokenizer(wrapped, (byte) '/');
+   /**
+    * Valid data in buffer is [lineStart, limit).
+    */
+   private int lineStart;
+   private int limit;
+   private boolean eof;
+   private int lineNumber;
+
+   private float[] positions = new float[3 * 1024];
+   private int positionCount;
+   private float[] normals = new float[3 * 1024];
+   private int normalCount;
+   private int[] cornerPositions = new int[16];
+   private int[] cornerNormals = new int[16];
+
+   private final Map<String, MeshGroup> groups = new LinkedHashMap<String, MeshGroup>();
+   private MeshGroup group;
+
+   /**
+    * @param stream
+    *           The OBJ data, which is not closed by the reader.
+    * @param splitByMaterial
+    *           true to collect the faces following each usemtl statement into separate meshes.
+    */
+   OBJReader(final InputStream stream, final boolean splitByMaterial) {
+      this.stream = stream;
+      this.splitByMaterial = splitByMaterial;
+   }
+
+   /**
+    * Reads the stream to the end.
+    *
+    * @param computeNormals
+    *           true to compute vertex normals for meshes whose faces do not all reference normals.
+    * @return A mesh for each group with at least one face, by material name, in the order the groups appear in the
+    *         file.
+    * @throws IOException
+    *            If the stream can not be read, or contains invalid records.
+    */
+   Map<String, TriangleMesh> read(final boolean computeNormals) throws IOException {
+      group = new MeshGroup();
+      groups.put(DEFAULT_GROUP, group);
+      int lineEnd;
+      while ((lineEnd = nextLine()) >= 0) {
+         ++lineNumber;
+         try {
+            parseLine(lineStart, lineEnd);
+         } catch (final NumberFormatException e) {
+            throw new IOException("Invalid number on line " + lineNumber + " of OBJ data.", e);
+         } catch (final IOException e) {
+            throw new IOException("Invalid record on line " + lineNumber + " of OBJ data.", e);
+         }
+         lineStart = lineEnd + 1;
+      }
+
+      final Map<String, TriangleMesh> meshes = new LinkedHashMap<String, TriangleMesh>();
+      for (final Map.Entry<String, MeshGroup> entry : groups.entrySet()) {
+         final MeshGroup meshGroup = entry.getValue();
+         if (meshGroup.indexCount > 0)
+            meshes.put(entry.getKey(), meshGroup.toMesh(computeNormals));
+      }
+      return meshes;
+   }
+
+   /**
+    * Finds the end of the line starting at lineStart, reading more of the stream as necessary.
+    *
+    * @return The index of the line terminator (or the end of the data for an unterminated last line), or -1 at the end
+    *         of the stream.
+    */
+   private int nextLine() throws IOException {
+      int scan = lineStart;
+      while (true) {
+         while (scan < limit) {
+            if (buffer[scan] == '\n')
+               return scan;
+            ++scan;
+         }
+         if (eof)
+            return lineStart < limit ? limit : -1;
+         /*
+          * Move the partial line to the front of the buffer, grow the buffer if the line fills it.
+          */
+         final int partial = limit - lineStart;
+         if (partial == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            wrapped = ByteBuffer.wrap(buffer);
+            tokens = new AsciiTokenizer(wrapped, (byte) '/');
+         } else if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, partial);
+         }
+         scan -= lineStart;
+         lineStart = 0;
+         limit = partial;
+         final int read = stream.read(buffer, limit, buffer.length - limit);
+         if (read < 0)
+            eof = true;
+         else
+            limit += read;
+      }
+   }
+
+   private static boolean isSpace(final byte c) {
+      return c == ' ' || c == '\t' || c == '\r';
+   }
+
+   private boolean isKeyword(final int start, final int end, final String keyword) {
+      final int length = keyword.length();
+      if (end - start <= length || !isSpace(buffer[start + length]))
+         return false;
+      for (int i = 0; i < length; ++i) {
+         if (buffer[start + i] != keyword.charAt(i))
+            return false;
+      }
+      return true;
+   }
+
+   private void parseLine(final int start, final int end) throws IOException {
+      int p = start;
+      while (p < end && isSpace(buffer[p]))
+         ++p;
+      if (p == end || buffer[p] == '#')
+         return;
+      if (isKeyword(p, end, "v")) {
+         tokens.reset(p + 1, end);
+         if (positionCount + 3 > positions.length)
+            positions = Arrays.copyOf(positions, positions.length * 2);
+         positions[positionCount++] = tokens.nextFloat();
+         positions[positionCount++] = tokens.nextFloat();
+         positions[positionCount++] = tokens.nextFloat();
+      } else if (isKeyword(p, end, "vn")) {
+         tokens.reset(p + 2, end);
+         if (normalCount + 3 > normals.length)
+            normals = Arrays.copyOf(normals, normals.length * 2);
+         normals[normalCount++] = tokens.nextFloat();
+         normals[normalCount++] = tokens.nextFloat();
+         normals[normalCount++] = tokens.nextFloat();
+      } else if (isKeyword(p, end, "f")) {
+         tokens.reset(p + 1, end);
+         parseFace();
+      } else if (isKeyword(p, end, "usemtl")) {
+         if (splitByMaterial)
+            useMaterial(p + 6, end);
+      }
+      /*
+       * Texture coordinates, grouping, smoothing, lines, points and material libraries are ignored.
+       */
+   }
+
+   private void useMaterial(final int start, final int end) {
+      int first = start;
+      while (first < end && isSpace(buffer[first]))
+         ++first;
+      int last = end;
+      while (last > first && isSpace(buffer[last - 1]))
+         --last;
+      final char[] chars = new char[last - first];
+      for (int i = 0; i < chars.length; ++i) {
+         chars[i] = (char) (buffer[first + i] & 0xFF);
+      }
+      final String name = new String(chars);
+      group = groups.get(name);
+      if (group == null) {
+         group = new MeshGroup();
+         groups.put(name, group);
+      }
+   }
+
+   private void parseFace() throws IOException {
+      int corners = 0;
+      while (tokens.hasNext()) {
+         if (corners == cornerPositions.length) {
+            cornerPositions = Arrays.copyOf(cornerPositions, corners * 2);
+            cornerNormals = Arrays.copyOf(cornerNormals, corners * 2);
+         }
+         final int position = resolve(tokens.nextInt(), positionCount / 3);
+         int normal = -1;
+         if (tokens.skip((byte) '/')) {
+            if (!tokens.skip((byte) '/')) {
+               /*
+                * Texture coordinate index.
+                */
+               tokens.nextInt();
+               if (tokens.skip((byte) '/'))
+                  normal = resolve(tokens.nextInt(), normalCount / 3);
+            } else {
+               normal = resolve(tokens.nextInt(), normalCount / 3);
+            }
+         }
+         cornerPositions[corners] = position;
+         cornerNormals[corners] = normal;
+         ++corners;
+      }
+      if (corners < 3)
+         return;
+      final int first = group.vertex(cornerPositions[0], cornerNormals[0]);
+      int previous = group.vertex(cornerPositions[1], cornerNormals[1]);
+      for (int corner = 2; corner < corners; ++corner) {
+         final int current = group.vertex(cornerPositions[corner], cornerNormals[corner]);
+         group.addTriangle(first, previous, current);
+         previous = current;
+      }
+   }
+
+   /**
+    * Converts a 1-based (or negative, relative) OBJ index to a 0-based index.
+    */
+   private static int resolve(final int index, final int count) throws IOException {
+      final int resolved = index < 0 ? count + index : index - 1;
+      if (resolved < 0 || resolved >= count)
+         throw new IOException("Index " + index + " is out of range.");
+      return resolved;
+   }
+
+   /**
+    * Vertices and triangles of one output mesh.
+    */
+   private final class MeshGroup {
+      private final LongIntHashMap vertexIds = new LongIntHashMap(1024);
+      private float[] vertices = new float[3 * 1024];
+      private float[] vertexNormals = new float[3 * 1024];
+      private int vertexCount;
+      private boolean missingNormals;
+      private int[] indices = new int[3 * 1024];
+      private int indexCount;
+
+      /**
+       * @return The mesh vertex for a position/normal pair, adding it if necessary.
+       */
+      int vertex(final int position, final int normal) {
+         final long key = ((long) position << 32) | (normal & 0xFFFFFFFFL);
+         final int existing = vertexIds.putIfAbsent(key, vertexCount);
+         if (existing >= 0)
+            return existing;
+         if (3 * vertexCount + 3 > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            vertexNormals = Arrays.copyOf(vertexNormals, vertexNormals.length * 2);
+         }
+         System.arraycopy(positions, position * 3, vertices, vertexCount * 3, 3);
+         if (normal >= 0)
+            System.arraycopy(normals, normal * 3, vertexNormals, vertexCount * 3, 3);
+         else
+            missingNormals = true;
+         return vertexCount++;
+      }
+
+      void addTriangle(final int v0, final int v1, final int v2) {
+         if (indexCount + 3 > indices.length)
+            indices = Arrays.copyOf(indices, indices.length * 2);
+         indices[indexCount++] = v0;
+         indices[indexCount++] = v1;
+         indices[indexCount++] = v2;
+      }
+
+      TriangleMesh toMesh(final boolean computeNormals) {
+         final float[] meshVertices = Arrays.copyOf(vertices, vertexCount * 3);
+         final int[] meshIndices = Arrays.copyOf(indices, indexCount);
+         final float[] meshNormals;
+         if (!missingNormals)
+            meshNormals = Arrays.copyOf(vertexNormals, vertexCount * 3);
+         else if (computeNormals)
+            meshNormals = TriangleMesh.computeTriangleNormals(meshVertices, meshIndices);
+         else
+            meshNormals = null;
+         return new TriangleMesh(meshVertices, meshNormals, meshIndices);
+      }
+   }
+}
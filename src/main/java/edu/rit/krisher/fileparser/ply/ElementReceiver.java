@@ -4,10 +4,53 @@ package edu.rit.krisher.fileparser.ply;
 
 public interface ElementReceiver {
 
+   /**
+    * Access to the attribute values of the elements of one type, one element at a time.
+    * 
+    * <p>
+    * The primitive accessors do not allocate, and should be preferred over {@link #getScalarComponent(int)} and
+    * {@link #getVectorComponent(int)} for large files. Values are converted to the requested type as by a Java cast.
+    */
    public static interface ElementAttributeValues {
       public Number getScalarComponent(int attributeIdx);
       public Number[] getVectorComponent(int attributeIdx);
 
+      /**
+       * @return The value of a scalar attribute of the current element.
+       */
+      public float getFloat(int attributeIdx);
+
+      /**
+       * @return The value of a scalar attribute of the current element.
+       */
+      public int getInt(int attributeIdx);
+
+      /**
+       * Copies the values of a list attribute of the current element.
+       * 
+       * @param attributeIdx
+       *           The index of a list attribute.
+       * @param dst
+       *           Array that receives the first dst.length values of the list (or fewer, if the list is shorter).
+       * @return The length of the list, which may be larger than dst.length.
+       */
+      public int getIntList(int attributeIdx, int[] dst);
+
+      /**
+       * Copies the values of consecutive scalar attributes of the current element, such as the x, y and z coordinates
+       * of a vertex.
+       * 
+       * @param attributeIdx
+       *           The index of the first attribute.
+       * @param dst
+       *           Array that receives the values.
+       * @param offset
+       *           Index in dst of the first value.
+       * @param count
+       *           The number of attributes to copy.
+       */
+      public void readFloats(int attributeIdx, float[] dst, int offset, int count);
+
       public void nextElement();
    }
 
@@ -0,0 +1,387 @@
+package edu.rit.krisher.fileparser.ply;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import edu.rit.krisher.fileparser.ply.PLYContentDescription.DataType;
+import edu.rit.krisher.fileparser.ply.PLYContentDescription.PLYFormat;
+import edu.rit.krisher.util.AsciiTokenizer;
+import edu.rit.krisher.util.Parallel;
+
+/**
+ * Reads vertex positions and triangle indices from a PLY file that is mapped into memory (or otherwise available as a
+ * ByteBuffer), without the per-value overhead of {@link ElementReceiver}s.
+ *
+ * <p>
+ * For binary files, both byte orders are supported. Vertices with tightly packed float x, y and z properties are
+ * copied in bulk, other vertex layouts and faces are decoded with absolute reads at fixed offsets within each element.
+ * Other elements are skipped.
+ *
+ * <p>
+ * ASCII files are split into line-aligned chunks that are parsed in parallel (see {@link Parallel}). A first pass
+ * counts the lines of each chunk to find the element that each line belongs to, the second pass tokenizes the lines
+ * directly from the buffer into the vertex and index arrays.
+ *
+ * @author krisher
+ *
+ */
+final class MappedPLYReader {
+
+   /**
+    * ASCII chunks are not split further than this.
+    */
+   private static final int MIN_ASCII_CHUNK_BYTES = 1 << 20;
+
+   private final ByteBuffer data;
+   private final PLYContentDescription content;
+   private float[] vertices;
+   private int[] triangleIndices;
+
+   /**
+    * Parses the header of a PLY file.
+    *
+    * @param data
+    *           The contents of the PLY file, from the beginning of the header. The position of the buffer is not used.
+    * @throws IOException
+    *            If the header is invalid.
+    */
+   MappedPLYReader(final ByteBuffer data) throws IOException {
+      final ByteBuffer header = data.duplicate();
+      header.position(0);
+      this.content = new PLYContentDescription(new ByteBufferInputStream(header));
+      /*
+       * The header reader consumes one line terminator after end_header, tolerate \r\n terminated headers.
+       */
+      if (header.position() > 1 && header.get(header.position() - 1) == '\r' && header.hasRemaining()
+            && header.get(header.position()) == '\n')
+         header.get();
+      final ByteBuffer body = header.slice();
+      body.order(content.getFormat() == PLYFormat.binary_little_endian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+      this.data = body;
+   }
+
+   PLYContentDescription getContent() {
+      return content;
+   }
+
+   /**
+    * Decodes the vertex and face elements.
+    *
+    * @throws IOException
+    *            If the file is shorter than the header declares, or contains invalid values.
+    */
+   void read() throws IOException {
+      if (content.getFormat() == PLYFormat.ascii) {
+         readAscii();
+         return;
+      }
+      int position = 0;
+      try {
+         for (final Element element : content.getElements()) {
+            if ("vertex".equals(element.name)) {
+               position = readVertices(element, position);
+            } else if ("face".equals(element.name)) {
+               position = readFaces(element, position);
+            } else {
+               position = skip(element, position);
+            }
+         }
+      } catch (final IndexOutOfBoundsException e) {
+         throw new IOException("Premature end of PLY data.", e);
+      }
+   }
+
+   float[] getVertices() {
+      return vertices;
+   }
+
+   int[] getTriangleIndices() {
+      return triangleIndices;
+   }
+
+   private int readVertices(final Element element, final int start) throws IOException {
+      final ElementAttribute[] attributes = element.getProperties();
+      final int[] offsets = scalarOffsets(attributes);
+      if (offsets == null)
+         return skip(element, start);
+      final int stride = offsets[attributes.length];
+      final int x = element.indexOf("x");
+      final int y = element.indexOf("y");
+      final int z = element.indexOf("z");
+      if (x < 0 || y < 0 || z < 0)
+         throw new IOException("PLY vertex element does not have x, y and z properties.");
+      vertices = new float[element.count * 3];
+
+      if (stride == 12 && offsets[x] == 0 && offsets[y] == 4 && offsets[z] == 8 && attributes[x].valueType == DataType.float32
+            && attributes[y].valueType == DataType.float32 && attributes[z].valueType == DataType.float32) {
+         final ByteBuffer view = data.duplicate().order(data.order());
+         view.position(start);
+         final FloatBuffer floats = view.asFloatBuffer();
+         floats.get(vertices);
+      } else {
+         int position = start;
+         for (int i = 0; i < element.count; ++i) {
+            vertices[i * 3] = attributes[x].valueType.getFloat(data, position + offsets[x]);
+            vertices[i * 3 + 1] = attributes[y].valueType.getFloat(data, position + offsets[y]);
+            vertices[i * 3 + 2] = attributes[z].valueType.getFloat(data, position + offsets[z]);
+            position += stride;
+         }
+      }
+      return start + element.count * stride;
+   }
+
+   private int readFaces(final Element element, final int start) throws IOException {
+      final ElementAttribute[] attributes = element.getProperties();
+      final int indicesAttr = element.indexOf("vertex_indices");
+      if (indicesAttr < 0)
+         throw new IOException("PLY face element does not have a vertex_indices property.");
+      final ElementAttribute indices = attributes[indicesAttr];
+      if (indices.listIndexType == null)
+         throw new IOException("PLY vertex_indices property is not a list.");
+      triangleIndices = new int[element.count * 3];
+      int position = start;
+      if (attributes.length == 1 && indices.listIndexType == DataType.uint8 && indices.valueType == DataType.int32) {
+         /*
+          * The common layout: a byte count followed by int indices.
+          */
+         for (int i = 0; i < element.count; ++i) {
+            final int count = data.get(position) & 0xFF;
+            triangleIndices[i * 3] = data.getInt(position + 1);
+            triangleIndices[i * 3 + 1] = data.getInt(position + 5);
+            triangleIndices[i * 3 + 2] = data.getInt(position + 9);
+            position += 1 + 4 * count;
+         }
+         return position;
+      }
+      for (int i = 0; i < element.count; ++i) {
+         for (int attrIdx = 0; attrIdx < attributes.length; ++attrIdx) {
+            final ElementAttribute attr = attributes[attrIdx];
+            if (attr.listIndexType == null) {
+               position += attr.valueType.getSizeBytes();
+               continue;
+            }
+            final int count = attr.listIndexType.getInt(data, position);
+            position += attr.listIndexType.getSizeBytes();
+            if (attrIdx == indicesAttr) {
+               for (int corner = 0; corner < 3; ++corner) {
+                  triangleIndices[i * 3 + corner] = attr.valueType.getInt(data, position + corner
+                                                                          * attr.valueType.getSizeBytes());
+               }
+            }
+            position += count * attr.valueType.getSizeBytes();
+         }
+      }
+      return position;
+   }
+
+   private int skip(final Element element, final int start) {
+      final ElementAttribute[] attributes = element.getProperties();
+      final int[] offsets = scalarOffsets(attributes);
+      if (offsets != null)
+         return start + element.count * offsets[attributes.length];
+      int position = start;
+      for (int i = 0; i < element.count; ++i) {
+         for (final ElementAttribute attr : attributes) {
+            if (attr.listIndexType == null) {
+               position += attr.valueType.getSizeBytes();
+            } else {
+               final int count = attr.listIndexType.getInt(data, position);
+               position += attr.listIndexType.getSizeBytes() + count * attr.valueType.getSizeBytes();
+            }
+         }
+      }
+      return position;
+   }
+
+   /**
+    * @return The byte offset of each attribute within an element, followed by the size of the element, or null if the
+    *         element has list attributes.
+    */
+   private static int[] scalarOffsets(final ElementAttribute[] attributes) {
+      final int[] offsets = new int[attributes.length + 1];
+      for (int i = 0; i < attributes.length; ++i) {
+         if (attributes[i].listIndexType != null)
+            return null;
+         offsets[i + 1] = offsets[i] + attributes[i].valueType.getSizeBytes();
+      }
+      return offsets;
+   }
+
+   private void readAscii() throws IOException {
+      final int size = data.limit();
+      final int chunks = Parallel.chunkCount(size, MIN_ASCII_CHUNK_BYTES);
+      final int[] chunkStart = new int[chunks + 1];
+      chunkStart[chunks] = size;
+      for (int chunk = 1; chunk < chunks; ++chunk) {
+         int position = Math.max(chunkStart[chunk - 1], (int) ((long) size * chunk / chunks));
+         while (position < size && data.get(position++) != '\n')
+            ;
+         chunkStart[chunk] = position;
+      }
+
+      /*
+       * Count the lines of each chunk to find the line number that each chunk starts at.
+       */
+      final int[] chunkLines = new int[chunks];
+      run(chunks, new Parallel.Body() {
+         @Override
+         public void run(final int chunk) {
+            final int start = chunkStart[chunk];
+            final int end = chunkStart[chunk + 1];
+            int lines = 0;
+            for (int position = start; position < end; ++position) {
+               if (data.get(position) == '\n')
+                  ++lines;
+            }
+            if (end > start && data.get(end - 1) != '\n')
+               ++lines;
+            chunkLines[chunk] = lines;
+         }
+      });
+      final long[] firstLine = new long[chunks + 1];
+      for (int chunk = 0; chunk < chunks; ++chunk) {
+         firstLine[chunk + 1] = firstLine[chunk] + chunkLines[chunk];
+      }
+
+      final Element[] elements = content.getElements().toArray(new Element[0]);
+      final long[] sectionStart = new long[elements.length + 1];
+      int vertexSection = -1;
+      int faceSection = -1;
+      for (int i = 0; i < elements.length; ++i) {
+         sectionStart[i + 1] = sectionStart[i] + elements[i].count;
+         if ("vertex".equals(elements[i].name))
+            vertexSection = i;
+         else if ("face".equals(elements[i].name))
+            faceSection = i;
+      }
+      if (firstLine[chunks] < sectionStart[elements.length])
+         throw new IOException("Premature end of PLY data.");
+
+      /*
+       * For each vertex attribute, the component of the vertex position it holds, or -1.
+       */
+      final int[] vertexComponents;
+      if (vertexSection >= 0) {
+         final Element vertex = elements[vertexSection];
+         final int x = vertex.indexOf("x");
+         final int y = vertex.indexOf("y");
+         final int z = vertex.indexOf("z");
+         if (x < 0 || y < 0 || z < 0)
+            throw new IOException("PLY vertex element does not have x, y and z properties.");
+         vertexComponents = new int[Math.max(x, Math.max(y, z)) + 1];
+         Arrays.fill(vertexComponents, -1);
+         vertexComponents[x] = 0;
+         vertexComponents[y] = 1;
+         vertexComponents[z] = 2;
+         vertices = new float[vertex.count * 3];
+      } else {
+         vertexComponents = null;
+      }
+      final int indicesAttr;
+      if (faceSection >= 0) {
+         final Element face = elements[faceSection];
+         indicesAttr = face.indexOf("vertex_indices");
+         if (indicesAttr < 0)
+            throw new IOException("PLY face element does not have a vertex_indices property.");
+         if (face.getProperties()[indicesAttr].listIndexType == null)
+            throw new IOException("PLY vertex_indices property is not a list.");
+         triangleIndices = new int[face.count * 3];
+      } else {
+         indicesAttr = -1;
+      }
+
+      final int vertexElement = vertexSection;
+      final int faceElement = faceSection;
+      run(chunks, new Parallel.Body() {
+         @Override
+         public void run(final int chunk) throws IOException {
+            final AsciiTokenizer tokens = new AsciiTokenizer(data);
+            final int end = chunkStart[chunk + 1];
+            int position = chunkStart[chunk];
+            long line = firstLine[chunk];
+            int section = 0;
+            while (position < end) {
+               while (section < elements.length && line >= sectionStart[section + 1])
+                  ++section;
+               if (section == elements.length)
+                  return;
+               int lineEnd = position;
+               while (lineEnd < end && data.get(lineEnd) != '\n')
+                  ++lineEnd;
+               if (section == vertexElement || section == faceElement) {
+                  tokens.reset(position, lineEnd);
+                  final int elementIdx = (int) (line - sectionStart[section]);
+                  if (section == vertexElement)
+                     parseVertex(elements[section].getProperties(), vertexComponents, elementIdx, tokens);
+                  else
+                     parseFace(elements[section].getProperties(), indicesAttr, elementIdx, tokens);
+               }
+               position = lineEnd + 1;
+               ++line;
+            }
+         }
+      });
+   }
+
+   private void parseVertex(final ElementAttribute[] attributes, final int[] components, final int elementIdx,
+         final AsciiTokenizer tokens) throws IOException {
+      for (int attrIdx = 0; attrIdx < components.length; ++attrIdx) {
+         if (components[attrIdx] >= 0)
+            vertices[elementIdx * 3 + components[attrIdx]] = tokens.nextFloat();
+         else
+            skip(attributes[attrIdx], tokens);
+      }
+   }
+
+   private void parseFace(final ElementAttribute[] attributes, final int indicesAttr, final int elementIdx,
+         final AsciiTokenizer tokens) throws IOException {
+      for (int attrIdx = 0; attrIdx < indicesAttr; ++attrIdx) {
+         skip(attributes[attrIdx], tokens);
+      }
+      final int count = tokens.nextInt();
+      for (int corner = 0; corner < 3 && corner < count; ++corner) {
+         triangleIndices[elementIdx * 3 + corner] = tokens.nextInt();
+      }
+   }
+
+   private static void skip(final ElementAttribute attr, final AsciiTokenizer tokens) throws IOException {
+      if (attr.listIndexType == null) {
+         tokens.skip();
+      } else {
+         final int count = tokens.nextInt();
+         for (int i = 0; i < count; ++i) {
+            tokens.skip();
+         }
+      }
+   }
+
+   private static void run(final int count, final Parallel.Body body) throws IOException {
+      try {
+         Parallel.forEach(count, body);
+      } catch (final IOException e) {
+         throw e;
+      } catch (final Exception e) {
+         throw new IOException("Invalid PLY data.", e);
+      }
+   }
+
+   /**
+    * InputStream view of a ByteBuffer, which advances the position of the buffer.
+    */
+   private static final class ByteBufferInputStream extends InputStream {
+      private final ByteBuffer buffer;
+
+      ByteBufferInputStream(final ByteBuffer buffer) {
+         this.buffer = buffer;
+      }
+
+      @Override
+      public int read() {
+         return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+      }
+   }
+}
@@ -3,6 +3,7 @@ package edu.rit.krisher.fileparser.ply;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -236,6 +237,21 @@ public class PLYContentDescription {
          public Number parseBinary(final DataInputStream input, final boolean bigEndian) throws IOException {
             return input.readUnsignedByte();
          }
+
+         @Override
+         public int parseInt(final String asciiRepresentation) {
+            return Short.parseShort(asciiRepresentation);
+         }
+
+         @Override
+         public int readInt(final DataInputStream input, final boolean bigEndian) throws IOException {
+            return input.readUnsignedByte();
+         }
+
+         @Override
+         public int getInt(final ByteBuffer buffer, final int position) {
+            return buffer.get(position) & 0xFF;
+         }
       },
       /**
        * 32bit signed int (int in Java).
@@ -258,7 +274,23 @@ public class PLYContentDescription {
 
          @Override
          public Number parseBinary(final DataInputStream input, final boolean bigEndian) throws IOException {
-            return input.readInt();
+            return readInt(input, bigEndian);
+         }
+
+         @Override
+         public int parseInt(final String asciiRepresentation) {
+            return Integer.parseInt(asciiRepresentation);
+         }
+
+         @Override
+         public int readInt(final DataInputStream input, final boolean bigEndian) throws IOException {
+            final int value = input.readInt();
+            return bigEndian ? value : Integer.reverseBytes(value);
+         }
+
+         @Override
+         public int getInt(final ByteBuffer buffer, final int position) {
+            return buffer.getInt(position);
          }
       },
       /**
@@ -282,7 +314,38 @@ public class PLYContentDescription {
 
          @Override
          public Number parseBinary(final DataInputStream input, final boolean bigEndian) throws IOException {
-            return input.readFloat();
+            return readFloat(input, bigEndian);
+         }
+
+         @Override
+         public int parseInt(final String asciiRepresentation) {
+            return (int) Float.parseFloat(asciiRepresentation);
+         }
+
+         @Override
+         public float parseFloat(final String asciiRepresentation) {
+            return Float.parseFloat(asciiRepresentation);
+         }
+
+         @Override
+         public int readInt(final DataInputStream input, final boolean bigEndian) throws IOException {
+            return (int) readFloat(input, bigEndian);
+         }
+
+         @Override
+         public float readFloat(final DataInputStream input, final boolean bigEndian) throws IOException {
+            final int bits = input.readInt();
+            return Float.intBitsToFloat(bigEndian ? bits : Integer.reverseBytes(bits));
+         }
+
+         @Override
+         public int getInt(final ByteBuffer buffer, final int position) {
+            return (int) buffer.getFloat(position);
+         }
+
+         @Override
+         public float getFloat(final ByteBuffer buffer, final int position) {
+            return buffer.getFloat(position);
          }
       },
 
@@ -307,7 +370,23 @@ public class PLYContentDescription {
 
          @Override
          public Number parseBinary(final DataInputStream input, final boolean bigEndian) throws IOException {
-            return input.readShort();
+            return (short) readInt(input, bigEndian);
+         }
+
+         @Override
+         public int parseInt(final String asciiRepresentation) {
+            return Short.parseShort(asciiRepresentation);
+         }
+
+         @Override
+         public int readInt(final DataInputStream input, final boolean bigEndian) throws IOException {
+            final short value = input.readShort();
+            return bigEndian ? value : Short.reverseBytes(value);
+         }
+
+         @Override
+         public int getInt(final ByteBuffer buffer, final int position) {
+            return buffer.getShort(position);
          }
       };
 
@@ -359,5 +438,36 @@ public class PLYContentDescription {
       public abstract Number parseAscii(String asciiRepresentation);
 
       public abstract Number parseBinary(final DataInputStream input, final boolean bigEndian) throws IOException;
+
+      /*
+       * Primitive decoders, which do not allocate. The float decoders of the integer types convert the int value.
+       */
+
+      public abstract int parseInt(String asciiRepresentation);
+
+      public float parseFloat(final String asciiRepresentation) {
+         return parseInt(asciiRepresentation);
+      }
+
+      public abstract int readInt(DataInputStream input, boolean bigEndian) throws IOException;
+
+      public float readFloat(final DataInputStream input, final boolean bigEndian) throws IOException {
+         return readInt(input, bigEndian);
+      }
+
+      /**
+       * Decodes a value from a buffer, in the byte order of the buffer.
+       * 
+       * @param buffer
+       *           The buffer to read from.
+       * @param position
+       *           The absolute position of the value in the buffer.
+       * @return The value.
+       */
+      public abstract int getInt(ByteBuffer buffer, int position);
+
+      public float getFloat(final ByteBuffer buffer, final int position) {
+         return getInt(buffer, position);
+      }
    }
 }
\ No newline at end of file
@@ -8,12 +8,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
 import edu.rit.krisher.fileparser.ply.ElementReceiver.ElementAttributeValues;
+import edu.rit.krisher.fileparser.ply.PLYContentDescription.DataType;
 import edu.rit.krisher.fileparser.ply.PLYContentDescription.PLYFormat;
 import edu.rit.krisher.scene.geometry.TriangleMesh;
 import edu.rit.krisher.util.Timer;
@@ -56,18 +59,16 @@ public final class PLYParser {
                }
                asciiParser.skipToEnd(); // Ensure we have reached the end of this section.
             }
-         } else if (content.getFormat() == PLYFormat.binary_big_endian) {
-
+         } else {
+            final boolean bigEndian = content.getFormat() == PLYFormat.binary_big_endian;
             for (final Element element : content.getElements()) {
                final ElementReceiver receiver = receivers.get(element.name);
-               final BinaryAttributeValues binParser = new BinaryAttributeValues(element, stream, true);
+               final BinaryAttributeValues binParser = new BinaryAttributeValues(element, stream, bigEndian);
                if (receiver != null) {
                   receiver.receive(element, binParser);
                }
                binParser.skipToEnd(); // Ensure we have reached the end of this section.
             }
-         } else {
-            throw new UnsupportedOperationException("Little-endian format is not supported.");
          }
       } finally {
          stream.close();
@@ -75,7 +76,49 @@ public final class PLYParser {
    }
 
    public static TriangleMesh parseTriangleMesh(final File file) throws IOException {
-      return parseTriangleMesh(new BufferedInputStream(new FileInputStream(file)), false);
+      return parseTriangleMesh(file, false);
+   }
+
+   /**
+    * Loads a triangle mesh from a PLY file. The file is mapped into memory and decoded directly into the mesh buffers;
+    * ASCII files are parsed in parallel. Files larger than 2GB are parsed from a stream.
+    *
+    * @param file
+    *           The PLY file.
+    * @param computeNormals
+    *           true to compute vertex normals from the adjacent triangles.
+    * @return A new triangle mesh.
+    * @throws IOException
+    *            If the file can not be read, or is not a valid PLY file.
+    */
+   public static TriangleMesh parseTriangleMesh(final File file, final boolean computeNormals) throws IOException {
+      final Timer timer = new Timer("Parse PLY (mapped)").start();
+      final MappedPLYReader reader;
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         final FileChannel channel = raf.getChannel();
+         if (channel.size() > Integer.MAX_VALUE) {
+            reader = null;
+         } else {
+            /*
+             * The mapping remains valid after the channel is closed.
+             */
+            reader = new MappedPLYReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+         }
+      } finally {
+         raf.close();
+      }
+      if (reader == null)
+         return parseTriangleMesh(new BufferedInputStream(new FileInputStream(file)), computeNormals);
+      reader.read();
+      timer.stop().print();
+
+      final float[] vertices = reader.getVertices();
+      final int[] indices = reader.getTriangleIndices();
+      if (vertices == null || indices == null)
+         throw new IOException("PLY file " + file + " does not contain vertex and face elements.");
+      return new TriangleMesh(vertices, (computeNormals) ? TriangleMesh.computeTriangleNormals(vertices, indices)
+            : null, indices);
    }
 
    public static TriangleMesh parseTriangleMesh(final InputStream stream) throws IOException {
@@ -141,6 +184,33 @@ public final class PLYParser {
 
       }
 
+      @Override
+      public float getFloat(final int attributeIdx) {
+         return attributes[attributeIdx].valueType.parseFloat(elementComponents[attributeStart[attributeIdx]]);
+      }
+
+      @Override
+      public int getInt(final int attributeIdx) {
+         return attributes[attributeIdx].valueType.parseInt(elementComponents[attributeStart[attributeIdx]]);
+      }
+
+      @Override
+      public int getIntList(final int attributeIdx, final int[] dst) {
+         final int length = attributeListSize[attributeIdx];
+         final int start = attributeStart[attributeIdx];
+         for (int i = 0; i < length && i < dst.length; i++) {
+            dst[i] = attributes[attributeIdx].valueType.parseInt(elementComponents[start + i]);
+         }
+         return length;
+      }
+
+      @Override
+      public void readFloats(final int attributeIdx, final float[] dst, final int offset, final int count) {
+         for (int i = 0; i < count; ++i) {
+            dst[offset + i] = getFloat(attributeIdx + i);
+         }
+      }
+
       @Override
       public void nextElement() {
          if (count < element.count) {
@@ -175,13 +245,26 @@ public final class PLYParser {
       }
    }
 
+   /**
+    * Binary element values, which are decoded into primitive storage that is reused for each element.
+    */
    private static final class BinaryAttributeValues implements ElementAttributeValues {
       private int count = 0;
       private final DataInputStream stream;
       private final Element element;
       private final ElementAttribute[] attributes;
-      private final Number[] scalarValues;
-      private final Number[][] listValues;
+      private final boolean[] floatValued;
+      /*
+       * Scalar attribute values; float valued attributes are stored in floatValues, all others in intValues.
+       */
+      private final int[] intValues;
+      private final float[] floatValues;
+      /*
+       * List attribute values, the arrays grow as needed.
+       */
+      private final int[] listLengths;
+      private final int[][] intLists;
+      private final float[][] floatLists;
       private final boolean bigEndian;
 
       public BinaryAttributeValues(final Element element, final InputStream stream, final boolean bigEndian) {
@@ -189,18 +272,67 @@ public final class PLYParser {
          this.element = element;
          this.attributes = element.getProperties();
          this.bigEndian = bigEndian;
-         scalarValues = new Number[attributes.length];
-         listValues = new Number[attributes.length][];
+         floatValued = new boolean[attributes.length];
+         for (int i = 0; i < attributes.length; ++i) {
+            floatValued[i] = attributes[i].valueType == DataType.float32;
+         }
+         intValues = new int[attributes.length];
+         floatValues = new float[attributes.length];
+         listLengths = new int[attributes.length];
+         intLists = new int[attributes.length][];
+         floatLists = new float[attributes.length][];
+      }
+
+      private Number box(final DataType type, final int intValue, final float floatValue) {
+         switch (type) {
+            case float32:
+               return floatValue;
+            case short16:
+               return (short) intValue;
+            default:
+               return intValue;
+         }
       }
 
       @Override
       public Number getScalarComponent(final int attributeIdx) {
-         return scalarValues[attributeIdx];
+         return box(attributes[attributeIdx].valueType, intValues[attributeIdx], floatValues[attributeIdx]);
       }
 
       @Override
       public Number[] getVectorComponent(final int attributeIdx) {
-         return listValues[attributeIdx];
+         final Number[] values = new Number[listLengths[attributeIdx]];
+         for (int i = 0; i < values.length; i++) {
+            values[i] = floatValued[attributeIdx] ? box(DataType.float32, 0, floatLists[attributeIdx][i])
+                  : box(attributes[attributeIdx].valueType, intLists[attributeIdx][i], 0);
+         }
+         return values;
+      }
+
+      @Override
+      public float getFloat(final int attributeIdx) {
+         return floatValued[attributeIdx] ? floatValues[attributeIdx] : intValues[attributeIdx];
+      }
+
+      @Override
+      public int getInt(final int attributeIdx) {
+         return floatValued[attributeIdx] ? (int) floatValues[attributeIdx] : intValues[attributeIdx];
+      }
+
+      @Override
+      public int getIntList(final int attributeIdx, final int[] dst) {
+         final int length = listLengths[attributeIdx];
+         for (int i = 0; i < length && i < dst.length; i++) {
+            dst[i] = floatValued[attributeIdx] ? (int) floatLists[attributeIdx][i] : intLists[attributeIdx][i];
+         }
+         return length;
+      }
+
+      @Override
+      public void readFloats(final int attributeIdx, final float[] dst, final int offset, final int count) {
+         for (int i = 0; i < count; ++i) {
+            dst[offset + i] = getFloat(attributeIdx + i);
+         }
       }
 
       @Override
@@ -208,15 +340,28 @@ public final class PLYParser {
          if (count < element.count) {
             try {
                for (int attrIdx = 0; attrIdx < attributes.length; ++attrIdx) {
-                  if (attributes[attrIdx].listIndexType == null) { // Scalar attribute
-                     scalarValues[attrIdx] = attributes[attrIdx].valueType.parseBinary(stream, bigEndian);
+                  final ElementAttribute attr = attributes[attrIdx];
+                  if (attr.listIndexType == null) { // Scalar attribute
+                     if (floatValued[attrIdx])
+                        floatValues[attrIdx] = attr.valueType.readFloat(stream, bigEndian);
+                     else
+                        intValues[attrIdx] = attr.valueType.readInt(stream, bigEndian);
                   } else {
-                     final Number componentCount = attributes[attrIdx].listIndexType.parseBinary(stream, bigEndian);
-                     final Number[] values = new Number[componentCount.intValue()];
-                     for (int i = 0; i < values.length; i++) {
-                        values[i] = attributes[attrIdx].valueType.parseBinary(stream, bigEndian);
+                     final int length = attr.listIndexType.readInt(stream, bigEndian);
+                     listLengths[attrIdx] = length;
+                     if (floatValued[attrIdx]) {
+                        if (floatLists[attrIdx] == null || floatLists[attrIdx].length < length)
+                           floatLists[attrIdx] = new float[length];
+                        for (int i = 0; i < length; i++) {
+                           floatLists[attrIdx][i] = attr.valueType.readFloat(stream, bigEndian);
+                        }
+                     } else {
+                        if (intLists[attrIdx] == null || intLists[attrIdx].length < length)
+                           intLists[attrIdx] = new int[length];
+                        for (int i = 0; i < length; i++) {
+                           intLists[attrIdx][i] = attr.valueType.readInt(stream, bigEndian);
+                        }
                      }
-                     listValues[attrIdx] = values;
                   }
                }
                ++count;
@@ -12,13 +12,14 @@ public class TrianglesIndexBufferReceiver implements ElementReceiver {
       buffer = new int[element.count * 3];
       final int indicesAttr = element.indexOf("vertex_indices");
 
+      final int[] indices = new int[3];
       int indicesOffs = 0;
       for (int idx = 0; idx < element.count; ++idx) {
          values.nextElement();
-         final Number[] indices = values.getVectorComponent(indicesAttr);
-         buffer[indicesOffs] = indices[0].intValue();
-         buffer[indicesOffs + 1] = indices[1].intValue();
-         buffer[indicesOffs + 2] = indices[2].intValue();
+         values.getIntList(indicesAttr, indices);
+         buffer[indicesOffs] = indices[0];
+         buffer[indicesOffs + 1] = indices[1];
+         buffer[indicesOffs + 2] = indices[2];
          indicesOffs += 3;
       }
    }
@@ -1,25 +1,31 @@
 package edu.rit.krisher.fileparser.ply;
 
-import java.nio.FloatBuffer;
-
 public class VertexReceiver implements ElementReceiver {
 
-   private FloatBuffer buffer;
+   private float[] buffer;
 
    @Override
    public void receive(final Element element, final ElementAttributeValues values) {
-      buffer = FloatBuffer.wrap(new float[element.count * 3]);
+      final float[] array = new float[element.count * 3];
       final int x = element.indexOf("x");
       final int y = element.indexOf("y");
       final int z = element.indexOf("z");
+      final boolean consecutive = y == x + 1 && z == x + 2;
       for (int idx = 0; idx < element.count; ++idx) {
          values.nextElement();
-         buffer.put(values.getScalarComponent(x).floatValue()).put(values.getScalarComponent(y).floatValue()).put(values.getScalarComponent(z).floatValue());
+         if (consecutive) {
+            values.readFloats(x, array, idx * 3, 3);
+         } else {
+            array[idx * 3] = values.getFloat(x);
+            array[idx * 3 + 1] = values.getFloat(y);
+            array[idx * 3 + 2] = values.getFloat(z);
+         }
       }
+      buffer = array;
    }
 
    public float[] getBuffer() {
-      return buffer.array();
+      return buffer;
    }
 
 }
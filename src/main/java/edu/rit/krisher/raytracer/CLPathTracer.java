@@ -12,12 +12,8 @@ import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.Queue;
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import com.jogamp.opencl.CLBuffer;
@@ -40,6 +36,7 @@ import edu.rit.krisher.raytracer.rays.SampleRay;
 import edu.rit.krisher.raytracer.sampling.SamplingUtils;
 import edu.rit.krisher.raytracer.sampling.UnsafePRNG;
 import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.GeometryContainer;
 import edu.rit.krisher.scene.Scene;
 import edu.rit.krisher.scene.geometry.TriangleMesh;
 import edu.rit.krisher.scene.material.Color;
@@ -53,7 +50,6 @@ import edu.rit.krisher.vecmath.Vec3;
 public class CLPathTracer implements SurfaceIntegrator {
    private static final int ILLUMINATION_SAMPLES = 4;
    private static final Logger log = Logger.getLogger("CL Path Tracer");
-   private static final Map<ImageBuffer, AtomicInteger> active = new ConcurrentHashMap<ImageBuffer, AtomicInteger>();
    private static final String FIND_INTERSECTIONS_KERNEL = "find_intersections";
    private static final String TEST_INTERSECTIONS_KERNEL = "test_intersections";
 
@@ -253,6 +249,17 @@ public class CLPathTracer implements SurfaceIntegrator {
     */
    @Override
    public void integrate(final ImageBuffer image, final Scene scene, final int pixelSampleRate, final int recursionDepth) {
+      submit(image, scene, pixelSampleRate, recursionDepth, RenderJob.NORMAL_PRIORITY);
+   }
+
+   /**
+    * Asynchronously ray traces the specified scene with the given priority.
+    * 
+    * @see SurfaceIntegrator#submit(ImageBuffer, Scene, int, int, int)
+    */
+   @Override
+   public RenderJob submit(final ImageBuffer image, final Scene scene, final int pixelSampleRate,
+         final int recursionDepth, final int priority) {
 
       /*
        * Imaging parameters
@@ -277,35 +284,42 @@ public class CLPathTracer implements SurfaceIntegrator {
        * Tiled work distribution...
        */
       final Rectangle[] imageChunks = IntegratorUtils.chunkRectangle(imageSize.width, imageSize.height, Math.max(2, 64 / pixelSampleRate));
+      final Intersector intersector = createIntersector(scene);
       /*
-       * Thread-safe spin-lock based countdown latch to monitor progress for this image. When this reaches 0, the
-       * ImageBuffer is notified that the rendering is complete.
+       * Workers are created on the rendering threads, make sure the scene is initialized first.
        */
-      final AtomicInteger doneSignal = new AtomicInteger(imageChunks.length);
-      final ConcurrentLinkedQueue<Rectangle> blocks = new ConcurrentLinkedQueue<Rectangle>();
-      for (final Rectangle chunk : imageChunks) {
-         blocks.add(chunk);
-      }
-      active.put(image, doneSignal);
-      final Intersector intersector = createIntersector(scene);
-
-      for (int i = 0; i < IntegratorUtils.threads; i++)
-         IntegratorUtils.threadPool.submit(new CLPathIntegrator(scene, image, blocks, pixelSampleRate, recursionDepth, doneSignal, intersector));
+      scene.getLightSources();
+      return RenderJob.start(image, priority, imageChunks, pixelSampleRate * pixelSampleRate, new RenderJob.Work() {
+         @Override
+         RenderJob.TileWorker createWorker(final RenderJob job) {
+            return new CLPathIntegrator(scene, job, pixelSampleRate, recursionDepth, intersector);
+         }
+      });
    }
 
    private final Intersector createIntersector(final Scene scene) {
       final ArrayList<TriangleMesh> meshes = new ArrayList<TriangleMesh>();
-      for (final Geometry geom : scene.getGeometry()) {
+      collectMeshes(scene.getGeometry(), meshes);
+      System.out.println("Passing " + meshes.size() + " meshes to OpenCL Ray Intersector.");
+      return createGeometryIntersector(meshes.toArray(new TriangleMesh[meshes.size()]));
+   }
+
+   /**
+    * Adds the triangle meshes in the specified geometry, including those stored in containers such as the scene's top
+    * level KD-Tree, to a list.
+    */
+   private static void collectMeshes(final Geometry[] geometry, final List<TriangleMesh> meshes) {
+      for (final Geometry geom : geometry) {
          // TODO: pass all geometry down.
          if (geom instanceof TriangleMesh) {
             meshes.add((TriangleMesh) geom);
+         } else if (geom instanceof GeometryContainer) {
+            collectMeshes(((GeometryContainer) geom).getGeometry(), meshes);
          }
       }
-      System.out.println("Passing " + meshes.size() + " meshes to OpenCL Ray Intersector.");
-      return createGeometryIntersector(meshes.toArray(new TriangleMesh[meshes.size()]));
    }
 
-   static class CLPathIntegrator implements Runnable {
+   static class CLPathIntegrator implements RenderJob.TileWorker {
 
       // private static final double gaussFalloffControl = 4.0;
       // private static final double gaussFalloffConstant = Math.exp(-gaussFalloffControl * 0.5 * 0.5);
@@ -316,12 +330,14 @@ public class CLPathTracer implements SurfaceIntegrator {
 
       private final int pixelSampleRate;
       private final int recursionDepth;
-      private final ImageBuffer imageBuffer;
+      private final RenderJob job;
       private final Scene scene;
-      private final Queue<Rectangle> workQueue;
-      private final AtomicInteger doneSignal;
       private final IntegratorUtils.DirectIlluminationSampler illumSampler;
       private final Intersector intersector;
+      private final Vec3 illumRayOrigin = new Vec3();
+      private final Vec3 wo = new Vec3();
+      private final Color directIllumContribution = new Color(0, 0, 0);
+      private final Rectangle pixelBounds = new Rectangle();
       /*
        * Buffer to collect rgb pixel data
        * 
@@ -330,15 +346,13 @@ public class CLPathTracer implements SurfaceIntegrator {
       private float[] pixels;
       // private float[] pixelNormalization;
       private Rectangle rect;
+      private SampleRay[] rays = new SampleRay[0];
 
-      public CLPathIntegrator(final Scene scene, final ImageBuffer image, final Queue<Rectangle> workQueue,
-            final int pixelSampleRate, final int recursionDepth, final AtomicInteger doneSignal,
-            final Intersector intersector) {
+      public CLPathIntegrator(final Scene scene, final RenderJob job, final int pixelSampleRate,
+            final int recursionDepth, final Intersector intersector) {
          this.recursionDepth = recursionDepth;
-         this.imageBuffer = image;
+         this.job = job;
          this.scene = scene;
-         this.doneSignal = doneSignal;
-         this.workQueue = workQueue;
          this.pixelSampleRate = pixelSampleRate;
          illumSampler = new IntegratorUtils.DirectIlluminationSampler(rng, scene.getLightSources(), scene.getGeometry());
          this.intersector = intersector;
@@ -348,80 +362,66 @@ public class CLPathTracer implements SurfaceIntegrator {
        * @see edu.rit.krisher.raytracer.RayIntegrator#integrate(edu.rit.krisher.raytracer.WorkItem)
        */
       @Override
-      public void run() {
-         final Dimension imageSize = imageBuffer.getResolution();
-         SampleRay[] rays = new SampleRay[0];
-         while ((rect = workQueue.poll()) != null) {
-            try {
-               final int pixelCount = rect.width * rect.height * 3;
-               if (pixels == null || pixels.length < pixelCount) {
-                  pixels = new float[pixelCount];
-                  // pixelNormalization = new float[pixelCount / 3];
-               } else {
-                  Arrays.fill(pixels, 0);
-                  // Arrays.fill(pixelNormalization, 0);
-               }
+      public void render(final Rectangle tile) {
+         rect = tile;
+         final Dimension imageSize = job.getImage().getResolution();
+         final int pixelCount = rect.width * rect.height * 3;
+         if (pixels == null || pixels.length < pixelCount) {
+            pixels = new float[pixelCount];
+            // pixelNormalization = new float[pixelCount / 3];
+         } else {
+            Arrays.fill(pixels, 0);
+            // Arrays.fill(pixelNormalization, 0);
+         }
 
-               final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
-               if (rays.length < rayCount) {
-                  rays = new SampleRay[rayCount];
-                  for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
-                     rays[rayIdx] = new SampleRay(1);
-                  }
-               } else {
-                  for (int i = 0; i < rayCount; ++i) {
-                     rays[i].throughput.set(1);
-                     rays[i].specularBounce = true;
-                     rays[i].extinction.clear();
-                  }
-               }
+         final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
+         if (rays.length < rayCount) {
+            rays = new SampleRay[rayCount];
+            for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
+               rays[rayIdx] = new SampleRay(1);
+            }
+         } else {
+            for (int i = 0; i < rayCount; ++i) {
+               rays[i].throughput.set(1);
+               rays[i].specularBounce = true;
+               rays[i].extinction.clear();
+            }
+         }
 
-               /* Generate Eye Rays */
-               SamplingUtils.generatePixelSamples(rays, new Rectangle(0, 0, rect.width, rect.height), pixelSampleRate, rng);
-               scene.getCamera().sample(rays, imageSize.width, imageSize.height, rect.x, rect.y, rng);
+         /* Generate Eye Rays */
+         pixelBounds.setBounds(0, 0, rect.width, rect.height);
+         SamplingUtils.generatePixelSamples(rays, pixelBounds, pixelSampleRate, rng);
+         scene.getCamera().sample(rays, imageSize.width, imageSize.height, rect.x, rect.y, rng);
 
-               /*
-                * Compute filter normalization constants for each pixel.
-                * 
-                * TODO: Gaussian filter really needs multi-pixel support, and doesn't work well without it.
-                * 
-                * TODO: This should be implemented in the Image Buffer (it should generate a sequence of multi-sample
-                * buffer chunks (with pixel sample locations) that are processed in the tracing threads)
-                */
-               // for (final SampleRay ray : rays) {
-               // final int dst = (((int) ray.pixelY) * rect.width + (int) ray.pixelX);
-               // final double x = ray.pixelX - (int) ray.pixelX - 0.5;
-               // final double y = ray.pixelY - (int) ray.pixelY - 0.5;
-               // final double filter = Math.max(0, Math.exp(-gaussFalloffControl * x * x) - gaussFalloffConstant)
-               // * Math.max(0, Math.exp(-gaussFalloffControl * y * y) - gaussFalloffConstant);
-               // ray.throughput.set(filter);
-               // pixelNormalization[dst] += filter;
-               // }
+         /*
+          * Compute filter normalization constants for each pixel.
+          * 
+          * TODO: Gaussian filter really needs multi-pixel support, and doesn't work well without it.
+          * 
+          * TODO: This should be implemented in the Image Buffer (it should generate a sequence of multi-sample
+          * buffer chunks (with pixel sample locations) that are processed in the tracing threads)
+          */
+         // for (final SampleRay ray : rays) {
+         // final int dst = (((int) ray.pixelY) * rect.width + (int) ray.pixelX);
+         // final double x = ray.pixelX - (int) ray.pixelX - 0.5;
+         // final double y = ray.pixelY - (int) ray.pixelY - 0.5;
+         // final double filter = Math.max(0, Math.exp(-gaussFalloffControl * x * x) - gaussFalloffConstant)
+         // * Math.max(0, Math.exp(-gaussFalloffControl * y * y) - gaussFalloffConstant);
+         // ray.throughput.set(filter);
+         // pixelNormalization[dst] += filter;
+         // }
 
 
 
-               /* Trace Rays */
-               integrateIrradiance(rays, rays.length);
+         /* Trace Rays */
+         integrateIrradiance(rays, rays.length);
 
-               /* Put results back into image buffer */
-               final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
-               for (int i = 0; i < pixels.length; ++i) {
-                  pixels[i] *= pixelNormalization;
-               }
-               imageBuffer.setPixels(rect.x, rect.y, rect.width, rect.height, pixels);
-            } catch (final Throwable e) {
-               e.printStackTrace();
-            } finally {
-               final int remaining = doneSignal.decrementAndGet();
-               if (remaining == 0) {
-                  imageBuffer.imagingDone();
-                  active.remove(imageBuffer);
-                  return;
-               } else if (remaining < 0) {
-                  return; // Process was canceled.
-               }
-            }
+         /* Put results back into image buffer */
+         final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
+         for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] *= pixelNormalization;
          }
+         job.deliver(rect.x, rect.y, rect.width, rect.height, pixels);
       }
 
       private final void updateImage(final int x, final int y, final double r, final double g, final double b) {
@@ -432,7 +432,6 @@ public class CLPathTracer implements SurfaceIntegrator {
       }
 
       private final void integrateIrradiance(final SampleRay[] rays, int rayCount) {
-         final Color directIllumContribution = new Color(0, 0, 0);
          final Geometry[] geometry = scene.getGeometry();
          final Color bg = scene.getBackground();
 
@@ -441,6 +440,8 @@ public class CLPathTracer implements SurfaceIntegrator {
           * we reach the maximum depth, or all rays have terminated.
           */
          for (int rayDepth = 0; rayDepth <= recursionDepth && rayCount > 0; rayDepth++) {
+            if (job.yieldPoint())
+               return;
             /* Visibility pass */
             intersector.processHits(rays, rayCount);
             for (int i = 0; i < rayCount; ++i) {
@@ -506,8 +507,10 @@ public class CLPathTracer implements SurfaceIntegrator {
                 * respond to light coming from directions that will be sampled via bounce rays.
                 */
                if (ray.intersection.material.isDiffuse()) {
-                  final Vec3 illumRayOrigin = ray.getPointOnRay(ray.t).scaleAdd(ray.intersection.surfaceNormal, Constants.EPSILON_F);
-                  illumSampler.sampleDirectIllumination(illumRayOrigin, ray.intersection, ray.direction.inverted(), directIllumContribution, ILLUMINATION_SAMPLES);
+                  ray.getPointOnRay(illumRayOrigin, ray.t);
+                  illumRayOrigin.scaleAdd(ray.intersection.surfaceNormal, Constants.EPSILON_F);
+                  wo.set(ray.direction).multiply(-1);
+                  illumSampler.sampleDirectIllumination(illumRayOrigin, ray.intersection, wo, directIllumContribution, ILLUMINATION_SAMPLES);
                }
 
                /*
@@ -529,10 +532,11 @@ public class CLPathTracer implements SurfaceIntegrator {
                    * interface, at which point the extinction is changed in the Material model.
                    */
                   irradSampleRay.extinction.set(ray.extinction);
-                  irradSampleRay.origin.set(ray.getPointOnRay(ray.t));
+                  wo.set(ray.direction).multiply(-1);
+                  ray.getPointOnRay(irradSampleRay.origin, ray.t);
 
                   irradSampleRay.reset();
-                  final double pdf = ray.intersection.material.sampleBRDF(irradSampleRay, ray.direction.inverted(), ray.intersection, rng);
+                  final double pdf = ray.intersection.material.sampleBRDF(irradSampleRay, wo, ray.intersection, rng);
                   if (pdf > 0 && !irradSampleRay.throughput.isZero()) {
                      // Scale transmission by inverse probability of reaching this depth due to RR.
                      if (rayDepth >= 2)
@@ -565,22 +569,16 @@ public class CLPathTracer implements SurfaceIntegrator {
     * {@link #integrate(ImageBuffer, Scene, int, int)}).
     * 
     * <p>
-    * Any non-started work items are removed from the work queue, but work items already being processed are allowed to
-    * finish. Pixel data may still be sent to the specified ImageBuffer until its {@link ImageBuffer#imagingDone()}
-    * method is called.
+    * Rendering threads stop at the next path depth of the tile they are processing, and
+    * {@link ImageBuffer#imagingDone()} is called before this method returns. See {@link RenderJob#cancel()}.
     * 
     * @param target
     */
    @Override
    public void cancel(final ImageBuffer target) {
-      final AtomicInteger remaining = active.get(target);
-      if (remaining != null) {
-         final int prevRemaining = remaining.getAndSet(0);
-         if (prevRemaining != 0) {
-            active.remove(target);
-            target.imagingDone();
-         }
-      }
+      final RenderJob job = RenderJob.get(target);
+      if (job != null)
+         job.cancel();
    }
 
    public static void printPlatformInfo() {
@@ -0,0 +1,288 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.rit.krisher.raytracer.image.AccumulationBuffer;
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ * Renders the best image possible within a time budget with a {@link ProgressiveIntegrator}, rather than a fixed number
+ * of samples per pixel.
+ *
+ * <p>
+ * The first pass is a calibration pass with one sample per pixel, which measures the cost of a sample per pixel for the
+ * scene. Each following pass is sized to the time remaining before the deadline, up to the maximum sampling rate, and
+ * the cost estimate is updated after every pass so that the schedule follows changes in throughput (e.g. from other
+ * work on the machine). A pass that is still running at the deadline is canceled; the tiles it completed are kept,
+ * since the {@link AccumulationBuffer} tracks the number of samples for each pixel.
+ *
+ * @author krisher
+ *
+ */
+public final class DeadlineRenderer {
+
+   /**
+    * Weight of the most recent pass in the estimated cost of a sample.
+    */
+   private static final double COST_SMOOTHING = 0.5;
+
+   /**
+    * The outcome of a deadline rendering.
+    */
+   public static final class Result {
+      /**
+       * The number of passes that contributed to the image, including a canceled last pass.
+       */
+      public int passes;
+      /**
+       * Average number of samples per pixel.
+       */
+      public double samplesPerPixel;
+      /**
+       * The smallest number of samples of any pixel.
+       */
+      public int minSamplesPerPixel;
+      /**
+       * Duration of the calibration pass, in seconds.
+       */
+      public double calibrationSeconds;
+      /**
+       * The final estimate of the time to render one sample per pixel, in seconds.
+       */
+      public double secondsPerSample;
+      /**
+       * The time by which the rendering exceeded the budget, in seconds, or 0 if it finished in time.
+       */
+      public double overrunSeconds;
+      /**
+       * The number of rays traced, or -1 if the integrator does not count rays.
+       */
+      public long rays = -1;
+   }
+
+   private final ProgressiveIntegrator integrator;
+   private final Scene scene;
+   private final int width;
+   private final int height;
+   private final int maxPixelSampleRate;
+   private final int recursionDepth;
+   private final AccumulationBuffer accumulation;
+   private long frame;
+   private int firstPass;
+
+   /**
+    * Creates a new deadline renderer.
+    *
+    * @param integrator
+    *           The integrator used to render each pass.
+    * @param scene
+    *           The scene to render.
+    * @param width
+    *           The width of the image.
+    * @param height
+    *           The height of the image.
+    * @param maxPixelSampleRate
+    *           The largest linear super-sampling rate to use for a single pass.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    */
+   public DeadlineRenderer(final ProgressiveIntegrator integrator, final Scene scene, final int width,
+         final int height, final int maxPixelSampleRate, final int recursionDepth) {
+      this.integrator = integrator;
+      this.scene = scene;
+      this.width = width;
+      this.height = height;
+      this.maxPixelSampleRate = maxPixelSampleRate;
+      this.recursionDepth = recursionDepth;
+      accumulation = new AccumulationBuffer(width, height);
+   }
+
+   /**
+    * Sets the frame number and index of the first pass, which select the samples used for rendering. Must be called
+    * before rendering starts.
+    */
+   public void setSampleStreams(final long frame, final int firstPass) {
+      this.frame = frame;
+      this.firstPass = firstPass;
+   }
+
+   /**
+    * Renders passes until the time budget is used up. The target image is updated with the average of all samples
+    * after each pass. The calibration pass is always allowed to complete, so the budget is exceeded if it is shorter
+    * than the time to render one sample per pixel.
+    *
+    * @param budgetMillis
+    *           The time budget in milliseconds, measured from the start of this call.
+    * @param target
+    *           An optional ImageBuffer (may be null) with the same resolution as this renderer.
+    * @return The achieved sampling rate and timing.
+    * @throws InterruptedException
+    *            If the calling thread is interrupted. The pass that was being rendered is canceled.
+    */
+   public Result render(final long budgetMillis, final ImageBuffer target) throws InterruptedException {
+      final long start = System.nanoTime();
+      final long deadline = start + budgetMillis * 1000000L;
+      if (target != null) {
+         final Dimension size = target.getResolution();
+         if (size.width != width || size.height != height)
+            throw new IllegalArgumentException("ImageBuffer resolution does not match the renderer.");
+         target.imagingStarted();
+      }
+      final Result result = new Result();
+      final float[] average = new float[width * height * 3];
+      integrator.setFrame(frame);
+      int pass = firstPass;
+      double secondsPerSample = 0;
+      while (true) {
+         /*
+          * Size the pass to the remaining time. The last pass is usually canceled at the deadline, which is less
+          * wasteful than stopping early since completed tiles are kept.
+          */
+         int rate = 1;
+         if (result.passes > 0) {
+            final long now = System.nanoTime();
+            if (now >= deadline)
+               break;
+            final double affordableSamples = (deadline - now) / 1e9 / secondsPerSample;
+            rate = Math.max(1, Math.min(maxPixelSampleRate, (int) Math.sqrt(affordableSamples)));
+         }
+         final PassImageBuffer passImage = new PassImageBuffer();
+         final long passStart = System.nanoTime();
+         integrator.setPass(pass++);
+         integrator.integrate(passImage, scene, rate, recursionDepth);
+         final boolean complete;
+         try {
+            if (result.passes == 0) {
+               passImage.awaitCompletion();
+               complete = true;
+            } else
+               complete = passImage.awaitCompletion(deadline);
+         } catch (final InterruptedException e) {
+            integrator.cancel(passImage);
+            throw e;
+         }
+         if (complete) {
+            final double seconds = (System.nanoTime() - passStart) / 1e9;
+            final double measured = seconds / (rate * rate);
+            if (result.passes == 0) {
+               result.calibrationSeconds = seconds;
+               secondsPerSample = measured;
+            } else {
+               secondsPerSample = COST_SMOOTHING * measured + (1 - COST_SMOOTHING) * secondsPerSample;
+            }
+            accumulation.addPass(passImage.pixels, rate * rate);
+         } else {
+            integrator.cancel(passImage);
+         }
+         if (integrator instanceof RayStatistics) {
+            result.rays = Math.max(0, result.rays) + ((RayStatistics) integrator).getRayCount();
+         }
+         if (complete || passImage.close(accumulation, rate * rate)) {
+            ++result.passes;
+            if (target != null) {
+               accumulation.getAverage(average);
+               target.setPixels(0, 0, width, height, average);
+            }
+         }
+         if (!complete)
+            break;
+      }
+      final long end = System.nanoTime();
+      result.secondsPerSample = secondsPerSample;
+      result.overrunSeconds = Math.max(0, (end - deadline) / 1e9);
+      result.samplesPerPixel = accumulation.getTotalSampleCount() / (double) (width * height);
+      result.minSamplesPerPixel = accumulation.getMinSampleCount();
+      if (target != null)
+         target.imagingDone();
+      return result;
+   }
+
+   /**
+    * Computes the average of all samples for each pixel.
+    *
+    * @param rgbOut
+    *           A non-null array of at least 3 floats per pixel.
+    */
+   public void getAverage(final float[] rgbOut) {
+      accumulation.getAverage(rgbOut);
+   }
+
+   /**
+    * Collects the pixels of one pass, and remembers which tiles have been completed so that a canceled pass can still
+    * contribute.
+    */
+   private final class PassImageBuffer implements ImageBuffer {
+      final float[] pixels = new float[width * height * 3];
+      private final List<Rectangle> tiles = new ArrayList<Rectangle>();
+      private boolean done;
+      private boolean closed;
+
+      @Override
+      public Dimension getResolution() {
+         return new Dimension(width, height);
+      }
+
+      @Override
+      public synchronized void setPixels(final int x, final int y, final int w, final int h, final float[] tile) {
+         /*
+          * Tiles that were in progress when the pass was canceled may still arrive.
+          */
+         if (closed)
+            return;
+         for (int row = 0; row < h; ++row) {
+            System.arraycopy(tile, 3 * row * w, pixels, 3 * ((y + row) * width + x), 3 * w);
+         }
+         tiles.add(new Rectangle(x, y, w, h));
+      }
+
+      @Override
+      public void imagingStarted() {
+      }
+
+      @Override
+      public synchronized void imagingDone() {
+         done = true;
+         notifyAll();
+      }
+
+      synchronized void awaitCompletion() throws InterruptedException {
+         while (!done) {
+            wait();
+         }
+      }
+
+      /**
+       * Waits for the pass to complete.
+       *
+       * @param deadline
+       *           The latest time to wait for, in {@link System#nanoTime()} units.
+       * @return true if the pass completed.
+       */
+      synchronized boolean awaitCompletion(final long deadline) throws InterruptedException {
+         while (!done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+               return false;
+            wait(remaining / 1000000L, (int) (remaining % 1000000L));
+         }
+         return true;
+      }
+
+      /**
+       * Stops accepting pixels, and adds the completed tiles to an accumulation buffer.
+       *
+       * @return true if any tiles were added.
+       */
+      synchronized boolean close(final AccumulationBuffer target, final int samplesPerPixel) {
+         closed = true;
+         for (final Rectangle tile : tiles) {
+            target.addRegion(tile.x, tile.y, tile.width, tile.height, pixels, samplesPerPixel);
+         }
+         return !tiles.isEmpty();
+      }
+   }
+}
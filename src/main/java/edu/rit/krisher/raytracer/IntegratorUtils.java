@@ -10,6 +10,10 @@ import java.util.concurrent.TimeUnit;
 
 import edu.rit.krisher.raytracer.rays.IntersectionInfo;
 import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.raytracer.sampling.LightBVH;
+import edu.rit.krisher.raytracer.sampling.LightSampler;
+import edu.rit.krisher.raytracer.sampling.PowerLightSampler;
+import edu.rit.krisher.raytracer.sampling.Sampler;
 import edu.rit.krisher.scene.EmissiveGeometry;
 import edu.rit.krisher.scene.Geometry;
 import edu.rit.krisher.scene.material.Color;
@@ -23,26 +27,59 @@ import edu.rit.krisher.vecmath.Vec3;
  */
 public final class IntegratorUtils {
    public static final class DirectIlluminationSampler {
+      /**
+       * Scenes with more lights than this use a {@link LightBVH} for light selection, scenes with fewer lights select
+       * lights in proportion to their power only.
+       */
+      public static final int LIGHT_BVH_THRESHOLD = 32;
+
       private final SampleRay sampleRay;
       private final Random rng;
-      private final EmissiveGeometry[] lights;
+      /**
+       * rng, if it is a Sampler; light selection and light samples then use their own dimensions of the path vertex.
+       */
+      private final Sampler sampler;
+      private final LightSampler lightSampler;
       private final Geometry[] geometry;
+      private final double[] lightPdf = new double[1];
 
       public DirectIlluminationSampler(final Random rng, final EmissiveGeometry[] lights, final Geometry[] geometry) {
+         this(rng, createLightSampler(lights), geometry);
+      }
+
+      public DirectIlluminationSampler(final Random rng, final LightSampler lightSampler, final Geometry[] geometry) {
          this.rng = rng;
+         this.sampler = rng instanceof Sampler ? (Sampler) rng : null;
          sampleRay = new SampleRay(1);
          this.geometry = geometry;
-         this.lights = lights;
+         this.lightSampler = lightSampler;
+      }
+
+      /**
+       * Creates the default light selection strategy for the specified lights.
+       * 
+       * @param lights
+       *           A non-null list of lights.
+       * @return A LightSampler that selects one of the specified lights.
+       */
+      public static LightSampler createLightSampler(final EmissiveGeometry[] lights) {
+         if (lights.length > LIGHT_BVH_THRESHOLD)
+            return new LightBVH(lights);
+         return new PowerLightSampler(lights);
       }
 
       public final void sampleDirectIllumination(final Vec3 hitPoint, final IntersectionInfo hitInfo, final Vec3 wo,
             final Color directIllumContribution, final int sampleCount) {
 
-         // TODO: select a single light based on relative emission power.
-         final EmissiveGeometry light = lights[rng.nextInt(lights.length)];
+         final EmissiveGeometry light = lightSampler.sampleLight(hitPoint, sampler != null ? sampler.sampleOffset(Sampler.LIGHT_SELECT_OFFSET) : rng.nextDouble(), lightPdf);
+         if (light == null)
+            return;
+         /*
+          * Divide by the probability of selecting the light to account for the lights that were not sampled.
+          */
+         final double sampleWeight = 1.0 / (lightPdf[0] * sampleCount);
          for (int i = 0; i < sampleCount; ++i) {
-            // TODO: stratified random sequence for sampling
-            light.sampleIrradiance(sampleRay, hitPoint, rng.nextFloat(), rng.nextFloat());
+            sampleIrradiance(light, sampleRay, hitPoint, i);
             for (final Geometry geom : geometry) {
                if (sampleRay.hitGeometry != geom && geom.intersectsP(sampleRay)) {
                   sampleRay.hitGeometry = null;
@@ -60,10 +97,86 @@ public final class IntegratorUtils {
                    * the response of the material...
                    */
                   hitInfo.material.evaluateBRDF(sampleRay.throughput, wo, sampleRay.direction, hitInfo);
-                  directIllumContribution.scaleAdd(sampleRay.throughput, cosWi / sampleCount);
+                  directIllumContribution.scaleAdd(sampleRay.throughput, cosWi * sampleWeight);
+               }
+            }
+         }
+      }
+
+      /**
+       * Samples a light, using the (u, v) dimensions of the specified light sample if rng is a Sampler.
+       */
+      private void sampleIrradiance(final EmissiveGeometry light, final SampleRay ray, final Vec3 hitPoint,
+            final int sample) {
+         final float r1;
+         final float r2;
+         if (sampler == null) {
+            r1 = rng.nextFloat();
+            r2 = rng.nextFloat();
+         } else if (sample < Sampler.MAX_LIGHT_SAMPLES) {
+            sampler.setDimensionOffset(Sampler.lightSampleOffset(sample));
+            r1 = sampler.nextFloat();
+            r2 = sampler.nextFloat();
+         } else {
+            r1 = sampler.nextUnstratifiedFloat();
+            r2 = sampler.nextUnstratifiedFloat();
+         }
+         light.sampleIrradiance(ray, hitPoint, r1, r2);
+      }
+
+      /**
+       * Generates (but does not trace) shadow rays for direct illumination of a surface point. This is the deferred
+       * counterpart of {@link #sampleDirectIllumination(Vec3, IntersectionInfo, Vec3, Color, int)}: the BRDF response
+       * and cosine term are evaluated up front, and the throughput of each generated ray is set to the contribution
+       * that should be added to the ray's pixel if the ray is not obstructed (e.g. by
+       * {@link IntegratorUtils#processObstructions(SampleRay[], int, Geometry[])}).
+       *
+       * @param shadowRays
+       *           A non-null array of SampleRays with at least sampleCount non-null elements available starting at
+       *           offset.
+       * @param offset
+       *           The index of the first element of shadowRays to initialize.
+       * @param hitPoint
+       *           The origin of the shadow rays.
+       * @param hitInfo
+       *           The material properties at the hit point.
+       * @param wo
+       *           The direction toward the viewer (or previous path vertex).
+       * @param pathThroughput
+       *           The transmission along the path to the hit point, the contribution of each shadow ray is scaled by
+       *           this value.
+       * @param pixelX
+       *           The image location that the shadow rays contribute to.
+       * @param pixelY
+       *           The image location that the shadow rays contribute to.
+       * @param sampleCount
+       *           The number of light samples to take.
+       * @return The number of shadow rays that were generated, which may be less than sampleCount since samples that
+       *         can not contribute any light are discarded.
+       */
+      public final int generateShadowRays(final SampleRay[] shadowRays, final int offset, final Vec3 hitPoint,
+            final IntersectionInfo hitInfo, final Vec3 wo, final Color pathThroughput, final double pixelX,
+            final double pixelY, final int sampleCount) {
+         final EmissiveGeometry light = lightSampler.sampleLight(hitPoint, sampler != null ? sampler.sampleOffset(Sampler.LIGHT_SELECT_OFFSET) : rng.nextDouble(), lightPdf);
+         if (light == null)
+            return 0;
+         final double sampleWeight = 1.0 / (lightPdf[0] * sampleCount);
+         int generated = 0;
+         for (int i = 0; i < sampleCount; ++i) {
+            final SampleRay shadowRay = shadowRays[offset + generated];
+            sampleIrradiance(light, shadowRay, hitPoint, i);
+            final double cosWi = shadowRay.direction.dot(hitInfo.surfaceNormal);
+            if (cosWi > 0) {
+               hitInfo.material.evaluateBRDF(shadowRay.throughput, wo, shadowRay.direction, hitInfo);
+               shadowRay.throughput.multiply(pathThroughput).multiply(cosWi * sampleWeight);
+               if (!shadowRay.throughput.isZero()) {
+                  shadowRay.pixelX = pixelX;
+                  shadowRay.pixelY = pixelY;
+                  ++generated;
                }
             }
          }
+         return generated;
       }
    }
 
@@ -109,6 +222,18 @@ public final class IntegratorUtils {
       return result;
    }
 
+   /**
+    * Computes the key that identifies an image tile for {@link Sampler#setStream(long, long, long)}. The key depends
+    * only on the location of the tile, not on the order in which tiles are processed.
+    * 
+    * @param tile
+    *           A non-null image tile.
+    * @return The stream key for the tile.
+    */
+   public static long tileKey(final Rectangle tile) {
+      return ((long) tile.y << 32) | (tile.x & 0xFFFFFFFFL);
+   }
+
    /**
     * Processes intersections of each of the 'count' rays with the specified scene geometry. Upon completion, the
     * {@link IntersectionInfo} for each ray will be updated indicating the geometry that was hit (or null if nothing was
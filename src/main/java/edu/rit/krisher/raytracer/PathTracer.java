@@ -6,22 +6,20 @@ package edu.rit.krisher.raytracer;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.rit.krisher.raytracer.image.ImageBuffer;
 import edu.rit.krisher.raytracer.image.ImageUtil;
 import edu.rit.krisher.raytracer.rays.SampleRay;
 import edu.rit.krisher.raytracer.sampling.SamplingUtils;
-import edu.rit.krisher.raytracer.sampling.UnsafePRNG;
+import edu.rit.krisher.raytracer.sampling.Sampler;
+import edu.rit.krisher.raytracer.sampling.SobolSampler;
+import edu.rit.krisher.scene.Camera;
 import edu.rit.krisher.scene.Geometry;
 import edu.rit.krisher.scene.Scene;
 import edu.rit.krisher.scene.material.Color;
 import edu.rit.krisher.util.Timer;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
 import edu.rit.krisher.vecmath.Constants;
 import edu.rit.krisher.vecmath.Vec3;
 
@@ -31,20 +29,94 @@ import edu.rit.krisher.vecmath.Vec3;
  * @author krisher
  * 
  */
-public final class PathTracer implements SurfaceIntegrator {
+public final class PathTracer implements ProgressiveIntegrator, RayStatistics {
 
    private static final int ILLUMINATION_SAMPLES = 4;
 
    private final Timer timer = new Timer("Path Trace (Thread Timing)");
 
-   private static final Map<ImageBuffer, AtomicInteger> active = new ConcurrentHashMap<ImageBuffer, AtomicInteger>();
+   private final boolean sortRays;
+   private final Sampler.Factory samplerFactory;
+   /*
+    * Stream keys for sampling, see setFrame() and setPass().
+    */
+   private volatile long frame;
+   private volatile int pass;
+   /*
+    * Number of rays traced for the most recent image.
+    */
+   private volatile AtomicLong rayCounter = new AtomicLong();
 
    /**
     * Creates a new path tracer.
     * 
     */
    public PathTracer() {
-      super();
+      this(false);
+   }
+
+   /**
+    * Creates a new path tracer.
+    * 
+    * @param sortRays
+    *           Whether secondary rays should be reordered by origin and direction (see {@link RaySorter}) before each
+    *           intersection pass. This improves memory coherence of acceleration structure traversal for scenes with
+    *           many diffuse inter-reflections, at the cost of a sort per path segment.
+    */
+   public PathTracer(final boolean sortRays) {
+      this(sortRays, SobolSampler.FACTORY);
+   }
+
+   /**
+    * Creates a new path tracer.
+    * 
+    * @param sortRays
+    *           Whether secondary rays should be reordered by origin and direction before each intersection pass.
+    * @param samplerFactory
+    *           Creates the {@link Sampler} used by each rendering thread for pixel, lens, light and BRDF sampling.
+    */
+   public PathTracer(final boolean sortRays, final Sampler.Factory samplerFactory) {
+      this.sortRays = sortRays;
+      this.samplerFactory = samplerFactory;
+   }
+
+   /**
+    * Sets the frame number used to select the sample streams for subsequent calls to
+    * {@link #integrate(ImageBuffer, Scene, int, int)}. Renderings of the same scene with the same frame and pass are
+    * identical, regardless of the number of threads or the order in which tiles are processed.
+    * 
+    * @param frame
+    *           The frame number.
+    */
+   @Override
+   public void setFrame(final long frame) {
+      this.frame = frame;
+   }
+
+   public long getFrame() {
+      return frame;
+   }
+
+   /**
+    * Sets the sampling pass index used to select the sample streams for subsequent calls to
+    * {@link #integrate(ImageBuffer, Scene, int, int)}. Progressive renderers should use a different pass for each
+    * rendering of the same frame, so that the samples of each pass are independent.
+    * 
+    * @param pass
+    *           The pass index.
+    */
+   @Override
+   public void setPass(final int pass) {
+      this.pass = pass;
+   }
+
+   public int getPass() {
+      return pass;
+   }
+
+   @Override
+   public long getRayCount() {
+      return rayCounter.get();
    }
 
    /**
@@ -63,6 +135,27 @@ public final class PathTracer implements SurfaceIntegrator {
     */
    @Override
    public void integrate(final ImageBuffer image, final Scene scene, final int pixelSampleRate, final int recursionDepth) {
+      submit(image, scene, pixelSampleRate, recursionDepth, RenderJob.NORMAL_PRIORITY);
+   }
+
+   /**
+    * Asynchronously ray traces the specified scene with the specified priority.
+    * 
+    * @param image
+    *           A non-null ImageBuffer.
+    * @param scene
+    *           The non-null scene to render.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    * @param priority
+    *           The priority of the rendering, see {@link RenderJob}.
+    * @return A handle to wait for or cancel the rendering.
+    */
+   @Override
+   public RenderJob submit(final ImageBuffer image, final Scene scene, final int pixelSampleRate,
+         final int recursionDepth, final int priority) {
 
       /*
        * Imaging parameters
@@ -89,35 +182,61 @@ public final class PathTracer implements SurfaceIntegrator {
       final Rectangle[] imageChunks = IntegratorUtils.chunkRectangle(imageSize.width, imageSize.height, Math.max(2, IntegratorUtils.DEFAULT_PIXEL_BLOCK_SIZE
                                                                                                                  / pixelSampleRate));
       /*
-       * Thread-safe spin-lock based countdown latch to monitor progress for this image. When this reaches 0, the
-       * ImageBuffer is notified that the rendering is complete.
+       * Workers are created on the rendering threads, make sure the scene is initialized first.
        */
-      final AtomicInteger doneSignal = new AtomicInteger(imageChunks.length);
-      final ConcurrentLinkedQueue<Rectangle> blocks = new ConcurrentLinkedQueue<Rectangle>();
-      for (final Rectangle chunk : imageChunks) {
-         blocks.add(chunk);
-      }
-      active.put(image, doneSignal);
-      for (int i = 0; i < IntegratorUtils.threads; i++)
-         IntegratorUtils.threadPool.submit(new PathIntegrator(scene, image, blocks, pixelSampleRate, recursionDepth, doneSignal));
+      scene.getGeometry();
+      scene.getLightSources();
+      /*
+       * Scene bounds for quantizing ray origins when sorting.
+       */
+      final AxisAlignedBoundingBox sortBounds = sortRays ? scene.getBounds() : null;
+      final AtomicLong rays = new AtomicLong();
+      rayCounter = rays;
+      final long frame = this.frame;
+      final int pass = this.pass;
+      return RenderJob.start(image, priority, imageChunks, pixelSampleRate * pixelSampleRate, new RenderJob.Work() {
+         @Override
+         RenderJob.TileWorker createWorker(final RenderJob job) {
+            return new PathIntegrator(scene, job, pixelSampleRate, recursionDepth, sortBounds, samplerFactory.createSampler(), frame, pass, rays);
+         }
+      });
    }
 
-   static class PathIntegrator implements Runnable {
+   static class PathIntegrator implements RenderJob.TileWorker {
 
       // private static final double gaussFalloffControl = 4.0;
       // private static final double gaussFalloffConstant = Math.exp(-gaussFalloffControl * 0.5 * 0.5);
       /**
-       * Overridden to remove thread safety overhead
+       * Source of all sample values, indexed by pixel sample and dimension.
        */
-      private final Random rng = new UnsafePRNG();
+      private final Sampler sampler;
+      private final long frame;
+      private final int pass;
+      private final SampleRay[] eyeRay = new SampleRay[1];
 
       private final int pixelSampleRate;
       private final int recursionDepth;
-      private final ImageBuffer imageBuffer;
+      private final RenderJob job;
       private final Scene scene;
-      private final Queue<Rectangle> workQueue;
-      private final AtomicInteger doneSignal;
+      private final AtomicLong rayCounter;
+      /*
+       * Number of rays traced for the current tile.
+       */
+      private long tileRays;
       private final IntegratorUtils.DirectIlluminationSampler illumSampler;
+      /*
+       * Reorders secondary rays for coherent traversal, or null if rays are traced in pixel order.
+       */
+      private final RaySorter raySorter;
+      /*
+       * Shadow rays for all direct illumination samples at the current path depth.
+       */
+      private SampleRay[] shadowRays = new SampleRay[0];
+      private final Color pathThroughput = new Color(0, 0, 0);
+      private final Vec3 shadowOrigin = new Vec3();
+      private final Vec3 wo = new Vec3();
+      private final Color directIllumContribution = new Color(0, 0, 0);
+      private final Rectangle pixelBounds = new Rectangle();
       /*
        * Buffer to collect rgb pixel data
        * 
@@ -126,97 +245,109 @@ public final class PathTracer implements SurfaceIntegrator {
       private float[] pixels;
       // private float[] pixelNormalization;
       private Rectangle rect;
-
-      public PathIntegrator(final Scene scene, final ImageBuffer image, final Queue<Rectangle> workQueue,
-            final int pixelSampleRate, final int recursionDepth, final AtomicInteger doneSignal) {
+      private SampleRay[] rays = new SampleRay[0];
+
+      public PathIntegrator(final Scene scene, final RenderJob job, final int pixelSampleRate,
+            final int recursionDepth, final AxisAlignedBoundingBox sortBounds, final Sampler sampler, final long frame,
+            final int pass, final AtomicLong rayCounter) {
+         this.rayCounter = rayCounter;
+         this.sampler = sampler;
+         this.frame = frame;
+         this.pass = pass;
          this.recursionDepth = recursionDepth;
-         this.imageBuffer = image;
+         this.job = job;
          this.scene = scene;
-         this.doneSignal = doneSignal;
-         this.workQueue = workQueue;
          this.pixelSampleRate = pixelSampleRate;
-         illumSampler = new IntegratorUtils.DirectIlluminationSampler(rng, scene.getLightSources(), scene.getGeometry());
+         illumSampler = new IntegratorUtils.DirectIlluminationSampler(sampler, scene.getLightSources(), scene.getGeometry());
+         raySorter = (sortBounds == null) ? null : new RaySorter(sortBounds);
       }
 
       /*
        * @see edu.rit.krisher.raytracer.RayIntegrator#integrate(edu.rit.krisher.raytracer.WorkItem)
        */
       @Override
-      public void run() {
-         final Dimension imageSize = imageBuffer.getResolution();
-         SampleRay[] rays = new SampleRay[0];
-         while ((rect = workQueue.poll()) != null) {
-            try {
-               final int pixelCount = rect.width * rect.height * 3;
-               if (pixels == null || pixels.length < pixelCount) {
-                  pixels = new float[pixelCount];
-                  // pixelNormalization = new float[pixelCount / 3];
-               } else {
-                  Arrays.fill(pixels, 0);
-                  // Arrays.fill(pixelNormalization, 0);
-               }
+      public void render(final Rectangle tile) {
+         rect = tile;
+         final Dimension imageSize = job.getImage().getResolution();
+         /*
+          * Each tile draws from its own sample stream, so the result does not depend on which thread renders it.
+          */
+         sampler.setStream(frame, IntegratorUtils.tileKey(rect), pass);
+         final int pixelCount = rect.width * rect.height * 3;
+         if (pixels == null || pixels.length < pixelCount) {
+            pixels = new float[pixelCount];
+            // pixelNormalization = new float[pixelCount / 3];
+         } else {
+            Arrays.fill(pixels, 0);
+            // Arrays.fill(pixelNormalization, 0);
+         }
 
-               final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
-               if (rays.length < rayCount) {
-                  rays = new SampleRay[rayCount];
-                  for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
-                     rays[rayIdx] = new SampleRay(1);
-                  }
-               } else {
-                  for (int i = 0; i < rayCount; ++i) {
-                     rays[i].throughput.set(1);
-                     rays[i].specularBounce = true;
-                     rays[i].extinction.clear();
-                  }
-               }
+         final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
+         if (rays.length < rayCount) {
+            rays = new SampleRay[rayCount];
+            for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
+               rays[rayIdx] = new SampleRay(1);
+            }
+            shadowRays = new SampleRay[rayCount * ILLUMINATION_SAMPLES];
+            for (int rayIdx = 0; rayIdx < shadowRays.length; ++rayIdx) {
+               shadowRays[rayIdx] = new SampleRay(1);
+            }
+         } else {
+            for (int i = 0; i < rayCount; ++i) {
+               rays[i].throughput.set(1);
+               rays[i].specularBounce = true;
+               rays[i].extinction.clear();
+            }
+         }
 
-               /* Generate Eye Rays */
-               SamplingUtils.generatePixelSamples(rays, new Rectangle(0, 0, rect.width, rect.height), pixelSampleRate, rng);
-               scene.getCamera().sample(rays, imageSize.width, imageSize.height, rect.x, rect.y, rng);
+         /* Generate Eye Rays */
+         pixelBounds.setBounds(0, 0, rect.width, rect.height);
+         SamplingUtils.generatePixelSamples(rays, pixelBounds, rect.x, rect.y, pixelSampleRate
+                                            * pixelSampleRate, sampler);
+         /*
+          * Lens samples are taken from the dimensions of each ray's own pixel sample, so the camera is invoked for
+          * one ray at a time.
+          */
+         final Camera camera = scene.getCamera();
+         for (int i = 0; i < rayCount; ++i) {
+            final SampleRay ray = rays[i];
+            sampler.startSample(rect.x + (int) ray.pixelX, rect.y + (int) ray.pixelY, ray.sampleIndex, Sampler.LENS_DIMENSION);
+            eyeRay[0] = ray;
+            camera.sample(eyeRay, imageSize.width, imageSize.height, rect.x, rect.y, sampler);
+         }
 
-               /*
-                * Compute filter normalization constants for each pixel.
-                * 
-                * TODO: Gaussian filter really needs multi-pixel support, and doesn't work well without it.
-                * 
-                * TODO: This should be implemented in the Image Buffer (it should generate a sequence of multi-sample
-                * buffer chunks (with pixel sample locations) that are processed in the tracing threads)
-                */
-               // for (final SampleRay ray : rays) {
-               // final int dst = (((int) ray.pixelY) * rect.width + (int) ray.pixelX);
-               // final double x = ray.pixelX - (int) ray.pixelX - 0.5;
-               // final double y = ray.pixelY - (int) ray.pixelY - 0.5;
-               // final double filter = Math.max(0, Math.exp(-gaussFalloffControl * x * x) - gaussFalloffConstant)
-               // * Math.max(0, Math.exp(-gaussFalloffControl * y * y) - gaussFalloffConstant);
-               // ray.throughput.set(filter);
-               // pixelNormalization[dst] += filter;
-               // }
-
-               /* Visibility pass */
-               IntegratorUtils.processHits(rays, rayCount, scene.getGeometry());
-
-               /* Trace Rays */
-               integrateIrradiance(rect, rays, rays.length);
-
-               /* Put results back into image buffer */
-               final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
-               for (int i = 0; i < pixels.length; ++i) {
-                  pixels[i] *= pixelNormalization;
-               }
-               imageBuffer.setPixels(rect.x, rect.y, rect.width, rect.height, pixels);
-            } catch (final Throwable e) {
-               e.printStackTrace();
-            } finally {
-               final int remaining = doneSignal.decrementAndGet();
-               if (remaining == 0) {
-                  imageBuffer.imagingDone();
-                  active.remove(imageBuffer);
-                  return;
-               } else if (remaining < 0) {
-                  return; // Process was canceled.
-               }
-            }
+         /*
+          * Compute filter normalization constants for each pixel.
+          * 
+          * TODO: Gaussian filter really needs multi-pixel support, and doesn't work well without it.
+          * 
+          * TODO: This should be implemented in the Image Buffer (it should generate a sequence of multi-sample
+          * buffer chunks (with pixel sample locations) that are processed in the tracing threads)
+          */
+         // for (final SampleRay ray : rays) {
+         // final int dst = (((int) ray.pixelY) * rect.width + (int) ray.pixelX);
+         // final double x = ray.pixelX - (int) ray.pixelX - 0.5;
+         // final double y = ray.pixelY - (int) ray.pixelY - 0.5;
+         // final double filter = Math.max(0, Math.exp(-gaussFalloffControl * x * x) - gaussFalloffConstant)
+         // * Math.max(0, Math.exp(-gaussFalloffControl * y * y) - gaussFalloffConstant);
+         // ray.throughput.set(filter);
+         // pixelNormalization[dst] += filter;
+         // }
+
+         /* Visibility pass */
+         IntegratorUtils.processHits(rays, rayCount, scene.getGeometry());
+         tileRays = rayCount;
+
+         /* Trace Rays */
+         integrateIrradiance(rect, rays, rayCount);
+
+         /* Put results back into image buffer */
+         final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
+         for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] *= pixelNormalization;
          }
+         rayCounter.addAndGet(tileRays);
+         job.deliver(rect.x, rect.y, rect.width, rect.height, pixels);
       }
 
       private final void updateImage(final int x, final int y, final double r, final double g, final double b) {
@@ -227,7 +358,6 @@ public final class PathTracer implements SurfaceIntegrator {
       }
 
       private final void integrateIrradiance(final Rectangle rect, final SampleRay[] rays, int rayCount) {
-         final Color directIllumContribution = new Color(0, 0, 0);
          final Geometry[] geometry = scene.getGeometry();
          final Color bg = scene.getBackground();
 
@@ -235,12 +365,16 @@ public final class PathTracer implements SurfaceIntegrator {
           * All active rays are at the same depth into the path (# of bounces from the initial eye ray). Process until
           * we reach the maximum depth, or all rays have terminated.
           */
-         for (int rayDepth = 0; rayDepth <= recursionDepth && rayCount > 0; rayDepth++) {
+         for (int rayDepth = 0; rayDepth <= recursionDepth && rayCount > 0 && !job.yieldPoint(); rayDepth++) {
 
             /*
              * Number of rays that will be processed in the next iteration
              */
             int outRayCount = 0;
+            /*
+             * Number of shadow rays generated for direct illumination at this depth.
+             */
+            int shadowRayCount = 0;
             for (int processRayIdx = 0; processRayIdx < rayCount; processRayIdx++) {
                final SampleRay ray = rays[processRayIdx];
 
@@ -256,6 +390,8 @@ public final class PathTracer implements SurfaceIntegrator {
                   continue;
                }
 
+               sampler.startSample(rect.x + (int) ray.pixelX, rect.y + (int) ray.pixelY, ray.sampleIndex, Sampler.bounceDimension(rayDepth));
+
                /*
                 * Diffuse surfaces with a wide distribution of reflectivity are relatively unlikely to bounce to a small
                 * emissive object, which introduces significant variance without an extremely large number of samples.
@@ -294,13 +430,20 @@ public final class PathTracer implements SurfaceIntegrator {
                 * respond to light coming from directions that will be sampled via bounce rays.
                 */
                if (ray.intersection.material.isDiffuse()) {
-                  final Vec3 illumRayOrigin = ray.getPointOnRay(ray.t).scaleAdd(ray.intersection.surfaceNormal, Constants.EPSILON_D);
-                  illumSampler.sampleDirectIllumination(illumRayOrigin, ray.intersection, ray.direction.inverted(), directIllumContribution, ILLUMINATION_SAMPLES);
+                  /*
+                   * Shadow rays are only generated here, they are traced as a batch once all rays at this depth have
+                   * been processed.
+                   */
+                  ray.getPointOnRay(shadowOrigin, ray.t);
+                  shadowOrigin.scaleAdd(ray.intersection.surfaceNormal, Constants.EPSILON_D);
+                  wo.set(ray.direction).multiply(-1);
+                  pathThroughput.set(throughputR, throughputG, throughputB);
+                  shadowRayCount += illumSampler.generateShadowRays(shadowRays, shadowRayCount, shadowOrigin, ray.intersection, wo, pathThroughput, ray.pixelX, ray.pixelY, ILLUMINATION_SAMPLES);
                }
 
                /*
-                * Add the contribution to the pixel, modulated by the transmission across all previous bounces in this
-                * path.
+                * Add the emitted contribution to the pixel, modulated by the transmission across all previous bounces in
+                * this path.
                 */
                updateImage((int) ray.pixelX, (int) ray.pixelY, throughputR * directIllumContribution.r, throughputG
                            * directIllumContribution.g, throughputB * directIllumContribution.b);
@@ -309,18 +452,27 @@ public final class PathTracer implements SurfaceIntegrator {
                 * If we have not reached the maximum recursion depth, generate a new reflection/refraction ray for the
                 * next path segment.
                 */
+               /*
+                * Russian roulette has its own dimension whether or not it is used at this depth, see Sampler.
+                */
+               final double roulette = sampler.sampleOffset(Sampler.ROULETTE_OFFSET);
                if (rayDepth < recursionDepth
-                     && (rayDepth < 2 || rng.nextFloat() >= Math.min(1.0 / (recursionDepth + 1), 1.0 - ImageUtil.luminance((float) throughputR, (float) throughputG, (float) throughputB)))) {
+                     && (rayDepth < 2 || roulette >= Math.min(1.0 / (recursionDepth + 1), 1.0 - ImageUtil.luminance((float) throughputR, (float) throughputG, (float) throughputB)))) {
                   final SampleRay irradSampleRay = rays[outRayCount];
                   /*
                    * Preserve the current extinction, this is only modified when the ray passes through a refractive
                    * interface, at which point the extinction is changed in the Material model.
                    */
                   irradSampleRay.extinction.set(ray.extinction);
-                  irradSampleRay.origin.set(ray.getPointOnRay(ray.t));
+                  /*
+                   * The bounce ray may be the same object as the current ray, wo is a copy of the incident direction.
+                   */
+                  wo.set(ray.direction).multiply(-1);
+                  ray.getPointOnRay(irradSampleRay.origin, ray.t);
 
                   irradSampleRay.reset();
-                  final double pdf = ray.intersection.material.sampleBRDF(irradSampleRay, ray.direction.inverted(), ray.intersection, rng);
+                  sampler.setDimensionOffset(Sampler.BRDF_OFFSET);
+                  final double pdf = ray.intersection.material.sampleBRDF(irradSampleRay, wo, ray.intersection, sampler);
                   if (pdf > 0 && !irradSampleRay.throughput.isZero()) {
                      // Scale transmission by inverse probability of reaching this depth due to RR.
                      if (rayDepth >= 2)
@@ -331,6 +483,7 @@ public final class PathTracer implements SurfaceIntegrator {
 
                      irradSampleRay.pixelX = ray.pixelX;
                      irradSampleRay.pixelY = ray.pixelY;
+                     irradSampleRay.sampleIndex = ray.sampleIndex;
                      /*
                       * Avoid precision issues when processing the ray for the next intersection.
                       */
@@ -342,8 +495,29 @@ public final class PathTracer implements SurfaceIntegrator {
 
             }
             rayCount = outRayCount;
+
+            /*
+             * Trace all shadow rays for this depth, unobstructed samples contribute to their pixel.
+             */
+            if (raySorter != null)
+               raySorter.sort(shadowRays, shadowRayCount);
+            IntegratorUtils.processObstructions(shadowRays, shadowRayCount, geometry);
+            tileRays += shadowRayCount;
+            for (int i = 0; i < shadowRayCount; ++i) {
+               final SampleRay shadowRay = shadowRays[i];
+               if (shadowRay.hitGeometry != null) {
+                  updateImage((int) shadowRay.pixelX, (int) shadowRay.pixelY, shadowRay.throughput.r, shadowRay.throughput.g, shadowRay.throughput.b);
+               }
+            }
+
+            /*
+             * Eye rays are already coherent in pixel order, but bounce rays are not.
+             */
+            if (raySorter != null)
+               raySorter.sort(rays, rayCount);
             /* Process all active rays for intersection with scene geometry */
             IntegratorUtils.processHits(rays, rayCount, geometry);
+            tileRays += rayCount;
          }
       }
 
@@ -354,22 +528,16 @@ public final class PathTracer implements SurfaceIntegrator {
     * {@link #integrate(ImageBuffer, Scene, int, int)}).
     * 
     * <p>
-    * Any non-started work items are removed from the work queue, but work items already being processed are allowed to
-    * finish. Pixel data may still be sent to the specified ImageBuffer until its {@link ImageBuffer#imagingDone()}
-    * method is called.
+    * Rendering threads stop at the next path depth of the tile they are processing, and
+    * {@link ImageBuffer#imagingDone()} is called before this method returns. See {@link RenderJob#cancel()}.
     * 
     * @param target
     */
    @Override
    public void cancel(final ImageBuffer target) {
-      final AtomicInteger remaining = active.get(target);
-      if (remaining != null) {
-         final int prevRemaining = remaining.getAndSet(0);
-         if (prevRemaining != 0) {
-            active.remove(target);
-            target.imagingDone();
-         }
-      }
+      final RenderJob job = RenderJob.get(target);
+      if (job != null)
+         job.cancel();
    }
 
 }
\ No newline at end of file
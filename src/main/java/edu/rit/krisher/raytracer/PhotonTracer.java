@@ -7,13 +7,8 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Random;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.rit.krisher.raytracer.IntegratorUtils.DirectIlluminationSampler;
 import edu.rit.krisher.raytracer.image.ImageBuffer;
@@ -41,8 +36,6 @@ public final class PhotonTracer implements SurfaceIntegrator {
    private static final int MAX_PHOTON_COLLECTION = 50;
    private static final int MAX_PHOTONS = 200000;
 
-   private static final Map<ImageBuffer, AtomicInteger> active = new ConcurrentHashMap<ImageBuffer, AtomicInteger>();
-
    /**
     * Creates a new path tracer.
     * 
@@ -67,6 +60,28 @@ public final class PhotonTracer implements SurfaceIntegrator {
     */
    @Override
    public void integrate(final ImageBuffer image, final Scene scene, final int pixelSampleRate, final int recursionDepth) {
+      submit(image, scene, pixelSampleRate, recursionDepth, RenderJob.NORMAL_PRIORITY);
+   }
+
+   /**
+    * Asynchronously ray traces the specified scene with the specified priority. The photon map is computed on the
+    * calling thread.
+    * 
+    * @param image
+    *           A non-null ImageBuffer.
+    * @param scene
+    *           The non-null scene to render.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    * @param priority
+    *           The priority of the rendering, see {@link RenderJob}.
+    * @return A handle to wait for or cancel the rendering.
+    */
+   @Override
+   public RenderJob submit(final ImageBuffer image, final Scene scene, final int pixelSampleRate,
+         final int recursionDepth, final int priority) {
 
       final Timer photonTime = new Timer("Build Photon Map").start();
       final KDNode photonMap = computePhotonMap(scene, recursionDepth);
@@ -91,18 +106,12 @@ public final class PhotonTracer implements SurfaceIntegrator {
        */
       final Rectangle[] imageChunks = IntegratorUtils.chunkRectangle(imageSize.width, imageSize.height, Math.max(2, IntegratorUtils.DEFAULT_PIXEL_BLOCK_SIZE
                                                                                                                  / pixelSampleRate));
-      /*
-       * Thread-safe spin-lock based countdown latch to monitor progress for this image. When this reaches 0, the
-       * ImageBuffer is notified that the rendering is complete.
-       */
-      final AtomicInteger doneSignal = new AtomicInteger(imageChunks.length);
-      final ConcurrentLinkedQueue<Rectangle> blocks = new ConcurrentLinkedQueue<Rectangle>();
-      for (final Rectangle chunk : imageChunks) {
-         blocks.add(chunk);
-      }
-      active.put(image, doneSignal);
-      for (int i = 0; i < IntegratorUtils.threads; i++)
-         IntegratorUtils.threadPool.submit(new PhotonIntegrator(scene, image, blocks, photonMap, pixelSampleRate, recursionDepth, doneSignal));
+      return RenderJob.start(image, priority, imageChunks, pixelSampleRate * pixelSampleRate, new RenderJob.Work() {
+         @Override
+         RenderJob.TileWorker createWorker(final RenderJob job) {
+            return new PhotonIntegrator(scene, job, photonMap, pixelSampleRate, recursionDepth);
+         }
+      });
    }
 
    /**
@@ -369,7 +378,7 @@ public final class PhotonTracer implements SurfaceIntegrator {
                                                                                                                                + mid + 1, count - mid - 1));
    }
 
-   private static final class PhotonIntegrator implements Runnable, PhotonHandler {
+   private static final class PhotonIntegrator implements RenderJob.TileWorker, PhotonHandler {
       private static final int ILLUMINATION_SAMPLES = 4;
       // private static final double gaussFalloffControl = 1;
       // private static final double gaussFalloffConstant = Math.exp(-gaussFalloffControl * 0.5 * 0.5);
@@ -381,10 +390,8 @@ public final class PhotonTracer implements SurfaceIntegrator {
 
       private final int pixelSampleRate;
       private final int recursionDepth;
-      private final ImageBuffer imageBuffer;
+      private final RenderJob job;
       private final Scene scene;
-      private final Queue<Rectangle> workQueue;
-      private final AtomicInteger doneSignal;
       private final DirectIlluminationSampler illumSampler;
       private final KDNode photonMap;
 
@@ -418,14 +425,13 @@ public final class PhotonTracer implements SurfaceIntegrator {
       private float[] pixels;
       private float[] pixelNormalization;
       private Rectangle rect;
+      private SampleRay[] rays = new SampleRay[0];
 
-      public PhotonIntegrator(final Scene scene, final ImageBuffer image, final Queue<Rectangle> workQueue,
-            final KDNode photonMap, final int pixelSampleRate, final int recursionDepth, final AtomicInteger doneSignal) {
+      public PhotonIntegrator(final Scene scene, final RenderJob job, final KDNode photonMap,
+            final int pixelSampleRate, final int recursionDepth) {
          this.recursionDepth = recursionDepth;
-         this.imageBuffer = image;
+         this.job = job;
          this.scene = scene;
-         this.doneSignal = doneSignal;
-         this.workQueue = workQueue;
          this.pixelSampleRate = pixelSampleRate;
          this.photonMap = photonMap;
          illumSampler = new IntegratorUtils.DirectIlluminationSampler(rng, scene.getLightSources(), scene.getGeometry());
@@ -435,63 +441,48 @@ public final class PhotonTracer implements SurfaceIntegrator {
        * @see edu.rit.krisher.raytracer.RayIntegrator#integrate(edu.rit.krisher.raytracer.WorkItem)
        */
       @Override
-      public void run() {
-         final Dimension imageSize = imageBuffer.getResolution();
-         SampleRay[] rays = new SampleRay[0];
-         while ((rect = workQueue.poll()) != null) {
-            try {
-               final int pixelCount = rect.width * rect.height * 3;
-               if (pixels == null || pixels.length < pixelCount) {
-                  pixels = new float[pixelCount];
-                  pixelNormalization = new float[pixelCount / 3];
-               } else {
-                  Arrays.fill(pixels, 0);
-                  Arrays.fill(pixelNormalization, 0);
-               }
+      public void render(final Rectangle tile) {
+         rect = tile;
+         final Dimension imageSize = job.getImage().getResolution();
+         final int pixelCount = rect.width * rect.height * 3;
+         if (pixels == null || pixels.length < pixelCount) {
+            pixels = new float[pixelCount];
+            pixelNormalization = new float[pixelCount / 3];
+         } else {
+            Arrays.fill(pixels, 0);
+            Arrays.fill(pixelNormalization, 0);
+         }
 
-               final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
-               if (rays.length < rayCount) {
-                  rays = new SampleRay[rayCount];
-                  for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
-                     rays[rayIdx] = new SampleRay(1);
-                  }
-               } else {
-                  for (int i = 0; i < rayCount; ++i) {
-                     rays[i].throughput.set(1);
-                     rays[i].specularBounce = true;
-                     rays[i].extinction.clear();
-                  }
-               }
+         final int rayCount = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
+         if (rays.length < rayCount) {
+            rays = new SampleRay[rayCount];
+            for (int rayIdx = 0; rayIdx < rayCount; ++rayIdx) {
+               rays[rayIdx] = new SampleRay(1);
+            }
+         } else {
+            for (int i = 0; i < rayCount; ++i) {
+               rays[i].throughput.set(1);
+               rays[i].specularBounce = true;
+               rays[i].extinction.clear();
+            }
+         }
 
-               /* Generate Eye Rays */
-               SamplingUtils.generatePixelSamples(rays, new Rectangle(0, 0, rect.width, rect.height), pixelSampleRate, rng);
-               scene.getCamera().sample(rays, imageSize.width, imageSize.height, rect.x, rect.y, rng);
+         /* Generate Eye Rays */
+         SamplingUtils.generatePixelSamples(rays, new Rectangle(0, 0, rect.width, rect.height), pixelSampleRate, rng);
+         scene.getCamera().sample(rays, imageSize.width, imageSize.height, rect.x, rect.y, rng);
 
-               /* Visibility pass */
-               IntegratorUtils.processHits(rays, rayCount, scene.getGeometry());
+         /* Visibility pass */
+         IntegratorUtils.processHits(rays, rayCount, scene.getGeometry());
 
-               /* Trace Rays */
-               integrateIrradiance(rect, rays, rays.length);
+         /* Trace Rays */
+         integrateIrradiance(rect, rays, rayCount);
 
-               /* Put results back into image buffer */
-               final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
-               for (int i = 0; i < pixels.length; ++i) {
-                  pixels[i] *= pixelNormalization;
-               }
-               imageBuffer.setPixels(rect.x, rect.y, rect.width, rect.height, pixels);
-            } catch (final Throwable e) {
-               e.printStackTrace();
-            } finally {
-               final int remaining = doneSignal.decrementAndGet();
-               if (remaining == 0) {
-                  imageBuffer.imagingDone();
-                  active.remove(imageBuffer);
-                  return;
-               } else if (remaining < 0) {
-                  return; // Process was canceled.
-               }
-            }
+         /* Put results back into image buffer */
+         final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
+         for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] *= pixelNormalization;
          }
+         job.deliver(rect.x, rect.y, rect.width, rect.height, pixels);
       }
 
       @Override
@@ -525,7 +516,7 @@ public final class PhotonTracer implements SurfaceIntegrator {
           * All active rays are at the same depth into the path (# of bounces from the initial eye ray). Process until
           * we reach the maximum depth, or all rays have terminated.
           */
-         for (int rayDepth = 0; rayDepth <= recursionDepth && rayCount > 0; rayDepth++) {
+         for (int rayDepth = 0; rayDepth <= recursionDepth && rayCount > 0 && !job.yieldPoint(); rayDepth++) {
 
             /*
              * Number of rays that will be processed in the next iteration
@@ -690,22 +681,16 @@ public final class PhotonTracer implements SurfaceIntegrator {
     * {@link #integrate(ImageBuffer, Scene, int, int)}).
     * 
     * <p>
-    * Any non-started work items are removed from the work queue, but work items already being processed are allowed to
-    * finish. Pixel data may still be sent to the specified ImageBuffer until its {@link ImageBuffer#imagingDone()}
-    * method is called.
+    * Rendering threads stop at the next path depth of the tile they are processing, and
+    * {@link ImageBuffer#imagingDone()} is called before this method returns. See {@link RenderJob#cancel()}.
     * 
     * @param target
     */
    @Override
    public void cancel(final ImageBuffer target) {
-      final AtomicInteger remaining = active.get(target);
-      if (remaining != null) {
-         final int prevRemaining = remaining.getAndSet(0);
-         if (prevRemaining != 0) {
-            active.remove(target);
-            target.imagingDone();
-         }
-      }
+      final RenderJob job = RenderJob.get(target);
+      if (job != null)
+         job.cancel();
    }
 
    private static final Comparator photonXComparator = new Comparator<Photon>() {
@@ -0,0 +1,22 @@
+package edu.rit.krisher.raytracer;
+
+/**
+ * A {@link SurfaceIntegrator} whose samples are selected by a frame number and pass index. Renderings of the same frame
+ * and pass are identical, and renderings of different passes are independent, so the average of several passes
+ * converges like a single rendering with more samples.
+ *
+ * @author krisher
+ *
+ */
+public interface ProgressiveIntegrator extends SurfaceIntegrator {
+
+   /**
+    * Sets the frame number for subsequent renderings.
+    */
+   public void setFrame(long frame);
+
+   /**
+    * Sets the pass index for subsequent renderings.
+    */
+   public void setPass(int pass);
+}
@@ -0,0 +1,257 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import edu.rit.krisher.raytracer.image.AccumulationBuffer;
+import edu.rit.krisher.raytracer.image.FloatImageBuffer;
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ * Renders an image as a sequence of independent passes with a {@link ProgressiveIntegrator}, averaging the passes in an
+ * {@link AccumulationBuffer}.
+ *
+ * <p>
+ * The state of the rendering can be periodically saved to a checkpoint file, so that a long rendering can be resumed
+ * after the process is stopped. Since the samples of each pass are determined by the frame and pass index, the
+ * checkpoint only needs the accumulated pixel values, per-pixel sample counts and the index of the next pass; a resumed
+ * rendering produces exactly the same image as an uninterrupted one. Checkpoints are written to a temporary file that
+ * is then renamed over the previous checkpoint, so a valid checkpoint exists even if the process dies while writing.
+ *
+ * @author krisher
+ *
+ */
+public final class ProgressiveRenderer {
+
+   private static final int CHECKPOINT_MAGIC = 0x5054434B;
+   private static final int CHECKPOINT_VERSION = 1;
+
+   private final ProgressiveIntegrator integrator;
+   private final Scene scene;
+   private final String sceneKey;
+   private final int width;
+   private final int height;
+   private final int pixelSampleRate;
+   private final int recursionDepth;
+   private AccumulationBuffer accumulation;
+
+   private long frame;
+   private int firstPass;
+   private int nextPass;
+   private File checkpointFile;
+   private long checkpointIntervalMillis;
+   private long rayCount;
+
+   /**
+    * Creates a new progressive renderer.
+    *
+    * @param integrator
+    *           The integrator used to render each pass.
+    * @param scene
+    *           The scene to render.
+    * @param sceneKey
+    *           Identifies the scene and integrator settings. Checkpoints are only resumed if they were written with the
+    *           same key (and the same image and sampling parameters).
+    * @param width
+    *           The width of the image.
+    * @param height
+    *           The height of the image.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate for each pass.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    */
+   public ProgressiveRenderer(final ProgressiveIntegrator integrator, final Scene scene, final String sceneKey,
+         final int width, final int height, final int pixelSampleRate, final int recursionDepth) {
+      this.integrator = integrator;
+      this.scene = scene;
+      this.sceneKey = sceneKey;
+      this.width = width;
+      this.height = height;
+      this.pixelSampleRate = pixelSampleRate;
+      this.recursionDepth = recursionDepth;
+      accumulation = new AccumulationBuffer(width, height);
+   }
+
+   /**
+    * Sets the frame number and index of the first pass, which select the samples used for rendering. Must be called
+    * before rendering starts.
+    */
+   public void setSampleStreams(final long frame, final int firstPass) {
+      this.frame = frame;
+      this.firstPass = firstPass;
+      this.nextPass = firstPass;
+   }
+
+   /**
+    * Enables periodic checkpoints.
+    *
+    * @param file
+    *           The checkpoint file, or null to disable checkpoints.
+    * @param intervalMillis
+    *           The minimum time between checkpoints. A checkpoint is also written when rendering finishes.
+    */
+   public void setCheckpoint(final File file, final long intervalMillis) {
+      this.checkpointFile = file;
+      this.checkpointIntervalMillis = intervalMillis;
+   }
+
+   /**
+    * Restores the state of the rendering from the checkpoint file, if it exists.
+    *
+    * @return true if a checkpoint was loaded, false if there is no checkpoint file.
+    * @throws IOException
+    *            If the checkpoint could not be read, or was written for a different rendering.
+    */
+   public boolean resume() throws IOException {
+      if (checkpointFile == null || !checkpointFile.exists())
+         return false;
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)));
+      try {
+         if (in.readInt() != CHECKPOINT_MAGIC)
+            throw new IOException(checkpointFile + " is not a checkpoint file.");
+         if (in.readInt() != CHECKPOINT_VERSION)
+            throw new IOException(checkpointFile + " has an unsupported version.");
+         if (!in.readUTF().equals(sceneKey) || in.readInt() != width || in.readInt() != height
+               || in.readInt() != pixelSampleRate || in.readInt() != recursionDepth || in.readLong() != frame
+               || in.readInt() != firstPass)
+            throw new IOException(checkpointFile + " was written for a different rendering.");
+         final int checkpointNextPass = in.readInt();
+         final AccumulationBuffer restored = new AccumulationBuffer(width, height);
+         restored.read(in);
+         accumulation = restored;
+         nextPass = checkpointNextPass;
+      } finally {
+         in.close();
+      }
+      return true;
+   }
+
+   /**
+    * Writes the current state of the rendering to the checkpoint file.
+    *
+    * @throws IOException
+    *            If the checkpoint could not be written; the previous checkpoint (if any) is left unchanged.
+    */
+   public void writeCheckpoint() throws IOException {
+      final File tmp = new File(checkpointFile.getPath() + ".tmp");
+      final FileOutputStream fileOut = new FileOutputStream(tmp);
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+      try {
+         out.writeInt(CHECKPOINT_MAGIC);
+         out.writeInt(CHECKPOINT_VERSION);
+         out.writeUTF(sceneKey);
+         out.writeInt(width);
+         out.writeInt(height);
+         out.writeInt(pixelSampleRate);
+         out.writeInt(recursionDepth);
+         out.writeLong(frame);
+         out.writeInt(firstPass);
+         out.writeInt(nextPass);
+         accumulation.write(out);
+         out.flush();
+         /*
+          * Make sure the data is on disk before the rename makes it the current checkpoint.
+          */
+         fileOut.getFD().sync();
+      } finally {
+         out.close();
+      }
+      if (!tmp.renameTo(checkpointFile)) {
+         /*
+          * Some platforms (Windows) can not rename over an existing file.
+          */
+         if (!checkpointFile.delete() || !tmp.renameTo(checkpointFile))
+            throw new IOException("Unable to rename " + tmp + " to " + checkpointFile);
+      }
+   }
+
+   /**
+    * Renders passes until the specified number of passes (including passes restored from a checkpoint) have been
+    * completed. The target image is updated with the average of all completed passes after each pass.
+    *
+    * @param passes
+    *           The total number of passes.
+    * @param target
+    *           An optional ImageBuffer (may be null) with the same resolution as this renderer.
+    * @throws IOException
+    *            If a checkpoint could not be written.
+    * @throws InterruptedException
+    *            If the calling thread is interrupted. The pass that was being rendered is discarded.
+    */
+   public void render(final int passes, final ImageBuffer target) throws IOException, InterruptedException {
+      final float[] average = new float[width * height * 3];
+      if (target != null) {
+         final Dimension size = target.getResolution();
+         if (size.width != width || size.height != height)
+            throw new IllegalArgumentException("ImageBuffer resolution does not match the renderer.");
+         target.imagingStarted();
+         if (getCompletedPasses() > 0) {
+            accumulation.getAverage(average);
+            target.setPixels(0, 0, width, height, average);
+         }
+      }
+      long lastCheckpoint = System.currentTimeMillis();
+      integrator.setFrame(frame);
+      while (getCompletedPasses() < passes) {
+         final FloatImageBuffer passImage = new FloatImageBuffer(width, height);
+         integrator.setPass(nextPass);
+         integrator.integrate(passImage, scene, pixelSampleRate, recursionDepth);
+         try {
+            passImage.awaitCompletion(0, null);
+         } catch (final InterruptedException e) {
+            integrator.cancel(passImage);
+            throw e;
+         }
+         accumulation.addPass(passImage.getPixels(), pixelSampleRate * pixelSampleRate);
+         if (integrator instanceof RayStatistics)
+            rayCount += ((RayStatistics) integrator).getRayCount();
+         ++nextPass;
+         if (target != null) {
+            accumulation.getAverage(average);
+            target.setPixels(0, 0, width, height, average);
+         }
+         if (checkpointFile != null && System.currentTimeMillis() - lastCheckpoint >= checkpointIntervalMillis) {
+            writeCheckpoint();
+            lastCheckpoint = System.currentTimeMillis();
+         }
+      }
+      if (checkpointFile != null)
+         writeCheckpoint();
+      if (target != null)
+         target.imagingDone();
+   }
+
+   /**
+    * @return The number of passes that have been accumulated (including passes restored from a checkpoint).
+    */
+   public int getCompletedPasses() {
+      return nextPass - firstPass;
+   }
+
+   /**
+    * @return The number of rays traced by calls to {@link #render(int, ImageBuffer)} (not including passes restored
+    *         from a checkpoint), or -1 if the integrator does not count rays.
+    */
+   public long getRayCount() {
+      return integrator instanceof RayStatistics ? rayCount : -1;
+   }
+
+   /**
+    * Computes the average of all completed passes.
+    *
+    * @param rgbOut
+    *           A non-null array of at least 3 floats per pixel.
+    */
+   public void getAverage(final float[] rgbOut) {
+      accumulation.getAverage(rgbOut);
+   }
+}
@@ -0,0 +1,117 @@
+package edu.rit.krisher.raytracer;
+
+import java.util.Arrays;
+
+import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+/**
+ * Reorders batches of rays so that rays with nearby origins and similar directions are adjacent, which improves the
+ * coherence of acceleration structure traversal for secondary rays (whose origins and directions are essentially random
+ * with respect to pixel order).
+ *
+ * <p>
+ * The sort key is the octant of the ray direction (the three direction sign bits), followed by the Morton (Z-order)
+ * code of the ray origin quantized to a 4096^3 grid over the scene bounds.
+ *
+ * <p>
+ * Instances are not thread safe, each integrator thread should use its own RaySorter.
+ *
+ * @author krisher
+ *
+ */
+final class RaySorter {
+
+   private static final int CELL_BITS = 12;
+   private static final int CELL_MAX = (1 << CELL_BITS) - 1;
+   /*
+    * The low bits of each key store the original index of the ray.
+    */
+   private static final int INDEX_BITS = 24;
+   private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+   private final double minX, minY, minZ;
+   private final double scaleX, scaleY, scaleZ;
+
+   private long[] keys = new long[0];
+   private SampleRay[] scratch = new SampleRay[0];
+
+   /**
+    * Creates a new RaySorter.
+    *
+    * @param bounds
+    *           The bounds of the scene, used to quantize ray origins. Origins outside of these bounds are clamped to the
+    *           nearest cell.
+    */
+   public RaySorter(final AxisAlignedBoundingBox bounds) {
+      final double[] xyzxyz = bounds.xyzxyz;
+      minX = xyzxyz[0];
+      minY = xyzxyz[1];
+      minZ = xyzxyz[2];
+      scaleX = cellScale(xyzxyz[0], xyzxyz[3]);
+      scaleY = cellScale(xyzxyz[1], xyzxyz[4]);
+      scaleZ = cellScale(xyzxyz[2], xyzxyz[5]);
+   }
+
+   private static double cellScale(final double min, final double max) {
+      final double span = max - min;
+      if (span > 0 && !Double.isInfinite(span))
+         return CELL_MAX / span;
+      return 0;
+   }
+
+   /**
+    * Sorts the first count rays by direction octant and origin cell.
+    *
+    * @param rays
+    *           A non-null array of at least count non-null rays.
+    * @param count
+    *           The number of rays to sort, must be less than 2^24.
+    */
+   public void sort(final SampleRay[] rays, final int count) {
+      if (count < 2)
+         return;
+      if (keys.length < count) {
+         keys = new long[count];
+         scratch = new SampleRay[count];
+      }
+      for (int i = 0; i < count; ++i) {
+         keys[i] = (sortKey(rays[i]) << INDEX_BITS) | i;
+      }
+      Arrays.sort(keys, 0, count);
+      System.arraycopy(rays, 0, scratch, 0, count);
+      for (int i = 0; i < count; ++i) {
+         rays[i] = scratch[(int) (keys[i] & INDEX_MASK)];
+      }
+   }
+
+   /**
+    * Computes the 39-bit sort key for a ray; 3 direction octant bits followed by a 36-bit Morton code of the origin.
+    */
+   final long sortKey(final SampleRay ray) {
+      final long octant = (ray.direction.x < 0 ? 4 : 0) | (ray.direction.y < 0 ? 2 : 0) | (ray.direction.z < 0 ? 1 : 0);
+      return (octant << (3 * CELL_BITS)) | (spreadBits(quantize(ray.origin.x, minX, scaleX)) << 2)
+            | (spreadBits(quantize(ray.origin.y, minY, scaleY)) << 1) | spreadBits(quantize(ray.origin.z, minZ, scaleZ));
+   }
+
+   private static int quantize(final double value, final double min, final double scale) {
+      final double cell = (value - min) * scale;
+      if (cell <= 0)
+         return 0;
+      if (cell >= CELL_MAX)
+         return CELL_MAX;
+      return (int) cell;
+   }
+
+   /**
+    * Inserts two 0 bits before each of the low 12 bits of the specified value.
+    */
+   static long spreadBits(final int value) {
+      long x = value & CELL_MAX;
+      x = (x | (x << 16)) & 0x0000FF0000FFL;
+      x = (x | (x << 8)) & 0x00F00F00F00FL;
+      x = (x | (x << 4)) & 0x0C30C30C30C3L;
+      x = (x | (x << 2)) & 0x249249249249L;
+      return x;
+   }
+}
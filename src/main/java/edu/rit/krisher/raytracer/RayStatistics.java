@@ -0,0 +1,20 @@
+package edu.rit.krisher.raytracer;
+
+/**
+ * Optional interface for {@link SurfaceIntegrator}s that count the rays they trace.
+ *
+ * @author krisher
+ *
+ */
+public interface RayStatistics {
+
+   /**
+    * Gets the number of rays (including shadow rays) that have been traced for the most recent call to
+    * {@link SurfaceIntegrator#integrate(edu.rit.krisher.raytracer.image.ImageBuffer, edu.rit.krisher.scene.Scene, int, int)}
+    * . The count is updated as image tiles are completed, so it is only final once the ImageBuffer has been notified
+    * that imaging is done.
+    *
+    * @return The number of rays traced.
+    */
+   public long getRayCount();
+}
@@ -0,0 +1,351 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Rectangle;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+
+/**
+ * Handle for an asynchronous rendering of an image, which may be used to wait for or cancel the rendering, and to
+ * monitor its progress and throughput.
+ *
+ * <p>
+ * Renderings are divided into tiles, which the {@link RenderJobManager} dispatches to the
+ * {@link IntegratorUtils#threadPool}. Workers check for cancellation at each path depth (or wavefront iteration) within
+ * a tile, so a canceled rendering stops within a fraction of a tile. No pixels are sent to the ImageBuffer after
+ * {@link ImageBuffer#imagingDone()} is called.
+ *
+ * <p>
+ * Each job has a priority and a weight. Tiles of higher priority jobs are always dispatched first. Workers also check
+ * for higher priority tiles at each path depth (see {@link #yieldPoint()}) and render them before continuing with the
+ * current tile, so an interactive preview does not wait for the tiles of a final-quality rendering to complete. Jobs
+ * with the same priority share the rendering threads in proportion to their weights.
+ *
+ * @author krisher
+ *
+ */
+public final class RenderJob {
+
+   /**
+    * Priority for long running renderings that should yield to anything else.
+    */
+   public static final int LOW_PRIORITY = 0;
+   /**
+    * Default priority, used by {@link SurfaceIntegrator#integrate(ImageBuffer, edu.rit.krisher.scene.Scene, int, int)}.
+    */
+   public static final int NORMAL_PRIORITY = 5;
+   /**
+    * Priority for interactive previews.
+    */
+   public static final int INTERACTIVE_PRIORITY = 10;
+
+   /**
+    * Renders tiles for a job. Each worker is used by one thread at a time, so it may keep per-thread state (samplers,
+    * ray buffers) between tiles.
+    */
+   interface TileWorker {
+      /**
+       * Renders a tile, and sends the result to {@link RenderJob#deliver(int, int, int, int, float[])}.
+       */
+      public void render(Rectangle tile);
+   }
+
+   /**
+    * Creates the workers for a job.
+    */
+   static abstract class Work {
+      abstract TileWorker createWorker(RenderJob job);
+
+      /**
+       * Called once when all tiles of the job have been rendered (but not if the job is canceled).
+       */
+      void completed(final RenderJob job) {
+      }
+   }
+
+   private static final ConcurrentMap<ImageBuffer, RenderJob> jobs = new ConcurrentHashMap<ImageBuffer, RenderJob>();
+
+   /**
+    * Time that the current thread has spent rendering tiles of other jobs from {@link #yieldPoint()}, which is not
+    * charged to the tile that was interrupted.
+    */
+   private static final ThreadLocal<long[]> preemptedNanos = new ThreadLocal<long[]>() {
+      @Override
+      protected long[] initialValue() {
+         return new long[1];
+      }
+   };
+
+   private final ImageBuffer image;
+   private final int priority;
+   private volatile double weight = 1;
+   private final Work work;
+   private final int tileCount;
+   private final int samplesPerPixel;
+   private final Queue<Rectangle> pendingTiles = new ConcurrentLinkedQueue<Rectangle>();
+   private final Queue<TileWorker> idleWorkers = new ConcurrentLinkedQueue<TileWorker>();
+   private final AtomicInteger remainingTiles;
+   private final CountDownLatch done = new CountDownLatch(1);
+   private volatile boolean cancelled;
+   private boolean finished;
+
+   /*
+    * Statistics.
+    */
+   private final AtomicInteger completedTiles = new AtomicInteger();
+   private final AtomicLong completedSamples = new AtomicLong();
+   private final AtomicLong tileNanos = new AtomicLong();
+   private final long startNanos = System.nanoTime();
+   private volatile long endNanos;
+
+   /*
+    * Fair share accounting, guarded by the RenderJobManager.
+    */
+   double virtualNanos;
+
+   private RenderJob(final ImageBuffer image, final int priority, final Rectangle[] tiles, final int samplesPerPixel,
+         final Work work) {
+      this.image = image;
+      this.priority = priority;
+      this.work = work;
+      this.tileCount = tiles.length;
+      this.samplesPerPixel = samplesPerPixel;
+      this.remainingTiles = new AtomicInteger(tiles.length);
+      for (final Rectangle tile : tiles) {
+         pendingTiles.add(tile);
+      }
+   }
+
+   /**
+    * Creates a job and submits its tiles to the {@link RenderJobManager}.
+    *
+    * @param image
+    *           The target image. {@link ImageBuffer#imagingStarted()} is not called by the job.
+    * @param priority
+    *           The priority of the job.
+    * @param tiles
+    *           The tiles to render.
+    * @param samplesPerPixel
+    *           The number of samples per pixel, for throughput statistics.
+    * @param work
+    *           Creates the workers that render the tiles.
+    * @return The new job.
+    */
+   static RenderJob start(final ImageBuffer image, final int priority, final Rectangle[] tiles,
+         final int samplesPerPixel, final Work work) {
+      final RenderJob job = new RenderJob(image, priority, tiles, samplesPerPixel, work);
+      jobs.put(image, job);
+      if (tiles.length == 0)
+         job.finish();
+      else
+         RenderJobManager.getInstance().add(job);
+      return job;
+   }
+
+   /**
+    * @param image
+    *           An ImageBuffer.
+    * @return The job that is rendering the image, or null if the image is not being rendered.
+    */
+   public static RenderJob get(final ImageBuffer image) {
+      return jobs.get(image);
+   }
+
+   public ImageBuffer getImage() {
+      return image;
+   }
+
+   public int getPriority() {
+      return priority;
+   }
+
+   public double getWeight() {
+      return weight;
+   }
+
+   /**
+    * Sets the share of the rendering threads this job receives relative to other jobs with the same priority. A job with
+    * weight 2 is given twice as much thread time as a job with weight 1.
+    *
+    * @param weight
+    *           A positive weight (the default is 1).
+    */
+   public void setWeight(final double weight) {
+      if (!(weight > 0))
+         throw new IllegalArgumentException("Weight must be positive: " + weight);
+      this.weight = weight;
+   }
+
+   /**
+    * Cancels the rendering. Workers stop at their next cancellation check, and {@link ImageBuffer#imagingDone()} is
+    * called before this method returns (unless the rendering had already finished).
+    */
+   public void cancel() {
+      synchronized (this) {
+         cancelled = true;
+      }
+      pendingTiles.clear();
+      finish();
+   }
+
+   public boolean isCancelled() {
+      return cancelled;
+   }
+
+   /**
+    * @return true if the rendering completed or was canceled.
+    */
+   public boolean isDone() {
+      return done.getCount() == 0;
+   }
+
+   /**
+    * Waits for the rendering to complete or be canceled.
+    *
+    * @throws InterruptedException
+    */
+   public void await() throws InterruptedException {
+      done.await();
+   }
+
+   /**
+    * Waits for the rendering to complete or be canceled.
+    *
+    * @return true if the rendering is done, false if the timeout elapsed first.
+    * @throws InterruptedException
+    */
+   public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+      return done.await(timeout, unit);
+   }
+
+   public int getTileCount() {
+      return tileCount;
+   }
+
+   public int getCompletedTiles() {
+      return completedTiles.get();
+   }
+
+   /**
+    * @return The fraction of tiles that have been rendered, between 0 and 1.
+    */
+   public double getProgress() {
+      return tileCount == 0 ? 1 : completedTiles.get() / (double) tileCount;
+   }
+
+   /**
+    * @return The number of pixel samples in completed tiles.
+    */
+   public long getCompletedSamples() {
+      return completedSamples.get();
+   }
+
+   /**
+    * @return Time spent rendering tiles of this job, summed over all threads, in seconds.
+    */
+   public double getThreadSeconds() {
+      return tileNanos.get() / 1e9;
+   }
+
+   /**
+    * @return Completed pixel samples per second of wall clock time, from submission until the job is done.
+    */
+   public double getSamplesPerSecond() {
+      final long end = isDone() ? endNanos : System.nanoTime();
+      final double seconds = (end - startNanos) / 1e9;
+      return seconds <= 0 ? 0 : completedSamples.get() / seconds;
+   }
+
+   /**
+    * Sends the pixels of a completed tile to the image, unless the job has been canceled.
+    *
+    * @return true if the pixels were sent.
+    */
+   synchronized boolean deliver(final int x, final int y, final int w, final int h, final float[] pixels) {
+      if (cancelled)
+         return false;
+      image.setPixels(x, y, w, h, pixels);
+      return true;
+   }
+
+   /**
+    * Called by workers between batches of work within a tile of this job (at each path depth or wavefront iteration).
+    * Renders any pending tiles of higher priority jobs on the calling thread before returning.
+    *
+    * @return true if the job has been canceled, in which case the worker should stop rendering the tile.
+    */
+   boolean yieldPoint() {
+      if (!cancelled) {
+         final long[] preempted = preemptedNanos.get();
+         final long before = preempted[0];
+         final long start = System.nanoTime();
+         if (RenderJobManager.getInstance().preempt(this))
+            preempted[0] = before + (System.nanoTime() - start);
+      }
+      return cancelled;
+   }
+
+   /**
+    * @return The next tile to render, or null if there are no more tiles (or the job was canceled).
+    */
+   Rectangle nextTile() {
+      return cancelled ? null : pendingTiles.poll();
+   }
+
+   boolean hasPendingTiles() {
+      return !cancelled && !pendingTiles.isEmpty();
+   }
+
+   /**
+    * Renders a tile (returned by {@link #nextTile()}) on the calling thread.
+    *
+    * @return The time spent, in nanoseconds.
+    */
+   long renderTile(final Rectangle tile) {
+      final long[] preempted = preemptedNanos.get();
+      final long preemptedBefore = preempted[0];
+      final long start = System.nanoTime();
+      TileWorker worker = idleWorkers.poll();
+      try {
+         if (worker == null)
+            worker = work.createWorker(this);
+         if (!cancelled)
+            worker.render(tile);
+      } catch (final Throwable e) {
+         e.printStackTrace();
+      } finally {
+         if (worker != null)
+            idleWorkers.add(worker);
+      }
+      final long elapsed = System.nanoTime() - start - (preempted[0] - preemptedBefore);
+      tileNanos.addAndGet(elapsed);
+      if (!cancelled) {
+         completedSamples.addAndGet((long) tile.width * tile.height * samplesPerPixel);
+         completedTiles.incrementAndGet();
+      }
+      if (remainingTiles.decrementAndGet() == 0 && !cancelled && finish())
+         work.completed(this);
+      return elapsed;
+   }
+
+   private boolean finish() {
+      synchronized (this) {
+         if (finished)
+            return false;
+         finished = true;
+      }
+      endNanos = System.nanoTime();
+      jobs.remove(image, this);
+      idleWorkers.clear();
+      image.imagingDone();
+      done.countDown();
+      return true;
+   }
+}
@@ -0,0 +1,169 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shares the rendering threads ({@link IntegratorUtils#threadPool}) between all active {@link RenderJob}s.
+ *
+ * <p>
+ * Work is dispatched one tile at a time. The next tile is taken from the highest priority job that has tiles left;
+ * jobs with the same priority are served in weighted fair order. Each job accumulates virtual time, the thread time
+ * spent on its tiles divided by its weight, and the job with the least virtual time is served next, so that
+ * concurrent renderings progress at rates proportional to their weights instead of queueing behind each other.
+ *
+ * <p>
+ * A worker that is rendering a tile also takes tiles of higher priority jobs between batches of work (see
+ * {@link #preempt(RenderJob)}), so higher priority jobs do not wait for the tiles that are already running.
+ *
+ * @author krisher
+ *
+ */
+public final class RenderJobManager {
+
+   private static final RenderJobManager instance = new RenderJobManager(IntegratorUtils.threads);
+
+   /**
+    * Weight of the most recent tile in the average tile time, which is used as the cost of a tile before it completes.
+    */
+   private static final double TILE_TIME_SMOOTHING = 0.1;
+
+   private final int maxWorkers;
+   /*
+    * All state is guarded by this.
+    */
+   private final List<RenderJob> jobs = new ArrayList<RenderJob>();
+   private int runningWorkers;
+   private double averageTileNanos = 1e6;
+
+   private RenderJobManager(final int maxWorkers) {
+      this.maxWorkers = maxWorkers;
+   }
+
+   public static RenderJobManager getInstance() {
+      return instance;
+   }
+
+   /**
+    * @return The jobs that have tiles waiting to be rendered, in no particular order.
+    */
+   public synchronized List<RenderJob> getQueuedJobs() {
+      return new ArrayList<RenderJob>(jobs);
+   }
+
+   /**
+    * Adds a job with pending tiles, and starts workers on the thread pool if necessary.
+    */
+   synchronized void add(final RenderJob job) {
+      /*
+       * A new job starts at the virtual time of the least served job with the same priority, so it does not claim all
+       * of the time that passed before it was submitted.
+       */
+      double minVirtualNanos = Double.POSITIVE_INFINITY;
+      for (final RenderJob other : jobs) {
+         if (other.getPriority() == job.getPriority())
+            minVirtualNanos = Math.min(minVirtualNanos, other.virtualNanos);
+      }
+      job.virtualNanos = minVirtualNanos == Double.POSITIVE_INFINITY ? 0 : minVirtualNanos;
+      jobs.add(job);
+      while (runningWorkers < maxWorkers) {
+         ++runningWorkers;
+         IntegratorUtils.threadPool.execute(new Worker());
+      }
+   }
+
+   /**
+    * Selects the job to take the next tile from.
+    *
+    * @return The next job, or null if no job has pending tiles.
+    */
+   private RenderJob selectJob() {
+      RenderJob selected = null;
+      for (int i = jobs.size() - 1; i >= 0; --i) {
+         final RenderJob job = jobs.get(i);
+         if (!job.hasPendingTiles()) {
+            jobs.remove(i);
+         } else if (selected == null || job.getPriority() > selected.getPriority()
+               || (job.getPriority() == selected.getPriority() && job.virtualNanos < selected.virtualNanos)) {
+            selected = job;
+         }
+      }
+      return selected;
+   }
+
+   /**
+    * Assigns the next tile to a worker.
+    *
+    * @return false if there is no more work, in which case the worker must exit.
+    */
+   private synchronized boolean next(final Worker worker) {
+      RenderJob job;
+      while ((job = selectJob()) != null) {
+         if (assign(worker, job))
+            return true;
+      }
+      --runningWorkers;
+      return false;
+   }
+
+   /**
+    * Assigns the next tile of a job to a worker.
+    *
+    * @return false if the job has no more tiles.
+    */
+   private boolean assign(final Worker worker, final RenderJob job) {
+      final Rectangle tile = job.nextTile();
+      if (tile == null)
+         return false;
+      /*
+       * Charge the expected cost up front, so that other workers do not all pick the same job before the tile
+       * completes; corrected in completed().
+       */
+      worker.job = job;
+      worker.tile = tile;
+      worker.charge = averageTileNanos / job.getWeight();
+      job.virtualNanos += worker.charge;
+      return true;
+   }
+
+   /**
+    * Renders the pending tiles of jobs with a higher priority than the specified job on the calling thread, which is
+    * part way through a tile of that job.
+    *
+    * @return true if any tiles were rendered.
+    */
+   boolean preempt(final RenderJob running) {
+      Worker worker = null;
+      while (true) {
+         synchronized (this) {
+            final RenderJob job = selectJob();
+            if (job == null || job.getPriority() <= running.getPriority())
+               return worker != null;
+            if (worker == null)
+               worker = new Worker();
+            if (!assign(worker, job))
+               continue;
+         }
+         completed(worker, worker.job.renderTile(worker.tile));
+      }
+   }
+
+   private synchronized void completed(final Worker worker, final long nanos) {
+      worker.job.virtualNanos += nanos / worker.job.getWeight() - worker.charge;
+      averageTileNanos += TILE_TIME_SMOOTHING * (nanos - averageTileNanos);
+   }
+
+   private final class Worker implements Runnable {
+      RenderJob job;
+      Rectangle tile;
+      double charge;
+
+      @Override
+      public void run() {
+         while (next(this)) {
+            completed(this, job.renderTile(tile));
+         }
+      }
+   }
+}
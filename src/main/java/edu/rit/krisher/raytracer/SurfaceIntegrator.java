@@ -32,15 +32,32 @@ public interface SurfaceIntegrator {
    public void integrate(final ImageBuffer image, final Scene scene, final int pixelSampleRate,
          final int recursionDepth);
 
+   /**
+    * Asynchronously renders the scene, like {@link #integrate(ImageBuffer, Scene, int, int)}, with the specified
+    * priority.
+    *
+    * @param image
+    *           A non-null ImageBuffer.
+    * @param scene
+    *           The non-null scene to render.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    * @param priority
+    *           The priority of the rendering, see {@link RenderJob}.
+    * @return A handle to wait for or cancel the rendering.
+    */
+   public RenderJob submit(ImageBuffer image, Scene scene, int pixelSampleRate, int recursionDepth, int priority);
+
    
    /**
     * Cancels rendering for the specified ImageBuffer (that was previously
     * passed to {@link #integrate(ImageBuffer, Camera, Scene, int, int)}).
     * 
     * <p>
-    * Any non-started work items are removed from the work queue, but work items already being processed are allowed to
-    * finish. Pixel data may still be sent to the specified ImageBuffer until its {@link ImageBuffer#imagingDone()}
-    * method is called.
+    * Tiles that have not been started are discarded, and tiles being rendered stop at their next cancellation check.
+    * {@link ImageBuffer#imagingDone()} is called before this method returns; see {@link RenderJob#cancel()}.
     * 
     * @param target
     */
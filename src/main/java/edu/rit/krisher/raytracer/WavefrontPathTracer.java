@@ -0,0 +1,596 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+import edu.rit.krisher.raytracer.image.ImageUtil;
+import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.raytracer.sampling.Sampler;
+import edu.rit.krisher.raytracer.sampling.SobolSampler;
+import edu.rit.krisher.scene.Camera;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.Material;
+import edu.rit.krisher.scene.Scene;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.vecmath.Constants;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Wavefront path tracer.
+ *
+ * <p>
+ * The light transport is the same as {@link PathTracer}, but rather than shading, sampling direct illumination, and
+ * generating the next bounce for one ray at a time, each worker keeps a fixed size pool of paths in flight and
+ * processes the whole pool in separate stages:
+ * <ol>
+ * <li><b>extend</b>: closest-hit intersection for every active path.</li>
+ * <li><b>shade</b>: emission, shadow ray generation and bounce ray sampling. Paths are bucketed by {@link Material}
+ * type first, so consecutive paths execute the same shading code.</li>
+ * <li><b>shadow</b>: any-hit intersection for all shadow rays generated by the shade stage, unobstructed samples are
+ * added to the image.</li>
+ * <li><b>compact</b>: terminated paths are removed from the pool, and the free slots are refilled with eye rays for
+ * pixel samples that have not been started yet.</li>
+ * </ol>
+ * Time and ray counts are recorded for each stage, and printed when the image is complete.
+ *
+ * @author krisher
+ *
+ */
+public final class WavefrontPathTracer implements ProgressiveIntegrator, RayStatistics {
+
+   private static final int ILLUMINATION_SAMPLES = 4;
+
+   /**
+    * Default maximum number of paths in flight for each worker thread.
+    */
+   public static final int DEFAULT_WAVEFRONT_SIZE = 4096;
+
+   private final int wavefrontSize;
+   private final Sampler.Factory samplerFactory;
+   /*
+    * Stream keys for sampling, see setFrame() and setPass().
+    */
+   private volatile long frame;
+   private volatile int pass;
+   /*
+    * Stage statistics for the most recent image.
+    */
+   private volatile StageStatistics[] lastStats;
+
+   /**
+    * Creates a new wavefront path tracer with the default wavefront size.
+    */
+   public WavefrontPathTracer() {
+      this(DEFAULT_WAVEFRONT_SIZE);
+   }
+
+   /**
+    * Creates a new wavefront path tracer.
+    *
+    * @param wavefrontSize
+    *           The maximum number of paths that each worker thread processes in a single stage. Must be greater than 0.
+    */
+   public WavefrontPathTracer(final int wavefrontSize) {
+      this(wavefrontSize, SobolSampler.FACTORY);
+   }
+
+   /**
+    * Creates a new wavefront path tracer.
+    *
+    * @param wavefrontSize
+    *           The maximum number of paths that each worker thread processes in a single stage. Must be greater than 0.
+    * @param samplerFactory
+    *           Creates the {@link Sampler} used by each rendering thread for pixel, lens, light and BRDF sampling.
+    */
+   public WavefrontPathTracer(final int wavefrontSize, final Sampler.Factory samplerFactory) {
+      if (wavefrontSize <= 0)
+         throw new IllegalArgumentException("Wavefront size must be > 0.");
+      this.wavefrontSize = wavefrontSize;
+      this.samplerFactory = samplerFactory;
+   }
+
+   /**
+    * Sets the frame number used to select the sample streams for subsequent calls to
+    * {@link #integrate(ImageBuffer, Scene, int, int)}. Renderings of the same scene with the same frame and pass are
+    * identical, regardless of the number of threads or the order in which tiles are processed.
+    * 
+    * @param frame
+    *           The frame number.
+    */
+   @Override
+   public void setFrame(final long frame) {
+      this.frame = frame;
+   }
+
+   public long getFrame() {
+      return frame;
+   }
+
+   /**
+    * Sets the sampling pass index used to select the sample streams for subsequent calls to
+    * {@link #integrate(ImageBuffer, Scene, int, int)}. Progressive renderers should use a different pass for each
+    * rendering of the same frame, so that the samples of each pass are independent.
+    * 
+    * @param pass
+    *           The pass index.
+    */
+   @Override
+   public void setPass(final int pass) {
+      this.pass = pass;
+   }
+
+   public int getPass() {
+      return pass;
+   }
+
+   /**
+    * @return The number of eye, bounce and shadow rays traced for the most recent image.
+    */
+   @Override
+   public long getRayCount() {
+      final StageStatistics[] stats = lastStats;
+      if (stats == null)
+         return 0;
+      return stats[WavefrontIntegrator.EXTEND].getItems() + stats[WavefrontIntegrator.SHADOW].getItems();
+   }
+
+   /**
+    * Asynchronously ray traces the specified scene given the camera position and ImageBuffer to store the results in.
+    *
+    * @param image
+    *           A non-null ImageBuffer. The dimensions of the ray-traced image are determined from the
+    *           {@link ImageBuffer#getResolution()} method synchronously with this call.
+    * @param scene
+    *           The non-null scene to render.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate. This value squared is the actual number of paths traced for each image
+    *           pixel. Must be greater than 0.
+    * @param recursionDepth
+    *           The maximum length of a ray path. 0 means trace eye rays and direct illumination only.
+    */
+   @Override
+   public void integrate(final ImageBuffer image, final Scene scene, final int pixelSampleRate, final int recursionDepth) {
+      submit(image, scene, pixelSampleRate, recursionDepth, RenderJob.NORMAL_PRIORITY);
+   }
+
+   /**
+    * Asynchronously ray traces the specified scene with the specified priority.
+    *
+    * @param image
+    *           A non-null ImageBuffer.
+    * @param scene
+    *           The non-null scene to render.
+    * @param pixelSampleRate
+    *           The linear super-sampling rate.
+    * @param recursionDepth
+    *           The maximum length of a ray path.
+    * @param priority
+    *           The priority of the rendering, see {@link RenderJob}.
+    * @return A handle to wait for or cancel the rendering.
+    */
+   @Override
+   public RenderJob submit(final ImageBuffer image, final Scene scene, final int pixelSampleRate,
+         final int recursionDepth, final int priority) {
+      final Dimension imageSize = image.getResolution();
+      image.imagingStarted();
+
+      /*
+       * Tiles are sized so that a single tile has about one wavefront worth of paths, the pool is refilled from the
+       * remaining samples of the tile as paths terminate.
+       */
+      final int blockSize = Math.max(2, (int) Math.sqrt(wavefrontSize) / pixelSampleRate);
+      final Rectangle[] imageChunks = IntegratorUtils.chunkRectangle(imageSize.width, imageSize.height, blockSize);
+      final StageStatistics[] stats = new StageStatistics[] { new StageStatistics("extend", "rays"),
+            new StageStatistics("shade", "paths"), new StageStatistics("shadow", "rays"),
+            new StageStatistics("compact", "eye rays") };
+      lastStats = stats;
+      /*
+       * Workers are created on the rendering threads, make sure the scene is initialized first.
+       */
+      scene.getGeometry();
+      scene.getLightSources();
+      final long frame = this.frame;
+      final int pass = this.pass;
+      return RenderJob.start(image, priority, imageChunks, pixelSampleRate * pixelSampleRate, new RenderJob.Work() {
+         @Override
+         RenderJob.TileWorker createWorker(final RenderJob job) {
+            return new WavefrontIntegrator(scene, job, pixelSampleRate, recursionDepth, wavefrontSize, stats, samplerFactory.createSampler(), frame, pass);
+         }
+
+         @Override
+         void completed(final RenderJob job) {
+            for (final StageStatistics stage : stats) {
+               stage.print();
+            }
+         }
+      });
+   }
+
+   /**
+    * Cancels rendering for the specified ImageBuffer (that was previously passed to
+    * {@link #integrate(ImageBuffer, Scene, int, int)}).
+    *
+    * <p>
+    * Rendering threads stop at the next wavefront iteration of the tile they are processing, and
+    * {@link ImageBuffer#imagingDone()} is called before this method returns. See {@link RenderJob#cancel()}.
+    *
+    * @param target
+    */
+   @Override
+   public void cancel(final ImageBuffer target) {
+      final RenderJob job = RenderJob.get(target);
+      if (job != null)
+         job.cancel();
+   }
+
+   /**
+    * Accumulated time and item counts for one stage of the wavefront, shared by all workers rendering the same image.
+    */
+   static final class StageStatistics {
+      private final String name;
+      private final String unit;
+      private final AtomicLong nanos = new AtomicLong();
+      private final AtomicLong items = new AtomicLong();
+
+      StageStatistics(final String name, final String unit) {
+         this.name = name;
+         this.unit = unit;
+      }
+
+      void add(final long elapsedNanos, final long itemCount) {
+         nanos.addAndGet(elapsedNanos);
+         items.addAndGet(itemCount);
+      }
+
+      long getItems() {
+         return items.get();
+      }
+
+      /**
+       * @return The number of items processed per second of (summed) thread time.
+       */
+      double getThroughput() {
+         final long time = nanos.get();
+         return time == 0 ? 0 : items.get() / (time / 1000000000.0);
+      }
+
+      void print() {
+         System.out.println("Stage [" + name + "]: " + IntegratorUtils.formatter.format(items.get()) + " " + unit
+                            + " in " + nanos.get() / 1000000000.0 + "s (thread time), "
+                            + IntegratorUtils.formatter.format(getThroughput()) + " " + unit + "/s");
+      }
+   }
+
+   static final class WavefrontIntegrator implements RenderJob.TileWorker {
+      private static final int EXTEND = 0;
+      private static final int SHADE = 1;
+      private static final int SHADOW = 2;
+      private static final int COMPACT = 3;
+
+      private final Sampler sampler;
+      private final long frame;
+      private final int pass;
+
+      private final int pixelSampleRate;
+      private final int recursionDepth;
+      private final RenderJob job;
+      private final Scene scene;
+      private final IntegratorUtils.DirectIlluminationSampler illumSampler;
+      private final StageStatistics[] stats;
+      private final long[] stageNanos = new long[4];
+      private final long[] stageItems = new long[4];
+
+      /*
+       * The path pool. The first activePaths entries are in flight, pathDepth and pathAlive are indexed in parallel and
+       * are moved along with the rays during compaction.
+       */
+      private final SampleRay[] paths;
+      private final int[] pathDepth;
+      private final boolean[] pathAlive;
+
+      /*
+       * Shading order, paths grouped by material type.
+       */
+      private final int[] shadeOrder;
+      private final int[] pathBucket;
+      private Class<?>[] materialTypes = new Class<?>[8];
+      private int[] bucketStart = new int[10];
+      private int materialTypeCount;
+
+      private final SampleRay[] shadowRays;
+      private final SampleRay[] eyeRay = new SampleRay[1];
+      private final Vec3 shadowOrigin = new Vec3();
+      private final Vec3 wo = new Vec3();
+      private final Color emission = new Color(0, 0, 0);
+      private final Color pathThroughput = new Color(0, 0, 0);
+
+      private float[] pixels;
+      private Rectangle rect;
+      private int nextSample;
+      private int tileSamples;
+
+      public WavefrontIntegrator(final Scene scene, final RenderJob job, final int pixelSampleRate,
+            final int recursionDepth, final int wavefrontSize, final StageStatistics[] stats, final Sampler sampler,
+            final long frame, final int pass) {
+         this.sampler = sampler;
+         this.frame = frame;
+         this.pass = pass;
+         this.recursionDepth = recursionDepth;
+         this.job = job;
+         this.scene = scene;
+         this.pixelSampleRate = pixelSampleRate;
+         this.stats = stats;
+         illumSampler = new IntegratorUtils.DirectIlluminationSampler(sampler, scene.getLightSources(), scene.getGeometry());
+
+         paths = new SampleRay[wavefrontSize];
+         for (int i = 0; i < wavefrontSize; ++i) {
+            paths[i] = new SampleRay(1);
+         }
+         pathDepth = new int[wavefrontSize];
+         pathAlive = new boolean[wavefrontSize];
+         shadeOrder = new int[wavefrontSize];
+         pathBucket = new int[wavefrontSize];
+         shadowRays = new SampleRay[wavefrontSize * ILLUMINATION_SAMPLES];
+         for (int i = 0; i < shadowRays.length; ++i) {
+            shadowRays[i] = new SampleRay(1);
+         }
+      }
+
+      @Override
+      public void render(final Rectangle tile) {
+         rect = tile;
+         sampler.setStream(frame, IntegratorUtils.tileKey(rect), pass);
+         final int pixelCount = rect.width * rect.height * 3;
+         if (pixels == null || pixels.length < pixelCount) {
+            pixels = new float[pixelCount];
+         } else {
+            Arrays.fill(pixels, 0);
+         }
+         Arrays.fill(stageNanos, 0);
+         Arrays.fill(stageItems, 0);
+
+         nextSample = 0;
+         tileSamples = pixelSampleRate * pixelSampleRate * rect.width * rect.height;
+         integrateTile();
+
+         /* Put results back into image buffer */
+         final float pixelNormalization = 1.0f / (pixelSampleRate * pixelSampleRate);
+         for (int i = 0; i < pixels.length; ++i) {
+            pixels[i] *= pixelNormalization;
+         }
+         for (int i = 0; i < stats.length; ++i) {
+            stats[i].add(stageNanos[i], stageItems[i]);
+         }
+         job.deliver(rect.x, rect.y, rect.width, rect.height, pixels);
+      }
+
+      private void integrateTile() {
+         final Geometry[] geometry = scene.getGeometry();
+         int activePaths = 0;
+         long time = System.nanoTime();
+         do {
+            /* Compaction/refill */
+            activePaths = refill(activePaths);
+            long now = System.nanoTime();
+            stageNanos[COMPACT] += now - time;
+            if (activePaths == 0 || job.yieldPoint())
+               break;
+            /*
+             * Tiles of other jobs may have been rendered by the yield point.
+             */
+            time = System.nanoTime();
+
+            /* Extend */
+            IntegratorUtils.processHits(paths, activePaths, geometry);
+            now = System.nanoTime();
+            stageNanos[EXTEND] += now - time;
+            stageItems[EXTEND] += activePaths;
+            time = now;
+
+            /* Shade */
+            bucketByMaterial(activePaths);
+            final int shadowRayCount = shade(activePaths);
+            now = System.nanoTime();
+            stageNanos[SHADE] += now - time;
+            stageItems[SHADE] += activePaths;
+            time = now;
+
+            /* Shadow */
+            IntegratorUtils.processObstructions(shadowRays, shadowRayCount, geometry);
+            for (int i = 0; i < shadowRayCount; ++i) {
+               final SampleRay shadowRay = shadowRays[i];
+               if (shadowRay.hitGeometry != null) {
+                  updateImage((int) shadowRay.pixelX, (int) shadowRay.pixelY, shadowRay.throughput.r, shadowRay.throughput.g, shadowRay.throughput.b);
+               }
+            }
+            now = System.nanoTime();
+            stageNanos[SHADOW] += now - time;
+            stageItems[SHADOW] += shadowRayCount;
+            time = now;
+
+            activePaths = compact(activePaths);
+         } while (true);
+      }
+
+      /**
+       * Removes terminated paths from the pool, preserving the order of the remaining paths.
+       *
+       * @return The number of paths still in flight.
+       */
+      private int compact(final int activePaths) {
+         int outIdx = 0;
+         for (int i = 0; i < activePaths; ++i) {
+            if (pathAlive[i]) {
+               if (i != outIdx) {
+                  final SampleRay tmp = paths[outIdx];
+                  paths[outIdx] = paths[i];
+                  paths[i] = tmp;
+               }
+               pathDepth[outIdx] = pathDepth[i] + 1;
+               ++outIdx;
+            }
+         }
+         return outIdx;
+      }
+
+      /**
+       * Fills free slots at the end of the path pool with eye rays for pixel samples that have not been traced yet.
+       *
+       * @return The number of paths in flight after the refill.
+       */
+      private int refill(int activePaths) {
+         final Dimension imageSize = job.getImage().getResolution();
+         final Camera camera = scene.getCamera();
+         final int samplesPerPixel = pixelSampleRate * pixelSampleRate;
+         final int start = activePaths;
+         while (activePaths < paths.length && nextSample < tileSamples) {
+            final int pixel = nextSample / samplesPerPixel;
+            final int stratum = nextSample % samplesPerPixel;
+            final SampleRay ray = paths[activePaths];
+            final int x = pixel % rect.width;
+            final int y = pixel / rect.width;
+            /*
+             * Pixel location, followed by the lens sample in the camera.
+             */
+            sampler.startSample(rect.x + x, rect.y + y, stratum, Sampler.PIXEL_DIMENSION);
+            ray.pixelX = x + sampler.nextDouble();
+            ray.pixelY = y + sampler.nextDouble();
+            ray.sampleIndex = stratum;
+            ray.throughput.set(1);
+            ray.specularBounce = true;
+            ray.extinction.clear();
+            eyeRay[0] = ray;
+            camera.sample(eyeRay, imageSize.width, imageSize.height, rect.x, rect.y, sampler);
+            pathDepth[activePaths] = 0;
+            ++activePaths;
+            ++nextSample;
+         }
+         stageItems[COMPACT] += activePaths - start;
+         return activePaths;
+      }
+
+      /**
+       * Computes a shading order for the active paths such that paths that hit the same type of material are processed
+       * consecutively. Paths that did not hit anything are shaded first.
+       */
+      private void bucketByMaterial(final int activePaths) {
+         for (int i = 0; i < activePaths; ++i) {
+            final SampleRay ray = paths[i];
+            pathBucket[i] = (ray.hitGeometry == null) ? 0 : materialTypeIndex(ray.intersection.material.getClass()) + 1;
+         }
+         /*
+          * Counting sort on the bucket index.
+          */
+         if (bucketStart.length < materialTypeCount + 2) {
+            bucketStart = new int[materialTypes.length + 2];
+         } else {
+            Arrays.fill(bucketStart, 0, materialTypeCount + 2, 0);
+         }
+         for (int i = 0; i < activePaths; ++i) {
+            ++bucketStart[pathBucket[i] + 1];
+         }
+         for (int i = 1; i <= materialTypeCount + 1; ++i) {
+            bucketStart[i] += bucketStart[i - 1];
+         }
+         for (int i = 0; i < activePaths; ++i) {
+            shadeOrder[bucketStart[pathBucket[i]]++] = i;
+         }
+      }
+
+      private int materialTypeIndex(final Class<?> type) {
+         for (int i = 0; i < materialTypeCount; ++i) {
+            if (materialTypes[i] == type)
+               return i;
+         }
+         if (materialTypeCount == materialTypes.length) {
+            materialTypes = Arrays.copyOf(materialTypes, materialTypeCount * 2);
+         }
+         materialTypes[materialTypeCount] = type;
+         return materialTypeCount++;
+      }
+
+      /**
+       * Shades all active paths in bucket order, generating shadow rays and the next bounce ray (in place) for each path.
+       *
+       * @return The number of shadow rays generated.
+       */
+      private int shade(final int activePaths) {
+         final Color bg = scene.getBackground();
+         int shadowRayCount = 0;
+         for (int orderIdx = 0; orderIdx < activePaths; ++orderIdx) {
+            final int pathIdx = shadeOrder[orderIdx];
+            final SampleRay ray = paths[pathIdx];
+            final int rayDepth = pathDepth[pathIdx];
+            pathAlive[pathIdx] = false;
+
+            if (ray.hitGeometry == null) {
+               updateImage((int) ray.pixelX, (int) ray.pixelY, bg.r * ray.throughput.r, bg.g * ray.throughput.g, bg.b
+                           * ray.throughput.b);
+               continue;
+            }
+
+            sampler.startSample(rect.x + (int) ray.pixelX, rect.y + (int) ray.pixelY, ray.sampleIndex, Sampler.bounceDimension(rayDepth));
+
+            /*
+             * Emission is only counted for eye rays and specular bounces, diffuse surfaces sample emitters explicitly
+             * (see PathTracer).
+             */
+            if (ray.specularBounce) {
+               ray.intersection.material.getEmissionColor(emission, ray, ray.intersection);
+            } else
+               emission.clear();
+
+            pathThroughput.set(ray.throughput.r
+                               * (ray.extinction.r == 0.0 ? 1.0 : Math.exp(Math.log(ray.extinction.r) * ray.t)), ray.throughput.g
+                               * (ray.extinction.g == 0.0 ? 1.0 : Math.exp(Math.log(ray.extinction.g) * ray.t)), ray.throughput.b
+                               * (ray.extinction.b == 0.0 ? 1.0 : Math.exp(Math.log(ray.extinction.b) * ray.t)));
+            updateImage((int) ray.pixelX, (int) ray.pixelY, pathThroughput.r * emission.r, pathThroughput.g
+                        * emission.g, pathThroughput.b * emission.b);
+
+            wo.set(ray.direction).multiply(-1);
+            if (ray.intersection.material.isDiffuse()) {
+               ray.getPointOnRay(shadowOrigin, ray.t);
+               shadowOrigin.scaleAdd(ray.intersection.surfaceNormal, Constants.EPSILON_D);
+               shadowRayCount += illumSampler.generateShadowRays(shadowRays, shadowRayCount, shadowOrigin, ray.intersection, wo, pathThroughput, ray.pixelX, ray.pixelY, ILLUMINATION_SAMPLES);
+            }
+
+            if (rayDepth < recursionDepth) {
+               final double rrProbability = Math.min(1.0 / (recursionDepth + 1), 1.0 - ImageUtil.luminance((float) pathThroughput.r, (float) pathThroughput.g, (float) pathThroughput.b));
+               /*
+                * Russian roulette has its own dimension whether or not it is used at this depth, see Sampler.
+                */
+               final double roulette = sampler.sampleOffset(Sampler.ROULETTE_OFFSET);
+               if (rayDepth < 2 || roulette >= rrProbability) {
+                  /*
+                   * The bounce ray replaces the current ray in the pool, the intersection info is still valid until
+                   * sampleBRDF returns.
+                   */
+                  ray.getPointOnRay(ray.origin, ray.t);
+                  ray.reset();
+                  sampler.setDimensionOffset(Sampler.BRDF_OFFSET);
+                  final double pdf = ray.intersection.material.sampleBRDF(ray, wo, ray.intersection, sampler);
+                  if (pdf > 0 && !ray.throughput.isZero()) {
+                     if (rayDepth >= 2)
+                        ray.throughput.multiply(1 / (1 - rrProbability));
+                     ray.throughput.multiply(pathThroughput);
+                     ray.throughput.multiply(Math.abs(ray.intersection.surfaceNormal.dot(ray.direction)) / pdf);
+                     ray.origin.scaleAdd(ray.direction, Constants.EPSILON_D);
+                     pathAlive[pathIdx] = true;
+                  }
+               }
+            }
+         }
+         return shadowRayCount;
+      }
+
+      private final void updateImage(final int x, final int y, final double r, final double g, final double b) {
+         final int dst = 3 * (y * rect.width + x);
+         pixels[dst] += r;
+         pixels[dst + 1] += g;
+         pixels[dst + 2] += b;
+      }
+   }
+}
@@ -0,0 +1,199 @@
+package edu.rit.krisher.raytracer.image;
+
+import java.awt.Dimension;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Accumulates the results of multiple independent rendering passes of the same image, to compute the average of all
+ * passes. Sums are kept in double precision so that many passes can be accumulated without significant loss of
+ * precision, and the number of samples is tracked for each pixel, so passes may use different sampling rates.
+ *
+ * <p>
+ * Instances are thread safe.
+ *
+ * @author krisher
+ *
+ */
+public final class AccumulationBuffer {
+
+   private final Dimension size;
+   private final double[] sum;
+   private final int[] sampleCount;
+   private int passCount;
+
+   /**
+    * Creates a new empty accumulation buffer.
+    *
+    * @param width
+    *           The width of the image in pixels.
+    * @param height
+    *           The height of the image in pixels.
+    */
+   public AccumulationBuffer(final int width, final int height) {
+      size = new Dimension(width, height);
+      sum = new double[width * height * 3];
+      sampleCount = new int[width * height];
+   }
+
+   public Dimension getResolution() {
+      return new Dimension(size);
+   }
+
+   /**
+    * Adds the pixels of one rendering pass, with one sample per pixel.
+    *
+    * @param rgb
+    *           A non-null array of 3 floats per pixel, in the same pixel order as all other passes.
+    */
+   public void addPass(final float[] rgb) {
+      addPass(rgb, 1);
+   }
+
+   /**
+    * Adds the pixels of one rendering pass.
+    *
+    * @param rgb
+    *           A non-null array of 3 floats per pixel, in the same pixel order as all other passes. Each value is the
+    *           average of samplesPerPixel samples.
+    * @param samplesPerPixel
+    *           The number of samples that were averaged for each pixel of the pass.
+    */
+   public synchronized void addPass(final float[] rgb, final int samplesPerPixel) {
+      if (rgb.length != sum.length)
+         throw new IllegalArgumentException("Expected " + sum.length + " values, found " + rgb.length);
+      for (int i = 0; i < sum.length; ++i) {
+         sum[i] += rgb[i] * (double) samplesPerPixel;
+      }
+      for (int i = 0; i < sampleCount.length; ++i) {
+         sampleCount[i] += samplesPerPixel;
+      }
+      ++passCount;
+   }
+
+   /**
+    * Adds the pixels of a rectangular region of a rendering pass, for passes that were stopped before all pixels were
+    * rendered. The pass count is not changed.
+    *
+    * @param x
+    *           The x coordinate of the region.
+    * @param y
+    *           The y coordinate of the region.
+    * @param w
+    *           The width of the region.
+    * @param h
+    *           The height of the region.
+    * @param rgb
+    *           A non-null array of 3 floats per pixel for the entire image, in the same pixel order as all other
+    *           passes. Only the values in the region are used.
+    * @param samplesPerPixel
+    *           The number of samples that were averaged for each pixel of the region.
+    */
+   public synchronized void addRegion(final int x, final int y, final int w, final int h, final float[] rgb,
+         final int samplesPerPixel) {
+      if (rgb.length != sum.length)
+         throw new IllegalArgumentException("Expected " + sum.length + " values, found " + rgb.length);
+      for (int row = y; row < y + h; ++row) {
+         for (int pixel = row * size.width + x; pixel < row * size.width + x + w; ++pixel) {
+            final int offset = 3 * pixel;
+            sum[offset] += rgb[offset] * (double) samplesPerPixel;
+            sum[offset + 1] += rgb[offset + 1] * (double) samplesPerPixel;
+            sum[offset + 2] += rgb[offset + 2] * (double) samplesPerPixel;
+            sampleCount[pixel] += samplesPerPixel;
+         }
+      }
+   }
+
+   /**
+    * @return The number of passes added so far.
+    */
+   public synchronized int getPassCount() {
+      return passCount;
+   }
+
+   /**
+    * @param x
+    *           The x coordinate of the pixel.
+    * @param y
+    *           The y coordinate of the pixel.
+    * @return The number of samples accumulated for the pixel.
+    */
+   public synchronized int getSampleCount(final int x, final int y) {
+      return sampleCount[y * size.width + x];
+   }
+
+   /**
+    * @return The smallest number of samples accumulated for any pixel.
+    */
+   public synchronized int getMinSampleCount() {
+      int min = Integer.MAX_VALUE;
+      for (final int count : sampleCount) {
+         min = Math.min(min, count);
+      }
+      return min;
+   }
+
+   /**
+    * @return The number of samples accumulated for all pixels.
+    */
+   public synchronized long getTotalSampleCount() {
+      long total = 0;
+      for (final int count : sampleCount) {
+         total += count;
+      }
+      return total;
+   }
+
+   /**
+    * Computes the average of all samples for each pixel.
+    *
+    * @param rgbOut
+    *           A non-null array of at least 3 floats per pixel to store the result in. Pixels without samples are
+    *           black.
+    */
+   public synchronized void getAverage(final float[] rgbOut) {
+      for (int pixel = 0; pixel < sampleCount.length; ++pixel) {
+         final double scale = sampleCount[pixel] == 0 ? 0 : 1.0 / sampleCount[pixel];
+         final int offset = 3 * pixel;
+         rgbOut[offset] = (float) (sum[offset] * scale);
+         rgbOut[offset + 1] = (float) (sum[offset + 1] * scale);
+         rgbOut[offset + 2] = (float) (sum[offset + 2] * scale);
+      }
+   }
+
+   /**
+    * Writes the accumulated state (excluding the resolution) to a stream.
+    *
+    * @param out
+    *           The non-null stream to write to.
+    * @throws IOException
+    */
+   public synchronized void write(final DataOutputStream out) throws IOException {
+      out.writeInt(passCount);
+      for (final double value : sum) {
+         out.writeDouble(value);
+      }
+      for (final int count : sampleCount) {
+         out.writeInt(count);
+      }
+   }
+
+   /**
+    * Replaces the accumulated state with state previously written by {@link #write(DataOutputStream)} from a buffer
+    * of the same resolution.
+    *
+    * @param in
+    *           The non-null stream to read from.
+    * @throws IOException
+    */
+   public synchronized void read(final DataInputStream in) throws IOException {
+      passCount = in.readInt();
+      for (int i = 0; i < sum.length; ++i) {
+         sum[i] = in.readDouble();
+      }
+      for (int i = 0; i < sampleCount.length; ++i) {
+         sampleCount[i] = in.readInt();
+      }
+   }
+}
@@ -0,0 +1,71 @@
+package edu.rit.krisher.raytracer.image;
+
+import java.awt.Dimension;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ImageBuffer that stores the rgb values of a single rendering in an array, in the pixel order used by integrators (row
+ * y of the image starts at index 3 * y * width). A thread may wait for the rendering to complete with
+ * {@link #awaitCompletion(long, TimeUnit)}.
+ *
+ * @author krisher
+ *
+ */
+public final class FloatImageBuffer implements ImageBuffer {
+
+   private final Dimension size;
+   private final float[] pixels;
+   private final CountDownLatch done = new CountDownLatch(1);
+
+   public FloatImageBuffer(final int width, final int height) {
+      size = new Dimension(width, height);
+      pixels = new float[width * height * 3];
+   }
+
+   @Override
+   public Dimension getResolution() {
+      return size;
+   }
+
+   @Override
+   public void setPixels(final int x, final int y, final int w, final int h, final float[] tile) {
+      for (int row = 0; row < h; ++row) {
+         System.arraycopy(tile, 3 * row * w, pixels, 3 * ((y + row) * size.width + x), 3 * w);
+      }
+   }
+
+   @Override
+   public void imagingStarted() {
+   }
+
+   @Override
+   public void imagingDone() {
+      done.countDown();
+   }
+
+   /**
+    * Blocks until {@link #imagingDone()} has been called.
+    *
+    * @param timeout
+    *           The maximum time to wait, or a value <= 0 to wait indefinitely.
+    * @param unit
+    *           The unit of the timeout.
+    * @return true if rendering completed, false if the timeout elapsed first.
+    * @throws InterruptedException
+    */
+   public boolean awaitCompletion(final long timeout, final TimeUnit unit) throws InterruptedException {
+      if (timeout <= 0) {
+         done.await();
+         return true;
+      }
+      return done.await(timeout, unit);
+   }
+
+   /**
+    * @return The (live) pixel array, 3 floats per pixel.
+    */
+   public float[] getPixels() {
+      return pixels;
+   }
+}
@@ -0,0 +1,74 @@
+package edu.rit.krisher.raytracer.image;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Methods for writing rendered images to files.
+ *
+ * @author krisher
+ *
+ */
+public final class ImageFiles {
+
+   private ImageFiles() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   /**
+    * Writes a (tone-mapped) image as a PNG file.
+    *
+    * @param image
+    *           The non-null image to write.
+    * @param file
+    *           The destination file, which is overwritten if it exists.
+    * @throws IOException
+    *            If the file could not be written.
+    */
+   public static void writePNG(final BufferedImage image, final File file) throws IOException {
+      if (!ImageIO.write(image, "png", file))
+         throw new IOException("No PNG writer available for image type " + image.getType());
+   }
+
+   /**
+    * Writes floating point RGB pixel values as a portable float map (PFM) file.
+    *
+    * @param rgb
+    *           A non-null array of 3 floats per pixel, with rows ordered from the top of the image to the bottom.
+    * @param size
+    *           The size of the image.
+    * @param file
+    *           The destination file, which is overwritten if it exists.
+    * @throws IOException
+    *            If the file could not be written.
+    */
+   public static void writePFM(final float[] rgb, final Dimension size, final File file) throws IOException {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+         /*
+          * A positive scale indicates big-endian data, which is what DataOutputStream writes.
+          */
+         out.writeBytes("PF\n" + size.width + " " + size.height + "\n1.0\n");
+         /*
+          * PFM stores rows from the bottom of the image to the top.
+          */
+         for (int y = size.height - 1; y >= 0; --y) {
+            final int rowStart = 3 * y * size.width;
+            for (int i = 0; i < 3 * size.width; ++i) {
+               out.writeFloat(rgb[rowStart + i]);
+            }
+         }
+      } finally {
+         out.close();
+      }
+   }
+}
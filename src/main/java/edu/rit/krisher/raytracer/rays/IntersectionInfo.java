@@ -20,6 +20,10 @@ public class IntersectionInfo {
     * parameterize.
     */
    public double[] materialCoords;
+   /**
+    * Storage that geometry may use for up to 3 {@link #materialCoords}, to avoid allocating an array for each hit.
+    */
+   public final double[] materialCoordStorage = new double[3];
    /**
     * The surface normal at the hit location.
     */
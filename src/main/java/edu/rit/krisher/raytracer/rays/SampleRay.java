@@ -16,6 +16,11 @@ public class SampleRay extends GeometryRay {
    public double pixelX;
    public double pixelY;
 
+   /**
+    * The index of the pixel sample (within its pixel) that this ray's path belongs to.
+    */
+   public int sampleIndex;
+
    /**
     * The spectral power distribution for this sample, may be used for reflectance ratios or power.
     */
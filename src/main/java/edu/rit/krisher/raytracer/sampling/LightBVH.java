@@ -0,0 +1,169 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.rit.krisher.scene.EmissiveGeometry;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * {@link LightSampler} for scenes with many lights. Lights are organized in a binary bounding volume hierarchy, where
+ * each node stores the total power and bounds of the lights below it. A light is selected by walking from the root to a
+ * leaf, choosing each child with probability proportional to its estimated contribution at the illuminated point
+ * (power divided by the squared distance to the node, clamped to the node extent so points inside or near a cluster do
+ * not blow up the estimate).
+ * 
+ * <p>
+ * Selection costs O(log(n)) in the number of lights, but concentrates samples on nearby and bright lights rather than
+ * on the lights that are brightest overall.
+ * 
+ * <p>
+ * Where neither child of a node has a positive estimate (for example if no light reports a positive power), the child
+ * is chosen in proportion to the number of lights below it, so all lights are then selected with equal probability.
+ * 
+ * @author krisher
+ * 
+ */
+public final class LightBVH implements LightSampler {
+
+   /*
+    * Largest double less than 1, used to keep the rescaled random number in [0, 1).
+    */
+   private static final double ONE_MINUS_EPSILON = 0x1.fffffffffffffp-1;
+
+   /*
+    * Node data, indexed by node; node 0 is the root. Interior nodes store the index of the first child in nodeChild
+    * (the second child immediately follows), leaf nodes store -(lightIndex + 1).
+    */
+   private final double[] nodeCenter;
+   private final double[] nodeRadiusSq;
+   private final double[] nodePower;
+   private final int[] nodeLightCount;
+   private final int[] nodeChild;
+   private final EmissiveGeometry[] lights;
+   private int nodeCount;
+
+   /**
+    * Builds a light BVH over the specified lights.
+    * 
+    * @param lights
+    *           The non-null list of lights to select from.
+    */
+   public LightBVH(final EmissiveGeometry[] lights) {
+      this.lights = lights;
+      final int maxNodes = Math.max(1, 2 * lights.length - 1);
+      nodeCenter = new double[3 * maxNodes];
+      nodeRadiusSq = new double[maxNodes];
+      nodePower = new double[maxNodes];
+      nodeLightCount = new int[maxNodes];
+      nodeChild = new int[maxNodes];
+      if (lights.length == 0)
+         return;
+
+      final double[] centers = new double[3 * lights.length];
+      final double[] powers = new double[lights.length];
+      final AxisAlignedBoundingBox[] bounds = new AxisAlignedBoundingBox[lights.length];
+      final Integer[] order = new Integer[lights.length];
+      for (int i = 0; i < lights.length; ++i) {
+         bounds[i] = lights[i].getBounds(Geometry.ALL_PRIMITIVES);
+         final double[] xyzxyz = bounds[i].xyzxyz;
+         centers[3 * i] = (xyzxyz[0] + xyzxyz[3]) * 0.5;
+         centers[3 * i + 1] = (xyzxyz[1] + xyzxyz[4]) * 0.5;
+         centers[3 * i + 2] = (xyzxyz[2] + xyzxyz[5]) * 0.5;
+         powers[i] = Math.max(0, lights[i].getEmittedPower());
+         order[i] = i;
+      }
+      nodeCount = 1;
+      build(0, order, 0, lights.length, centers, powers, bounds);
+   }
+
+   /**
+    * Recursively initializes the node at nodeIdx from the lights in order[start, end), splitting at the median
+    * centroid along the widest axis.
+    */
+   private void build(final int nodeIdx, final Integer[] order, final int start, final int end,
+         final double[] centers, final double[] powers, final AxisAlignedBoundingBox[] bounds) {
+      final AxisAlignedBoundingBox nodeBounds = new AxisAlignedBoundingBox();
+      final AxisAlignedBoundingBox centroidBounds = new AxisAlignedBoundingBox();
+      double power = 0;
+      for (int i = start; i < end; ++i) {
+         final int light = order[i];
+         nodeBounds.union(bounds[light]);
+         centroidBounds.union(new AxisAlignedBoundingBox(centers[3 * light], centers[3 * light + 1], centers[3 * light + 2], centers[3 * light], centers[3 * light + 1], centers[3 * light + 2]));
+         power += powers[light];
+      }
+      final double[] xyzxyz = nodeBounds.xyzxyz;
+      nodeCenter[3 * nodeIdx] = (xyzxyz[0] + xyzxyz[3]) * 0.5;
+      nodeCenter[3 * nodeIdx + 1] = (xyzxyz[1] + xyzxyz[4]) * 0.5;
+      nodeCenter[3 * nodeIdx + 2] = (xyzxyz[2] + xyzxyz[5]) * 0.5;
+      final double halfDiagonal = nodeBounds.diagonalLength() * 0.5;
+      nodeRadiusSq[nodeIdx] = halfDiagonal * halfDiagonal;
+      nodePower[nodeIdx] = power;
+      nodeLightCount[nodeIdx] = end - start;
+
+      if (end - start == 1) {
+         nodeChild[nodeIdx] = -(order[start] + 1);
+         return;
+      }
+
+      final double[] spans = { centroidBounds.xSpan(), centroidBounds.ySpan(), centroidBounds.zSpan() };
+      final int axis = (spans[0] >= spans[1] && spans[0] >= spans[2]) ? 0 : (spans[1] >= spans[2] ? 1 : 2);
+      Arrays.sort(order, start, end, new Comparator<Integer>() {
+         @Override
+         public int compare(final Integer o1, final Integer o2) {
+            return Double.compare(centers[3 * o1 + axis], centers[3 * o2 + axis]);
+         }
+      });
+      final int mid = (start + end) >>> 1;
+      final int firstChild = nodeCount;
+      nodeCount += 2;
+      nodeChild[nodeIdx] = firstChild;
+      build(firstChild, order, start, mid, centers, powers, bounds);
+      build(firstChild + 1, order, mid, end, centers, powers, bounds);
+   }
+
+   /*
+    * @see edu.rit.krisher.raytracer.sampling.LightSampler#sampleLight(edu.rit.krisher.vecmath.Vec3, double, double[])
+    */
+   @Override
+   public EmissiveGeometry sampleLight(final Vec3 point, final double r, final double[] pdfOut) {
+      if (lights.length == 0)
+         return null;
+      double u = Math.min(r, ONE_MINUS_EPSILON);
+      double pdf = 1.0;
+      int node = 0;
+      while (nodeChild[node] >= 0) {
+         final int left = nodeChild[node];
+         double leftImportance = importance(left, point);
+         double total = leftImportance + importance(left + 1, point);
+         if (!(total > 0) || Double.isInfinite(total)) {
+            leftImportance = nodeLightCount[left];
+            total = nodeLightCount[node];
+         }
+         final double leftProbability = leftImportance / total;
+         if (u < leftProbability) {
+            u = Math.min(u / leftProbability, ONE_MINUS_EPSILON);
+            pdf *= leftProbability;
+            node = left;
+         } else {
+            u = Math.min((u - leftProbability) / (1.0 - leftProbability), ONE_MINUS_EPSILON);
+            pdf *= 1.0 - leftProbability;
+            node = left + 1;
+         }
+      }
+      pdfOut[0] = pdf;
+      return lights[-nodeChild[node] - 1];
+   }
+
+   private double importance(final int node, final Vec3 point) {
+      final double dx = nodeCenter[3 * node] - point.x;
+      final double dy = nodeCenter[3 * node + 1] - point.y;
+      final double dz = nodeCenter[3 * node + 2] - point.z;
+      final double distSq = Math.max(dx * dx + dy * dy + dz * dz, nodeRadiusSq[node]);
+      if (distSq <= 0)
+         return nodePower[node];
+      return nodePower[node] / distSq;
+   }
+}
@@ -0,0 +1,30 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import edu.rit.krisher.scene.EmissiveGeometry;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Strategy for selecting one of the lights in a scene for direct illumination of a surface point.
+ * 
+ * <p>
+ * Implementations must be thread safe.
+ * 
+ * @author krisher
+ * 
+ */
+public interface LightSampler {
+
+   /**
+    * Selects a light for direct illumination sampling of the specified point.
+    * 
+    * @param point
+    *           The surface point that is being illuminated.
+    * @param r
+    *           A uniform random number in [0, 1).
+    * @param pdfOut
+    *           A non-null array of at least one element, the probability of selecting the returned light is stored in
+    *           the first element. Contributions from the selected light should be divided by this value.
+    * @return The selected light, or null if no light can contribute (in which case pdfOut is undefined).
+    */
+   public EmissiveGeometry sampleLight(Vec3 point, double r, double[] pdfOut);
+}
@@ -0,0 +1,121 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import edu.rit.krisher.scene.EmissiveGeometry;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * {@link LightSampler} that selects lights with probability proportional to their emitted power (see
+ * {@link EmissiveGeometry#getEmittedPower()}), independent of the illuminated point. Selection is constant time using
+ * an alias table (Vose's method).
+ * 
+ * <p>
+ * If no light reports a positive power, all lights are selected with equal probability.
+ * 
+ * @author krisher
+ * 
+ */
+public final class PowerLightSampler implements LightSampler {
+
+   private final EmissiveGeometry[] lights;
+   /*
+    * Selection probability of each light.
+    */
+   private final double[] pdf;
+   /*
+    * Probability of keeping the light at each index, rather than its alias.
+    */
+   private final double[] keepProbability;
+   private final int[] alias;
+
+   /**
+    * Creates a new power-proportional light sampler.
+    * 
+    * @param lights
+    *           The non-null list of lights to select from.
+    */
+   public PowerLightSampler(final EmissiveGeometry[] lights) {
+      this.lights = lights;
+      final int count = lights.length;
+      pdf = new double[count];
+      keepProbability = new double[count];
+      alias = new int[count];
+      if (count == 0)
+         return;
+
+      double totalPower = 0;
+      for (int i = 0; i < count; ++i) {
+         pdf[i] = Math.max(0, lights[i].getEmittedPower());
+         totalPower += pdf[i];
+      }
+      for (int i = 0; i < count; ++i) {
+         pdf[i] = (totalPower > 0) ? pdf[i] / totalPower : 1.0 / count;
+      }
+
+      /*
+       * Vose's alias method: partition scaled probabilities into those less than and greater than the average, then pair
+       * each small entry with a large one.
+       */
+      final double[] scaled = new double[count];
+      final int[] small = new int[count];
+      final int[] large = new int[count];
+      int smallCount = 0;
+      int largeCount = 0;
+      for (int i = 0; i < count; ++i) {
+         scaled[i] = pdf[i] * count;
+         if (scaled[i] < 1.0)
+            small[smallCount++] = i;
+         else
+            large[largeCount++] = i;
+      }
+      while (smallCount > 0 && largeCount > 0) {
+         final int less = small[--smallCount];
+         final int more = large[--largeCount];
+         keepProbability[less] = scaled[less];
+         alias[less] = more;
+         scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+         if (scaled[more] < 1.0)
+            small[smallCount++] = more;
+         else
+            large[largeCount++] = more;
+      }
+      /*
+       * Remaining entries have probability 1 (up to round-off error).
+       */
+      while (largeCount > 0) {
+         final int idx = large[--largeCount];
+         keepProbability[idx] = 1.0;
+         alias[idx] = idx;
+      }
+      while (smallCount > 0) {
+         final int idx = small[--smallCount];
+         keepProbability[idx] = 1.0;
+         alias[idx] = idx;
+      }
+   }
+
+   /*
+    * @see edu.rit.krisher.raytracer.sampling.LightSampler#sampleLight(edu.rit.krisher.vecmath.Vec3, double, double[])
+    */
+   @Override
+   public EmissiveGeometry sampleLight(final Vec3 point, final double r, final double[] pdfOut) {
+      final int count = lights.length;
+      if (count == 0)
+         return null;
+      final double scaled = r * count;
+      final int idx = Math.min((int) scaled, count - 1);
+      final int selected = (scaled - idx < keepProbability[idx]) ? idx : alias[idx];
+      pdfOut[0] = pdf[selected];
+      return lights[selected];
+   }
+
+   /**
+    * Gets the probability that the light at the specified index will be selected.
+    * 
+    * @param lightIdx
+    *           The index of the light in the array this sampler was constructed with.
+    * @return The selection probability.
+    */
+   public double getProbability(final int lightIdx) {
+      return pdf[lightIdx];
+   }
+}
@@ -0,0 +1,25 @@
+package edu.rit.krisher.raytracer.sampling;
+
+/**
+ * {@link Sampler} that returns independent pseudo-random values for every dimension, ignoring the pixel and sample
+ * index.
+ * 
+ * @author krisher
+ * 
+ */
+public final class RandomSampler extends Sampler {
+
+   private static final long serialVersionUID = 1L;
+
+   public static final Factory FACTORY = new Factory() {
+      @Override
+      public Sampler createSampler() {
+         return new RandomSampler();
+      }
+   };
+
+   @Override
+   protected double sample(final int dim) {
+      return fallback.nextDouble();
+   }
+}
@@ -0,0 +1,243 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import java.util.Random;
+
+/**
+ * Source of sample values for Monte Carlo integration, organized by pixel, sample index (within the pixel), and
+ * dimension.
+ * 
+ * <p>
+ * A Sampler is a {@link Random} so that it can be passed to existing sampling code (cameras, materials, lights, and
+ * {@link SamplingUtils}) unchanged. After {@link #startSample(int, int, int, int)} selects a pixel sample and starting
+ * dimension, each call to {@link #nextDouble()}, {@link #nextFloat()} or {@link #nextInt(int)} returns the value for
+ * the current dimension, then advances to the next dimension. Implementations may return well distributed
+ * (low-discrepancy) values across the samples of a pixel for each dimension, and decorrelate the values between pixels
+ * and dimensions. Other methods of Random are not part of the sequence and return pseudo-random values.
+ * 
+ * <p>
+ * Dimensions are allocated as follows, so that the same kind of decision draws from the same dimension for every
+ * sample of a pixel:
+ * <ul>
+ * <li>{@link #PIXEL_DIMENSION}: 2 dimensions for the location within the pixel.</li>
+ * <li>{@link #LENS_DIMENSION}: 2 dimensions for camera lens sampling.</li>
+ * <li>{@link #bounceDimension(int)}: {@link #DIMENSIONS_PER_BOUNCE} dimensions for each path vertex, at fixed offsets
+ * from the first dimension of the vertex:
+ * <ul>
+ * <li>{@link #LIGHT_SAMPLE_OFFSET}: (u, v) of the first light sample.</li>
+ * <li>{@link #BRDF_OFFSET}: (u, v) of the BRDF sample.</li>
+ * <li>{@link #LIGHT_SELECT_OFFSET}: light selection.</li>
+ * <li>{@link #ROULETTE_OFFSET}: Russian roulette.</li>
+ * <li>{@link #LOBE_SELECT_OFFSET}: selection of a component of a composite material.</li>
+ * <li>{@link #lightSampleOffset(int)}: (u, v) of the remaining light samples, up to {@link #MAX_LIGHT_SAMPLES}.</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * Each (u, v) pair starts at an even dimension, so that samplers that stratify consecutive pairs of dimensions (see
+ * {@link SobolSampler}) stratify it jointly. Each slot is used by the same decision at every depth, whether or not the
+ * other slots are used (for example Russian roulette only starts after a few bounces).
+ * 
+ * <p>
+ * Instances are not thread safe.
+ * 
+ * @author krisher
+ * 
+ */
+public abstract class Sampler extends Random {
+
+   /**
+    * Factory for creating per-thread Sampler instances.
+    */
+   public static interface Factory {
+      public Sampler createSampler();
+   }
+
+   private static final long serialVersionUID = 1L;
+
+   public static final int PIXEL_DIMENSION = 0;
+   public static final int LENS_DIMENSION = 2;
+   public static final int DIMENSIONS_PER_BOUNCE = 16;
+
+   /*
+    * Offsets from bounceDimension(depth).
+    */
+   public static final int LIGHT_SAMPLE_OFFSET = 0;
+   public static final int BRDF_OFFSET = 2;
+   public static final int LIGHT_SELECT_OFFSET = 4;
+   public static final int ROULETTE_OFFSET = 5;
+   public static final int LOBE_SELECT_OFFSET = 6;
+   private static final int EXTRA_LIGHT_SAMPLE_OFFSET = 8;
+   /**
+    * The number of light samples per path vertex that have their own pair of dimensions.
+    */
+   public static final int MAX_LIGHT_SAMPLES = 1 + (DIMENSIONS_PER_BOUNCE - EXTRA_LIGHT_SAMPLE_OFFSET) / 2;
+
+   /**
+    * Source of values for methods of Random that are not part of the sample sequence.
+    */
+   protected final UnsafePRNG fallback = new UnsafePRNG();
+
+   protected int pixelX;
+   protected int pixelY;
+   protected int sampleIndex;
+   protected int dimension;
+   /**
+    * The dimension specified to the last call to startSample(), that offsets are relative to.
+    */
+   protected int startDimension;
+   private boolean lobeSelected;
+
+   /**
+    * Gets the first dimension used for sampling at the specified path vertex.
+    * 
+    * @param depth
+    *           The number of bounces from the eye ray (0 for the first intersection).
+    * @return The dimension index.
+    */
+   public static final int bounceDimension(final int depth) {
+      return LENS_DIMENSION + 2 + depth * DIMENSIONS_PER_BOUNCE;
+   }
+
+   /**
+    * Gets the offset of the (u, v) dimensions for a light sample at a path vertex.
+    * 
+    * @param sample
+    *           The index of the light sample, less than {@link #MAX_LIGHT_SAMPLES}.
+    * @return The offset from {@link #bounceDimension(int)}.
+    */
+   public static final int lightSampleOffset(final int sample) {
+      return sample == 0 ? LIGHT_SAMPLE_OFFSET : EXTRA_LIGHT_SAMPLE_OFFSET + 2 * (sample - 1);
+   }
+
+   /**
+    * Selects the pixel sample and dimension for subsequent calls to {@link #nextDouble()}.
+    * 
+    * @param pixelX
+    *           The image x coordinate of the pixel.
+    * @param pixelY
+    *           The image y coordinate of the pixel.
+    * @param sampleIndex
+    *           The index of the sample within the pixel (0..samplesPerPixel-1).
+    * @param dimension
+    *           The dimension of the first value to return.
+    */
+   public void startSample(final int pixelX, final int pixelY, final int sampleIndex, final int dimension) {
+      this.pixelX = pixelX;
+      this.pixelY = pixelY;
+      this.sampleIndex = sampleIndex;
+      this.dimension = dimension;
+      this.startDimension = dimension;
+      this.lobeSelected = false;
+   }
+
+   /**
+    * Sets the current dimension relative to the dimension that was specified to
+    * {@link #startSample(int, int, int, int)}.
+    * 
+    * @param offset
+    *           The offset of the next dimension to return, for example {@link #BRDF_OFFSET}.
+    */
+   public void setDimensionOffset(final int offset) {
+      dimension = startDimension + offset;
+   }
+
+   /**
+    * Gets the sample value at an offset from the dimension that was specified to
+    * {@link #startSample(int, int, int, int)}, without changing the current dimension.
+    * 
+    * @param offset
+    *           The offset of the dimension, for example {@link #ROULETTE_OFFSET}.
+    * @return A value in [0, 1).
+    */
+   public double sampleOffset(final int offset) {
+      return sample(startDimension + offset);
+   }
+
+   /**
+    * @return The value for selecting a component of a composite material: the {@link #LOBE_SELECT_OFFSET} dimension the
+    *         first time after {@link #startSample(int, int, int, int)}, and unstratified values for nested selections
+    *         (which would otherwise be correlated with the first).
+    */
+   public double nextLobeSelect() {
+      if (lobeSelected)
+         return fallback.nextDouble();
+      lobeSelected = true;
+      return sampleOffset(LOBE_SELECT_OFFSET);
+   }
+
+   /**
+    * @return A pseudo-random value in [0, 1) that is not part of the sample sequence, for decisions that do not have
+    *         their own dimension.
+    */
+   public float nextUnstratifiedFloat() {
+      return fallback.nextFloat();
+   }
+
+   /**
+    * Selects the stream of values used for a unit of work. Samplers that are given the same stream key (and the same
+    * sequence of calls) return the same values, regardless of which thread they are used on.
+    * 
+    * @param frame
+    *           The image (or animation frame) being rendered.
+    * @param tile
+    *           Identifies the portion of the image being rendered.
+    * @param pass
+    *           The index of the sampling pass, for progressive rendering.
+    */
+   public void setStream(final long frame, final long tile, final long pass) {
+      fallback.setStream(frame, tile, pass);
+   }
+
+   /**
+    * Computes the sample value for the current pixel and sample index in the specified dimension.
+    * 
+    * @param dim
+    *           The dimension.
+    * @return A value in [0, 1).
+    */
+   protected abstract double sample(int dim);
+
+   /**
+    * @return The sample value for the current dimension, in [0, 1). The current dimension is incremented.
+    */
+   @Override
+   public double nextDouble() {
+      return sample(dimension++);
+   }
+
+   /**
+    * @return The sample value for the current dimension, in [0, 1). The current dimension is incremented.
+    */
+   @Override
+   public float nextFloat() {
+      final float value = (float) sample(dimension++);
+      /*
+       * Rounding to float may produce 1.0.
+       */
+      return value < 1.0f ? value : 0x1.fffffep-1f;
+   }
+
+   /**
+    * @return A value in [0, n) chosen by the sample value for the current dimension. The current dimension is
+    *         incremented.
+    */
+   @Override
+   public int nextInt(final int n) {
+      if (n <= 0)
+         throw new IllegalArgumentException("n must be positive");
+      return Math.min((int) (sample(dimension++) * n), n - 1);
+   }
+
+   @Override
+   public synchronized void setSeed(final long seed) {
+      /*
+       * Called from the Random constructor before fallback is initialized.
+       */
+      if (fallback != null)
+         fallback.setSeed(seed);
+   }
+
+   @Override
+   protected int next(final int bits) {
+      return fallback.next(bits);
+   }
+}
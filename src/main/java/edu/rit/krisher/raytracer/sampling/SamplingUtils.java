@@ -69,6 +69,39 @@ public class SamplingUtils {
       }
    }
 
+   /**
+    * Initializes the pixelX, pixelY and sampleIndex values of the specified SampleRays, with sample locations within
+    * each pixel taken from the first two dimensions ({@link Sampler#PIXEL_DIMENSION}) of the specified Sampler.
+    * 
+    * @param sampleRays
+    *           An array of pixelRect.width * pixelRect.height * samplesPerPixel sample rays.
+    * @param pixelRect
+    *           The pixels for which to initialize rays.
+    * @param imageOffsetX
+    *           Offset from pixelRect coordinates to image coordinates, used to identify the pixel to the Sampler.
+    * @param imageOffsetY
+    *           Offset from pixelRect coordinates to image coordinates, used to identify the pixel to the Sampler.
+    * @param samplesPerPixel
+    *           The number of rays to initialize for each pixel.
+    * @param sampler
+    *           The source of sample locations.
+    */
+   public static final void generatePixelSamples(final SampleRay[] sampleRays, final Rectangle pixelRect,
+         final int imageOffsetX, final int imageOffsetY, final int samplesPerPixel, final Sampler sampler) {
+      int rayIdx = 0;
+      for (int pixelY = pixelRect.y; pixelY < pixelRect.y + pixelRect.height; pixelY++) {
+         for (int pixelX = pixelRect.x; pixelX < pixelRect.x + pixelRect.width; pixelX++) {
+            for (int sampleIdx = 0; sampleIdx < samplesPerPixel; ++sampleIdx) {
+               final SampleRay ray = sampleRays[rayIdx++];
+               sampler.startSample(pixelX + imageOffsetX, pixelY + imageOffsetY, sampleIdx, Sampler.PIXEL_DIMENSION);
+               ray.pixelX = pixelX + sampler.nextDouble();
+               ray.pixelY = pixelY + sampler.nextDouble();
+               ray.sampleIndex = sampleIdx;
+            }
+         }
+      }
+   }
+
    /**
     * Generates a unit vector in a random direction with uniform probability around the entire sphere of directions.
     * 
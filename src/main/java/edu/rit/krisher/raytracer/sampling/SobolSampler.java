@@ -0,0 +1,158 @@
+package edu.rit.krisher.raytracer.sampling;
+
+/**
+ * {@link Sampler} based on the first two dimensions of the Sobol sequence, with hash-based Owen scrambling.
+ * 
+ * <p>
+ * Consecutive pairs of dimensions form a 2D (0,2)-sequence, so the samples of a pixel are well stratified in each
+ * pair (pixel area, lens, light surface, BRDF lobe). Each pair uses an independently shuffled sample order and
+ * independent nested uniform (Owen) scrambling per pixel, which decorrelates pixels and dimensions without the large
+ * direction number tables needed for higher dimensional Sobol sequences.
+ * 
+ * <p>
+ * See: B. Burley. 2020. Practical Hash-based Owen Scrambling. Journal of Computer Graphics Techniques 9, no. 4: 1-20.
+ * 
+ * @author krisher
+ * 
+ */
+public final class SobolSampler extends Sampler {
+
+   private static final long serialVersionUID = 1L;
+
+   public static final Factory FACTORY = new Factory() {
+      @Override
+      public Sampler createSampler() {
+         return new SobolSampler();
+      }
+   };
+
+   /*
+    * Generator matrix for the second Sobol dimension (the first is the identity, i.e. the van der Corput sequence). The
+    * product with each byte of the sample index is tabulated, so a sample costs 4 lookups rather than a loop over 32
+    * bits.
+    */
+   private static final int[] SOBOL_MATRIX_1_BYTES = new int[4 * 256];
+   static {
+      final int[] columns = new int[32];
+      int v = 1 << 31;
+      for (int i = 0; i < 32; ++i) {
+         columns[i] = v;
+         v ^= v >>> 1;
+      }
+      for (int byteIdx = 0; byteIdx < 4; ++byteIdx) {
+         for (int value = 0; value < 256; ++value) {
+            int result = 0;
+            for (int bit = 0; bit < 8; ++bit) {
+               if ((value & (1 << bit)) != 0)
+                  result ^= columns[8 * byteIdx + bit];
+            }
+            SOBOL_MATRIX_1_BYTES[256 * byteIdx + value] = result;
+         }
+      }
+   }
+
+   private int scrambleSeed;
+   /*
+    * Per-pixel hash, computed in startSample().
+    */
+   private int pixelHash;
+   private boolean pixelHashValid;
+   /*
+    * Shuffled sample index for the most recently used dimension pair.
+    */
+   private int cachedPair = -1;
+   private int cachedIndex;
+
+   /**
+    * Creates a new Sobol sampler with a scrambling seed of 0.
+    */
+   public SobolSampler() {
+      this(0);
+   }
+
+   /**
+    * Creates a new Sobol sampler.
+    * 
+    * @param scrambleSeed
+    *           Seed for the scrambling of every pixel, different seeds produce statistically independent sequences.
+    */
+   public SobolSampler(final int scrambleSeed) {
+      this.scrambleSeed = scrambleSeed;
+   }
+
+   public void setScrambleSeed(final int scrambleSeed) {
+      this.scrambleSeed = scrambleSeed;
+      pixelHashValid = false;
+   }
+
+   /**
+    * Reseeds both the scrambling and the pseudo-random fallback, so that different passes use independent scrambles.
+    */
+   @Override
+   public void setStream(final long frame, final long tile, final long pass) {
+      super.setStream(frame, tile, pass);
+      final long seed = UnsafePRNG.streamSeed(frame, tile, pass);
+      setScrambleSeed((int) (seed ^ (seed >>> 32)));
+   }
+
+   @Override
+   public void startSample(final int pixelX, final int pixelY, final int sampleIndex, final int dimension) {
+      if (!pixelHashValid || pixelX != this.pixelX || pixelY != this.pixelY) {
+         pixelHash = hash(hash(hash(scrambleSeed ^ 0x68bc21eb) ^ pixelX) ^ pixelY);
+         pixelHashValid = true;
+      }
+      super.startSample(pixelX, pixelY, sampleIndex, dimension);
+      cachedPair = -1;
+   }
+
+   @Override
+   protected double sample(final int dim) {
+      final int pair = dim >>> 1;
+      /*
+       * Both dimensions of a pair must use the same sample order to preserve their joint stratification.
+       */
+      if (pair != cachedPair) {
+         cachedIndex = nestedUniformScramble(sampleIndex, hash(pixelHash ^ (pair * 0x9e3779b9)));
+         cachedPair = pair;
+      }
+      final int index = cachedIndex;
+      final int value;
+      if ((dim & 1) == 0) {
+         value = Integer.reverse(index);
+      } else {
+         value = sobolDimension1(index);
+      }
+      final int scrambled = nestedUniformScramble(value, hash(pixelHash ^ (dim * 0x85ebca6b) ^ 0x2545f491));
+      return (scrambled & 0xFFFFFFFFL) * 0x1p-32;
+   }
+
+   private static int sobolDimension1(final int index) {
+      return SOBOL_MATRIX_1_BYTES[index & 0xFF] ^ SOBOL_MATRIX_1_BYTES[256 + ((index >>> 8) & 0xFF)]
+            ^ SOBOL_MATRIX_1_BYTES[512 + ((index >>> 16) & 0xFF)] ^ SOBOL_MATRIX_1_BYTES[768 + (index >>> 24)];
+   }
+
+   /**
+    * Owen scrambling of the bits of x (from most to least significant), using the Laine-Karras style permutation.
+    */
+   private static int nestedUniformScramble(int x, final int seed) {
+      x = Integer.reverse(x);
+      x += seed;
+      x ^= x * 0x6c50b47c;
+      x ^= x * 0xb82f1e52;
+      x ^= x * 0xc7afe638;
+      x ^= x * 0x8d22f6e6;
+      return Integer.reverse(x);
+   }
+
+   /**
+    * 32-bit integer hash (finalizer from MurmurHash3).
+    */
+   static int hash(int h) {
+      h ^= h >>> 16;
+      h *= 0x85ebca6b;
+      h ^= h >>> 13;
+      h *= 0xc2b2ae35;
+      h ^= h >>> 16;
+      return h;
+   }
+}
@@ -3,26 +3,114 @@ package edu.rit.krisher.raytracer.sampling;
 import java.util.Random;
 
 /**
- * Thread-unsafe extension of {@link Random}, slight increase in performance by only allowing use of an instance from a
- * single thread.
- * 
+ * Thread-unsafe extension of {@link Random}, based on the SplitMix64 generator rather than the 48-bit linear
+ * congruential generator of Random. Every value (including {@link #nextDouble()} and {@link #nextLong()}) is derived
+ * from a single 64-bit step, and there is no synchronization, so an instance must only be used from a single thread.
+ *
+ * <p>
+ * Independent, reproducible streams can be created for a unit of work with {@link #streamSeed(long, long, long)}, so
+ * that results do not depend on which thread processes the work, or in what order.
+ *
+ * <p>
+ * See: G. Steele, D. Lea, C. Flood. 2014. Fast Splittable Pseudorandom Number Generators. OOPSLA '14: 453-472.
+ *
  * @author krisher
- * 
+ *
  */
 public final class UnsafePRNG extends Random {
-   private static final long multiplier = 0x5DEECE66DL;
-   private static final long addend = 0xBL;
-   private static final long mask = (1L << 48) - 1;
-   private long seed;
+   private static final long serialVersionUID = 1L;
+
+   /*
+    * Odd constant added to the state for each value, 2^64 / golden ratio.
+    */
+   private static final long GAMMA = 0x9e3779b97f4a7c15L;
+   private static final double DOUBLE_UNIT = 0x1.0p-53;
+   private static final float FLOAT_UNIT = 0x1.0p-24f;
+
+   private long state;
+
+   /**
+    * Creates a new generator with a seed that is (very likely) different from any other instance.
+    */
+   public UnsafePRNG() {
+      super();
+   }
+
+   /**
+    * Creates a new generator with the specified seed.
+    *
+    * @param seed
+    *           The initial state, instances with the same seed produce the same sequence.
+    */
+   public UnsafePRNG(final long seed) {
+      super(seed);
+   }
+
+   /**
+    * Computes a seed for the stream of random values used to process one unit of work. Different keys produce
+    * statistically independent streams.
+    *
+    * @param frame
+    *           The image (or animation frame) being rendered.
+    * @param tile
+    *           Identifies the portion of the image being rendered.
+    * @param pass
+    *           The index of the sampling pass, for progressive rendering.
+    * @return A seed for {@link #setSeed(long)}.
+    */
+   public static long streamSeed(final long frame, final long tile, final long pass) {
+      return mix64(mix64(mix64(frame + GAMMA) + tile + GAMMA) + pass + GAMMA);
+   }
+
+   /**
+    * Reseeds this generator with {@link #streamSeed(long, long, long)}.
+    */
+   public void setStream(final long frame, final long tile, final long pass) {
+      state = streamSeed(frame, tile, pass);
+   }
 
    @Override
    public final void setSeed(final long seed) {
-      this.seed = (seed ^ multiplier) & mask;
+      state = seed;
    }
 
    @Override
    protected final int next(final int bits) {
-      seed = (seed * multiplier + addend) & mask;
-      return (int) (seed >>> (48 - bits));
+      return (int) (nextLong() >>> (64 - bits));
+   }
+
+   @Override
+   public final long nextLong() {
+      state += GAMMA;
+      return mix64(state);
+   }
+
+   @Override
+   public final int nextInt() {
+      return (int) (nextLong() >>> 32);
+   }
+
+   @Override
+   public final boolean nextBoolean() {
+      return nextLong() < 0;
+   }
+
+   @Override
+   public final float nextFloat() {
+      return (nextLong() >>> 40) * FLOAT_UNIT;
+   }
+
+   @Override
+   public final double nextDouble() {
+      return (nextLong() >>> 11) * DOUBLE_UNIT;
+   }
+
+   /**
+    * The SplitMix64 output function (a variant of the MurmurHash3 64-bit finalizer).
+    */
+   private static long mix64(long z) {
+      z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+      z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+      return z ^ (z >>> 31);
    }
-}
\ No newline at end of file
+}
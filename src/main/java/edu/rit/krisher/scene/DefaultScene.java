@@ -1,9 +1,27 @@
 package edu.rit.krisher.scene;
 
+import java.util.Arrays;
+
 import edu.rit.krisher.collections.CopyOnWriteArrayList;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
 import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.util.Timer;
 import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
 
+/**
+ * Scene that stores its geometry in a list.
+ * 
+ * <p>
+ * Unless disabled with {@link #setAutoAccelerate(boolean)}, {@link #getGeometry()} returns a single KD-Tree over all
+ * of the scene geometry, so integrators test each ray against the tree instead of each object in turn. Objects that
+ * are already KD-Trees are stored in the top level tree as a single primitive. Light sources are kept out of the tree
+ * and follow it in the geometry array, so that integrators can still exclude the light that a shadow ray is aimed at
+ * by identity. The tree is built on first access, and rebuilt after geometry is added.
+ * 
+ * @author krisher
+ * 
+ */
 public class DefaultScene<C extends Camera> implements Scene {
 
    private final Color bgColor = new Color(0, 0, 0);
@@ -15,6 +33,12 @@ public class DefaultScene<C extends Camera> implements Scene {
    private final CopyOnWriteArrayList<Geometry> objects = new CopyOnWriteArrayList<Geometry>(Geometry.class);
    private final CopyOnWriteArrayList<EmissiveGeometry> lights = new CopyOnWriteArrayList<EmissiveGeometry>(EmissiveGeometry.class);
 
+   private volatile boolean autoAccelerate = true;
+   /**
+    * The top level acceleration structure followed by the light sources, or null if it needs to be built.
+    */
+   private volatile Geometry[] accelerated;
+
    public DefaultScene(final String name, final C cam) {
       this.name = name;
       this.camera = cam;
@@ -40,9 +64,24 @@ public class DefaultScene<C extends Camera> implements Scene {
       if (geometry instanceof EmissiveGeometry) {
          lights.add((EmissiveGeometry) geometry);
       }
+      accelerated = null;
+   }
+
+   /**
+    * Enables or disables the top level acceleration structure.
+    * 
+    * @param autoAccelerate
+    *           true (the default) for {@link #getGeometry()} to return a KD-Tree over all of the scene geometry, false
+    *           to return the geometry as it was added.
+    */
+   public void setAutoAccelerate(final boolean autoAccelerate) {
+      this.autoAccelerate = autoAccelerate;
+      accelerated = null;
+   }
+
+   public boolean isAutoAccelerate() {
+      return autoAccelerate;
    }
-   
-   
 
    /* 
     * @see edu.rit.krisher.scene.Scene#getBounds()
@@ -63,7 +102,48 @@ public class DefaultScene<C extends Camera> implements Scene {
     */
    @Override
    public Geometry[] getGeometry() {
-      return objects.array;
+      if (!autoAccelerate)
+         return objects.array;
+      Geometry[] result = accelerated;
+      if (result == null) {
+         synchronized (this) {
+            result = accelerated;
+            if (result == null) {
+               result = accelerate(objects.array);
+               accelerated = result;
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Builds the top level KD-Tree over the specified geometry, other than light sources.
+    * 
+    * @return The tree followed by the light sources. If there is no geometry other than lights, or it is a single
+    *         container, the geometry is returned as it is.
+    */
+   private Geometry[] accelerate(final Geometry[] geometry) {
+      final Geometry[] emitters = new Geometry[geometry.length];
+      final Geometry[] surfaces = new Geometry[geometry.length];
+      int emitterCount = 0;
+      int surfaceCount = 0;
+      for (final Geometry geom : geometry) {
+         if (geom instanceof EmissiveGeometry)
+            emitters[emitterCount++] = geom;
+         else
+            surfaces[surfaceCount++] = geom;
+      }
+      if (surfaceCount == 0 || (surfaceCount == 1 && surfaces[0] instanceof GeometryContainer))
+         return geometry;
+      final Timer timer = new Timer("Top Level KD-Tree Construction (" + name + ")").start();
+      final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), Arrays.copyOf(surfaces,
+                                                                                                         surfaceCount));
+      timer.stop().print();
+      final Geometry[] result = new Geometry[emitterCount + 1];
+      result[0] = tree;
+      System.arraycopy(emitters, 0, result, 1, emitterCount);
+      return result;
    }
 
    /*
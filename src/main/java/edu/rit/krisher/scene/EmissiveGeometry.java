@@ -42,4 +42,13 @@ public interface EmissiveGeometry extends Geometry {
     *           A uniform random number used for Monte Carlo sampling
     */
    void sampleEmission(SampleRay wo, float r1, float r2);
+
+   /**
+    * Estimates the total power emitted by this light, as a luminance-weighted scalar. This is used to decide how often
+    * the light is selected for direct illumination sampling relative to other lights in the scene, so only the relative
+    * magnitude between lights is significant.
+    * 
+    * @return A non-negative power estimate.
+    */
+   double getEmittedPower();
 }
@@ -1,18 +1,32 @@
 package edu.rit.krisher.scene.acceleration;
 
+import java.util.Arrays;
+
 import edu.rit.krisher.raytracer.rays.GeometryRay;
 import edu.rit.krisher.raytracer.rays.IntersectionInfo;
 import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.GeometryContainer;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
 import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.FloatRay;
 import edu.rit.krisher.vecmath.Ray;
 
 /**
  * KD-Tree spatial partitioning structure for storing {@link Partitionable} geometry.
  * 
+ * <p>
+ * Rays may optionally be traversed in single precision (see {@link #setSinglePrecision(boolean)}), in which case
+ * triangle meshes are also intersected in single precision, and other geometry in double precision.
+ * 
+ * <p>
+ * Content that is itself a {@link GeometryContainer} (such as another KD-Tree) is stored as a single primitive
+ * bounded by the whole container, and reports the geometry and primitive that it hits, so trees can be nested. Each
+ * ray is only tested against a nested container once, even though it is referenced by many leaves.
+ * 
  * @author krisher
  * 
  */
-public class KDGeometryContainer implements Geometry {
+public class KDGeometryContainer implements Geometry, GeometryContainer {
 
    private final KDGeometryNode root;
 
@@ -23,6 +37,106 @@ public class KDGeometryContainer implements Geometry {
    private final int geomBits;
    private final int geomMask;
 
+   /*
+    * Single precision traversal.
+    */
+   private boolean singlePrecision;
+   /**
+    * The tree bounds, rounded outwards to single precision.
+    */
+   private final float[] treeBoundsF = new float[6];
+   /**
+    * Content that is intersected in single precision, indexed like content. Null for other geometry.
+    */
+   private final TriangleMesh[] meshContent;
+   /**
+    * Nested containers, indexed like content. Null for other geometry.
+    */
+   private final GeometryContainer[] containerContent;
+   /**
+    * Tolerance for deciding which side of a split plane a ray enters or leaves a node on, in single precision.
+    */
+   private final float splitTolerance;
+   /**
+    * Records the nested containers that have been tested against the current ray, or null if there are none.
+    */
+   private final ThreadLocal<Mailbox> mailbox;
+
+   /**
+    * Per-thread storage for the parametric entry and exit distances of a ray, so traversal does not allocate.
+    */
+   private static final ThreadLocal<double[]> rayParams = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+         return new double[2];
+      }
+   };
+
+   /**
+    * Per-thread storage for single precision traversal.
+    */
+   private static final class FloatTraversal {
+      final FloatRay ray = new FloatRay();
+      final float[] params = new float[2];
+   }
+
+   /**
+    * Per-thread stack of single precision traversal storage, with one level for each nested tree that is being
+    * traversed, so a nested traversal does not overwrite the FloatRay of the tree that contains it.
+    */
+   private static final class FloatTraversalStack {
+      private FloatTraversal[] levels = new FloatTraversal[0];
+      private int depth;
+
+      FloatTraversal push() {
+         if (depth == levels.length) {
+            levels = Arrays.copyOf(levels, depth + 1);
+            levels[depth] = new FloatTraversal();
+         }
+         return levels[depth++];
+      }
+
+      void pop() {
+         --depth;
+      }
+   }
+
+   private static final ThreadLocal<FloatTraversalStack> floatTraversal = new ThreadLocal<FloatTraversalStack>() {
+      @Override
+      protected FloatTraversalStack initialValue() {
+         return new FloatTraversalStack();
+      }
+   };
+
+   /**
+    * Per-thread record of the nested containers that have been tested against the current ray.
+    */
+   private static final class Mailbox {
+      /**
+       * Identifies the current ray; incremented for each ray that is traversed.
+       */
+      long ray;
+      /**
+       * The last ray that each nested container was tested against, indexed like content.
+       */
+      final long[] tested;
+
+      Mailbox(final int size) {
+         tested = new long[size];
+      }
+
+      /**
+       * @return true if the container has not been tested against the current ray, in which case it is marked as
+       *         tested.
+       */
+      boolean check(final int geomIdx) {
+         if (tested[geomIdx] == ray)
+            return false;
+         tested[geomIdx] = ray;
+         return true;
+      }
+   }
+
    /**
     * Creates a KDTree with the specified geometry content. This uses a default partitioning strategy.
     * 
@@ -41,11 +155,21 @@ public class KDGeometryContainer implements Geometry {
       }
 
       treeBounds = new AxisAlignedBoundingBox();
-      int primCount = 0;
+      containerContent = new GeometryContainer[content.length];
+      boolean nested = false;
       for (int i = 0; i < content.length; ++i) {
-         primCount += content[i].getPrimitiveCount();
+         if (content[i] instanceof GeometryContainer) {
+            containerContent[i] = (GeometryContainer) content[i];
+            nested = true;
+         }
       }
-      final PrimitiveAABB[] bounds = new PrimitiveAABB[primCount];
+      mailbox = nested ? new ThreadLocal<Mailbox>() {
+         @Override
+         protected Mailbox initialValue() {
+            return new Mailbox(containerContent.length);
+         }
+      } : null;
+      final PrimitiveAABB[] bounds = new PrimitiveAABB[getPrimitiveCount()];
 
       geomBits = (32 - Integer.numberOfLeadingZeros(content.length));
       int gMask = 0;
@@ -57,13 +181,53 @@ public class KDGeometryContainer implements Geometry {
       for (int geomIdx = 0; geomIdx < content.length; ++geomIdx) {
          final Geometry geom = content[geomIdx];
          treeBounds.union(geom.getBounds(-1));
-         for (int primIdx = geom.getPrimitiveCount() - 1; primIdx >= 0; --primIdx) {
-            bounds[globalPrimIdx] = new PrimitiveAABB(geomIdx | (primIdx << geomBits), geom.getBounds(primIdx));
+         for (int primIdx = primitiveCount(geomIdx) - 1; primIdx >= 0; --primIdx) {
+            bounds[globalPrimIdx] = new PrimitiveAABB(geomIdx | (primIdx << geomBits),
+                                                      geom.getBounds(containerContent[geomIdx] != null ? ALL_PRIMITIVES
+                                                            : primIdx));
             ++globalPrimIdx;
          }
       }
 
       root = partition(bounds.length, bounds, 0, treeBounds);
+
+      meshContent = new TriangleMesh[content.length];
+      for (int i = 0; i < content.length; ++i) {
+         if (content[i] instanceof TriangleMesh)
+            meshContent[i] = (TriangleMesh) content[i];
+      }
+      float maxCoord = 0;
+      for (int i = 0; i < 6; ++i) {
+         treeBoundsF[i] = i < 3 ? FloatRay.roundDown(treeBounds.xyzxyz[i]) : FloatRay.roundUp(treeBounds.xyzxyz[i]);
+         maxCoord = Math.max(maxCoord, Math.abs(treeBoundsF[i]));
+      }
+      splitTolerance = 0x1p-16f * maxCoord;
+   }
+
+   /**
+    * @return The number of primitives in the tree for the specified content, which is 1 for a nested container.
+    */
+   private int primitiveCount(final int geomIdx) {
+      return containerContent[geomIdx] != null ? 1 : content[geomIdx].getPrimitiveCount();
+   }
+
+   /**
+    * Selects single or double precision traversal. In single precision, the distance to the closest triangle mesh hit
+    * is recomputed in double precision, so hit points are as accurate as with double precision traversal.
+    * 
+    * @param singlePrecision
+    *           true to traverse rays in single precision (default false).
+    */
+   public void setSinglePrecision(final boolean singlePrecision) {
+      for (final GeometryContainer container : containerContent) {
+         if (container instanceof KDGeometryContainer)
+            ((KDGeometryContainer) container).setSinglePrecision(singlePrecision);
+      }
+      this.singlePrecision = singlePrecision;
+   }
+
+   public boolean isSinglePrecision() {
+      return singlePrecision;
    }
 
    @Override
@@ -71,11 +235,15 @@ public class KDGeometryContainer implements Geometry {
       return getBounds(-1).surfaceArea();
    }
 
+   /**
+    * @return The number of primitives that are partitioned by the tree, in which a nested container counts as one
+    *         primitive.
+    */
    @Override
    public int getPrimitiveCount() {
       int count = 0;
-      for (final Geometry geom : content) {
-         count += geom.getPrimitiveCount();
+      for (int i = 0; i < content.length; ++i) {
+         count += primitiveCount(i);
       }
       return count;
    }
@@ -97,12 +265,23 @@ public class KDGeometryContainer implements Geometry {
             ray.primitiveID = compoundPrimID;
    }
 
+   /**
+    * Starts a new ray for the mailbox, if there are nested containers.
+    */
+   private void nextRay() {
+      if (mailbox != null)
+         ++mailbox.get().ray;
+   }
+
    @Override
    public final boolean intersects(final GeometryRay ray) {
+      nextRay();
+      if (singlePrecision)
+         return intersectsF(ray);
       if (root != null) {
-         final double[] params = new double[2];
+         final double[] params = rayParams.get();
          if (treeBounds.rayIntersectsParametric(ray, params)) {
-            return root.intersects(ray, params[0], params[1], ray.origin.get(), ray.direction.get());
+            return root.intersects(ray, params[0], params[1]);
          }
       }
       return false;
@@ -110,15 +289,56 @@ public class KDGeometryContainer implements Geometry {
 
    @Override
    public final boolean intersectsP(final Ray ray) {
+      nextRay();
+      if (singlePrecision)
+         return intersectsPF(ray);
       if (root != null) {
-         final double[] params = new double[2];
+         final double[] params = rayParams.get();
          if (treeBounds.rayIntersectsParametric(ray, params)) {
-            return root.intersectsP(ray, params[0], params[1], ray.origin.get(), ray.direction.get());
+            return root.intersectsP(ray, params[0], params[1]);
          }
       }
       return false;
    }
 
+   private boolean intersectsF(final GeometryRay ray) {
+      if (root == null)
+         return false;
+      final FloatTraversalStack stack = floatTraversal.get();
+      final FloatTraversal traversal = stack.push();
+      try {
+         final FloatRay fRay = traversal.ray.set(ray);
+         final float[] params = traversal.params;
+         if (!fRay.intersectsBoxParametric(params, treeBoundsF))
+            return false;
+         if (!root.intersectsF(ray, fRay, params[0], params[1], splitTolerance))
+            return false;
+         /*
+          * Shading and secondary rays start at the hit point, so it should be as accurate as in double precision.
+          */
+         if (ray.hitGeometry instanceof TriangleMesh)
+            ((TriangleMesh) ray.hitGeometry).refineHit(ray, ray.primitiveID, fRay.t);
+         return true;
+      } finally {
+         stack.pop();
+      }
+   }
+
+   private boolean intersectsPF(final Ray ray) {
+      if (root == null)
+         return false;
+      final FloatTraversalStack stack = floatTraversal.get();
+      final FloatTraversal traversal = stack.push();
+      try {
+         final FloatRay fRay = traversal.ray.set(ray);
+         final float[] params = traversal.params;
+         return fRay.intersectsBoxParametric(params, treeBoundsF)
+               && root.intersectsPF(ray, fRay, params[0], params[1], splitTolerance);
+      } finally {
+         stack.pop();
+      }
+   }
+
    @Override
    public final boolean intersectsPrimitive(final Ray ray, final int primitiveID) {
       final GeometryRay gRay = new GeometryRay(ray.origin, ray.direction);
@@ -135,6 +355,19 @@ public class KDGeometryContainer implements Geometry {
       return new AxisAlignedBoundingBox(treeBounds);
    }
 
+   @Override
+   public AxisAlignedBoundingBox getBounds() {
+      return new AxisAlignedBoundingBox(treeBounds);
+   }
+
+   /**
+    * @return A copy of the geometry stored in the tree.
+    */
+   @Override
+   public Geometry[] getGeometry() {
+      return content.clone();
+   }
+
    public void visitTreeNodes(final KDNodeVisitor visitor) throws Exception {
       if (root != null) {
          root.visit(0, treeBounds, visitor);
@@ -210,11 +443,19 @@ public class KDGeometryContainer implements Geometry {
 
    private static interface KDGeometryNode {
 
-      public boolean intersects(final GeometryRay ray, final double tmin, final double tmax, final double[] rayOriginD,
-            final double[] rayDirectionD);
+      public boolean intersects(final GeometryRay ray, final double tmin, final double tmax);
+
+      public boolean intersectsP(final Ray ray, final double tmin, final double tmax);
+
+      /**
+       * Single precision counterpart of {@link #intersects(GeometryRay, double, double)}. The ray and fRay lengths are
+       * both updated for each hit.
+       */
+      public boolean intersectsF(final GeometryRay ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance);
 
-      public boolean intersectsP(final Ray ray, final double tmin, final double tmax, final double[] rayOriginD,
-            final double[] rayDirectionD);
+      public boolean intersectsPF(final Ray ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance);
 
       public void visit(int depth, AxisAlignedBoundingBox nodeBounds, KDNodeVisitor vistor) throws Exception;
    }
@@ -223,48 +464,51 @@ public class KDGeometryContainer implements Geometry {
       private KDGeometryNode lessChild;
       private KDGeometryNode greaterChild;
       private final double splitLocation;
+      private final float splitLocationF;
       private final int axis;
 
       KDInteriorNode(final double splitLocation, final int splitAxis) {
          this.splitLocation = splitLocation;
+         this.splitLocationF = (float) splitLocation;
          this.axis = splitAxis;
       }
 
       @Override
-      public final boolean intersects(final GeometryRay ray, final double tmin, final double tmax,
-            final double[] rayOriginD, final double[] rayDirectionD) {
+      public final boolean intersects(final GeometryRay ray, final double tmin, final double tmax) {
          assert tmin <= tmax : "Bad intersection parameterization.";
          if (tmin > ray.t)
             return false;
-         final double cEntry = rayOriginD[axis] + tmin * rayDirectionD[axis];
-         final double cExit = rayOriginD[axis] + tmax * rayDirectionD[axis];
+         final double origin = ray.origin.get(axis);
+         final double direction = ray.direction.get(axis);
+         final double cEntry = origin + tmin * direction;
+         final double cExit = origin + tmax * direction;
 
          if (cEntry <= splitLocation) { /* node entry point on less side of split */
             if (cExit < splitLocation) { /* exit point on less side of split, only need to check lessChild */
                if (lessChild != null)
-                  return lessChild.intersects(ray, tmin, tmax, rayOriginD, rayDirectionD);
+                  return lessChild.intersects(ray, tmin, tmax);
             } else { /* Traverses from less child to greater child */
                boolean hit = false;
-               final double tsplit = (splitLocation - rayOriginD[axis]) / rayDirectionD[axis];
+               final double tsplit = (splitLocation - origin) / direction;
                /* first hit child; use tmin, tsplit */
                if (lessChild != null)
-                  hit = lessChild.intersects(ray, tmin, tsplit, rayOriginD, rayDirectionD);
+                  hit = lessChild.intersects(ray, tmin, tsplit);
                if (greaterChild != null && ray.t >= tsplit)
-                  hit |= greaterChild.intersects(ray, tsplit, tmax, rayOriginD, rayDirectionD);
+                  hit |= greaterChild.intersects(ray, tsplit, tmax);
                return hit;
             }
          } else { /* Entry on greater side. */
             if (cExit > splitLocation) { // exit on greater/eq side of split, only check greater.
                if (greaterChild != null)
-                  return greaterChild.intersects(ray, tmin, tmax, rayOriginD, rayDirectionD);
+                  return greaterChild.intersects(ray, tmin, tmax);
             } else { // exit on less side, check both
                boolean hit = false;
-               final double tsplit = (splitLocation - rayOriginD[axis]) / rayDirectionD[axis];
+               final double tsplit = (splitLocation - origin) / direction;
                // greater-child: use tmin, tsplit
                if (greaterChild != null)
-                  hit = greaterChild.intersects(ray, tmin, tsplit, rayOriginD, rayDirectionD);
+                  hit = greaterChild.intersects(ray, tmin, tsplit);
                if (lessChild != null && ray.t >= tsplit)
-                  hit |= lessChild.intersects(ray, tsplit, tmax, rayOriginD, rayDirectionD);
+                  hit |= lessChild.intersects(ray, tsplit, tmax);
                return hit;
             }
          }
@@ -272,45 +516,120 @@ public class KDGeometryContainer implements Geometry {
       }
 
       @Override
-      public final boolean intersectsP(final Ray ray, final double tmin, final double tmax, final double[] rayOriginD,
-            final double[] rayDirectionD) {
+      public final boolean intersectsP(final Ray ray, final double tmin, final double tmax) {
          assert tmin <= tmax : "Bad intersection parameterization.";
          if (tmin > ray.t)
             return false;
-         final double cEntry = rayOriginD[axis] + tmin * rayDirectionD[axis];
-         final double cExit = rayOriginD[axis] + tmax * rayDirectionD[axis];
+         final double origin = ray.origin.get(axis);
+         final double direction = ray.direction.get(axis);
+         final double cEntry = origin + tmin * direction;
+         final double cExit = origin + tmax * direction;
 
          if (cEntry <= splitLocation) { /* node entry point on less side of split */
             if (cExit < splitLocation) { /* exit point on less side of split, only need to check lessChild */
                if (lessChild != null)
-                  return lessChild.intersectsP(ray, tmin, tmax, rayOriginD, rayDirectionD);
+                  return lessChild.intersectsP(ray, tmin, tmax);
             } else { /* Traverses from less child to greater child */
-               final double tsplit = (splitLocation - rayOriginD[axis]) / rayDirectionD[axis];
+               final double tsplit = (splitLocation - origin) / direction;
                /* first hit child; use tmin, tsplit */
                if (lessChild != null)
-                  if (lessChild.intersectsP(ray, tmin, tsplit, rayOriginD, rayDirectionD))
+                  if (lessChild.intersectsP(ray, tmin, tsplit))
                      return true;
                if (greaterChild != null && ray.t >= tsplit)
-                  return greaterChild.intersectsP(ray, tsplit, tmax, rayOriginD, rayDirectionD);
+                  return greaterChild.intersectsP(ray, tsplit, tmax);
                return false;
             }
          } else { /* Entry on greater side. */
             if (cExit > splitLocation) { // exit on greater/eq side of split, only check greater.
                if (greaterChild != null)
-                  return greaterChild.intersectsP(ray, tmin, tmax, rayOriginD, rayDirectionD);
+                  return greaterChild.intersectsP(ray, tmin, tmax);
             } else { // exit on less side, check both
-               final double tsplit = (splitLocation - rayOriginD[axis]) / rayDirectionD[axis];
+               final double tsplit = (splitLocation - origin) / direction;
                // greater-child: use tmin, tsplit
-               if (greaterChild != null && greaterChild.intersectsP(ray, tmin, tsplit, rayOriginD, rayDirectionD))
+               if (greaterChild != null && greaterChild.intersectsP(ray, tmin, tsplit))
                   return true;
                if (lessChild != null && ray.t >= tsplit)
-                  return lessChild.intersectsP(ray, tsplit, tmax, rayOriginD, rayDirectionD);
+                  return lessChild.intersectsP(ray, tsplit, tmax);
                return false;
             }
          }
          return false;
       }
 
+      /*
+       * In single precision, a single child is only visited when the ray is on one side of the split by more than the
+       * tolerance. If the ray enters or leaves the node close to the split, rounding errors may put it on the wrong
+       * side, so both children are visited with the whole parametric range of the node.
+       */
+
+      @Override
+      public final boolean intersectsF(final GeometryRay ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance) {
+         if (tmin > fRay.t)
+            return false;
+         final float origin = axis == 0 ? fRay.originX : (axis == 1 ? fRay.originY : fRay.originZ);
+         final float direction = axis == 0 ? fRay.directionX : (axis == 1 ? fRay.directionY : fRay.directionZ);
+         final float cEntry = origin + tmin * direction;
+         final float cExit = origin + tmax * direction;
+         final float lower = splitLocationF - tolerance;
+         final float upper = splitLocationF + tolerance;
+
+         if (cEntry < lower && cExit < lower)
+            return lessChild != null && lessChild.intersectsF(ray, fRay, tmin, tmax, tolerance);
+         if (cEntry > upper && cExit > upper)
+            return greaterChild != null && greaterChild.intersectsF(ray, fRay, tmin, tmax, tolerance);
+
+         final boolean lessFirst = cEntry <= splitLocationF;
+         final KDGeometryNode first = lessFirst ? lessChild : greaterChild;
+         final KDGeometryNode second = lessFirst ? greaterChild : lessChild;
+         boolean hit = false;
+         if ((cEntry < lower || cEntry > upper) && (cExit < lower || cExit > upper)) {
+            /* Crosses the split plane */
+            final float tsplit = (splitLocationF - origin) / direction;
+            if (first != null)
+               hit = first.intersectsF(ray, fRay, tmin, tsplit, tolerance);
+            if (second != null && fRay.t >= tsplit)
+               hit |= second.intersectsF(ray, fRay, tsplit, tmax, tolerance);
+         } else {
+            if (first != null)
+               hit = first.intersectsF(ray, fRay, tmin, tmax, tolerance);
+            if (second != null)
+               hit |= second.intersectsF(ray, fRay, tmin, tmax, tolerance);
+         }
+         return hit;
+      }
+
+      @Override
+      public final boolean intersectsPF(final Ray ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance) {
+         if (tmin > fRay.t)
+            return false;
+         final float origin = axis == 0 ? fRay.originX : (axis == 1 ? fRay.originY : fRay.originZ);
+         final float direction = axis == 0 ? fRay.directionX : (axis == 1 ? fRay.directionY : fRay.directionZ);
+         final float cEntry = origin + tmin * direction;
+         final float cExit = origin + tmax * direction;
+         final float lower = splitLocationF - tolerance;
+         final float upper = splitLocationF + tolerance;
+
+         if (cEntry < lower && cExit < lower)
+            return lessChild != null && lessChild.intersectsPF(ray, fRay, tmin, tmax, tolerance);
+         if (cEntry > upper && cExit > upper)
+            return greaterChild != null && greaterChild.intersectsPF(ray, fRay, tmin, tmax, tolerance);
+
+         final boolean lessFirst = cEntry <= splitLocationF;
+         final KDGeometryNode first = lessFirst ? lessChild : greaterChild;
+         final KDGeometryNode second = lessFirst ? greaterChild : lessChild;
+         if ((cEntry < lower || cEntry > upper) && (cExit < lower || cExit > upper)) {
+            /* Crosses the split plane */
+            final float tsplit = (splitLocationF - origin) / direction;
+            if (first != null && first.intersectsPF(ray, fRay, tmin, tsplit, tolerance))
+               return true;
+            return second != null && fRay.t >= tsplit && second.intersectsPF(ray, fRay, tsplit, tmax, tolerance);
+         }
+         return (first != null && first.intersectsPF(ray, fRay, tmin, tmax, tolerance))
+               || (second != null && second.intersectsPF(ray, fRay, tmin, tmax, tolerance));
+      }
+
       @Override
       public void visit(final int depth, final AxisAlignedBoundingBox nodeBounds, final KDNodeVisitor visitor)
       throws Exception {
@@ -339,29 +658,85 @@ public class KDGeometryContainer implements Geometry {
       }
 
       @Override
-      public boolean intersects(final GeometryRay ray, final double tmin, final double tmax, final double[] rayOriginD,
-            final double[] rayDirectionD) {
+      public boolean intersects(final GeometryRay ray, final double tmin, final double tmax) {
          boolean hit = false;
          for (final int prim : primitives) {
-            if (KDGeometryContainer.this.content[prim & geomMask].intersectsPrimitive(ray, prim >> geomBits)) {
+            final GeometryContainer container = containerContent[prim & geomMask];
+            if (container != null) {
+               /*
+                * The nested container sets the geometry and primitive that it hits.
+                */
+               if (mailbox.get().check(prim & geomMask))
+                  hit |= container.intersects(ray);
+            } else if (KDGeometryContainer.this.content[prim & geomMask].intersectsPrimitive(ray, prim >> geomBits)) {
                hit = true;
                ray.primitiveID = prim >> geomBits;
-      ray.hitGeometry = KDGeometryContainer.this.content[prim & geomMask];
+               ray.hitGeometry = KDGeometryContainer.this.content[prim & geomMask];
+            }
+         }
+         return hit;
+      }
+
+      @Override
+      public boolean intersectsP(final Ray ray, final double tmin, final double tmax) {
+         for (final int prim : primitives) {
+            if (containerContent[prim & geomMask] != null ? intersectsContainerP(ray, prim & geomMask)
+                  : content[prim & geomMask].intersectsPrimitive(ray, prim >> geomBits))
+               return true;
+         }
+         return false;
+      }
+
+      @Override
+      public boolean intersectsF(final GeometryRay ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance) {
+         boolean hit = false;
+         for (final int prim : primitives) {
+            final int geomIdx = prim & geomMask;
+            final int primID = prim >> geomBits;
+            final TriangleMesh mesh = meshContent[geomIdx];
+            if (mesh != null) {
+               if (!mesh.intersectsPrimitive(fRay, primID))
+                  continue;
+               ray.t = fRay.t;
+            } else if (containerContent[geomIdx] != null) {
+               if (mailbox.get().check(geomIdx) && containerContent[geomIdx].intersects(ray)) {
+                  hit = true;
+                  fRay.t = (float) ray.t;
+               }
+               continue;
+            } else {
+               if (!content[geomIdx].intersectsPrimitive(ray, primID))
+                  continue;
+               fRay.t = (float) ray.t;
             }
+            hit = true;
+            ray.primitiveID = primID;
+            ray.hitGeometry = content[geomIdx];
          }
          return hit;
       }
 
       @Override
-      public boolean intersectsP(final Ray ray, final double tmin, final double tmax, final double[] rayOriginD,
-            final double[] rayDirectionD) {
+      public boolean intersectsPF(final Ray ray, final FloatRay fRay, final float tmin, final float tmax,
+            final float tolerance) {
          for (final int prim : primitives) {
-            if (KDGeometryContainer.this.content[prim & geomMask].intersectsPrimitive(ray, prim >> geomBits))
+            final TriangleMesh mesh = meshContent[prim & geomMask];
+            if (mesh != null ? mesh.intersectsPrimitive(fRay, prim >> geomBits)
+                  : (containerContent[prim & geomMask] != null ? intersectsContainerP(ray, prim & geomMask)
+                        : content[prim & geomMask].intersectsPrimitive(ray, prim >> geomBits)))
                return true;
          }
          return false;
       }
 
+      /**
+       * Tests a nested container for an occluding intersection, unless it has already been tested against the ray.
+       */
+      private boolean intersectsContainerP(final Ray ray, final int geomIdx) {
+         return mailbox.get().check(geomIdx) && content[geomIdx].intersectsP(ray);
+      }
+
       /*
        * @see edu.rit.krisher.scene.geometry.acceleration.KDTree.KDNode#visit(int,
        * edu.rit.krisher.scene.AxisAlignedBoundingBox, edu.rit.krisher.scene.geometry.acceleration.KDNodeVisitor)
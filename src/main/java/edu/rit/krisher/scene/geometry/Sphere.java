@@ -38,10 +38,9 @@ public class Sphere implements Geometry {
 
    @Override
    public void getHitData(final GeometryRay ray, final IntersectionInfo data) {
-      final Vec3 isectNormal = ray.getPointOnRay(ray.t);
-      isectNormal.subtract(center).multiply(1.0 / radius);
+      ray.getPointOnRay(data.surfaceNormal, ray.t);
+      data.surfaceNormal.subtract(center).multiply(1.0 / radius);
       data.material = material;
-      data.surfaceNormal.set(isectNormal);
       Vec3.computePerpendicularVec(data.tangentVector, data.surfaceNormal);
       data.materialCoords = null;
    }
@@ -1,5 +1,7 @@
 package edu.rit.krisher.scene.geometry;
 
+import java.util.Arrays;
+
 import edu.rit.krisher.raytracer.rays.GeometryRay;
 import edu.rit.krisher.raytracer.rays.IntersectionInfo;
 import edu.rit.krisher.scene.Geometry;
@@ -7,7 +9,9 @@ import edu.rit.krisher.scene.Material;
 import edu.rit.krisher.scene.geometry.utils.Vec3fBufferUtils;
 import edu.rit.krisher.scene.material.Color;
 import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.util.Parallel;
 import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.FloatRay;
 import edu.rit.krisher.vecmath.Ray;
 import edu.rit.krisher.vecmath.Transform;
 import edu.rit.krisher.vecmath.Vec3;
@@ -20,6 +24,32 @@ public class TriangleMesh implements Geometry {
    private final int[] triangleIndices;
    private final AxisAlignedBoundingBox bounds;
    private final int triCount;
+   private boolean singlePrecision;
+
+   /**
+    * Smaller meshes compute vertex normals serially.
+    */
+   private static final int MIN_PARALLEL_NORMAL_TRIANGLES = 65536;
+
+   /**
+    * Per-thread storage for barycentric hit coordinates, so shading does not allocate.
+    */
+   private static final ThreadLocal<double[]> baryScratch = new ThreadLocal<double[]>() {
+      @Override
+      protected double[] initialValue() {
+         return new double[3];
+      }
+   };
+
+   /**
+    * Per-thread single precision copy of the ray being intersected.
+    */
+   private static final ThreadLocal<FloatRay> floatRay = new ThreadLocal<FloatRay>() {
+      @Override
+      protected FloatRay initialValue() {
+         return new FloatRay();
+      }
+   };
 
    public TriangleMesh(final float[] verts, final int[] triangles) {
       this.vertices = verts;
@@ -37,7 +67,28 @@ public class TriangleMesh implements Geometry {
       this.normals = normals;
    }
 
+   /**
+    * Computes vertex normals as the normalized sum of the normals of the adjacent triangles.
+    *
+    * <p>
+    * Large meshes are processed in parallel (see {@link Parallel}): the triangle normals are computed in chunks of
+    * triangles, then each chunk of vertices sums the normals of its triangles through a vertex to triangle adjacency
+    * table. Each vertex sums its triangles in the same order as a serial loop over the triangles would, so the result
+    * does not depend on the number of threads. This needs about 24 bytes of temporary storage per triangle.
+    *
+    * @param vertices
+    *           Vertex positions, 3 components per vertex.
+    * @param triangleIndices
+    *           Vertex indices, 3 per triangle.
+    * @return A new array of vertex normals, 3 components per vertex.
+    */
    public static float[] computeTriangleNormals(final float[] vertices, final int[] triangleIndices) {
+      if (Parallel.threads == 1 || triangleIndices.length / 3 < MIN_PARALLEL_NORMAL_TRIANGLES)
+         return computeTriangleNormalsSerial(vertices, triangleIndices);
+      return computeTriangleNormalsParallel(vertices, triangleIndices);
+   }
+
+   static float[] computeTriangleNormalsSerial(final float[] vertices, final int[] triangleIndices) {
       final int triCount = triangleIndices.length / 3;
       final float[] normals = new float[vertices.length];
       final Vec3 v0 = new Vec3();
@@ -68,7 +119,83 @@ public class TriangleMesh implements Geometry {
       }
       return normals;
    }
-   
+
+   static float[] computeTriangleNormalsParallel(final float[] vertices, final int[] triangleIndices) {
+      final int triCount = triangleIndices.length / 3;
+      final int vertexCount = vertices.length / 3;
+      final float[] faceNormals = new float[triCount * 3];
+      final int triChunks = Parallel.chunkCount(triCount, MIN_PARALLEL_NORMAL_TRIANGLES / 4);
+      forEach(triChunks, new Parallel.Body() {
+         @Override
+         public void run(final int chunk) {
+            final Vec3 v0 = new Vec3();
+            final Vec3 e1 = new Vec3();
+            final Vec3 e2 = new Vec3();
+            final int end = (int) ((long) triCount * (chunk + 1) / triChunks);
+            for (int i = (int) ((long) triCount * chunk / triChunks); i < end; i++) {
+               Vec3fBufferUtils.get(v0, vertices, triangleIndices[i * 3]);
+               Vec3fBufferUtils.get(e1, vertices, triangleIndices[i * 3 + 1]);
+               Vec3fBufferUtils.get(e2, vertices, triangleIndices[i * 3 + 2]);
+               e1.subtract(v0);
+               e2.subtract(v0);
+               e1.cross(e2).normalize();
+               Vec3fBufferUtils.put(e1, faceNormals, i);
+            }
+         }
+      });
+
+      /*
+       * Triangles adjacent to each vertex, in increasing order.
+       */
+      final int[] firstAdjacent = new int[vertexCount + 1];
+      for (int i = 0; i < triCount * 3; ++i) {
+         ++firstAdjacent[triangleIndices[i] + 1];
+      }
+      for (int v = 0; v < vertexCount; ++v) {
+         firstAdjacent[v + 1] += firstAdjacent[v];
+      }
+      final int[] adjacent = new int[triCount * 3];
+      final int[] cursor = Arrays.copyOf(firstAdjacent, vertexCount);
+      for (int i = 0; i < triCount * 3; ++i) {
+         adjacent[cursor[triangleIndices[i]]++] = i / 3;
+      }
+
+      final float[] normals = new float[vertices.length];
+      final int vertexChunks = Parallel.chunkCount(vertexCount, MIN_PARALLEL_NORMAL_TRIANGLES / 4);
+      forEach(vertexChunks, new Parallel.Body() {
+         @Override
+         public void run(final int chunk) {
+            final int end = (int) ((long) vertexCount * (chunk + 1) / vertexChunks);
+            for (int v = (int) ((long) vertexCount * chunk / vertexChunks); v < end; ++v) {
+               float x = 0;
+               float y = 0;
+               float z = 0;
+               for (int i = firstAdjacent[v]; i < firstAdjacent[v + 1]; ++i) {
+                  final int offs = adjacent[i] * 3;
+                  x += faceNormals[offs];
+                  y += faceNormals[offs + 1];
+                  z += faceNormals[offs + 2];
+               }
+               normals[v * 3] = x;
+               normals[v * 3 + 1] = y;
+               normals[v * 3 + 2] = z;
+               Vec3fBufferUtils.normalize(normals, v);
+            }
+         }
+      });
+      return normals;
+   }
+
+   private static void forEach(final int count, final Parallel.Body body) {
+      try {
+         Parallel.forEach(count, body);
+      } catch (final RuntimeException e) {
+         throw e;
+      } catch (final Exception e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
    public float[] getVertices() {
       return vertices;
    }
@@ -77,6 +204,13 @@ public class TriangleMesh implements Geometry {
       return triangleIndices;
    }
 
+   /**
+    * @return The vertex normals, or null if the mesh uses face normals.
+    */
+   public float[] getNormals() {
+      return normals;
+   }
+
    public void transform(final Transform transform) {
       final Vec3 vert = new Vec3();
       for (int i = 0; i < vertices.length / 3; i++) {
@@ -114,16 +248,51 @@ public class TriangleMesh implements Geometry {
 
       } else {
          // Barycentric normal interpolation if vertex normals present...
-         final double[] baryCoords = new double[3];
-         intersectsTriangleBarycentric(baryCoords, ray, ray.primitiveID);
-         interpolatedNormal(data.surfaceNormal, baryCoords[1], baryCoords[2], ray.primitiveID);
-         // TODO: Tangent vector should be based on shading (texture) coords if specified.
-         Vec3.computePerpendicularVec(data.tangentVector, data.surfaceNormal);
+         final double[] baryCoords = baryScratch.get();
+         if (intersectsTriangleBarycentric(baryCoords, ray, ray.primitiveID)) {
+            interpolatedNormal(data.surfaceNormal, baryCoords[1], baryCoords[2], ray.primitiveID);
+            // TODO: Tangent vector should be based on shading (texture) coords if specified.
+            Vec3.computePerpendicularVec(data.tangentVector, data.surfaceNormal);
+         } else {
+            /*
+             * Single precision hits within the edge tolerance may miss the triangle in double precision.
+             */
+            getTriangleFaceNormal(data.surfaceNormal, data.tangentVector, ray.primitiveID);
+         }
       }
    }
 
+   /**
+    * Selects single or double precision intersection tests. In single precision, the distance to the closest hit is
+    * recomputed in double precision, so hit points are as accurate as with double precision tests.
+    * 
+    * @param singlePrecision
+    *           true to intersect rays in single precision (default false).
+    */
+   public void setSinglePrecision(final boolean singlePrecision) {
+      this.singlePrecision = singlePrecision;
+   }
+
+   public boolean isSinglePrecision() {
+      return singlePrecision;
+   }
+
    @Override
    public final boolean intersects(final GeometryRay ray) {
+      if (singlePrecision) {
+         final FloatRay fRay = floatRay.get().set(ray);
+         int hitIdx = -1;
+         for (int idx = 0; idx < triCount; ++idx) {
+            if (intersectsPrimitive(fRay, idx))
+               hitIdx = idx;
+         }
+         if (hitIdx < 0)
+            return false;
+         refineHit(ray, hitIdx, fRay.t);
+         ray.primitiveID = hitIdx;
+         ray.hitGeometry = this;
+         return true;
+      }
       for (int idx = 0; idx < triCount; ++idx) {
          final double t = intersectsTriangle(ray, idx);
          if (t > 0 && t < ray.t) {
@@ -137,6 +306,16 @@ public class TriangleMesh implements Geometry {
 
    @Override
    public final boolean intersectsP(final Ray ray) {
+      if (singlePrecision) {
+         final FloatRay fRay = floatRay.get().set(ray);
+         for (int idx = 0; idx < triCount; ++idx) {
+            final float t = intersectsTriangle(fRay, idx);
+            if (t > 0 && t < fRay.t) {
+               return true;
+            }
+         }
+         return false;
+      }
       for (int idx = 0; idx < triCount; ++idx) {
          final double t = intersectsTriangle(ray, idx);
          if (t > 0 && t < ray.t) {
@@ -156,6 +335,36 @@ public class TriangleMesh implements Geometry {
       return false;
    }
 
+   /**
+    * Single precision counterpart of {@link #intersectsPrimitive(Ray, int)}, which updates {@link FloatRay#t} if the
+    * triangle is hit closer than the current ray length.
+    */
+   public final boolean intersectsPrimitive(final FloatRay ray, final int primitiveID) {
+      final float t = intersectsTriangle(ray, primitiveID);
+      if (t > 0 && t < ray.t) {
+         ray.t = t;
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Sets the length of a ray to the distance to a triangle that was hit in single precision, recomputed in double
+    * precision.
+    * 
+    * @param ray
+    *           The ray that hit the triangle.
+    * @param primitiveID
+    *           The triangle that was hit.
+    * @param singlePrecisionT
+    *           The distance to the hit computed in single precision, which is used if the double precision test misses
+    *           the triangle (for hits within the tolerance at the triangle edges).
+    */
+   public final void refineHit(final Ray ray, final int primitiveID, final float singlePrecisionT) {
+      final double t = intersectsTriangle(ray, primitiveID);
+      ray.t = t > 0 ? t : singlePrecisionT;
+   }
+
    @Override
    public AxisAlignedBoundingBox getBounds(final int primID) {
       if (primID < 0) {
@@ -230,6 +439,19 @@ public class TriangleMesh implements Geometry {
                                                                                                                 - v0Z, vertices[v2Offs] - v0X, vertices[v2Offs + 1] - v0Y, vertices[v2Offs + 2] - v0Z);
    }
 
+   private final float intersectsTriangle(final FloatRay ray, final int triangleIndex) {
+      final int triangleIndexOffset = triangleIndex * 3;
+      final int v0Offs = triangleIndices[triangleIndexOffset] * 3;
+      final int v1Offs = triangleIndices[triangleIndexOffset + 1] * 3;
+      final int v2Offs = triangleIndices[triangleIndexOffset + 2] * 3;
+
+      final float v0X = vertices[v0Offs];
+      final float v0Y = vertices[v0Offs + 1];
+      final float v0Z = vertices[v0Offs + 2];
+      return ray.intersectsTriangle(v0X, v0Y, v0Z, vertices[v1Offs] - v0X, vertices[v1Offs + 1] - v0Y, vertices[v1Offs + 2]
+                                                                                                                - v0Z, vertices[v2Offs] - v0X, vertices[v2Offs + 1] - v0Y, vertices[v2Offs + 2] - v0Z);
+   }
+
    private final boolean intersectsTriangleBarycentric(final double[] tuv, final Ray ray, final int triangleIndex) {
       final int triangleIndexOffset = triangleIndex * 3;
       final int v0Offs = triangleIndices[triangleIndexOffset] * 3;
@@ -1,5 +1,6 @@
 package edu.rit.krisher.scene.light;
 
+import edu.rit.krisher.raytracer.image.ImageUtil;
 import edu.rit.krisher.raytracer.rays.GeometryRay;
 import edu.rit.krisher.raytracer.rays.IntersectionInfo;
 import edu.rit.krisher.raytracer.rays.SampleRay;
@@ -85,6 +86,17 @@ public class PointLight implements EmissiveGeometry {
       return new AxisAlignedBoundingBox(position, position);
    }
 
+   /*
+    * @see edu.rit.krisher.scene.EmissiveGeometry#getEmittedPower()
+    */
+   @Override
+   public double getEmittedPower() {
+      /*
+       * sampleIrradiance() does not attenuate with distance, so the same radiance is emitted in every direction.
+       */
+      return 4.0 * Math.PI * ImageUtil.luminance((float) material.r, (float) material.g, (float) material.b);
+   }
+
    @Override
    public void sampleEmission(final SampleRay wo, final float r1, final float r2) {
       wo.origin.set(position);
@@ -1,5 +1,6 @@
 package edu.rit.krisher.scene.light;
 
+import edu.rit.krisher.raytracer.image.ImageUtil;
 import edu.rit.krisher.raytracer.rays.SampleRay;
 import edu.rit.krisher.raytracer.sampling.SamplingUtils;
 import edu.rit.krisher.scene.EmissiveGeometry;
@@ -11,6 +12,16 @@ import edu.rit.krisher.vecmath.Vec3;
 
 public final class SphereLight extends Sphere implements EmissiveGeometry {
 
+   /**
+    * Per-thread storage for the sampling basis, so that sampling does not allocate.
+    */
+   private static final ThreadLocal<Vec3[]> basis = new ThreadLocal<Vec3[]>() {
+      @Override
+      protected Vec3[] initialValue() {
+         return new Vec3[] { new Vec3(), new Vec3() };
+      }
+   };
+
    public SphereLight(final Vec3 center, final double radius, final Color material) {
       super(center, radius, material);
    }
@@ -21,7 +32,8 @@ public final class SphereLight extends Sphere implements EmissiveGeometry {
 
    @Override
    public void sampleIrradiance(final SampleRay wo, final Vec3 point, final float r1, final float r2) {
-      final Vec3 pointToCenter = new Vec3(center).subtract(point);
+      final Vec3[] vecs = basis.get();
+      final Vec3 pointToCenter = vecs[0].set(center).subtract(point);
       final double lightDistInv = 1.0 / pointToCenter.length();
       pointToCenter.multiply(lightDistInv);
 
@@ -45,7 +57,7 @@ public final class SphereLight extends Sphere implements EmissiveGeometry {
       /*
        * Construct an orthonormal basis around the direction vector
        */
-      final Vec3 tangentXAxis = Vec3.computePerpendicularVec(new Vec3(), pointToCenter);
+      final Vec3 tangentXAxis = Vec3.computePerpendicularVec(vecs[1], pointToCenter);
 
 
       wo.direction.x = Math.cos(phi) * sinTheta;
@@ -65,6 +77,20 @@ public final class SphereLight extends Sphere implements EmissiveGeometry {
 
    }
 
+   /*
+    * @see edu.rit.krisher.scene.EmissiveGeometry#getEmittedPower()
+    */
+   @Override
+   public double getEmittedPower() {
+      /*
+       * Diffuse emitter: power = radiance * pi * surface area.
+       */
+      final Color emission = new Color(0, 0, 0);
+      material.getEmissionColor(emission, null, null);
+      return ImageUtil.luminance((float) emission.r, (float) emission.g, (float) emission.b) * Math.PI
+            * getSurfaceArea(ALL_PRIMITIVES);
+   }
+
    @Override
    public void sampleEmission(final SampleRay wo, final float r1, final float r2) {
       wo.origin.set(center);
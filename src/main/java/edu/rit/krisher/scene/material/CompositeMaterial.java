@@ -5,6 +5,7 @@ import java.util.Random;
 import edu.rit.krisher.collections.CopyOnWriteArrayList;
 import edu.rit.krisher.raytracer.rays.IntersectionInfo;
 import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.raytracer.sampling.Sampler;
 import edu.rit.krisher.scene.Material;
 import edu.rit.krisher.vecmath.Ray;
 import edu.rit.krisher.vecmath.Vec3;
@@ -72,7 +73,10 @@ public class CompositeMaterial implements Material, Cloneable {
    public double sampleBRDF(final SampleRay sampleOut, final Vec3 wIncoming, final IntersectionInfo parameters,
          final Random rng) {
 
-      final double sampleType = rng.nextDouble();
+      /*
+       * The component is selected with its own dimension, so the selected material samples the BRDF dimensions.
+       */
+      final double sampleType = rng instanceof Sampler ? ((Sampler) rng).nextLobeSelect() : rng.nextDouble();
       double cumP = 0;
       final Material[] mats = materials.array;
       final Double[] P = probabilities.array;
@@ -15,6 +15,17 @@ public class RefractiveMaterial implements Material {
    private final Color transmissionFilter;
    private final double exp;
 
+   /**
+    * Per-thread storage for the flipped surface normal and the sampling basis vectors, so that sampling does not
+    * allocate.
+    */
+   private static final ThreadLocal<Vec3[]> scratch = new ThreadLocal<Vec3[]>() {
+      @Override
+      protected Vec3[] initialValue() {
+         return new Vec3[] { new Vec3(), new Vec3(), new Vec3() };
+      }
+   };
+
    public RefractiveMaterial(final double refractiveIndex, final Color opacity, final double blurExp) {
       this.refractiveIndex = refractiveIndex;
       this.transmissionFilter = opacity;
@@ -65,6 +76,7 @@ public class RefractiveMaterial implements Material {
    @Override
    public double sampleBRDF(final SampleRay wSample, final Vec3 wo, final IntersectionInfo parameters,
          final Random rng) {
+      final Vec3[] vecs = scratch.get();
       Vec3 sNormal = parameters.surfaceNormal;
       double cosThetaI = -wo.dot(sNormal);
 
@@ -82,7 +94,7 @@ public class RefractiveMaterial implements Material {
           * Sample ray from inside going out
           */
          rIdxRatio = refractiveIndex / inRef;
-         sNormal = new Vec3(-sNormal.x, -sNormal.y, -sNormal.z);
+         sNormal = vecs[0].set(-sNormal.x, -sNormal.y, -sNormal.z);
          exiting = true;
       }
       final double snellRoot = 1.0 - (rIdxRatio * rIdxRatio * (1.0 - cosThetaI * cosThetaI));
@@ -128,7 +140,7 @@ public class RefractiveMaterial implements Material {
              * reflection vector is irrelevant since xb and yb are generated
              * from a uniform random variable.
              */
-            final Vec3 u = new Vec3(0, 1.0, 0);
+            final Vec3 u = vecs[1].set(0, 1.0, 0);
             final double cosAng = wSample.direction.dot(u);
             if (cosAng > 0.9 || cosAng < -0.9) {
                // Small angle, pick a better vector...
@@ -136,7 +148,7 @@ public class RefractiveMaterial implements Material {
                u.y = 0;
             }
             u.cross(wSample.direction).normalize();
-            final Vec3 v = new Vec3(u).cross(wSample.direction);
+            final Vec3 v = vecs[2].set(u).cross(wSample.direction);
 
             wSample.direction.multiply(cosA).scaleAdd(u, xb).scaleAdd(v, yb);
             if (wSample.direction.dot(parameters.surfaceNormal) < 0) {
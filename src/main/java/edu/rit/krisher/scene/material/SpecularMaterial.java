@@ -17,6 +17,16 @@ public class SpecularMaterial implements Material {
     */
    private float specExp;
 
+   /**
+    * Per-thread storage for the sampling basis vectors, so that sampling does not allocate.
+    */
+   private static final ThreadLocal<Vec3[]> basis = new ThreadLocal<Vec3[]>() {
+      @Override
+      protected Vec3[] initialValue() {
+         return new Vec3[] { new Vec3(), new Vec3() };
+      }
+   };
+
    public SpecularMaterial(final Texture spec, final float specExp) {
       this.specular = spec;
       this.specExp = specExp;
@@ -98,7 +108,8 @@ public class SpecularMaterial implements Material {
           * vectors for the other two axes. The orientation of the coordinate system about the reflection vector is
           * irrelevant since xb and yb are generated from a uniform random variable.
           */
-         final Vec3 u = new Vec3(0, 1.0, 0);
+         final Vec3[] uv = basis.get();
+         final Vec3 u = uv[0].set(0, 1.0, 0);
          final double cosAng = directionOut.dot(u);
          if (cosAng > 0.9 || cosAng < -0.9) {
             // Small angle, pick a better vector...
@@ -106,7 +117,7 @@ public class SpecularMaterial implements Material {
             u.y = 0;
          }
          u.cross(directionOut).normalize();
-         final Vec3 v = new Vec3(u).cross(directionOut);
+         final Vec3 v = uv[1].set(u).cross(directionOut);
 
          directionOut.multiply(cosA).scaleAdd(u, xb).scaleAdd(v, yb);
          if (directionOut.dot(surfaceNormal) < 0) {
@@ -26,6 +26,7 @@ import edu.rit.krisher.raytracer.CLPathTracer;
 import edu.rit.krisher.raytracer.PathTracer;
 import edu.rit.krisher.raytracer.PhotonTracer;
 import edu.rit.krisher.raytracer.SurfaceIntegrator;
+import edu.rit.krisher.raytracer.WavefrontPathTracer;
 import edu.rit.krisher.raytracer.image.DisplayableImageBuffer;
 import edu.rit.krisher.raytracer.image.ImageBuffer;
 import edu.rit.krisher.raytracer.image.ImageUtil;
@@ -46,13 +47,13 @@ public class RTFrame extends JFrame {
    final JButton saveButton = new JButton("Save Image");
    final JFileChooser saveChooser = new JFileChooser(".");
 
-   private final SurfaceIntegrator[] integrators = new SurfaceIntegrator[] { new PathTracer(), new PhotonTracer(), new CLPathTracer() };
+   private final SurfaceIntegrator[] integrators = new SurfaceIntegrator[] { new PathTracer(), new PathTracer(true), new WavefrontPathTracer(), new PhotonTracer(), new CLPathTracer() };
 
    public RTFrame() {
       final Container contentPane = getContentPane();
 
       rtControls.setBorder(BorderFactory.createTitledBorder("Ray Tracer"));
-      rtControls.setIntegratorChoices("Path Tracer", "Photon Tracer", "CL Path Tracer");
+      rtControls.setIntegratorChoices("Path Tracer", "Path Tracer (Sorted Rays)", "Wavefront Path Tracer", "Photon Tracer", "CL Path Tracer");
       rtControls.addActionListener(rtControlListener);
       contentPane.setLayout(new MigLayout("", "[fill]u[grow]"));
       contentPane.add(rtControls, "ay top");
@@ -2,7 +2,6 @@ package edu.rit.krisher.ui.scenes;
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -206,7 +205,7 @@ public final class AdvRenderingScenes {
          @Override
          public Geometry createGeometry() {
             try {
-               final TriangleMesh model = PLYParser.parseTriangleMesh(new BufferedInputStream(new FileInputStream(file)), computeNormals);
+               final TriangleMesh model = PLYParser.parseTriangleMesh(file, computeNormals);
                if (vertTransform != null) {
                   model.transform(vertTransform);
                }
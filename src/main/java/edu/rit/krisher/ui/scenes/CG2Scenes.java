@@ -1,5 +1,7 @@
 package edu.rit.krisher.ui.scenes;
 
+import java.util.Random;
+
 import edu.rit.krisher.scene.DefaultScene;
 import edu.rit.krisher.scene.Material;
 import edu.rit.krisher.scene.Scene;
@@ -324,9 +326,44 @@ public class CG2Scenes {
       }
    };
 
+   /*
+    * A few hundred small lights of varying color and power scattered above a floor. Used to compare light selection
+    * strategies, uniform selection wastes most shadow rays on dim or distant lights.
+    */
+   private static Scene manyLightsScene = new AbstractSceneDescription<DoFCamera>("Many Lights Scene", new DoFCamera()) {
+      @Override
+      protected void initScene() {
+         add(new Box(24, 2, 24, whiteLambert, new Vec3(0, -1, 0), false));
+         add(new Sphere(new Vec3(-2, 1, 0), 1, blueLambert));
+         add(new Sphere(new Vec3(0, 1, -2), 1, whiteShiny));
+         add(new Sphere(new Vec3(2, 1, 0), 1, redLambert));
+
+         /*
+          * Fixed seed so the scene is the same every time.
+          */
+         final Random rng = new Random(1);
+         for (int i = 0; i < 20; ++i) {
+            for (int j = 0; j < 20; ++j) {
+               final Vec3 position = new Vec3(-10 + i + rng.nextDouble(), 0.25 + 3.0 * rng.nextDouble(), -10 + j
+                                              + rng.nextDouble());
+               final Color color = new Color(0.5 + 0.5 * rng.nextDouble(), 0.5 + 0.5 * rng.nextDouble(), 0.5 + 0.5 * rng.nextDouble());
+               /*
+                * Mostly dim lights, with a few that are much brighter.
+                */
+               final double power = (rng.nextDouble() < 0.05) ? 200 : 5 * rng.nextDouble();
+               add(new SphereLight(position, 0.05, color, power));
+            }
+         }
+
+         camera.lookAt(new Vec3(0, 1, 0), 30, -25, 10);
+         camera.setAperture(1 / 22.0);
+         camera.setFOVAngle(56.14);
+      }
+   };
+
    public static Scene[] getScenes() {
       return new Scene[] { whittedScene(75), whittedScene(150), whittedScene(500), dofScene, causticScene,
-            multiLightScene, diffuseTest1, diffuseTest2, diffuseTest3, specularTest1, specularTest2(), specularTest3(),
+            multiLightScene, manyLightsScene, diffuseTest1, diffuseTest2, diffuseTest3, specularTest1, specularTest2(), specularTest3(),
             // threeBalls(), niceScene(), checkpoint6(), projectCP(),
       };
    }
@@ -4,9 +4,13 @@
 package edu.rit.krisher.ui.scenes;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.logging.Logger;
 
+import edu.rit.krisher.fileparser.mesh.MeshCache;
 import edu.rit.krisher.fileparser.ply.PLYParser;
 import edu.rit.krisher.scene.Camera;
 import edu.rit.krisher.scene.Geometry;
@@ -17,6 +21,8 @@ import edu.rit.krisher.scene.acceleration.KDTreeMetrics;
 import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
 import edu.rit.krisher.scene.camera.DoFCamera;
 import edu.rit.krisher.scene.camera.PinholeCamera;
+import edu.rit.krisher.scene.geometry.BufferTriangleMesh;
+import edu.rit.krisher.scene.geometry.MeshCleanup;
 import edu.rit.krisher.scene.geometry.TriangleMesh;
 import edu.rit.krisher.scene.light.SphereLight;
 import edu.rit.krisher.scene.material.Color;
@@ -30,12 +36,16 @@ import edu.rit.krisher.vecmath.Vec3;
  */
 public class PLYScene<C extends Camera> extends AbstractSceneDescription<C> {
 
+   private static final Logger log = Logger.getLogger("PLY Scene");
+
    private final URL modelURL;
    private final Material modelMaterial;
    private final Material boxMaterial;
    private final KDPartitionStrategy partitionStrategy;
    private final boolean interpolateNormals;
    private final Transform modelTransform;
+   private MeshCache meshCache = MeshCache.getConfigured();
+   private boolean cleanup;
 
    public PLYScene(final String name, final C camera, final URL modelFile) {
       this(name, camera, modelFile, null, null, new SAHPartitionStrategey(), false, null);
@@ -53,16 +63,105 @@ public class PLYScene<C extends Camera> extends AbstractSceneDescription<C> {
       this.modelTransform = modelTransform;
    }
 
-   @Override
-   protected void initScene() {
-      try {
-         final TriangleMesh model = PLYParser.parseTriangleMesh(new BufferedInputStream(modelURL.openStream()), interpolateNormals);
-         if (modelTransform != null) {
-            model.transform(modelTransform);
+   /**
+    * Sets the cache that the model is loaded through, if it is an untransformed local file. By default this is the
+    * cache specified by the meshcache.dir system property, or none.
+    * 
+    * <p>
+    * The cached model is a {@link BufferTriangleMesh}, which is not supported by the OpenCL path tracer and is always
+    * intersected in double precision.
+    * 
+    * @param meshCache
+    *           The cache, or null to parse the model every time the scene is loaded. Must be set before the scene is
+    *           initialized.
+    */
+   public void setMeshCache(final MeshCache meshCache) {
+      this.meshCache = meshCache;
+   }
+
+   /**
+    * Enables {@link MeshCleanup} of the model when it is parsed: duplicate vertices are welded and degenerate triangles
+    * removed, and normals are computed after welding so they are shared across triangle edges. The triangle order is
+    * kept.
+    * 
+    * @param cleanup
+    *           true to clean up the model (default false). Must be set before the scene is initialized.
+    */
+   public void setMeshCleanup(final boolean cleanup) {
+      this.cleanup = cleanup;
+   }
+
+   /**
+    * @return The model file, or null if the model is not a local file.
+    */
+   private File modelFile() {
+      if ("file".equals(modelURL.getProtocol())) {
+         try {
+            return new File(modelURL.toURI());
+         } catch (final URISyntaxException e) {
+            /*
+             * Not a valid file URI, read from the URL stream.
+             */
          }
+      }
+      return null;
+   }
+
+   /**
+    * Parses the model, and cleans it up if {@link #setMeshCleanup(boolean) enabled}.
+    */
+   private TriangleMesh parseModel(final File file) throws IOException {
+      if (!cleanup) {
+         return file != null ? PLYParser.parseTriangleMesh(file, interpolateNormals)
+               : PLYParser.parseTriangleMesh(new BufferedInputStream(modelURL.openStream()), interpolateNormals);
+      }
+      final TriangleMesh raw = file != null ? PLYParser.parseTriangleMesh(file, false)
+            : PLYParser.parseTriangleMesh(new BufferedInputStream(modelURL.openStream()), false);
+      final MeshCleanup.Report report = new MeshCleanup.Report();
+      final TriangleMesh model = MeshCleanup.process(raw, 0, false, report);
+      log.info(report.toString());
+      if (!interpolateNormals)
+         return model;
+      final float[] vertices = model.getVertices();
+      final int[] indices = model.getTriIndices();
+      final TriangleMesh smooth = new TriangleMesh(vertices, TriangleMesh.computeTriangleNormals(vertices, indices),
+                                                   indices);
+      smooth.setMaterial(model.getMaterial());
+      return smooth;
+   }
+
+   /**
+    * Loads the model. If a {@link MeshCache} is set, untransformed local files are loaded through it, so they are only
+    * parsed (and cleaned up) the first time; other files are memory-mapped if possible, which is much faster for binary
+    * PLY files.
+    */
+   private Geometry loadModel() throws IOException {
+      final File file = modelFile();
+      if (meshCache != null && file != null && modelTransform == null) {
+         final String variant = (cleanup ? "clean-" : "") + (interpolateNormals ? "normals" : "flat");
+         final BufferTriangleMesh mesh = meshCache.load(file, variant, new MeshCache.Loader() {
+            @Override
+            public TriangleMesh load() throws IOException {
+               return parseModel(file);
+            }
+         });
          if (modelMaterial != null)
-            model.setMaterial(modelMaterial);
+            mesh.setMaterial(modelMaterial);
+         return mesh;
+      }
+      final TriangleMesh model = parseModel(file);
+      if (modelTransform != null) {
+         model.transform(modelTransform);
+      }
+      if (modelMaterial != null)
+         model.setMaterial(modelMaterial);
+      return model;
+   }
 
+   @Override
+   protected void initScene() {
+      try {
+         final Geometry model = loadModel();
          final AxisAlignedBoundingBox geomBounds = model.getBounds(Geometry.ALL_PRIMITIVES);
 
          if (partitionStrategy != null) {
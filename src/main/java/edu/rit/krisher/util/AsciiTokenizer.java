@@ -0,0 +1,245 @@
+package edu.rit.krisher.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Whitespace separated number parser for text model formats, which reads directly from a ByteBuffer one line (or other
+ * range) at a time, without creating Strings for the tokens.
+ *
+ * <p>
+ * Floats are parsed with an exact fast path for the common short decimal representations, other values are parsed by
+ * the JDK, so the results are always the same as {@link Float#parseFloat(String)}.
+ *
+ * @author krisher
+ *
+ */
+public final class AsciiTokenizer {
+   /**
+    * Powers of ten that are exactly representable as doubles.
+    */
+   private static final double[] POW10 = new double[23];
+   static {
+      POW10[0] = 1;
+      for (int i = 1; i < POW10.length; ++i) {
+         POW10[i] = POW10[i - 1] * 10;
+      }
+   }
+   /**
+    * Integer mantissas below this are exact doubles.
+    */
+   private static final long EXACT_MANTISSA = 1L << 53;
+   /*
+    * With at most this many decimal places, rounding the (correctly rounded) double quotient to float gives the
+    * correctly rounded float: a decimal value that is not exactly halfway between two floats can not be within half a
+    * double ulp of the halfway point.
+    */
+   private static final int MAX_EXACT_FLOAT_SCALE = 8;
+   private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+   private final ByteBuffer data;
+   private final byte separator;
+   private int position;
+   private int end;
+
+   /**
+    * Creates a tokenizer for whitespace separated tokens.
+    *
+    * @param data
+    *           The text to parse, which is only read with absolute get methods.
+    */
+   public AsciiTokenizer(final ByteBuffer data) {
+      this(data, (byte) ' ');
+   }
+
+   /**
+    * @param data
+    *           The text to parse, which is only read with absolute get methods.
+    * @param separator
+    *           A character that ends a token in addition to whitespace, such as the '/' between the indices of an
+    *           OBJ face vertex. The separator itself is not skipped, see {@link #skip(byte)}.
+    */
+   public AsciiTokenizer(final ByteBuffer data, final byte separator) {
+      this.data = data;
+      this.separator = separator;
+   }
+
+   /**
+    * Sets the range of the buffer to tokenize.
+    *
+    * @param start
+    *           The index of the first character.
+    * @param end
+    *           The index following the last character, typically the line terminator.
+    */
+   public void reset(final int start, final int end) {
+      this.position = start;
+      this.end = end;
+   }
+
+   /**
+    * @return The index of the next character to be parsed.
+    */
+   public int position() {
+      return position;
+   }
+
+   private static boolean isSpace(final byte c) {
+      return c == ' ' || c == '\t' || c == '\r';
+   }
+
+   private static boolean isDigit(final byte c) {
+      return c >= '0' && c <= '9';
+   }
+
+   private int tokenStart() throws IOException {
+      if (!hasNext())
+         throw new IOException("Missing value.");
+      return position;
+   }
+
+   private boolean atTokenEnd(final int p) {
+      if (p == end)
+         return true;
+      final byte c = data.get(p);
+      return isSpace(c) || c == separator;
+   }
+
+   /**
+    * Skips whitespace.
+    *
+    * @return true if there is another token in the range.
+    */
+   public boolean hasNext() {
+      while (position < end && isSpace(data.get(position)))
+         ++position;
+      return position < end;
+   }
+
+   /**
+    * Skips the next character if it is the specified character, without skipping whitespace first.
+    *
+    * @return true if the character was skipped.
+    */
+   public boolean skip(final byte c) {
+      if (position < end && data.get(position) == c) {
+         ++position;
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Skips the next token.
+    *
+    * @throws IOException
+    *            If there are no more tokens in the range.
+    */
+   public void skip() throws IOException {
+      tokenStart();
+      while (!atTokenEnd(position))
+         ++position;
+   }
+
+   /**
+    * @return The next token, parsed as an int.
+    * @throws IOException
+    *            If there are no more tokens in the range.
+    * @throws NumberFormatException
+    *            If the token is not an int.
+    */
+   public int nextInt() throws IOException {
+      final int start = tokenStart();
+      int p = start;
+      final boolean negative = data.get(p) == '-';
+      if (negative || data.get(p) == '+')
+         ++p;
+      final int digits = p;
+      long value = 0;
+      while (p < end && isDigit(data.get(p)) && value <= Integer.MAX_VALUE) {
+         value = value * 10 + (data.get(p++) - '0');
+      }
+      if (p == digits || !atTokenEnd(p) || value > Integer.MAX_VALUE + (negative ? 1L : 0L))
+         return Integer.parseInt(token(start));
+      position = p;
+      return (int) (negative ? -value : value);
+   }
+
+   /**
+    * @return The next token, parsed as a float.
+    * @throws IOException
+    *            If there are no more tokens in the range.
+    * @throws NumberFormatException
+    *            If the token is not a number.
+    */
+   public float nextFloat() throws IOException {
+      final int start = tokenStart();
+      int p = start;
+      final boolean negative = data.get(p) == '-';
+      if (negative || data.get(p) == '+')
+         ++p;
+      long mantissa = 0;
+      int scale = 0;
+      boolean digits = false;
+      while (p < end && isDigit(data.get(p))) {
+         if (mantissa < EXACT_MANTISSA)
+            mantissa = mantissa * 10 + (data.get(p) - '0');
+         digits = true;
+         ++p;
+      }
+      if (p < end && data.get(p) == '.') {
+         ++p;
+         while (p < end && isDigit(data.get(p))) {
+            if (mantissa < EXACT_MANTISSA) {
+               mantissa = mantissa * 10 + (data.get(p) - '0');
+               ++scale;
+            }
+            digits = true;
+            ++p;
+         }
+      }
+      if (p < end && (data.get(p) == 'e' || data.get(p) == 'E')) {
+         ++p;
+         final boolean negativeExp = p < end && data.get(p) == '-';
+         if (p < end && (negativeExp || data.get(p) == '+'))
+            ++p;
+         final int expDigits = p;
+         int exponent = 0;
+         while (p < end && isDigit(data.get(p)) && exponent < 1000) {
+            exponent = exponent * 10 + (data.get(p++) - '0');
+         }
+         if (p == expDigits)
+            digits = false;
+         scale += negativeExp ? exponent : -exponent;
+      }
+      /*
+       * Long mantissas, large exponents, and anything unusual (or invalid) is left to the JDK.
+       */
+      if (!digits || !atTokenEnd(p) || mantissa >= EXACT_MANTISSA)
+         return Float.parseFloat(token(start));
+      final float value;
+      if (scale >= 0 && scale <= MAX_EXACT_FLOAT_SCALE)
+         value = (float) (mantissa / POW10[scale]);
+      else if (scale < 0 && -scale < POW10.length && mantissa <= EXACT_MANTISSA / POW10[-scale])
+         value = (float) (mantissa * POW10[-scale]);
+      else
+         return Float.parseFloat(token(start));
+      position = p;
+      return negative ? -value : value;
+   }
+
+   /**
+    * @return The token starting at the specified position, which is consumed.
+    */
+   private String token(final int start) {
+      position = start;
+      while (!atTokenEnd(position))
+         ++position;
+      final byte[] bytes = new byte[position - start];
+      for (int i = 0; i < bytes.length; ++i) {
+         bytes[i] = data.get(start + i);
+      }
+      return new String(bytes, US_ASCII);
+   }
+}
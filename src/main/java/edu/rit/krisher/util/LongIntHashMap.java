@@ -0,0 +1,115 @@
+package edu.rit.krisher.util;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to non-negative int values, without boxing or per-entry objects. Useful for
+ * de-duplicating mesh vertices by a packed key.
+ *
+ * @author krisher
+ *
+ */
+public final class LongIntHashMap {
+
+   private static final float LOAD_FACTOR = 0.5f;
+
+   private long[] keys;
+   /**
+    * -1 for empty slots.
+    */
+   private int[] values;
+   private int size;
+   private int shift;
+
+   public LongIntHashMap() {
+      this(16);
+   }
+
+   /**
+    * @param expectedSize
+    *           The number of entries that can be added before the table is resized.
+    */
+   public LongIntHashMap(final int expectedSize) {
+      int capacity = 16;
+      while (capacity * LOAD_FACTOR < expectedSize)
+         capacity <<= 1;
+      allocate(capacity);
+   }
+
+   private void allocate(final int capacity) {
+      keys = new long[capacity];
+      values = new int[capacity];
+      Arrays.fill(values, -1);
+      shift = 64 - Integer.numberOfTrailingZeros(capacity);
+   }
+
+   private int slot(final long key) {
+      return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+   }
+
+   public int size() {
+      return size;
+   }
+
+   /**
+    * @return The value for the key, or -1 if there is none.
+    */
+   public int get(final long key) {
+      final int mask = keys.length - 1;
+      for (int slot = slot(key);; slot = (slot + 1) & mask) {
+         if (values[slot] < 0)
+            return -1;
+         if (keys[slot] == key)
+            return values[slot];
+      }
+   }
+
+   /**
+    * Adds a mapping if the key is not yet in the map.
+    *
+    * @param key
+    *           The key.
+    * @param value
+    *           A non-negative value.
+    * @return The existing value for the key, or -1 if the value was added.
+    */
+   public int putIfAbsent(final long key, final int value) {
+      if (value < 0)
+         throw new IllegalArgumentException("Negative value: " + value);
+      final int mask = keys.length - 1;
+      int slot = slot(key);
+      for (; values[slot] >= 0; slot = (slot + 1) & mask) {
+         if (keys[slot] == key)
+            return values[slot];
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      if (++size > keys.length * LOAD_FACTOR)
+         rehash();
+      return -1;
+   }
+
+   private void rehash() {
+      final long[] oldKeys = keys;
+      final int[] oldValues = values;
+      allocate(keys.length * 2);
+      final int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; ++i) {
+         if (oldValues[i] >= 0) {
+            int slot = slot(oldKeys[i]);
+            while (values[slot] >= 0)
+               slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+         }
+      }
+   }
+
+   /**
+    * Removes all entries.
+    */
+   public void clear() {
+      Arrays.fill(values, -1);
+      size = 0;
+   }
+}
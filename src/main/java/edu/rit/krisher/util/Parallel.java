@@ -0,0 +1,118 @@
+package edu.rit.krisher.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data parallel loops for scene loading and preprocessing.
+ *
+ * <p>
+ * The loops run on their own pool of daemon threads rather than the rendering thread pool, so loading a model does not
+ * wait for (or delay) the tiles of a rendering in progress.
+ *
+ * @author krisher
+ *
+ */
+public final class Parallel {
+
+   /**
+    * The number of threads used for parallel loops.
+    */
+   public static final int threads = Runtime.getRuntime().availableProcessors();
+
+   private static final ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(final Runnable r) {
+         final Thread thread = new PoolThread(r, "Parallel-" + count.incrementAndGet());
+         thread.setDaemon(true);
+         return thread;
+      }
+   });
+
+   private static final class PoolThread extends Thread {
+      PoolThread(final Runnable r, final String name) {
+         super(r, name);
+      }
+   }
+
+   /**
+    * The body of a parallel loop.
+    */
+   public static interface Body {
+      /**
+       * Processes one index of the loop. Different indices may be processed concurrently.
+       *
+       * @param index
+       *           The loop index.
+       * @throws Exception
+       *            To abort the loop.
+       */
+      public void run(int index) throws Exception;
+   }
+
+   private Parallel() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   /**
+    * Runs a loop body for each index from 0 to count - 1, and waits for all indices to be processed. With a single
+    * index (or a single thread), or when called from the body of another parallel loop, the body runs on the calling
+    * thread.
+    *
+    * @param count
+    *           The number of indices.
+    * @param body
+    *           The loop body.
+    * @throws Exception
+    *            The first exception thrown by the body, after all indices have been processed.
+    */
+   public static void forEach(final int count, final Body body) throws Exception {
+      if (count <= 1 || threads == 1 || Thread.currentThread() instanceof PoolThread) {
+         for (int i = 0; i < count; ++i) {
+            body.run(i);
+         }
+         return;
+      }
+      final List<Future<Void>> futures = new ArrayList<Future<Void>>(count);
+      for (int i = 0; i < count; ++i) {
+         final int index = i;
+         futures.add(pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+               body.run(index);
+               return null;
+            }
+         }));
+      }
+      Exception failure = null;
+      for (final Future<Void> future : futures) {
+         try {
+            future.get();
+         } catch (final ExecutionException e) {
+            if (failure == null)
+               failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+         }
+      }
+      if (failure != null)
+         throw failure;
+   }
+
+   /**
+    * @return A reasonable number of chunks to divide a loop of the specified size into, so each chunk has at least
+    *         minChunkSize elements and the threads stay busy if chunks take different amounts of time.
+    */
+   public static int chunkCount(final long size, final int minChunkSize) {
+      return (int) Math.max(1, Math.min(4L * threads, size / minChunkSize));
+   }
+}
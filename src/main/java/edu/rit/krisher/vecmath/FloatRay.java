@@ -0,0 +1,181 @@
+package edu.rit.krisher.vecmath;
+
+/**
+ * Single precision copy of a {@link Ray}, for intersection tests against single precision data (triangle mesh vertices
+ * and KD-tree bounds) without converting each value to double precision.
+ *
+ * <p>
+ * Single precision tests are less exact, so they are conservative where an error would cause a visible artifact: the
+ * parametric range of a bounding box is widened by the maximum rounding error, triangle edges have a small tolerance
+ * so that rays do not slip through the shared edge of adjacent triangles, and hits closer than {@link #tMin} (which
+ * scales with the magnitude of the ray origin) are ignored so that a ray leaving a surface does not hit the same
+ * surface again.
+ *
+ * @author krisher
+ *
+ */
+public final class FloatRay {
+
+   /**
+    * Bound on the relative rounding error of three chained float operations, see Pharr and Humphreys, Physically Based
+    * Rendering (3rd ed.), section 3.9.
+    */
+   private static final float GAMMA_3 = 3 * 0x1p-24f / (1 - 3 * 0x1p-24f);
+
+   /**
+    * Tolerance for barycentric coordinates slightly outside of [0, 1].
+    */
+   public static final float BARYCENTRIC_EPSILON = 1e-6f;
+
+   /**
+    * The smallest hit distance, relative to the largest component of the ray origin.
+    */
+   public static final float RELATIVE_T_EPSILON = 0x1p-18f;
+
+   /**
+    * Triangles are considered parallel to the ray when the sine of the angle between the ray and the triangle plane
+    * (approximately) is below this value.
+    */
+   private static final float PARALLEL_EPSILON = 1e-7f;
+   private static final float PARALLEL_EPSILON_SQ = PARALLEL_EPSILON * PARALLEL_EPSILON;
+
+   public float originX;
+   public float originY;
+   public float originZ;
+   public float directionX;
+   public float directionY;
+   public float directionZ;
+   /**
+    * The length of the ray from the origin.
+    */
+   public float t;
+   /**
+    * Hits closer to the origin than this are ignored.
+    */
+   public float tMin;
+
+   /**
+    * Initializes this ray from a double precision ray.
+    *
+    * @param ray
+    *           A non-null ray.
+    * @return this, for operation chaining.
+    */
+   public FloatRay set(final Ray ray) {
+      originX = (float) ray.origin.x;
+      originY = (float) ray.origin.y;
+      originZ = (float) ray.origin.z;
+      directionX = (float) ray.direction.x;
+      directionY = (float) ray.direction.y;
+      directionZ = (float) ray.direction.z;
+      t = (float) ray.t;
+      tMin = RELATIVE_T_EPSILON * Math.max(Math.abs(originX), Math.max(Math.abs(originY), Math.abs(originZ)));
+      return this;
+   }
+
+   /**
+    * @return The largest float that is not greater than the specified value.
+    */
+   public static float roundDown(final double value) {
+      final float f = (float) value;
+      return f > value ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+   }
+
+   /**
+    * @return The smallest float that is not less than the specified value.
+    */
+   public static float roundUp(final double value) {
+      final float f = (float) value;
+      return f < value ? Math.nextUp(f) : f;
+   }
+
+   /**
+    * Computes the parametric range of this ray that is inside the specified box. The far distance is widened by the
+    * maximum rounding error, so a ray that hits the box is never rejected.
+    *
+    * @param tNearFar
+    *           A non-null array of at least 2 elements in which to store the entry and exit distances.
+    * @param bounds
+    *           The box as minX, minY, minZ, maxX, maxY, maxZ.
+    * @return true if the ray intersects the box.
+    */
+   public boolean intersectsBoxParametric(final float[] tNearFar, final float[] bounds) {
+      float tNear = Float.NEGATIVE_INFINITY;
+      float tFar = Float.POSITIVE_INFINITY;
+      for (int axis = 0; axis < 3; ++axis) {
+         final float origin = axis == 0 ? originX : (axis == 1 ? originY : originZ);
+         final float direction = axis == 0 ? directionX : (axis == 1 ? directionY : directionZ);
+         if (direction != 0) {
+            float t1 = (bounds[axis] - origin) / direction;
+            float t2 = (bounds[axis + 3] - origin) / direction;
+            if (t1 > t2) {
+               final float tmp = t1;
+               t1 = t2;
+               t2 = tmp;
+            }
+            t2 *= 1 + 2 * GAMMA_3;
+            tNear = t1 > tNear ? t1 : tNear;
+            tFar = t2 < tFar ? t2 : tFar;
+            if (tNear > tFar || tFar < 0)
+               return false;
+         } else if (origin > bounds[axis + 3] || origin < bounds[axis]) {
+            /*
+             * Ray runs parallel to the slab, and starts outside of it.
+             */
+            return false;
+         }
+      }
+      tNearFar[0] = tNear;
+      tNearFar[1] = tFar;
+      return true;
+   }
+
+   /**
+    * Moller-Trumbore intersection test (http://www.graphics.cornell.edu/pubs/1997/MT97.html) in single precision.
+    *
+    * @return The distance from the origin to the intersection point, if <= 0 there was no intersection (or the
+    *         intersection was closer than {@link #tMin}).
+    */
+   public float intersectsTriangle(final float v0X, final float v0Y, final float v0Z, final float e0X, final float e0Y,
+         final float e0Z, final float e1X, final float e1Y, final float e1Z) {
+      final float pX = directionY * e1Z - directionZ * e1Y;
+      final float pY = directionZ * e1X - directionX * e1Z;
+      final float pZ = directionX * e1Y - directionY * e1X;
+      final float divisor = pX * e0X + pY * e0Y + pZ * e0Z;
+      /*
+       * Ray nearly parallel to triangle plane, or degenerate triangle. The test is relative to the edge lengths so that
+       * it does not depend on the scale of the triangle.
+       */
+      if (divisor * divisor <= PARALLEL_EPSILON_SQ * (e0X * e0X + e0Y * e0Y + e0Z * e0Z)
+            * (e1X * e1X + e1Y * e1Y + e1Z * e1Z)) {
+         return 0;
+      }
+      final float invDivisor = 1f / divisor;
+
+      final float translatedOriginX = originX - v0X;
+      final float translatedOriginY = originY - v0Y;
+      final float translatedOriginZ = originZ - v0Z;
+
+      final float e1Factor = (pX * translatedOriginX + pY * translatedOriginY + pZ * translatedOriginZ) * invDivisor;
+      if (e1Factor < -BARYCENTRIC_EPSILON || e1Factor > 1 + BARYCENTRIC_EPSILON) {
+         return 0;
+      }
+
+      final float qX = translatedOriginY * e0Z - translatedOriginZ * e0Y;
+      final float qY = translatedOriginZ * e0X - translatedOriginX * e0Z;
+      final float qZ = translatedOriginX * e0Y - translatedOriginY * e0X;
+      final float e2Factor = (qX * directionX + qY * directionY + qZ * directionZ) * invDivisor;
+      if (e2Factor < -BARYCENTRIC_EPSILON || e2Factor + e1Factor > 1 + BARYCENTRIC_EPSILON) {
+         return 0;
+      }
+
+      final float dist = (qX * e1X + qY * e1Y + qZ * e1Z) * invDivisor;
+      return dist > tMin ? dist : 0;
+   }
+
+   @Override
+   public String toString() {
+      return "FloatRay [origin=(" + originX + ", " + originY + ", " + originZ + "), direction=(" + directionX + ", "
+            + directionY + ", " + directionZ + ")]";
+   }
+}
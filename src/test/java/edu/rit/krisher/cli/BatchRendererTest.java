@@ -0,0 +1,71 @@
+package edu.rit.krisher.cli;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Properties;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class BatchRendererTest {
+
+   private static Properties job(final File output) {
+      final Properties props = new Properties();
+      props.setProperty("scene", "DoF Scene");
+      props.setProperty("width", "20");
+      props.setProperty("height", "12");
+      props.setProperty("spp", "4");
+      props.setProperty("depth", "1");
+      props.setProperty("output", output.getPath());
+      return props;
+   }
+
+   @Test
+   public void renderShouldWriteImagesAndStatistics() throws Exception {
+      System.setProperty("java.awt.headless", "true");
+      final File dir = File.createTempFile("batch", "");
+      Assert.assertTrue(dir.delete());
+      final File output = new File(new File(dir, "out"), "dof");
+      try {
+         final RenderStatistics stats = BatchRenderer.render(new JobDescription("test", job(output)));
+         Assert.assertTrue(stats.completed);
+         Assert.assertEquals(4, stats.samplesPerPixel);
+         Assert.assertTrue("Ray count should include at least the eye rays.", stats.rays >= 20 * 12 * 4);
+
+         final BufferedImage png = ImageIO.read(new File(output.getPath() + ".png"));
+         Assert.assertEquals(20, png.getWidth());
+         Assert.assertEquals(12, png.getHeight());
+
+         final File pfm = new File(output.getPath() + ".pfm");
+         Assert.assertEquals("PF\n20 12\n1.0\n".length() + 20 * 12 * 3 * 4, pfm.length());
+
+         Assert.assertTrue(new File(output.getPath() + ".json").length() > 0);
+         Assert.assertTrue(stats.toJSON().startsWith("{\"job\":\"test\",\"scene\":\"DoF Scene\""));
+      } finally {
+         for (final String ext : new String[] { ".png", ".pfm", ".json" }) {
+            new File(output.getPath() + ext).delete();
+         }
+         output.getParentFile().delete();
+         dir.delete();
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void invalidIntegratorShouldBeRejected() {
+      final Properties props = job(new File("unused"));
+      props.setProperty("integrator", "raycaster");
+      new JobDescription("test", props);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void unknownSceneShouldBeRejected() {
+      final Properties props = job(new File("unused"));
+      props.setProperty("scene", "No Such Scene");
+      new JobDescription("test", props).createScene();
+   }
+}
@@ -0,0 +1,143 @@
+package edu.rit.krisher.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.cli.JobDescription;
+import edu.rit.krisher.raytracer.PathTracer;
+import edu.rit.krisher.raytracer.RenderTestSupport.ArrayImageBuffer;
+import edu.rit.krisher.raytracer.image.AccumulationBuffer;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ *
+ */
+public class RenderCoordinatorTest {
+
+   private static final int WIDTH = 16;
+   private static final int HEIGHT = 12;
+   private static final int PASSES = 5;
+
+   private static JobDescription createJob() {
+      final Properties props = new Properties();
+      props.setProperty("scene", "DoF Scene");
+      props.setProperty("width", Integer.toString(WIDTH));
+      props.setProperty("height", Integer.toString(HEIGHT));
+      props.setProperty("spp", "1");
+      props.setProperty("depth", "2");
+      props.setProperty("frame", "7");
+      props.setProperty("pass", "100");
+      props.setProperty("output", "unused");
+      return new JobDescription("test", props);
+   }
+
+   @Test
+   public void lostWorkerPassesShouldBeReissued() throws Exception {
+      final JobDescription job = createJob();
+      final ArrayImageBuffer image = new ArrayImageBuffer(WIDTH, HEIGHT);
+      final RenderCoordinator coordinator = new RenderCoordinator(job, PASSES, image);
+      final AtomicInteger lost = new AtomicInteger();
+      final AtomicInteger passes = new AtomicInteger();
+      coordinator.setProgressListener(new ProgressListener() {
+         @Override
+         public void workerConnected(final String worker, final int threads) {
+         }
+
+         @Override
+         public void passCompleted(final String worker, final int pass, final int completedPasses,
+               final int totalPasses) {
+            passes.incrementAndGet();
+            Assert.assertEquals(PASSES, totalPasses);
+         }
+
+         @Override
+         public void workerLost(final String worker, final int reissuedPass) {
+            lost.incrementAndGet();
+         }
+      });
+      final int port = coordinator.start(0);
+      try {
+         /*
+          * A worker that accepts a pass and then disconnects without returning a result.
+          */
+         final Socket fake = new Socket("localhost", port);
+         final DataOutputStream fakeOut = new DataOutputStream(fake.getOutputStream());
+         fakeOut.writeByte(Protocol.HELLO);
+         fakeOut.writeInt(Protocol.MAGIC);
+         fakeOut.writeInt(Protocol.VERSION);
+         fakeOut.writeUTF("fake");
+         fakeOut.writeInt(1);
+         fakeOut.flush();
+         final DataInputStream fakeIn = new DataInputStream(new BufferedInputStream(fake.getInputStream()));
+         Assert.assertEquals(Protocol.JOB, fakeIn.readByte());
+         Protocol.readProperties(fakeIn);
+         Assert.assertEquals(Protocol.PASS, fakeIn.readByte());
+         final int abandonedPass = fakeIn.readInt();
+
+         final List<Thread> workers = new ArrayList<Thread>();
+         final List<Throwable> failures = new ArrayList<Throwable>();
+         for (int i = 0; i < 2; ++i) {
+            final RenderWorker worker = new RenderWorker("localhost", port, "worker" + i);
+            final Thread thread = new Thread(new Runnable() {
+               @Override
+               public void run() {
+                  try {
+                     worker.run();
+                  } catch (final Throwable e) {
+                     synchronized (failures) {
+                        failures.add(e);
+                     }
+                  }
+               }
+            });
+            thread.start();
+            workers.add(thread);
+         }
+         fake.close();
+
+         Assert.assertTrue("Rendering did not complete.", coordinator.awaitCompletion(120, TimeUnit.SECONDS));
+         for (final Thread thread : workers) {
+            thread.join(10000);
+         }
+         Assert.assertTrue("Worker failed: " + failures, failures.isEmpty());
+         Assert.assertEquals(0, image.done.getCount());
+         Assert.assertEquals(PASSES, coordinator.getCompletedPassCount());
+         Assert.assertEquals(PASSES, passes.get());
+         Assert.assertEquals(1, coordinator.getReissuedPassCount());
+         Assert.assertEquals(1, lost.get());
+         Assert.assertTrue(coordinator.getRayCount() > 0);
+         Assert.assertTrue(abandonedPass >= 0 && abandonedPass < PASSES);
+
+         /*
+          * Each pass is deterministic, so the merged image must match the average of the same passes rendered locally.
+          */
+         final Scene scene = job.createScene();
+         final AccumulationBuffer expected = new AccumulationBuffer(WIDTH, HEIGHT);
+         for (int pass = 0; pass < PASSES; ++pass) {
+            final PathTracer pt = (PathTracer) job.createIntegrator();
+            pt.setPass(job.getPass() + pass);
+            final ArrayImageBuffer passImage = new ArrayImageBuffer(WIDTH, HEIGHT);
+            pt.integrate(passImage, scene, job.getPixelSampleRate(), job.getRecursionDepth());
+            Assert.assertTrue(passImage.done.await(60, TimeUnit.SECONDS));
+            expected.addPass(passImage.pixels);
+         }
+         final float[] expectedPixels = new float[WIDTH * HEIGHT * 3];
+         expected.getAverage(expectedPixels);
+         for (int i = 0; i < expectedPixels.length; ++i) {
+            Assert.assertEquals(expectedPixels[i], image.pixels[i], 1e-5 * Math.max(1, expectedPixels[i]));
+         }
+      } finally {
+         coordinator.close();
+      }
+   }
+}
@@ -0,0 +1,88 @@
+package edu.rit.krisher.fileparser.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.fileparser.ply.PLYParser;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.geometry.BufferTriangleMesh;
+import edu.rit.krisher.scene.geometry.MeshTestSupport;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+
+public class MeshCacheTest {
+   @Test
+   public void cachedMeshShouldMatchParsedMesh() throws IOException {
+      final File directory = File.createTempFile("meshcache", "");
+      directory.delete();
+      final File source = new File(directory, "bunny.ply");
+      try {
+         directory.mkdirs();
+         MeshTestSupport.copyBunny(source);
+         final MeshCache cache = new MeshCache(directory);
+         final int[] loads = new int[1];
+         final MeshCache.Loader loader = new MeshCache.Loader() {
+            @Override
+            public TriangleMesh load() throws IOException {
+               ++loads[0];
+               return PLYParser.parseTriangleMesh(source, true);
+            }
+         };
+         final TriangleMesh parsed = PLYParser.parseTriangleMesh(source, true);
+
+         assertSameMesh(parsed, cache.load(source, "normals", loader));
+         Assert.assertEquals(1, loads[0]);
+         Assert.assertTrue(cache.getCacheFile(source, "normals").isFile());
+         assertSameMesh(parsed, cache.load(source, "normals", loader));
+         Assert.assertEquals(1, loads[0]);
+
+         /*
+          * A modified source invalidates the cached mesh.
+          */
+         Assert.assertTrue(source.setLastModified(source.lastModified() - 10000));
+         assertSameMesh(parsed, cache.load(source, "normals", loader));
+         Assert.assertEquals(2, loads[0]);
+      } finally {
+         for (final File file : directory.listFiles()) {
+            file.delete();
+         }
+         directory.delete();
+      }
+   }
+
+   @Test
+   public void cacheFilesShouldBeDistinctForEachSourceAndVariant() {
+      final MeshCache cache = new MeshCache(new File("cache"));
+      final File source = new File("a", "bunny.ply");
+      final File other = new File("b", "bunny.ply");
+      Assert.assertEquals(cache.getCacheFile(source, "flat"), cache.getCacheFile(new File("a", "bunny.ply"), "flat"));
+      Assert.assertFalse(cache.getCacheFile(source, "flat").equals(cache.getCacheFile(other, "flat")));
+      Assert.assertFalse(cache.getCacheFile(source, "flat").equals(cache.getCacheFile(source, "normals")));
+      Assert.assertTrue(cache.getCacheFile(source, "flat").getName().matches("bunny\\.ply-[0-9a-f]{40}\\.mesh"));
+   }
+
+   private static void assertSameMesh(final TriangleMesh expected, final BufferTriangleMesh actual) {
+      Assert.assertArrayEquals(expected.getVertices(), toArray(actual.getVertices()), 0);
+      Assert.assertArrayEquals(expected.getNormals(), toArray(actual.getNormals()), 0);
+      final IntBuffer indices = actual.getTriIndices();
+      final int[] actualIndices = new int[indices.remaining()];
+      indices.get(actualIndices);
+      Assert.assertArrayEquals(expected.getTriIndices(), actualIndices);
+      Assert.assertArrayEquals(expected.getBounds(Geometry.ALL_PRIMITIVES).xyzxyz,
+                               actual.getBounds(Geometry.ALL_PRIMITIVES).xyzxyz, 0);
+      for (int prim = 0; prim < expected.getPrimitiveCount(); ++prim) {
+         final double area = expected.getSurfaceArea(prim);
+         Assert.assertEquals(area, actual.getSurfaceArea(prim), area * 1e-6);
+      }
+   }
+
+   private static float[] toArray(final FloatBuffer buffer) {
+      final float[] result = new float[buffer.remaining()];
+      buffer.get(result);
+      return result;
+   }
+}
@@ -0,0 +1,66 @@
+package edu.rit.krisher.fileparser.obj;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.scene.geometry.MeshTestSupport;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+
+public class OBJParserTest {
+
+   @Test
+   public void objBunnyShouldMatchPLYBunny() throws IOException {
+      final TriangleMesh ply = MeshTestSupport.loadBunny();
+      final float[] vertices = ply.getVertices();
+      final int[] indices = ply.getTriIndices();
+
+      final StringBuilder obj = new StringBuilder("# bunny\n");
+      for (int i = 0; i < vertices.length; i += 3) {
+         obj.append("v ").append(vertices[i]).append(' ').append(vertices[i + 1]).append(' ').append(vertices[i + 2])
+         .append('\n');
+      }
+      for (int i = 0; i < indices.length; i += 3) {
+         obj.append("f ").append(indices[i] + 1).append(' ').append(indices[i + 1] + 1).append(' ')
+         .append(indices[i + 2] + 1).append('\n');
+      }
+      final TriangleMesh mesh = OBJParser.parseTriangleMesh(new ByteArrayInputStream(obj.toString()
+                                                                                      .getBytes("US-ASCII")), false);
+      Assert.assertNull(mesh.getNormals());
+      Assert.assertEquals(indices.length, mesh.getTriIndices().length);
+      final float[] objVertices = mesh.getVertices();
+      final int[] objIndices = mesh.getTriIndices();
+      for (int i = 0; i < indices.length; ++i) {
+         for (int axis = 0; axis < 3; ++axis) {
+            Assert.assertEquals(vertices[indices[i] * 3 + axis], objVertices[objIndices[i] * 3 + axis], 0);
+         }
+      }
+   }
+
+   @Test
+   public void shouldTriangulateAndSplitByMaterial() throws IOException {
+      final String obj = "mtllib test.mtl\r\n" + "v 0 0 0\r\n" + "v 1 0 0\r\n" + "v 1 1 0\r\n" + "v 0 1 0\r\n"
+      + "vn 0 0 1\r\n" + "vt 0 0\r\n" + "usemtl red\r\n" + "f 1//1 2//1 3//1 4//1\r\n" + "usemtl blue\r\n"
+      + "  f -4/1/1 -3/1/1 -2/1/1\r\n" + "usemtl red\r\n" + "f 1//1 3//1 4//1\r\n" + "g ignored\r\n" + "f 1 2";
+      final Map<String, TriangleMesh> meshes = OBJParser.parseTriangleMeshes(new ByteArrayInputStream(obj
+                                                                                                       .getBytes("US-ASCII")),
+                                                                                                       false);
+      Assert.assertArrayEquals(new String[] { "red", "blue" }, meshes.keySet().toArray(new String[0]));
+
+      final TriangleMesh red = meshes.get("red");
+      Assert.assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3, 0, 2, 3 }, red.getTriIndices());
+      Assert.assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0 }, red.getVertices(), 0);
+      Assert.assertArrayEquals(new float[] { 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1 }, red.getNormals(), 0);
+
+      final TriangleMesh blue = meshes.get("blue");
+      Assert.assertArrayEquals(new int[] { 0, 1, 2 }, blue.getTriIndices());
+      Assert.assertArrayEquals(new float[] { 0, 0, 0, 1, 0, 0, 1, 1, 0 }, blue.getVertices(), 0);
+
+      final TriangleMesh merged = OBJParser.parseTriangleMesh(new ByteArrayInputStream(obj.getBytes("US-ASCII")),
+                                                              false);
+      Assert.assertEquals(12, merged.getTriIndices().length);
+   }
+}
@@ -1,16 +1,27 @@
 package edu.rit.krisher.fileparser.ply;
 
 import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import edu.rit.krisher.fileparser.ply.PLYContentDescription.DataType;
 import edu.rit.krisher.fileparser.ply.PLYContentDescription.PLYFormat;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
 
 public class PLYParserTest {
 
@@ -99,4 +110,137 @@ public class PLYParserTest {
       final int[] buffer = receiver.getIndexList();
       Assert.assertEquals(69451 * 3, buffer.length);
    }
+
+   @Test
+   public void binaryPLYShouldMatchAsciiPLY() throws IOException {
+      final InputStream stream = new BufferedInputStream(PLYParserTest.class.getResourceAsStream(bunnyResource));
+      final TriangleMesh ascii;
+      try {
+         ascii = PLYParser.parseTriangleMesh(stream, false);
+      } finally {
+         stream.close();
+      }
+      for (final ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+         for (final boolean extraProperty : new boolean[] { false, true }) {
+            final File file = writeBinaryPLY(ascii.getVertices(), ascii.getTriIndices(), order, extraProperty);
+            try {
+               final TriangleMesh mapped = PLYParser.parseTriangleMesh(file, false);
+               Assert.assertArrayEquals(ascii.getVertices(), mapped.getVertices(), 0);
+               Assert.assertArrayEquals(ascii.getTriIndices(), mapped.getTriIndices());
+
+               final TriangleMesh streamed = PLYParser.parseTriangleMesh(new BufferedInputStream(new FileInputStream(file)));
+               Assert.assertArrayEquals(ascii.getVertices(), streamed.getVertices(), 0);
+               Assert.assertArrayEquals(ascii.getTriIndices(), streamed.getTriIndices());
+            } finally {
+               file.delete();
+            }
+         }
+      }
+   }
+
+   @Test
+   public void mappedAsciiPLYShouldMatchStreamedPLY() throws IOException {
+      final InputStream stream = new BufferedInputStream(PLYParserTest.class.getResourceAsStream(bunnyResource));
+      final File file = File.createTempFile("bunny", ".ply");
+      try {
+         final OutputStream out = new FileOutputStream(file);
+         try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+               out.write(buffer, 0, read);
+            }
+         } finally {
+            out.close();
+            stream.close();
+         }
+         final TriangleMesh streamed = PLYParser.parseTriangleMesh(new BufferedInputStream(new FileInputStream(file)));
+         final TriangleMesh mapped = PLYParser.parseTriangleMesh(file, false);
+         Assert.assertArrayEquals(streamed.getVertices(), mapped.getVertices(), 0);
+         Assert.assertArrayEquals(streamed.getTriIndices(), mapped.getTriIndices());
+      } finally {
+         file.delete();
+      }
+   }
+
+   @Test
+   public void mappedAsciiPLYShouldParseFloatsExactly() throws IOException {
+      final Random random = new Random(11);
+      final float[] vertices = new float[3000];
+      for (int i = 0; i < vertices.length; ++i) {
+         vertices[i] = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(16) - 8));
+      }
+      final File file = File.createTempFile("floats", ".ply");
+      try {
+         final StringBuilder ply = new StringBuilder();
+         ply.append("ply\r\nformat ascii 1.0\r\nelement vertex ").append(vertices.length / 3).append("\r\n");
+         ply.append("property float x\r\nproperty float y\r\nproperty float z\r\n");
+         ply.append("element face 1\r\nproperty list uchar int vertex_indices\r\nend_header\r\n");
+         for (int i = 0; i < vertices.length; i += 3) {
+            /*
+             * Mix the shortest representation (which may have an exponent) with long fixed point representations.
+             */
+            ply.append(vertices[i]).append(' ');
+            ply.append(new BigDecimal(vertices[i + 1]).toPlainString()).append("\t ");
+            ply.append(String.format(Locale.US, "%.6e", vertices[i + 2])).append("\r\n");
+         }
+         ply.append("3 0 +1 2\r\n");
+         final OutputStream out = new FileOutputStream(file);
+         try {
+            out.write(ply.toString().getBytes("US-ASCII"));
+         } finally {
+            out.close();
+         }
+         final TriangleMesh mapped = PLYParser.parseTriangleMesh(file, false);
+         final float[] parsed = mapped.getVertices();
+         for (int i = 0; i < vertices.length; i += 3) {
+            Assert.assertEquals(vertices[i], parsed[i], 0);
+            Assert.assertEquals(vertices[i + 1], parsed[i + 1], 0);
+            Assert.assertEquals(Float.parseFloat(String.format(Locale.US, "%.6e", vertices[i + 2])), parsed[i + 2], 0);
+         }
+         Assert.assertArrayEquals(new int[] { 0, 1, 2 }, mapped.getTriIndices());
+      } finally {
+         file.delete();
+      }
+   }
+
+   /**
+    * Writes a binary PLY file, optionally with an additional vertex and face property.
+    */
+   private static File writeBinaryPLY(final float[] vertices, final int[] indices, final ByteOrder order,
+         final boolean extraProperty) throws IOException {
+      final File file = File.createTempFile("bunny", ".ply");
+      final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+      try {
+         final StringBuilder header = new StringBuilder("ply\n");
+         header.append("format ").append(order == ByteOrder.BIG_ENDIAN ? "binary_big_endian" : "binary_little_endian")
+         .append(" 1.0\n");
+         header.append("element vertex ").append(vertices.length / 3).append('\n');
+         header.append("property float x\nproperty float y\nproperty float z\n");
+         if (extraProperty)
+            header.append("property uchar red\n");
+         header.append("element face ").append(indices.length / 3).append('\n');
+         if (extraProperty)
+            header.append("property short flags\n");
+         header.append("property list uchar int vertex_indices\nend_header\n");
+         out.writeBytes(header.toString());
+
+         final ByteBuffer data = ByteBuffer.allocate(vertices.length * 4 + vertices.length / 3 + indices.length / 3 * 15)
+         .order(order);
+         for (int i = 0; i < vertices.length; i += 3) {
+            data.putFloat(vertices[i]).putFloat(vertices[i + 1]).putFloat(vertices[i + 2]);
+            if (extraProperty)
+               data.put((byte) 255);
+         }
+         for (int i = 0; i < indices.length; i += 3) {
+            if (extraProperty)
+               data.putShort((short) 1);
+            data.put((byte) 3).putInt(indices[i]).putInt(indices[i + 1]).putInt(indices[i + 2]);
+         }
+         out.write(data.array(), 0, data.position());
+      } finally {
+         out.close();
+      }
+      return file;
+   }
 }
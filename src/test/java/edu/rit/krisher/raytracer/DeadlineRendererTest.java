@@ -0,0 +1,44 @@
+package edu.rit.krisher.raytracer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.scene.Scene;
+
+/**
+ *
+ */
+public class DeadlineRendererTest {
+
+   private static final int SIZE = 32;
+
+   @Test
+   public void renderingShouldUseTheBudgetWithoutLargeOverrun() throws InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Deadline Test");
+      final DeadlineRenderer renderer = new DeadlineRenderer(RenderTestSupport.createPathTracer(), scene, SIZE,
+                                                             SIZE, 4, 3);
+      final long start = System.nanoTime();
+      final DeadlineRenderer.Result result = renderer.render(1500, null);
+      final double seconds = (System.nanoTime() - start) / 1e9;
+
+      Assert.assertTrue(result.passes > 1);
+      Assert.assertTrue("Every pixel should have at least the calibration sample.", result.minSamplesPerPixel >= 1);
+      Assert.assertTrue("More samples should fit in the budget than the calibration pass.", result.samplesPerPixel > 1);
+      Assert.assertTrue(result.secondsPerSample > 0);
+      Assert.assertTrue(result.rays > 0);
+      /*
+       * Generous bounds, the machine may be busy with other tests.
+       */
+      Assert.assertTrue("Rendering stopped early: " + seconds, seconds >= 1.4);
+      Assert.assertTrue("Overrun too large: " + result.overrunSeconds, result.overrunSeconds < 1.0);
+      Assert.assertEquals(result.overrunSeconds, Math.max(0, seconds - 1.5), 0.1);
+
+      final float[] pixels = new float[SIZE * SIZE * 3];
+      renderer.getAverage(pixels);
+      float total = 0;
+      for (final float value : pixels) {
+         total += value;
+      }
+      Assert.assertTrue(total > 0);
+   }
+}
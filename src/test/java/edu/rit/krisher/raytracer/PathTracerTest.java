@@ -0,0 +1,178 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.RenderTestSupport.ArrayImageBuffer;
+import edu.rit.krisher.raytracer.sampling.RandomSampler;
+import edu.rit.krisher.raytracer.sampling.Sampler;
+import edu.rit.krisher.raytracer.sampling.SobolSampler;
+import edu.rit.krisher.raytracer.sampling.UnsafePRNG;
+import edu.rit.krisher.scene.DefaultScene;
+import edu.rit.krisher.scene.Scene;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.camera.DoFCamera;
+import edu.rit.krisher.scene.geometry.Box;
+import edu.rit.krisher.scene.geometry.Sphere;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.scene.light.SphereLight;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.scene.material.SpecularMaterial;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ *
+ */
+public class PathTracerTest {
+
+   private static final int SIZE = 24;
+
+   private static Scene createScene() {
+      final DoFCamera cam = new DoFCamera();
+      final DefaultScene<DoFCamera> scene = new DefaultScene<DoFCamera>("Determinism Test", cam);
+      scene.add(new Box(16, 2, 16, new DiffuseMaterial(Color.white), new Vec3(0, -1, 0), false));
+      scene.add(new Sphere(new Vec3(-1, 1, 0), 1, new SpecularMaterial(Color.white, 30)));
+      scene.add(new Sphere(new Vec3(1.5, 0.5, 1), 0.5, new DiffuseMaterial(new Color(0.2, 0.4, 0.8))));
+      scene.add(new SphereLight(new Vec3(0, 4, 1), 0.5, Color.white));
+      cam.setPosition(new Vec3(0, 2, 8));
+      cam.setAperture(1 / 50.0);
+      cam.setFocalDist(8);
+      return scene;
+   }
+
+   /**
+    * Adds an octahedron with interpolated normals in a KD tree, so that mesh traversal and shading is covered.
+    */
+   private static void addMesh(final DefaultScene<?> scene) {
+      final float[] verts = new float[] { 0, 2.5f, 0, 0.5f, 1.5f, 0, 0, 1.5f, 0.5f, -0.5f, 1.5f, 0, 0, 1.5f, -0.5f, 0,
+            0.5f, 0 };
+      final int[] triangles = new int[] { 0, 1, 2, 0, 2, 3, 0, 3, 4, 0, 4, 1, 5, 2, 1, 5, 3, 2, 5, 4, 3, 5, 1, 4 };
+      final TriangleMesh mesh = new TriangleMesh(verts, TriangleMesh.computeTriangleNormals(verts, triangles), triangles);
+      mesh.setMaterial(new DiffuseMaterial(new Color(0.8, 0.3, 0.3)));
+      scene.add(new KDGeometryContainer(mesh));
+   }
+
+   private static float[] render(final PathTracer tracer, final Scene scene) throws InterruptedException {
+      final ArrayImageBuffer image = new ArrayImageBuffer(SIZE, SIZE);
+      tracer.integrate(image, scene, 2, 4);
+      Assert.assertTrue("Rendering did not complete.", image.done.await(60, TimeUnit.SECONDS));
+      return image.pixels;
+   }
+
+   @Test
+   public void renderingShouldBeReproducibleForTheSameFrameAndPass() throws InterruptedException {
+      final Scene scene = createScene();
+      for (final Sampler.Factory factory : new Sampler.Factory[] { SobolSampler.FACTORY, RandomSampler.FACTORY }) {
+         final PathTracer first = new PathTracer(false, factory);
+         first.setFrame(3);
+         first.setPass(1);
+         final float[] reference = render(first, scene);
+         /*
+          * Render a different pass in between, so that samplers have been used before the repeated rendering.
+          */
+         first.setPass(2);
+         final float[] otherPass = render(first, scene);
+         first.setPass(1);
+         Assert.assertArrayEquals("Repeated rendering differs.", reference, render(first, scene), 0);
+
+         final PathTracer second = new PathTracer(false, factory);
+         second.setFrame(3);
+         second.setPass(1);
+         Assert.assertArrayEquals("Rendering with a different integrator instance differs.", reference, render(second, scene), 0);
+
+         Assert.assertFalse("Different passes should use different samples.", Arrays.equals(reference, otherPass));
+      }
+   }
+
+   /**
+    * Renders the tiles of an image on a single worker, in the specified order.
+    */
+   private static float[] renderTiles(final Scene scene, final int width, final int height, final Rectangle[] tiles) {
+      final ArrayImageBuffer image = new ArrayImageBuffer(width, height);
+      final RenderJob job = RenderJob.start(image, RenderJob.NORMAL_PRIORITY, new Rectangle[0], 4, null);
+      final PathTracer.PathIntegrator worker = new PathTracer.PathIntegrator(scene, job, 2, 4, null, SobolSampler.FACTORY.createSampler(), 0, 0, new AtomicLong());
+      for (final Rectangle tile : tiles) {
+         worker.render(tile);
+      }
+      return image.pixels;
+   }
+
+   @Test
+   public void tilesShouldNotDependOnPreviouslyRenderedTiles() {
+      final Scene scene = createScene();
+      /*
+       * Not a multiple of the tile size, so the edge tiles are smaller than the others.
+       */
+      final int width = SIZE + 5;
+      final int height = SIZE - 3;
+      final Rectangle[] tiles = IntegratorUtils.chunkRectangle(width, height, 8);
+      final Rectangle[] reversed = new Rectangle[tiles.length];
+      for (int i = 0; i < tiles.length; ++i) {
+         reversed[i] = tiles[tiles.length - 1 - i];
+      }
+      Assert.assertArrayEquals(renderTiles(scene, width, height, tiles), renderTiles(scene, width, height, reversed), 0);
+   }
+
+   @Test
+   public void streamsShouldBeReproducibleAndDistinct() {
+      final UnsafePRNG a = new UnsafePRNG();
+      final UnsafePRNG b = new UnsafePRNG(42);
+      a.setStream(1, 2, 3);
+      b.setStream(1, 2, 3);
+      for (int i = 0; i < 100; ++i) {
+         Assert.assertEquals(a.nextLong(), b.nextLong());
+      }
+      a.setStream(1, 2, 3);
+      b.setStream(1, 3, 2);
+      int same = 0;
+      for (int i = 0; i < 100; ++i) {
+         if (a.nextLong() == b.nextLong())
+            ++same;
+      }
+      Assert.assertEquals("Streams with different keys should differ.", 0, same);
+
+      for (int i = 0; i < 10000; ++i) {
+         final double d = a.nextDouble();
+         Assert.assertTrue(d >= 0 && d < 1);
+         final float f = a.nextFloat();
+         Assert.assertTrue(f >= 0 && f < 1);
+      }
+   }
+
+   @Test
+   public void steadyStateTileRenderingShouldNotAllocate() {
+      final java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+      final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+      Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+      allocations.setThreadAllocatedMemoryEnabled(true);
+
+      final Scene scene = createScene();
+      addMesh((DefaultScene<?>) scene);
+      /*
+       * A job without tiles, so that the tiles below can be rendered on this thread.
+       */
+      final RenderJob job = RenderJob.start(new ArrayImageBuffer(SIZE, SIZE), RenderJob.NORMAL_PRIORITY, new Rectangle[0], 4, null);
+      final PathTracer.PathIntegrator worker = new PathTracer.PathIntegrator(scene, job, 2, 4, null, SobolSampler.FACTORY.createSampler(), 0, 0, new AtomicLong());
+      final Rectangle tile = new Rectangle(0, 0, SIZE, SIZE);
+      for (int i = 0; i < 200; ++i) {
+         worker.render(tile);
+      }
+      final int tiles = 20;
+      final long threadId = Thread.currentThread().getId();
+      final long before = allocations.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < tiles; ++i) {
+         worker.render(tile);
+      }
+      final long bytesPerTile = (allocations.getThreadAllocatedBytes(threadId) - before) / tiles;
+      Assert.assertTrue("Allocated " + bytesPerTile + " bytes per tile.", bytesPerTile < 1024);
+   }
+}
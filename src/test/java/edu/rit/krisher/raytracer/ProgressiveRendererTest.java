@@ -0,0 +1,66 @@
+package edu.rit.krisher.raytracer;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.scene.Scene;
+
+/**
+ *
+ */
+public class ProgressiveRendererTest {
+
+   private static final int SIZE = 16;
+   private static final int PASSES = 4;
+
+   private static ProgressiveRenderer createRenderer(final Scene scene, final int depth) {
+      final ProgressiveRenderer renderer = new ProgressiveRenderer(RenderTestSupport.createPathTracer(), scene,
+                                                                   "test", SIZE, SIZE, 1, depth);
+      renderer.setSampleStreams(2, 5);
+      return renderer;
+   }
+
+   @Test
+   public void resumedRenderingShouldMatchUninterruptedRendering() throws IOException, InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Checkpoint Test");
+      final ProgressiveRenderer uninterrupted = createRenderer(scene, 3);
+      uninterrupted.render(PASSES, null);
+      final float[] expected = new float[SIZE * SIZE * 3];
+      uninterrupted.getAverage(expected);
+
+      final File checkpoint = File.createTempFile("progressive", ".ckpt");
+      Assert.assertTrue(checkpoint.delete());
+      try {
+         final ProgressiveRenderer first = createRenderer(scene, 3);
+         first.setCheckpoint(checkpoint, Long.MAX_VALUE);
+         Assert.assertFalse("No checkpoint should exist yet.", first.resume());
+         first.render(PASSES / 2, null);
+         Assert.assertTrue(checkpoint.isFile());
+         Assert.assertFalse("Temporary checkpoint file was not renamed.", new File(checkpoint.getPath() + ".tmp").exists());
+
+         final ProgressiveRenderer resumed = createRenderer(scene, 3);
+         resumed.setCheckpoint(checkpoint, Long.MAX_VALUE);
+         Assert.assertTrue(resumed.resume());
+         Assert.assertEquals(PASSES / 2, resumed.getCompletedPasses());
+         resumed.render(PASSES, null);
+         Assert.assertEquals(PASSES, resumed.getCompletedPasses());
+         final float[] actual = new float[SIZE * SIZE * 3];
+         resumed.getAverage(actual);
+         Assert.assertArrayEquals("Resumed rendering differs from an uninterrupted rendering.", expected, actual, 0);
+
+         final ProgressiveRenderer mismatched = createRenderer(scene, 4);
+         mismatched.setCheckpoint(checkpoint, Long.MAX_VALUE);
+         try {
+            mismatched.resume();
+            Assert.fail("A checkpoint for a different rendering should not be resumed.");
+         } catch (final IOException expectedException) {
+            Assert.assertEquals(0, mismatched.getCompletedPasses());
+         }
+      } finally {
+         checkpoint.delete();
+      }
+   }
+}
@@ -0,0 +1,109 @@
+package edu.rit.krisher.raytracer;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+public class RaySorterTest {
+
+   private static final double CELL = 1.0 / 4095;
+
+   private static SampleRay ray(final double ox, final double oy, final double oz, final double dx, final double dy,
+         final double dz) {
+      final SampleRay ray = new SampleRay(1.0);
+      ray.origin.set(ox, oy, oz);
+      ray.direction.set(dx, dy, dz);
+      return ray;
+   }
+
+   @Test
+   public void spreadBitsShouldInterleaveWithTwoZeroBits() {
+      Assert.assertEquals(0L, RaySorter.spreadBits(0));
+      Assert.assertEquals(1L, RaySorter.spreadBits(1));
+      Assert.assertEquals(8L, RaySorter.spreadBits(2));
+      Assert.assertEquals(9L, RaySorter.spreadBits(3));
+      Assert.assertEquals(0x249249249L, RaySorter.spreadBits(4095));
+      /*
+       * Only the low 12 bits are used.
+       */
+      Assert.assertEquals(RaySorter.spreadBits(1), RaySorter.spreadBits(4097));
+   }
+
+   @Test
+   public void sortKeyShouldPutOctantAboveMortonCode() {
+      final RaySorter sorter = new RaySorter(new AxisAlignedBoundingBox(0, 0, 0, 1, 1, 1));
+      Assert.assertEquals(0L, sorter.sortKey(ray(0, 0, 0, 1, 1, 1)));
+      Assert.assertEquals((1L << 36) - 1, sorter.sortKey(ray(1, 1, 1, 1, 1, 1)));
+      /*
+       * Origins outside of the bounds are clamped.
+       */
+      Assert.assertEquals((1L << 36) - 1, sorter.sortKey(ray(5, 5, 5, 1, 1, 1)));
+      Assert.assertEquals(0L, sorter.sortKey(ray(-5, -5, -5, 1, 1, 1)));
+
+      /*
+       * x is the most significant bit of each Morton triple, z the least.
+       */
+      Assert.assertEquals(4L, sorter.sortKey(ray(1.5 * CELL, 0, 0, 1, 1, 1)));
+      Assert.assertEquals(2L, sorter.sortKey(ray(0, 1.5 * CELL, 0, 1, 1, 1)));
+      Assert.assertEquals(1L, sorter.sortKey(ray(0, 0, 1.5 * CELL, 1, 1, 1)));
+
+      /*
+       * Direction sign bits, x most significant.
+       */
+      Assert.assertEquals(4L << 36, sorter.sortKey(ray(0, 0, 0, -1, 1, 1)));
+      Assert.assertEquals(2L << 36, sorter.sortKey(ray(0, 0, 0, 1, -1, 1)));
+      Assert.assertEquals(1L << 36, sorter.sortKey(ray(0, 0, 0, 1, 1, -1)));
+      Assert.assertEquals(7L << 36, sorter.sortKey(ray(0, 0, 0, -1, -1, -1)));
+      Assert.assertEquals(0L, sorter.sortKey(ray(0, 0, 0, 0, 0, 0)));
+   }
+
+   @Test
+   public void sortShouldOrderByOctantThenOrigin() {
+      final RaySorter sorter = new RaySorter(new AxisAlignedBoundingBox(0, 0, 0, 1, 1, 1));
+      final SampleRay[] expected = new SampleRay[] { ray(0, 0, 0, 1, 1, 1), ray(0, 0, 0.5, 1, 1, 1),
+            ray(0, 0.5, 0, 1, 1, 1), ray(0.5, 0, 0, 1, 1, 1), ray(1, 1, 1, 1, 1, 1), ray(0, 0, 0, 1, 1, -1),
+            ray(1, 1, 1, 1, 1, -1), ray(0, 0, 0, 1, -1, 1), ray(0, 0, 0, -1, 1, 1), ray(0.5, 0.5, 0.5, -1, -1, -1),
+            ray(0.5, 0.5, 0.5, -1, -1, -1) };
+      final Random random = new Random(3);
+      for (int trial = 0; trial < 20; ++trial) {
+         final SampleRay[] rays = expected.clone();
+         for (int i = rays.length - 1; i > 0; --i) {
+            final int j = random.nextInt(i + 1);
+            final SampleRay tmp = rays[i];
+            rays[i] = rays[j];
+            rays[j] = tmp;
+         }
+         /*
+          * Rays past the count are not moved.
+          */
+         final SampleRay[] padded = new SampleRay[rays.length + 1];
+         System.arraycopy(rays, 0, padded, 0, rays.length);
+         final SampleRay last = ray(0, 0, 0, 1, 1, 1);
+         padded[rays.length] = last;
+         sorter.sort(padded, rays.length);
+         for (int i = 0; i < expected.length - 2; ++i) {
+            Assert.assertSame(expected[i], padded[i]);
+         }
+         Assert.assertSame(last, padded[rays.length]);
+      }
+   }
+
+   @Test
+   public void sortShouldKeepOriginalOrderOfEqualKeys() {
+      final RaySorter sorter = new RaySorter(new AxisAlignedBoundingBox(0, 0, 0, 1, 1, 1));
+      final SampleRay[] rays = new SampleRay[100];
+      for (int i = 0; i < rays.length; ++i) {
+         rays[i] = ray(i % 2 == 0 ? 0.25 : 0.75, 0.5, 0.5, 1, 0, 0);
+      }
+      final SampleRay[] original = rays.clone();
+      sorter.sort(rays, rays.length);
+      for (int i = 0; i < 50; ++i) {
+         Assert.assertSame(original[2 * i], rays[i]);
+         Assert.assertSame(original[2 * i + 1], rays[50 + i]);
+      }
+   }
+}
@@ -0,0 +1,196 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+import edu.rit.krisher.scene.Scene;
+
+/**
+ *
+ */
+public class RenderJobTest {
+
+   /**
+    * ImageBuffer that records pixels, and whether any pixels arrived after imagingDone().
+    */
+   private static final class CheckingImageBuffer implements ImageBuffer {
+      final int size;
+      final float[] pixels;
+      volatile boolean done;
+      volatile boolean pixelsAfterDone;
+      volatile long doneNanos;
+
+      CheckingImageBuffer(final int size) {
+         this.size = size;
+         pixels = new float[size * size * 3];
+      }
+
+      @Override
+      public Dimension getResolution() {
+         return new Dimension(size, size);
+      }
+
+      @Override
+      public void setPixels(final int x, final int y, final int w, final int h, final float[] tile) {
+         if (done)
+            pixelsAfterDone = true;
+         for (int row = 0; row < h; ++row) {
+            System.arraycopy(tile, 3 * row * w, pixels, 3 * ((y + row) * size + x), 3 * w);
+         }
+      }
+
+      @Override
+      public void imagingStarted() {
+      }
+
+      @Override
+      public void imagingDone() {
+         doneNanos = System.nanoTime();
+         done = true;
+      }
+   }
+
+   private static void awaitIdlePool() throws InterruptedException {
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (IntegratorUtils.threadPool.getActiveCount() > 0 || !IntegratorUtils.threadPool.getQueue().isEmpty()) {
+         Assert.assertTrue("Thread pool did not become idle.", System.nanoTime() < deadline);
+         Thread.sleep(5);
+      }
+   }
+
+   @Test
+   public void cancelShouldStopRenderingPromptly() throws InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Render Job Test");
+      final PathTracer tracer = RenderTestSupport.createPathTracer();
+      final CheckingImageBuffer image = new CheckingImageBuffer(64);
+      /*
+       * A single tile of this rendering takes much longer than the checks below allow.
+       */
+      final RenderJob job = tracer.submit(image, scene, 16, 8, RenderJob.NORMAL_PRIORITY);
+      Assert.assertSame(job, RenderJob.get(image));
+      Thread.sleep(100);
+      Assert.assertFalse(job.isDone());
+      tracer.cancel(image);
+      Assert.assertTrue(job.isCancelled());
+      Assert.assertTrue(job.isDone());
+      Assert.assertTrue(image.done);
+      Assert.assertNull(RenderJob.get(image));
+
+      final long cancelled = System.nanoTime();
+      awaitIdlePool();
+      final double stopSeconds = (System.nanoTime() - cancelled) / 1e9;
+      Assert.assertTrue("Rendering threads took " + stopSeconds + "s to stop.", stopSeconds < 2);
+      Assert.assertFalse("Pixels were delivered after imagingDone().", image.pixelsAfterDone);
+   }
+
+   @Test
+   public void higherPriorityJobsShouldPreemptLowerPriorityJobs() throws InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Render Job Test");
+      final CheckingImageBuffer reference = new CheckingImageBuffer(48);
+      final RenderJob referenceJob = RenderTestSupport.createPathTracer().submit(reference, scene, 4, 3, RenderJob.LOW_PRIORITY);
+      Assert.assertTrue(referenceJob.await(60, TimeUnit.SECONDS));
+      awaitIdlePool();
+
+      final CheckingImageBuffer background = new CheckingImageBuffer(48);
+      final CheckingImageBuffer preview = new CheckingImageBuffer(8);
+      final RenderJob backgroundJob = RenderTestSupport.createPathTracer().submit(background, scene, 4, 3, RenderJob.LOW_PRIORITY);
+      Thread.sleep(20);
+      final RenderJob previewJob = RenderTestSupport.createPathTracer().submit(preview, scene, 1, 1, RenderJob.INTERACTIVE_PRIORITY);
+      Assert.assertTrue(previewJob.await(60, TimeUnit.SECONDS));
+      Assert.assertTrue(backgroundJob.await(60, TimeUnit.SECONDS));
+
+      Assert.assertFalse(backgroundJob.isCancelled());
+      Assert.assertTrue("The preview should finish before the background rendering.", preview.doneNanos < background.doneNanos);
+      /*
+       * Preemption only changes the order in which tiles are rendered.
+       */
+      Assert.assertArrayEquals(reference.pixels, background.pixels, 0);
+      awaitIdlePool();
+   }
+
+   @Test
+   public void jobsWithTheSamePriorityShouldShareThreadsByWeight() throws InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Render Job Test");
+      final CheckingImageBuffer first = new CheckingImageBuffer(64);
+      final CheckingImageBuffer second = new CheckingImageBuffer(64);
+      final RenderJob firstJob = RenderTestSupport.createPathTracer().submit(first, scene, 4, 3, RenderJob.NORMAL_PRIORITY);
+      final RenderJob secondJob = RenderTestSupport.createPathTracer().submit(second, scene, 4, 3, RenderJob.NORMAL_PRIORITY);
+      secondJob.setWeight(3);
+      Assert.assertTrue(secondJob.await(60, TimeUnit.SECONDS));
+      /*
+       * The second job does not wait for the first one, and receives about three quarters of the rendering time.
+       */
+      final int firstTiles = firstJob.getCompletedTiles();
+      Assert.assertFalse("The first job should not finish before the second.", firstJob.isDone());
+      Assert.assertTrue("The first job should progress while the second is rendering.", firstTiles > 0);
+      Assert.assertTrue("The first job completed " + firstTiles + " of " + firstJob.getTileCount() + " tiles.",
+                        firstTiles < firstJob.getTileCount() * 3 / 4);
+      Assert.assertTrue(firstJob.await(60, TimeUnit.SECONDS));
+
+      for (final RenderJob job : new RenderJob[] { firstJob, secondJob }) {
+         Assert.assertEquals(1.0, job.getProgress(), 0);
+         Assert.assertEquals(64 * 64 * 16, job.getCompletedSamples());
+         Assert.assertTrue(job.getSamplesPerSecond() > 0);
+         Assert.assertTrue(job.getThreadSeconds() > 0);
+      }
+      Assert.assertArrayEquals(first.pixels, second.pixels, 0);
+      awaitIdlePool();
+   }
+
+   @Test
+   public void previewShouldNotWaitForRunningTiles() throws InterruptedException {
+      final Scene scene = RenderTestSupport.createScene("Render Job Test");
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger runningTiles = new AtomicInteger();
+      /*
+       * Background tiles that do not complete until they are released, but reach a yield point every millisecond, like
+       * an integrator at each path depth.
+       */
+      final RenderJob backgroundJob = RenderJob.start(new CheckingImageBuffer(64), RenderJob.LOW_PRIORITY,
+                                                      IntegratorUtils.chunkRectangle(64, 64, 2), 1, new RenderJob.Work() {
+         @Override
+         RenderJob.TileWorker createWorker(final RenderJob job) {
+            return new RenderJob.TileWorker() {
+               @Override
+               public void render(final Rectangle tile) {
+                  runningTiles.incrementAndGet();
+                  try {
+                     while (!release.await(1, TimeUnit.MILLISECONDS) && !job.yieldPoint()) {
+                        /*
+                         * Keep rendering.
+                         */
+                     }
+                  } catch (final InterruptedException e) {
+                     Thread.currentThread().interrupt();
+                  }
+               }
+            };
+         }
+      });
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (runningTiles.get() < IntegratorUtils.threads) {
+         Assert.assertTrue("Background tiles did not start.", System.nanoTime() < deadline);
+         Thread.sleep(5);
+      }
+
+      /*
+       * Every rendering thread is busy with a background tile, so the preview is only rendered from yield points.
+       */
+      final CheckingImageBuffer preview = new CheckingImageBuffer(8);
+      final RenderJob previewJob = RenderTestSupport.createPathTracer().submit(preview, scene, 1, 1, RenderJob.INTERACTIVE_PRIORITY);
+      final boolean previewDone = previewJob.await(30, TimeUnit.SECONDS);
+      final int backgroundTiles = backgroundJob.getCompletedTiles();
+      release.countDown();
+      backgroundJob.cancel();
+      awaitIdlePool();
+      Assert.assertTrue("The preview waited for the background tiles.", previewDone);
+      Assert.assertEquals(0, backgroundTiles);
+   }
+}
@@ -0,0 +1,86 @@
+package edu.rit.krisher.raytracer;
+
+import java.awt.Dimension;
+import java.util.concurrent.CountDownLatch;
+
+import edu.rit.krisher.raytracer.image.ImageBuffer;
+import edu.rit.krisher.raytracer.sampling.SobolSampler;
+import edu.rit.krisher.scene.DefaultScene;
+import edu.rit.krisher.scene.Scene;
+import edu.rit.krisher.scene.camera.PinholeCamera;
+import edu.rit.krisher.scene.geometry.Box;
+import edu.rit.krisher.scene.geometry.Sphere;
+import edu.rit.krisher.scene.light.SphereLight;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Scene and image fixtures shared by the rendering tests.
+ */
+public final class RenderTestSupport {
+
+   /**
+    * ImageBuffer that stores pixels in an array, and allows waiting for the rendering to complete.
+    */
+   public static final class ArrayImageBuffer implements ImageBuffer {
+      public final int width;
+      public final int height;
+      public final float[] pixels;
+      public final CountDownLatch done = new CountDownLatch(1);
+
+      public ArrayImageBuffer(final int width, final int height) {
+         this.width = width;
+         this.height = height;
+         pixels = new float[width * height * 3];
+      }
+
+      @Override
+      public Dimension getResolution() {
+         return new Dimension(width, height);
+      }
+
+      @Override
+      public synchronized void setPixels(final int x, final int y, final int w, final int h, final float[] tile) {
+         for (int row = 0; row < h; ++row) {
+            System.arraycopy(tile, 3 * row * w, pixels, 3 * ((y + row) * width + x), 3 * w);
+         }
+      }
+
+      @Override
+      public void imagingStarted() {
+      }
+
+      @Override
+      public void imagingDone() {
+         done.countDown();
+      }
+   }
+
+   private RenderTestSupport() {
+      /*
+       * Prevent construction.
+       */
+   }
+
+   /**
+    * Creates a small diffuse scene (a floor, a sphere and a spherical light), with its geometry initialized.
+    */
+   public static Scene createScene(final String name) {
+      final PinholeCamera cam = new PinholeCamera();
+      final DefaultScene<PinholeCamera> scene = new DefaultScene<PinholeCamera>(name, cam);
+      scene.add(new Box(16, 2, 16, new DiffuseMaterial(Color.white), new Vec3(0, -1, 0), false));
+      scene.add(new Sphere(new Vec3(0, 1, 0), 1, new DiffuseMaterial(new Color(0.2, 0.4, 0.8))));
+      scene.add(new SphereLight(new Vec3(0, 4, 1), 0.5, Color.white));
+      cam.setPosition(new Vec3(0, 2, 8));
+      scene.getGeometry();
+      return scene;
+   }
+
+   /**
+    * @return A path tracer with the default (Sobol) sampler.
+    */
+   public static PathTracer createPathTracer() {
+      return new PathTracer(false, SobolSampler.FACTORY);
+   }
+}
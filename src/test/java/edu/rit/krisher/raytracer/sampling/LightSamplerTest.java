@@ -0,0 +1,101 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.scene.EmissiveGeometry;
+import edu.rit.krisher.scene.light.PointLight;
+import edu.rit.krisher.vecmath.Vec3;
+
+public class LightSamplerTest {
+
+   private static final int SAMPLES = 200000;
+
+   private static EmissiveGeometry[] createLights(final int count, final boolean dark) {
+      final Random random = new Random(11);
+      final EmissiveGeometry[] lights = new EmissiveGeometry[count];
+      for (int i = 0; i < count; ++i) {
+         final float brightness = dark ? 0 : (i % 5 == 0 ? 0 : random.nextFloat() * (i % 3 + 1));
+         lights[i] = new PointLight(new Vec3(random.nextDouble() * 10, random.nextDouble() * 10,
+                                             random.nextDouble() * 10), brightness, brightness, brightness);
+      }
+      return lights;
+   }
+
+   /**
+    * Samples the light sampler with stratified random numbers, and checks that each light is selected with the
+    * probability it reports, and that the reported probability is the same every time the light is selected.
+    *
+    * @return The selection frequency of each light.
+    */
+   private static double[] checkSelection(final LightSampler sampler, final EmissiveGeometry[] lights, final Vec3 point) {
+      final Map<EmissiveGeometry, Integer> index = new IdentityHashMap<EmissiveGeometry, Integer>();
+      for (int i = 0; i < lights.length; ++i) {
+         index.put(lights[i], i);
+      }
+      final int[] counts = new int[lights.length];
+      final double[] pdfs = new double[lights.length];
+      final double[] pdfOut = new double[1];
+      for (int i = 0; i < SAMPLES; ++i) {
+         pdfOut[0] = -1;
+         final EmissiveGeometry light = sampler.sampleLight(point, (i + 0.5) / SAMPLES, pdfOut);
+         Assert.assertNotNull(light);
+         final int idx = index.get(light);
+         Assert.assertTrue(pdfOut[0] > 0);
+         if (counts[idx]++ == 0)
+            pdfs[idx] = pdfOut[0];
+         else
+            Assert.assertEquals(pdfs[idx], pdfOut[0], 1e-12);
+      }
+      final double[] frequencies = new double[lights.length];
+      for (int i = 0; i < lights.length; ++i) {
+         frequencies[i] = counts[i] / (double) SAMPLES;
+         Assert.assertEquals("Light " + i, pdfs[i], frequencies[i], 1e-3);
+      }
+      return frequencies;
+   }
+
+   @Test
+   public void powerSamplerShouldSelectInProportionToPower() {
+      final EmissiveGeometry[] lights = createLights(20, false);
+      double total = 0;
+      for (final EmissiveGeometry light : lights) {
+         total += light.getEmittedPower();
+      }
+      final PowerLightSampler sampler = new PowerLightSampler(lights);
+      final double[] frequencies = checkSelection(sampler, lights, new Vec3());
+      for (int i = 0; i < lights.length; ++i) {
+         final double expected = lights[i].getEmittedPower() / total;
+         Assert.assertEquals(expected, sampler.getProbability(i), 1e-12);
+         Assert.assertEquals(expected, frequencies[i], 1e-3);
+      }
+   }
+
+   @Test
+   public void lightBVHShouldReportSelectionProbability() {
+      final EmissiveGeometry[] lights = createLights(50, false);
+      final LightBVH bvh = new LightBVH(lights);
+      for (final Vec3 point : new Vec3[] { new Vec3(), new Vec3(5, 5, 5), new Vec3(100, -20, 3) }) {
+         final double[] frequencies = checkSelection(bvh, lights, point);
+         for (int i = 0; i < lights.length; ++i) {
+            if (lights[i].getEmittedPower() <= 0)
+               Assert.assertEquals(0, frequencies[i], 0);
+         }
+      }
+   }
+
+   @Test
+   public void samplersShouldSelectUniformlyWithoutPower() {
+      final EmissiveGeometry[] lights = createLights(40, true);
+      for (final LightSampler sampler : new LightSampler[] { new PowerLightSampler(lights), new LightBVH(lights) }) {
+         final double[] frequencies = checkSelection(sampler, lights, new Vec3(1, 2, 3));
+         for (final double frequency : frequencies) {
+            Assert.assertEquals(1.0 / lights.length, frequency, 1e-3);
+         }
+      }
+   }
+}
@@ -0,0 +1,116 @@
+package edu.rit.krisher.raytracer.sampling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.IntegratorUtils;
+import edu.rit.krisher.raytracer.rays.IntersectionInfo;
+import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.scene.EmissiveGeometry;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.light.PointLight;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.vecmath.Vec3;
+
+public class SamplerTest {
+
+   private static final int LOG_SAMPLES = 8;
+
+   /**
+    * Sampler that records the dimensions that are sampled.
+    */
+   private static final class RecordingSampler extends Sampler {
+      private static final long serialVersionUID = 1L;
+      final List<Integer> dimensions = new ArrayList<Integer>();
+
+      @Override
+      protected double sample(final int dim) {
+         dimensions.add(dim);
+         return 0.5;
+      }
+   }
+
+   /**
+    * Checks that the points are a (0, m, 2)-net: every elementary interval of area 1/n contains exactly one point.
+    */
+   private static void assertStratified(final String name, final double[] u, final double[] v) {
+      final int n = u.length;
+      for (int xBits = 0; xBits <= LOG_SAMPLES; ++xBits) {
+         final int yBits = LOG_SAMPLES - xBits;
+         final boolean[] occupied = new boolean[n];
+         for (int i = 0; i < n; ++i) {
+            final int cell = ((int) (u[i] * (1 << xBits)) << yBits) | (int) (v[i] * (1 << yBits));
+            Assert.assertFalse(name + ": two samples in a " + (1 << xBits) + "x" + (1 << yBits) + " cell.",
+                               occupied[cell]);
+            occupied[cell] = true;
+         }
+      }
+   }
+
+   @Test
+   public void sobolSamplerShouldStratifyEachBouncePair() {
+      final SobolSampler sampler = new SobolSampler();
+      sampler.setStream(2, 7, 1);
+      final int n = 1 << LOG_SAMPLES;
+      final double[] u = new double[n];
+      final double[] v = new double[n];
+      for (int depth = 0; depth < 4; ++depth) {
+         Assert.assertEquals(0, Sampler.bounceDimension(depth) % 2);
+         final int[] pairOffsets = new int[Sampler.MAX_LIGHT_SAMPLES + 1];
+         for (int sample = 0; sample < Sampler.MAX_LIGHT_SAMPLES; ++sample) {
+            pairOffsets[sample] = Sampler.lightSampleOffset(sample);
+         }
+         pairOffsets[Sampler.MAX_LIGHT_SAMPLES] = Sampler.BRDF_OFFSET;
+         for (final int offset : pairOffsets) {
+            Assert.assertTrue(offset + 1 < Sampler.DIMENSIONS_PER_BOUNCE);
+            for (int i = 0; i < n; ++i) {
+               sampler.startSample(5, 9, i, Sampler.bounceDimension(depth));
+               /*
+                * Single dimensions used before the pair do not move it.
+                */
+               sampler.sampleOffset(Sampler.LIGHT_SELECT_OFFSET);
+               if (depth >= 2)
+                  sampler.sampleOffset(Sampler.ROULETTE_OFFSET);
+               sampler.setDimensionOffset(offset);
+               u[i] = sampler.nextDouble();
+               v[i] = sampler.nextDouble();
+            }
+            assertStratified("Depth " + depth + ", offset " + offset, u, v);
+         }
+      }
+   }
+
+   @Test
+   public void lightSamplesShouldUseTheirOwnDimensions() {
+      final RecordingSampler sampler = new RecordingSampler();
+      final EmissiveGeometry light = new PointLight(new Vec3(0, 10, 0), 1, 1, 1);
+      final IntegratorUtils.DirectIlluminationSampler illumination = new IntegratorUtils.DirectIlluminationSampler(
+            sampler, new EmissiveGeometry[] { light }, new Geometry[0]);
+      final IntersectionInfo hit = new IntersectionInfo();
+      hit.surfaceNormal.set(0, 1, 0);
+      hit.material = new DiffuseMaterial(Color.white);
+      final SampleRay[] shadowRays = new SampleRay[4];
+      for (int i = 0; i < shadowRays.length; ++i) {
+         shadowRays[i] = new SampleRay(1);
+      }
+
+      final int start = Sampler.bounceDimension(3);
+      sampler.startSample(0, 0, 0, start);
+      illumination.generateShadowRays(shadowRays, 0, new Vec3(), hit, new Vec3(0, 1, 0), new Color(1, 1, 1), 0, 0,
+                                      shadowRays.length);
+      final List<Integer> expected = new ArrayList<Integer>();
+      expected.add(start + Sampler.LIGHT_SELECT_OFFSET);
+      for (int sample = 0; sample < shadowRays.length; ++sample) {
+         expected.add(start + Sampler.lightSampleOffset(sample));
+         expected.add(start + Sampler.lightSampleOffset(sample) + 1);
+      }
+      Assert.assertEquals(expected, sampler.dimensions);
+      for (int sample = 0; sample < shadowRays.length; ++sample) {
+         Assert.assertEquals(0, Sampler.lightSampleOffset(sample) % 2);
+      }
+   }
+}
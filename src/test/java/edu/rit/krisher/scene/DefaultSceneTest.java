@@ -0,0 +1,128 @@
+package edu.rit.krisher.scene;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.IntegratorUtils;
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.raytracer.rays.SampleRay;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.camera.PinholeCamera;
+import edu.rit.krisher.scene.geometry.Box;
+import edu.rit.krisher.scene.geometry.MeshTestSupport;
+import edu.rit.krisher.scene.geometry.Sphere;
+import edu.rit.krisher.scene.geometry.TriangleMesh;
+import edu.rit.krisher.scene.light.SphereLight;
+import edu.rit.krisher.scene.material.Color;
+import edu.rit.krisher.scene.material.DiffuseMaterial;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Vec3;
+
+public class DefaultSceneTest {
+   @Test
+   public void acceleratedGeometryShouldMatchLinearIntersection() throws IOException {
+      final TriangleMesh bunny = MeshTestSupport.loadBunny();
+      final AxisAlignedBoundingBox bunnyBounds = bunny.getBounds(Geometry.ALL_PRIMITIVES);
+      final double size = bunnyBounds.diagonalLength();
+      final Vec3 center = bunnyBounds.centerPt();
+
+      final DefaultScene<PinholeCamera> scene = new DefaultScene<PinholeCamera>("Accelerated", new PinholeCamera());
+      scene.add(new KDGeometryContainer(bunny));
+      /*
+       * A copy of the bunny that is not in a KD-Tree, beside the nested tree.
+       */
+      final float[] shifted = bunny.getVertices().clone();
+      for (int i = 0; i < shifted.length; i += 3) {
+         shifted[i] += (float) (size * 0.5);
+      }
+      scene.add(new TriangleMesh(shifted, bunny.getTriIndices()));
+      scene.add(new Box(size, size * 0.1, size, new DiffuseMaterial(Color.white), new Vec3(center.x, center.y - size
+                                                                                            * 0.4, center.z), false));
+      scene.add(new Sphere(new Vec3(center.x + size * 0.3, center.y, center.z), size * 0.1,
+                           new DiffuseMaterial(Color.white)));
+
+      final Geometry[] accelerated = scene.getGeometry();
+      Assert.assertEquals(1, accelerated.length);
+      Assert.assertTrue(accelerated[0] instanceof KDGeometryContainer);
+      Assert.assertSame(accelerated, scene.getGeometry());
+
+      /*
+       * Adding geometry invalidates the tree.
+       */
+      final Sphere sphere = new Sphere(new Vec3(center.x - size * 0.3, center.y, center.z), size * 0.1,
+                                       new DiffuseMaterial(Color.white));
+      scene.add(sphere);
+      final Geometry[] rebuilt = scene.getGeometry();
+      Assert.assertNotSame(accelerated, rebuilt);
+
+      scene.setAutoAccelerate(false);
+      final Geometry[] linear = scene.getGeometry();
+      Assert.assertEquals(5, linear.length);
+      scene.setAutoAccelerate(true);
+
+      final GeometryRay[] rays = MeshTestSupport.createRays(bunnyBounds, 5000, 7, 0.2);
+      boolean sphereHit = false;
+      for (final boolean singlePrecision : new boolean[] { false, true }) {
+         ((KDGeometryContainer) rebuilt[0]).setSinglePrecision(singlePrecision);
+         for (final GeometryRay ray : rays) {
+            final GeometryRay expected = new GeometryRay(ray.origin, ray.direction);
+            final GeometryRay actual = new GeometryRay(ray.origin, ray.direction);
+            for (final Geometry geom : linear) {
+               geom.intersects(expected);
+            }
+            for (final Geometry geom : rebuilt) {
+               geom.intersects(actual);
+            }
+            Assert.assertEquals(expected.t, actual.t, singlePrecision ? size * 1e-5 : 0);
+            if (!singlePrecision)
+               Assert.assertSame(expected.hitGeometry, actual.hitGeometry);
+            sphereHit |= actual.hitGeometry == sphere;
+
+            if (expected.hitGeometry != null) {
+               final GeometryRay shadow = new GeometryRay(ray.origin, ray.direction);
+               shadow.t = expected.t * 0.999;
+               boolean occluded = false;
+               for (final Geometry geom : rebuilt) {
+                  occluded |= geom.intersectsP(shadow);
+               }
+               Assert.assertFalse(occluded);
+               shadow.t = expected.t * 1.001;
+               Assert.assertTrue(rebuilt[0].intersectsP(shadow));
+            }
+         }
+      }
+      Assert.assertTrue(sphereHit);
+   }
+
+   @Test
+   public void lightsShouldStayOutsideTheTree() {
+      final DefaultScene<PinholeCamera> scene = new DefaultScene<PinholeCamera>("Lights", new PinholeCamera());
+      scene.add(new Box(16, 2, 16, new DiffuseMaterial(Color.white), new Vec3(0, -1, 0), false));
+      scene.add(new Sphere(new Vec3(3, 1, 0), 1, new DiffuseMaterial(Color.white)));
+      final SphereLight light = new SphereLight(new Vec3(0, 4, 0), 0.5, Color.white);
+      scene.add(light);
+
+      final Geometry[] geometry = scene.getGeometry();
+      Assert.assertEquals(2, geometry.length);
+      Assert.assertTrue(geometry[0] instanceof KDGeometryContainer);
+      Assert.assertSame(light, geometry[1]);
+
+      /*
+       * A shadow ray that ends on the light is only occluded by other geometry.
+       */
+      final SampleRay shadow = new SampleRay(1);
+      shadow.origin.set(0, 0, 0);
+      shadow.direction.set(0, 1, 0);
+      shadow.t = Double.POSITIVE_INFINITY;
+      Assert.assertTrue(light.intersects(shadow));
+      shadow.hitGeometry = light;
+      IntegratorUtils.processObstructions(new SampleRay[] { shadow }, 1, geometry);
+      Assert.assertSame(light, shadow.hitGeometry);
+
+      scene.add(new Sphere(new Vec3(0, 2, 0), 0.5, new DiffuseMaterial(Color.white)));
+      IntegratorUtils.processObstructions(new SampleRay[] { shadow }, 1, scene.getGeometry());
+      Assert.assertNull(shadow.hitGeometry);
+   }
+}
@@ -0,0 +1,79 @@
+package edu.rit.krisher.scene.geometry;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+public class BufferTriangleMeshTest {
+   @Test
+   public void mappedMeshShouldMatchArrayMesh() throws Exception {
+      final TriangleMesh bunny = MeshTestSupport.loadBunny();
+      final float[] vertices = bunny.getVertices();
+      final int[] indices = bunny.getTriIndices();
+      final float[] normals = TriangleMesh.computeTriangleNormals(vertices, indices);
+      final TriangleMesh mesh = new TriangleMesh(vertices, normals, indices);
+
+      final File file = File.createTempFile("bunny", ".mesh");
+      file.deleteOnExit();
+      final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      final BufferTriangleMesh mapped;
+      try {
+         final FileChannel channel = raf.getChannel();
+         final long vertexBytes = 4L * vertices.length;
+         final long indexBytes = 4L * indices.length;
+         final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * vertexBytes + indexBytes)
+         .order(ByteOrder.nativeOrder());
+         buffer.asFloatBuffer().put(vertices);
+         buffer.position((int) vertexBytes);
+         buffer.slice().order(ByteOrder.nativeOrder()).asFloatBuffer().put(normals);
+         buffer.position((int) (2 * vertexBytes));
+         buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer().put(indices);
+
+         final ByteBuffer readOnly = channel.map(FileChannel.MapMode.READ_ONLY, 0, 2 * vertexBytes + indexBytes)
+         .order(ByteOrder.nativeOrder());
+         readOnly.limit((int) vertexBytes);
+         final ByteBuffer vertexView = readOnly.slice().order(ByteOrder.nativeOrder());
+         readOnly.limit((int) (2 * vertexBytes)).position((int) vertexBytes);
+         final ByteBuffer normalView = readOnly.slice().order(ByteOrder.nativeOrder());
+         readOnly.limit((int) (2 * vertexBytes + indexBytes)).position((int) (2 * vertexBytes));
+         final ByteBuffer indexView = readOnly.slice().order(ByteOrder.nativeOrder());
+         mapped = new BufferTriangleMesh(vertexView.asFloatBuffer(), normalView.asFloatBuffer(),
+                                         indexView.asIntBuffer());
+      } finally {
+         raf.close();
+      }
+      assertSameIntersections(mesh, mapped);
+      assertSameIntersections(mesh, BufferTriangleMesh.allocateDirect(vertices, normals, indices));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void buffersLargerThanTwoGigabytesShouldBeRejected() {
+      BufferTriangleMesh.allocateDirect(Integer.MAX_VALUE / 4 + 1);
+   }
+
+   private static void assertSameIntersections(final TriangleMesh mesh, final BufferTriangleMesh bufferMesh) {
+      Assert.assertEquals(mesh.getPrimitiveCount(), bufferMesh.getPrimitiveCount());
+      final AxisAlignedBoundingBox bounds = mesh.getBounds(Geometry.ALL_PRIMITIVES);
+      Assert.assertArrayEquals(bounds.xyzxyz, bufferMesh.getBounds(Geometry.ALL_PRIMITIVES).xyzxyz, 0);
+      for (int prim = 0; prim < mesh.getPrimitiveCount(); prim += 101) {
+         Assert.assertArrayEquals(mesh.getBounds(prim).xyzxyz, bufferMesh.getBounds(prim).xyzxyz, 0);
+         Assert.assertEquals(mesh.getSurfaceArea(prim), bufferMesh.getSurfaceArea(prim), 1e-12);
+      }
+
+      final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), mesh);
+      final KDGeometryContainer bufferTree = new KDGeometryContainer(new SAHPartitionStrategey(), bufferMesh);
+      final GeometryRay[] rays = MeshTestSupport.createRays(bounds, 2000, 3, 0);
+      Assert.assertEquals(0, MeshTestSupport.compareIntersections(tree, bufferTree, rays, 0, 1e-12).mismatches);
+   }
+}
@@ -0,0 +1,91 @@
+package edu.rit.krisher.scene.geometry;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
+import edu.rit.krisher.vecmath.Vec3;
+
+public class MeshCleanupTest {
+   @Test
+   public void cleanupShouldWeldSoupAndKeepSurface() throws IOException {
+      final TriangleMesh bunny = MeshTestSupport.loadBunny();
+      final float[] vertices = bunny.getVertices();
+      final int[] indices = bunny.getTriIndices();
+      final int triCount = indices.length / 3;
+
+      /*
+       * Triangle soup: every triangle has its own vertices, followed by two degenerate triangles.
+       */
+      final float[] soupVertices = new float[(triCount * 3 + 3) * 3];
+      final int[] soupIndices = new int[(triCount + 2) * 3];
+      for (int i = 0; i < triCount * 3; ++i) {
+         System.arraycopy(vertices, indices[i] * 3, soupVertices, i * 3, 3);
+         soupIndices[i] = i;
+      }
+      final int extra = triCount * 3;
+      System.arraycopy(vertices, 0, soupVertices, extra * 3, 3);
+      System.arraycopy(vertices, 0, soupVertices, extra * 3 + 3, 3);
+      System.arraycopy(vertices, 3, soupVertices, extra * 3 + 6, 3);
+      soupIndices[extra] = extra;
+      soupIndices[extra + 1] = extra + 1;
+      soupIndices[extra + 2] = extra + 2;
+      soupIndices[extra + 3] = 0;
+      soupIndices[extra + 4] = 1;
+      soupIndices[extra + 5] = 0;
+      final TriangleMesh soup = new TriangleMesh(soupVertices, soupIndices);
+
+      final MeshCleanup.Report bunnyReport = new MeshCleanup.Report();
+      MeshCleanup.process(bunny, 0, false, bunnyReport);
+      final MeshCleanup.Report report = new MeshCleanup.Report();
+      final TriangleMesh cleaned = MeshCleanup.process(soup, 0, true, report);
+      Assert.assertEquals(bunnyReport.outputVertices, report.outputVertices);
+      Assert.assertEquals(bunnyReport.outputTriangles, report.outputTriangles);
+      Assert.assertEquals(bunnyReport.degenerateTriangles + 2, report.degenerateTriangles);
+      Assert.assertEquals(soupVertices.length / 3, report.weldedVertices + report.unreferencedVertices
+                          + report.outputVertices);
+      Assert.assertEquals(report.outputVertices * 3, cleaned.getVertices().length);
+      Assert.assertEquals(report.outputTriangles * 3, cleaned.getTriIndices().length);
+
+      final KDGeometryContainer soupTree = new KDGeometryContainer(new SAHPartitionStrategey(), soup);
+      final KDGeometryContainer cleanTree = new KDGeometryContainer(new SAHPartitionStrategey(), cleaned);
+      final GeometryRay[] rays = MeshTestSupport.createRays(bunny.getBounds(Geometry.ALL_PRIMITIVES), 20000, 5, 0.1);
+      Assert.assertEquals(0, MeshTestSupport.compareIntersections(soupTree, cleanTree, rays, 1e-9, -1).mismatches);
+   }
+
+   @Test
+   public void weldToleranceShouldBeADistance() {
+      final float tolerance = 0.25f;
+      /*
+       * Vertices 1 and 2 are a tiny distance apart, on either side of a grid line (x = 0.25). Vertices 0 and 3 are in
+       * the same grid cell, but further apart than the tolerance. Vertex 4 is within the tolerance of vertex 0, in a
+       * neighbouring cell, and vertex 5 has the position of vertex 1 with a different normal.
+       */
+      final float[] vertices = new float[] { 0.26f, 0.01f, 0, 0.24999999f, 0.5f, 0, 0.25f, 0.5f, 0, 0.49f, 0.24f, 0,
+            0.2f, 0.01f, 0, 0.24999999f, 0.5f, 0 };
+      final float[] normals = new float[] { 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 0, 1, 0, 1, 0 };
+      final int[] indices = new int[] { 0, 1, 3, 2, 1, 3, 5, 4, 3 };
+      final TriangleMesh mesh = new TriangleMesh(vertices, normals, indices);
+      final MeshCleanup.Report report = new MeshCleanup.Report();
+      final TriangleMesh welded = MeshCleanup.process(mesh, tolerance, false, report);
+      Assert.assertEquals(2, report.weldedVertices);
+      Assert.assertEquals(4, report.outputVertices);
+      Assert.assertEquals(1, report.degenerateTriangles);
+      /*
+       * Vertex 2 is welded to vertex 1, which makes the second triangle degenerate, and 4 to 0.
+       */
+      final int[] weldedIndices = welded.getTriIndices();
+      Assert.assertEquals(6, weldedIndices.length);
+      Assert.assertEquals(weldedIndices[0], weldedIndices[4]);
+
+      final MeshCleanup.Report exact = new MeshCleanup.Report();
+      MeshCleanup.process(mesh, 0, false, exact);
+      Assert.assertEquals(0, exact.weldedVertices);
+      Assert.assertEquals(0, exact.degenerateTriangles);
+   }
+}
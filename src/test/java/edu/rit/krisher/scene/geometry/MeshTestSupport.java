@@ -0,0 +1,144 @@
+package edu.rit.krisher.scene.geometry;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+
+import edu.rit.krisher.fileparser.ply.PLYParser;
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.raytracer.rays.IntersectionInfo;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Vec3;
+
+/**
+ * Mesh and ray fixtures shared by the geometry tests.
+ */
+public final class MeshTestSupport {
+
+   public static final String BUNNY_RESOURCE = "/edu/rit/krisher/fileparser/ply/bun_zipper.ply";
+
+   /**
+    * Counts of the rays compared by {@link MeshTestSupport#compareIntersections}.
+    */
+   public static final class Comparison {
+      /**
+       * Rays that hit both geometries.
+       */
+      public int hits;
+      /**
+       * Rays that hit only one of the geometries.
+       */
+      public int mismatches;
+   }
+
+   private MeshTestSupport() {
+   }
+
+   /**
+    * @return The Stanford bunny, without normals.
+    */
+   public static TriangleMesh loadBunny() throws IOException {
+      final InputStream stream = new BufferedInputStream(MeshTestSupport.class.getResourceAsStream(BUNNY_RESOURCE));
+      try {
+         return PLYParser.parseTriangleMesh(stream, false);
+      } finally {
+         stream.close();
+      }
+   }
+
+   /**
+    * Copies the Stanford bunny PLY file, for tests that load models from files.
+    */
+   public static void copyBunny(final File destination) throws IOException {
+      final InputStream in = MeshTestSupport.class.getResourceAsStream(BUNNY_RESOURCE);
+      try {
+         final OutputStream out = new FileOutputStream(destination);
+         try {
+            final byte[] buffer = new byte[1 << 16];
+            for (int read; (read = in.read(buffer)) > 0;) {
+               out.write(buffer, 0, read);
+            }
+         } finally {
+            out.close();
+         }
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * Creates rays from random points on a sphere around the bounds, with a radius of the bounds diagonal, towards
+    * normally distributed points around the center of the bounds.
+    *
+    * @param spread
+    *           The standard deviation of the target points, relative to the bounds diagonal. 0 aims every ray at the
+    *           center.
+    */
+   public static GeometryRay[] createRays(final AxisAlignedBoundingBox bounds, final int count, final long seed,
+         final double spread) {
+      final Random random = new Random(seed);
+      final Vec3 center = bounds.centerPt();
+      final double size = bounds.diagonalLength();
+      final GeometryRay[] rays = new GeometryRay[count];
+      for (int i = 0; i < count; ++i) {
+         final Vec3 origin = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+         origin.multiply(size).add(center);
+         final Vec3 target = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+         .multiply(size * spread).add(center);
+         rays[i] = new GeometryRay(origin, target.subtract(origin).normalize());
+      }
+      return rays;
+   }
+
+   /**
+    * Intersects each ray with two geometries, and checks that rays that hit both do so at the same distance. With a
+    * distance tolerance of 0, the same primitive must also be hit.
+    *
+    * @param expected
+    *           The reference geometry.
+    * @param actual
+    *           The geometry under test.
+    * @param rays
+    *           The rays, which are not modified.
+    * @param tolerance
+    *           The maximum difference of the hit distances.
+    * @param normalTolerance
+    *           The maximum difference of the dot product of the surface normals from 1, when the same primitive is hit,
+    *           or a negative value to not compare normals.
+    * @return The number of rays that hit both geometries, or only one of them.
+    */
+   public static Comparison compareIntersections(final Geometry expected, final Geometry actual,
+         final GeometryRay[] rays, final double tolerance, final double normalTolerance) {
+      final Comparison result = new Comparison();
+      final IntersectionInfo expectedInfo = new IntersectionInfo();
+      final IntersectionInfo actualInfo = new IntersectionInfo();
+      for (final GeometryRay ray : rays) {
+         final GeometryRay expectedRay = new GeometryRay(ray.origin, ray.direction);
+         final GeometryRay actualRay = new GeometryRay(ray.origin, ray.direction);
+         final boolean hit = expected.intersects(expectedRay);
+         if (hit != actual.intersects(actualRay)) {
+            ++result.mismatches;
+            continue;
+         }
+         if (!hit)
+            continue;
+         ++result.hits;
+         Assert.assertEquals(expectedRay.t, actualRay.t, tolerance);
+         if (tolerance == 0)
+            Assert.assertEquals(expectedRay.primitiveID, actualRay.primitiveID);
+         if (normalTolerance >= 0 && expectedRay.primitiveID == actualRay.primitiveID) {
+            expectedRay.hitGeometry.getHitData(expectedRay, expectedInfo);
+            actualRay.hitGeometry.getHitData(actualRay, actualInfo);
+            Assert.assertEquals(1, expectedInfo.surfaceNormal.dot(actualInfo.surfaceNormal), normalTolerance);
+         }
+      }
+      return result;
+   }
+}
@@ -0,0 +1,40 @@
+package edu.rit.krisher.scene.geometry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.raytracer.rays.GeometryRay;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
+import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+
+public class QuantizedTriangleMeshTest {
+
+   @Test
+   public void quantizedMeshShouldMatchUncompressedMesh() throws Exception {
+      final TriangleMesh bunny = MeshTestSupport.loadBunny();
+      final float[] normals = TriangleMesh.computeTriangleNormals(bunny.getVertices(), bunny.getTriIndices());
+      final TriangleMesh mesh = new TriangleMesh(bunny.getVertices(), normals, bunny.getTriIndices());
+      final QuantizedTriangleMesh quantized = new QuantizedTriangleMesh(bunny.getVertices(), normals,
+                                                                        bunny.getTriIndices());
+      Assert.assertTrue(quantized.getMemoryBytes() * 2 < quantized.getUncompressedMemoryBytes());
+
+      final AxisAlignedBoundingBox bounds = mesh.getBounds(-1);
+      for (int prim = 0; prim < mesh.getPrimitiveCount(); prim += 97) {
+         final AxisAlignedBoundingBox expected = mesh.getBounds(prim);
+         final AxisAlignedBoundingBox actual = quantized.getBounds(prim);
+         for (int i = 0; i < 6; ++i) {
+            Assert.assertEquals(expected.xyzxyz[i], actual.xyzxyz[i], bounds.diagonalLength() / 65535);
+         }
+      }
+
+      final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), mesh);
+      final KDGeometryContainer quantizedTree = new KDGeometryContainer(new SAHPartitionStrategey(), quantized);
+      final GeometryRay[] rays = MeshTestSupport.createRays(bounds, 5000, 7, 0.1);
+      final MeshTestSupport.Comparison result = MeshTestSupport.compareIntersections(tree, quantizedTree, rays,
+                                                                                     1e-3 * bounds.diagonalLength(),
+                                                                                     1e-3);
+      Assert.assertTrue(result.hits > 1000);
+      Assert.assertTrue("Hit mismatches: " + result.mismatches, result.mismatches < 25);
+   }
+}
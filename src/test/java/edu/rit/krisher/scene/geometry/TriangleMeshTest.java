@@ -1,5 +1,7 @@
 package edu.rit.krisher.scene.geometry;
 
+import java.io.IOException;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,7 +11,6 @@ import edu.rit.krisher.scene.Geometry;
 import edu.rit.krisher.vecmath.Vec3;
 
 public class TriangleMeshTest {
-
    private TriangleMesh xyQuad;
 
    @Before
@@ -50,4 +51,15 @@ public class TriangleMeshTest {
          }
       }
    }
+
+   @Test
+   public void parallelNormalsShouldMatchSerialNormals() throws IOException {
+      final TriangleMesh bunny = MeshTestSupport.loadBunny();
+      final float[] serial = TriangleMesh.computeTriangleNormalsSerial(bunny.getVertices(), bunny.getTriIndices());
+      final float[] parallel = TriangleMesh.computeTriangleNormalsParallel(bunny.getVertices(), bunny.getTriIndices());
+      Assert.assertEquals(serial.length, parallel.length);
+      for (int i = 0; i < serial.length; ++i) {
+         Assert.assertEquals(Float.floatToIntBits(serial[i]), Float.floatToIntBits(parallel[i]));
+      }
+   }
 }
@@ -9,28 +9,31 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
 
-import edu.rit.krisher.fileparser.ply.PLYParser;
+import edu.rit.krisher.raytracer.rays.GeometryRay;
 import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.GeometryContainer;
 import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
 import edu.rit.krisher.scene.acceleration.KDNodeVisitor;
 import edu.rit.krisher.scene.acceleration.KDTreeMetrics;
 import edu.rit.krisher.scene.acceleration.SAHPartitionStrategey;
+import edu.rit.krisher.scene.geometry.MeshTestSupport;
+import edu.rit.krisher.scene.geometry.Sphere;
 import edu.rit.krisher.scene.geometry.TriangleMesh;
 import edu.rit.krisher.util.Timer;
 import edu.rit.krisher.vecmath.AxisAlignedBoundingBox;
+import edu.rit.krisher.vecmath.Ray;
+import edu.rit.krisher.vecmath.Vec3;
 
 /**
  *
  */
 public class KDTreeTest {
-   private static final String bunnyResource = "/edu/rit/krisher/fileparser/ply/bun_zipper.ply";
 
    @Test
    public void splitLocationsShouldBeInNodeRange() throws Exception {
@@ -51,8 +54,69 @@ public class KDTreeTest {
       tree.visitTreeNodes(visitor);
    }
 
-   public void treeMetricsShouldNotChange() {
-      final TriangleMesh bunnyGeom = loadBunny();
+   @Test
+   public void singlePrecisionShouldMatchDoublePrecision() throws IOException {
+      final TriangleMesh bunnyGeom = MeshTestSupport.loadBunny();
+      final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), bunnyGeom);
+      final GeometryRay[] rays = MeshTestSupport.createRays(tree.getBounds(-1), 20000, 42, 0.25);
+
+      final double[] doubleT = new double[rays.length];
+      final int[] doublePrim = new int[rays.length];
+      for (int i = 0; i < rays.length; ++i) {
+         final GeometryRay ray = rays[i];
+         ray.t = Double.POSITIVE_INFINITY;
+         doubleT[i] = tree.intersects(ray) ? ray.t : -1;
+         doublePrim[i] = ray.primitiveID;
+      }
+
+      tree.setSinglePrecision(true);
+      final double[] singleT = new double[rays.length];
+      final int[] singlePrim = new int[rays.length];
+      for (int i = 0; i < rays.length; ++i) {
+         final GeometryRay ray = rays[i];
+         ray.t = Double.POSITIVE_INFINITY;
+         singleT[i] = tree.intersects(ray) ? ray.t : -1;
+         singlePrim[i] = ray.primitiveID;
+      }
+
+      int hits = 0;
+      int mismatches = 0;
+      int occlusionMismatches = 0;
+      final double scale = tree.getBounds(-1).diagonalLength();
+      for (int i = 0; i < rays.length; ++i) {
+         if (doubleT[i] > 0)
+            ++hits;
+         if ((doubleT[i] > 0) != (singleT[i] > 0)) {
+            ++mismatches;
+         } else if (doubleT[i] > 0) {
+            /*
+             * The hit distance is refined in double precision, so it should be exact unless a different (adjacent)
+             * triangle was hit.
+             */
+            if (doublePrim[i] == singlePrim[i])
+               Assert.assertEquals(doubleT[i], singleT[i], 1e-12 * scale);
+            else
+               Assert.assertEquals(doubleT[i], singleT[i], 1e-4 * scale);
+         }
+         /*
+          * Shadow rays that end before the hit point (or extend to infinity for misses).
+          */
+         final Ray shadowRay = rays[i];
+         shadowRay.t = doubleT[i] > 0 ? doubleT[i] * 0.5 : Double.POSITIVE_INFINITY;
+         final boolean singleOccluded = tree.intersectsP(shadowRay);
+         tree.setSinglePrecision(false);
+         shadowRay.t = doubleT[i] > 0 ? doubleT[i] * 0.5 : Double.POSITIVE_INFINITY;
+         if (singleOccluded != tree.intersectsP(shadowRay))
+            ++occlusionMismatches;
+         tree.setSinglePrecision(true);
+      }
+      assertThat("Hits", hits, greaterThan(rays.length / 4));
+      assertThat("Hit mismatches", mismatches, lessThan(rays.length / 1000 + 1));
+      assertThat("Occlusion mismatches", occlusionMismatches, lessThan(rays.length / 1000 + 1));
+   }
+
+   public void treeMetricsShouldNotChange() throws IOException {
+      final TriangleMesh bunnyGeom = MeshTestSupport.loadBunny();
       final Timer timer = new Timer("KD Construction Time (Bunny)");
       timer.start();
       final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), bunnyGeom);
@@ -69,22 +133,85 @@ public class KDTreeTest {
       assertThat("Leaf Volume", metrics.leafVolume / metrics.treeVolume, allOf(greaterThan(0.2141701), lessThan(0.2141702)));
    }
 
-   private static TriangleMesh loadBunny() {
-      InputStream stream = null;
-      try {
-         stream = new BufferedInputStream(KDTreeTest.class.getResourceAsStream(bunnyResource));
-         return PLYParser.parseTriangleMesh(stream, false);
-      } catch (final IOException ioe) {
-         ioe.printStackTrace();
-      } finally {
-         try {
-            if (stream != null)
-               stream.close();
-         } catch (final IOException e) {
-            e.printStackTrace();
+   /**
+    * Sphere that is stored in a KD-Tree as a nested container, and counts how many times it is intersected.
+    */
+   private static final class CountingContainer extends Sphere implements GeometryContainer {
+      int tests;
+
+      CountingContainer(final Vec3 center, final double radius) {
+         super(center, radius, null);
+      }
+
+      @Override
+      public boolean intersects(final GeometryRay ray) {
+         ++tests;
+         return super.intersects(ray);
+      }
+
+      @Override
+      public boolean intersectsP(final Ray ray) {
+         ++tests;
+         return super.intersectsP(ray);
+      }
+
+      @Override
+      public AxisAlignedBoundingBox getBounds() {
+         return getBounds(ALL_PRIMITIVES);
+      }
+
+      @Override
+      public Geometry[] getGeometry() {
+         return new Geometry[] { this };
+      }
+   }
+
+   @Test
+   public void nestedContainerShouldBeTestedOncePerRay() {
+      final Random random = new Random(13);
+      final CountingContainer container = new CountingContainer(new Vec3(), 10);
+      final Geometry[] content = new Geometry[201];
+      content[0] = container;
+      for (int i = 1; i < content.length; ++i) {
+         content[i] = new Sphere(new Vec3(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10,
+                                          random.nextDouble() * 20 - 10), 0.2, null);
+      }
+      final KDGeometryContainer tree = new KDGeometryContainer(new SAHPartitionStrategey(), content);
+      Assert.assertEquals(content.length, tree.getPrimitiveCount());
+      final KDTreeMetrics metrics = new KDTreeMetrics(tree);
+      Assert.assertTrue(metrics.leafNodes > 1);
+      /*
+       * The container is referenced by many leaves.
+       */
+      Assert.assertTrue(metrics.duplicatedPrimitives > 0);
+
+      for (final boolean singlePrecision : new boolean[] { false, true }) {
+         tree.setSinglePrecision(singlePrecision);
+         for (int i = 0; i < 1000; ++i) {
+            final Vec3 origin = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian())
+            .normalize().multiply(30);
+            final Vec3 target = new Vec3(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+            final GeometryRay expected = new GeometryRay(origin, target.subtract(origin).normalize());
+            expected.t = Double.POSITIVE_INFINITY;
+            for (final Geometry geom : content) {
+               geom.intersects(expected);
+            }
+
+            container.tests = 0;
+            final GeometryRay actual = new GeometryRay(expected.origin, expected.direction);
+            actual.t = Double.POSITIVE_INFINITY;
+            Assert.assertTrue(tree.intersects(actual));
+            Assert.assertEquals(1, container.tests);
+            Assert.assertEquals(expected.t, actual.t, 1e-9);
+            Assert.assertSame(expected.hitGeometry, actual.hitGeometry);
+
+            container.tests = 0;
+            final Ray shadow = new Ray(origin, expected.direction);
+            shadow.t = expected.t * 0.999;
+            Assert.assertFalse(tree.intersectsP(shadow));
+            Assert.assertEquals(1, container.tests);
          }
       }
-      return null;
    }
 
    private static Geometry createOpenBoxGeometry() {
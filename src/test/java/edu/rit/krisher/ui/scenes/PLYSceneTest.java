@@ -0,0 +1,91 @@
+package edu.rit.krisher.ui.scenes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.rit.krisher.fileparser.mesh.MeshCache;
+import edu.rit.krisher.raytracer.PathTracer;
+import edu.rit.krisher.raytracer.RenderTestSupport;
+import edu.rit.krisher.raytracer.RenderTestSupport.ArrayImageBuffer;
+import edu.rit.krisher.scene.Geometry;
+import edu.rit.krisher.scene.acceleration.KDGeometryContainer;
+import edu.rit.krisher.scene.camera.PinholeCamera;
+import edu.rit.krisher.scene.geometry.BufferTriangleMesh;
+import edu.rit.krisher.scene.geometry.MeshTestSupport;
+
+public class PLYSceneTest {
+   private static final int SIZE = 16;
+
+   private static float[] render(final PLYScene<PinholeCamera> scene) throws InterruptedException {
+      final PathTracer tracer = RenderTestSupport.createPathTracer();
+      final ArrayImageBuffer image = new ArrayImageBuffer(SIZE, SIZE);
+      tracer.integrate(image, scene, 1, 3);
+      Assert.assertTrue("Rendering did not complete.", image.done.await(60, TimeUnit.SECONDS));
+      return image.pixels;
+   }
+
+   /**
+    * @return true if the geometry, or any geometry in a KD tree within it, is a {@link BufferTriangleMesh}.
+    */
+   private static boolean containsBufferMesh(final Geometry[] geometry) {
+      for (final Geometry geom : geometry) {
+         if (geom instanceof BufferTriangleMesh)
+            return true;
+         if (geom instanceof KDGeometryContainer && containsBufferMesh(((KDGeometryContainer) geom).getGeometry()))
+            return true;
+      }
+      return false;
+   }
+
+   @Test
+   public void cachedModelShouldRenderLikeParsedModel() throws IOException, InterruptedException {
+      final File directory = File.createTempFile("plyscene", "");
+      directory.delete();
+      final File source = new File(directory, "bunny.ply");
+      final File cacheDirectory = new File(directory, "cache");
+      try {
+         directory.mkdirs();
+         MeshTestSupport.copyBunny(source);
+
+         final PLYScene<PinholeCamera> parsed = new PLYScene<PinholeCamera>("Parsed", new PinholeCamera(),
+                                                                            source.toURI().toURL());
+         parsed.setMeshCache(null);
+         Assert.assertFalse(containsBufferMesh(parsed.getGeometry()));
+         final float[] reference = render(parsed);
+
+         final MeshCache cache = new MeshCache(cacheDirectory);
+         final PLYScene<PinholeCamera> cached = new PLYScene<PinholeCamera>("Cached", new PinholeCamera(),
+                                                                            source.toURI().toURL());
+         cached.setMeshCache(cache);
+         cached.setMeshCleanup(true);
+         Assert.assertTrue(containsBufferMesh(cached.getGeometry()));
+         Assert.assertTrue(cache.getCacheFile(source, "clean-flat").isFile());
+         final float[] pixels = render(cached);
+
+         double sum = 0;
+         double difference = 0;
+         for (int i = 0; i < reference.length; ++i) {
+            sum += reference[i];
+            difference += Math.abs(reference[i] - pixels[i]);
+         }
+         Assert.assertTrue("Empty image.", sum > 0);
+         Assert.assertEquals(0, difference / sum, 1e-3);
+      } finally {
+         delete(directory);
+      }
+   }
+
+   private static void delete(final File file) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+         for (final File child : children) {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+}